@@ -48,6 +48,9 @@ public class T2DBMsg extends KeyedMessage {
 		public static final String D00114 = "D00114";
 		public static final String D00115 = "D00115";
 		public static final String D00116 = "D00116";
+		public static final String D00117 = "D00117";
+		public static final String D00118 = "D00118";
+		public static final String D00119 = "D00119";
 		public static final String D00121 = "D00121";
 
 		public static final String D01102 = "D01102";
@@ -76,10 +79,13 @@ public class T2DBMsg extends KeyedMessage {
 		public static final String D10121 = "D10121";
 		public static final String D10122 = "D10122";
 		public static final String D10123 = "D10123";
+		public static final String D10124 = "D10124";
+		public static final String D10125 = "D10125";
 		public static final String D20107 = "D20107";
 		public static final String D20108 = "D20108";
 		public static final String D20109 = "D20109";
 		public static final String D20110 = "D20110";
+		public static final String D20111 = "D20111";
 		public static final String D30105 = "D30105";
 		public static final String D30106 = "D30106";
 		public static final String D30108 = "D30108";
@@ -130,6 +136,7 @@ public class T2DBMsg extends KeyedMessage {
 		public static final String D40111 = "D40111";
 		public static final String D40114 = "D40114";
 		public static final String D40115 = "D40115";
+		public static final String D40116 = "D40116";
 		public static final String D40126 = "D40126";
 		public static final String D40127 = "D40127";
 		public static final String D40130 = "D40130";
@@ -148,10 +155,15 @@ public class T2DBMsg extends KeyedMessage {
 		public static final String D50115 = "D50115";
 		public static final String D50116 = "D50116";
 		public static final String D50130 = "D50130";
+		public static final String D50131 = "D50131";
+		public static final String D50132 = "D50132";
 	}
 	
 	public class E {
 		public static final String E00110 = "E00110";
+		public static final String E00111 = "E00111";
+		public static final String E00112 = "E00112";
+		public static final String E00113 = "E00113";
 		public static final String E10104 = "E10104";
 		public static final String E10105 = "E10105";
 		public static final String E10106 = "E10106";
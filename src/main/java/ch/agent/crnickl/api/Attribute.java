@@ -95,7 +95,7 @@ public interface Attribute<T> {
 	 * A null value is passed directly to {@link #set(Object)}.
 	 * When not null, the value either must be assignment
 	 * compatible with the underlying type of the attribute or it must be a
-	 * string. In the first case it is cast and passed to
+	 * character sequence. In the first case it is cast and passed to
 	 * {@link #set(Object)}. In the second case it is scanned 
 	 * by {@link ValueType#scan(String)} before being passed to {@link #set(Object)}.
 	 * 
@@ -120,6 +120,28 @@ public interface Chronicle extends DBObject {
 	 */
 	Collection<Chronicle> getMembers() throws T2DBException;
 	
+	/**
+	 * Return a page of the direct members of this chronicle. Members are sorted
+	 * by simple name. The page starts with the first member with a simple name
+	 * greater than <code>after</code>, or with the very first member when
+	 * <code>after</code> is null. To get the next page, pass the simple name
+	 * of the last member of the page.
+	 * 
+	 * @param after a simple name or null
+	 * @param maxSize the maximum number of members to return
+	 * @return a collection of at most maxSize chronicles
+	 * @throws T2DBException
+	 */
+	Collection<Chronicle> getMembers(String after, int maxSize) throws T2DBException;
+	
+	/**
+	 * Return the number of direct members of this chronicle.
+	 * 
+	 * @return the number of members
+	 * @throws T2DBException
+	 */
+	int countMembers() throws T2DBException;
+	
 	/**
 	 * Return the name of the chronicle.
 	 * 
@@ -0,0 +1,262 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A ChroniclePredicate is a node in a tree of conditions on chronicles. It is
+ * used with {@link Database#query(ChroniclePredicate, ChronicleVisitor)}.
+ * Leaves test membership in a collection, the effective schema, or the value
+ * of an attribute. Inner nodes combine conditions with AND, OR and NOT.
+ * For example, chronicles under <q>x.y</q> with schema <q>S</q> and an
+ * attribute <q>A</q> equal to 1 or 2 are described by:
+ * <pre>
+ * ChroniclePredicate.and(
+ *     ChroniclePredicate.memberOf(db.getChronicle("x.y", true)),
+ *     ChroniclePredicate.schema(s),
+ *     ChroniclePredicate.attribute(a, Arrays.asList(1, 2)));
+ * </pre>
+ * Predicates are immutable.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class ChroniclePredicate {
+
+	/**
+	 * Operator identifies the kind of a predicate.
+	 */
+	public enum Operator {
+		/**
+		 * The chronicle is a member of a collection, directly or indirectly.
+		 */
+		MEMBER,
+		/**
+		 * The effective schema of the chronicle is a given schema.
+		 */
+		SCHEMA,
+		/**
+		 * The chronicle has an attribute value explicitly specified and the
+		 * value is one of a set of values.
+		 */
+		ATTRIBUTE,
+		/**
+		 * All operands are true.
+		 */
+		AND,
+		/**
+		 * At least one operand is true.
+		 */
+		OR,
+		/**
+		 * The operand is false.
+		 */
+		NOT
+	}
+	
+	private final Operator operator;
+	private final Chronicle collection;
+	private final Schema schema;
+	private final Property<?> property;
+	private final Set<?> values;
+	private final List<ChroniclePredicate> operands;
+	
+	private ChroniclePredicate(Operator operator, Chronicle collection, Schema schema, 
+			Property<?> property, Set<?> values, List<ChroniclePredicate> operands) {
+		this.operator = operator;
+		this.collection = collection;
+		this.schema = schema;
+		this.property = property;
+		this.values = values;
+		this.operands = operands;
+	}
+	
+	/**
+	 * Return a predicate true for members of a collection, directly or
+	 * indirectly. The collection itself is not a member.
+	 * 
+	 * @param collection a chronicle
+	 * @return a predicate
+	 */
+	public static ChroniclePredicate memberOf(Chronicle collection) {
+		if (collection == null)
+			throw new IllegalArgumentException("collection null");
+		return new ChroniclePredicate(Operator.MEMBER, collection, null, null, null, null);
+	}
+	
+	/**
+	 * Return a predicate true for chronicles with the given effective schema.
+	 * See {@link Chronicle#getSchema(boolean)}.
+	 * 
+	 * @param schema a schema
+	 * @return a predicate
+	 */
+	public static ChroniclePredicate schema(Schema schema) {
+		if (schema == null)
+			throw new IllegalArgumentException("schema null");
+		return new ChroniclePredicate(Operator.SCHEMA, null, schema, null, null, null);
+	}
+	
+	/**
+	 * Return a predicate true for chronicles with an attribute value equal
+	 * to the value given. As with {@link Property#getChronicles(Object, int)},
+	 * only values explicitly specified for chronicles count.
+	 * 
+	 * @param property a property
+	 * @param value a value
+	 * @return a predicate
+	 */
+	public static <T> ChroniclePredicate attribute(Property<T> property, T value) {
+		return attribute(property, Collections.singleton(value));
+	}
+	
+	/**
+	 * Return a predicate true for chronicles with an attribute value equal
+	 * to one of the values given. As with
+	 * {@link Property#getChronicles(Object, int)}, only values explicitly
+	 * specified for chronicles count.
+	 * 
+	 * @param property a property
+	 * @param values a non-empty collection of values
+	 * @return a predicate
+	 */
+	public static <T> ChroniclePredicate attribute(Property<T> property, Collection<T> values) {
+		if (property == null)
+			throw new IllegalArgumentException("property null");
+		if (values == null || values.isEmpty())
+			throw new IllegalArgumentException("values null or empty");
+		return new ChroniclePredicate(Operator.ATTRIBUTE, null, null, property, 
+				Collections.unmodifiableSet(new LinkedHashSet<T>(values)), null);
+	}
+	
+	/**
+	 * Return a predicate true when all operands are true.
+	 * 
+	 * @param operands one or more predicates
+	 * @return a predicate
+	 */
+	public static ChroniclePredicate and(ChroniclePredicate... operands) {
+		return combine(Operator.AND, operands);
+	}
+	
+	/**
+	 * Return a predicate true when at least one operand is true.
+	 * 
+	 * @param operands one or more predicates
+	 * @return a predicate
+	 */
+	public static ChroniclePredicate or(ChroniclePredicate... operands) {
+		return combine(Operator.OR, operands);
+	}
+	
+	/**
+	 * Return a predicate true when the operand is false.
+	 * 
+	 * @param operand a predicate
+	 * @return a predicate
+	 */
+	public static ChroniclePredicate not(ChroniclePredicate operand) {
+		return combine(Operator.NOT, operand);
+	}
+	
+	private static ChroniclePredicate combine(Operator operator, ChroniclePredicate... operands) {
+		if (operands == null || operands.length == 0)
+			throw new IllegalArgumentException("operands null or empty");
+		for (ChroniclePredicate operand : operands) {
+			if (operand == null)
+				throw new IllegalArgumentException("operand null");
+		}
+		return new ChroniclePredicate(operator, null, null, null, null, 
+				Collections.unmodifiableList(new ArrayList<ChroniclePredicate>(Arrays.asList(operands))));
+	}
+
+	/**
+	 * Return the operator of the predicate.
+	 * 
+	 * @return the operator
+	 */
+	public Operator getOperator() {
+		return operator;
+	}
+
+	/**
+	 * Return the collection of a {@link Operator#MEMBER} predicate.
+	 * 
+	 * @return a chronicle or null
+	 */
+	public Chronicle getCollection() {
+		return collection;
+	}
+
+	/**
+	 * Return the schema of a {@link Operator#SCHEMA} predicate.
+	 * 
+	 * @return a schema or null
+	 */
+	public Schema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Return the property of an {@link Operator#ATTRIBUTE} predicate.
+	 * 
+	 * @return a property or null
+	 */
+	public Property<?> getProperty() {
+		return property;
+	}
+
+	/**
+	 * Return the values of an {@link Operator#ATTRIBUTE} predicate.
+	 * 
+	 * @return an unmodifiable set of values or null
+	 */
+	public Set<?> getValues() {
+		return values;
+	}
+
+	/**
+	 * Return the operands of an {@link Operator#AND}, {@link Operator#OR}, or
+	 * {@link Operator#NOT} predicate.
+	 * 
+	 * @return an unmodifiable list of predicates or null
+	 */
+	public List<ChroniclePredicate> getOperands() {
+		return operands;
+	}
+	
+	@Override
+	public String toString() {
+		switch (operator) {
+		case MEMBER:
+			return "member(" + collection + ")";
+		case SCHEMA:
+			return "schema(" + schema + ")";
+		case ATTRIBUTE:
+			return property + " in " + values;
+		default:
+			return operator.name() + operands;
+		}
+	}
+	
+}
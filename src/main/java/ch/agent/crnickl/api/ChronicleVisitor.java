@@ -0,0 +1,43 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.api;
+
+import ch.agent.crnickl.T2DBException;
+
+/**
+ * A ChronicleVisitor is used when traversing a tree of chronicles with
+ * {@link Database#traverse(Chronicle, ChronicleVisitor, int, int)}. When the
+ * traversal is parallel, the visitor is called concurrently from multiple
+ * threads and must be thread-safe.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public interface ChronicleVisitor {
+
+	/**
+	 * Visit a chronicle. The chronicle at the root of the traversal has depth
+	 * 0, its members have depth 1, and so on. Returning false prevents the
+	 * traversal from visiting the members of the chronicle.
+	 * 
+	 * @param chronicle a chronicle
+	 * @param depth the depth of the chronicle relative to the root of the traversal
+	 * @return true if the members of the chronicle must be visited
+	 * @throws T2DBException
+	 */
+	boolean visit(Chronicle chronicle, int depth) throws T2DBException;
+	
+}
@@ -17,10 +17,12 @@
 package ch.agent.crnickl.api;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.logging.Level;
 
 import ch.agent.crnickl.T2DBException;
 import ch.agent.crnickl.api.ValueType.StandardValueType;
+import ch.agent.t2.time.Range;
 import ch.agent.t2.time.TimeDomainCatalog;
 
 /**
@@ -275,6 +277,95 @@ public interface Database {
 	 */
 	Chronicle getTopChronicle();
 	
+	/**
+	 * Return a frozen read-only view of all chronicles in the database.
+	 * See {@link DatabaseSnapshot} for details.
+	 * 
+	 * @return a snapshot of the database
+	 * @throws T2DBException
+	 */
+	DatabaseSnapshot snapshot() throws T2DBException;
+	
+	/**
+	 * Return a frozen read-only view of a chronicle and all its members,
+	 * directly or indirectly. See {@link DatabaseSnapshot} for details.
+	 * 
+	 * @param collection a chronicle 
+	 * @return a snapshot of the chronicle and its members
+	 * @throws T2DBException
+	 */
+	DatabaseSnapshot snapshot(Chronicle collection) throws T2DBException;
+	
+	/**
+	 * Traverse a chronicle and its members, directly or indirectly, and pass
+	 * each of them to a visitor. Chronicles are visited before their members.
+	 * The members of a chronicle are visited only if the visitor returns true
+	 * and if the depth of the chronicle is less than the maximum depth. 
+	 * A negative maximum depth means that the depth is not limited.
+	 * <p>
+	 * When parallelism is larger than 1, sibling subtrees are traversed
+	 * concurrently by that number of threads, and the visitor must be
+	 * thread-safe. The number of concurrent requests to the database for
+	 * members is never larger than parallelism. When parallelism is 1 or less,
+	 * the traversal is sequential and depth-first, in the thread of the
+	 * caller. The first exception thrown by a visitor or by the database stops
+	 * the traversal and is rethrown to the caller.
+	 * 
+	 * @param collection the chronicle at the root of the traversal
+	 * @param visitor a chronicle visitor
+	 * @param maxDepth the maximum depth or a negative number
+	 * @param parallelism the number of threads to use
+	 * @throws T2DBException
+	 */
+	void traverse(Chronicle collection, ChronicleVisitor visitor, int maxDepth, int parallelism) throws T2DBException;
+	
+	/**
+	 * Pass each chronicle satisfying a predicate to a visitor, as soon as it
+	 * is found. The depth given to the visitor is always 0, and returning
+	 * false stops the query. Parts of the predicate are evaluated by the
+	 * database when possible, using the index of indexed properties and
+	 * the backend. The remaining parts are evaluated on each candidate. When
+	 * no candidates can be obtained from the database, the chronicles in the
+	 * collection of a {@link ChroniclePredicate.Operator#MEMBER} predicate, or
+	 * else all chronicles, are traversed and tested.
+	 * 
+	 * @param predicate a predicate
+	 * @param visitor a chronicle visitor
+	 * @throws T2DBException
+	 */
+	void query(ChroniclePredicate predicate, ChronicleVisitor visitor) throws T2DBException;
+	
+	/**
+	 * Return the chronicles satisfying a predicate. It is possible to limit
+	 * the size of the result. See
+	 * {@link #query(ChroniclePredicate, ChronicleVisitor)} for details.
+	 * 
+	 * @param predicate a predicate
+	 * @param maxSize the maximum size of the result, 0 for no limit
+	 * @return a list of chronicles
+	 * @throws T2DBException
+	 */
+	List<Chronicle> query(ChroniclePredicate predicate, int maxSize) throws T2DBException;
+	
+	/**
+	 * Return the values of numeric series aligned on a range, as a matrix.
+	 * The matrix is column-major: element <code>[i][j]</code> is the value
+	 * of series <code>i</code> at the time index
+	 * <code>range.getFirstIndex() + j</code>. Missing values are
+	 * represented by {@link Double#NaN}. All series must have numeric values
+	 * and the time domain of the range. Series in construction have only
+	 * missing values.
+	 * <p>
+	 * Backends supporting it read the values of all series in a single
+	 * batched request.
+	 * 
+	 * @param series a list of numeric series
+	 * @param range a non-null range
+	 * @return an array with one column of values per series
+	 * @throws T2DBException
+	 */
+	double[][] getValues(List<Series<Double>> series, Range range) throws T2DBException;
+	
 	/**
 	 * Return properties with names matching a pattern. Patterns use
 	 * a simple syntax, with an asterisk standing for zero or more
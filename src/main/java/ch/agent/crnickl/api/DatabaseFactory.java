@@ -31,6 +31,12 @@ import ch.agent.t2.time.TimeDomainCatalog;
  * DatabaseFactory is the object which manages one or more {@link Database}s.
  * It creates a database using parameters specified in a {@link DatabaseConfiguration}.
  * Databases are accessed by name from the factory.
+ * <p>
+ * {@link #getDatabase(String)} creates and configures a new database object on
+ * each call. Clients looking up the same database repeatedly should use
+ * {@link #acquireDatabase(String)} and {@link #releaseDatabase(String)}
+ * instead. These methods manage a single shared database object per name,
+ * created on first use and closed when the last reference is released.
  *
  * @author Jean-Paul Vetterli
  */
@@ -51,13 +57,27 @@ public class DatabaseFactory {
 		return Singleton.factory;
 	}
 	
+	/**
+	 * A shared database with its reference count.
+	 */
+	private static class ManagedDatabase {
+		private final Database database;
+		private int references;
+		
+		private ManagedDatabase(Database database) {
+			this.database = database;
+		}
+	}
+	
 	private Map<String, DatabaseConfiguration> databases;
+	private Map<String, ManagedDatabase> managed;
 	
 	/**
 	 * Construct a DatabaseFactory.
 	 */
 	private DatabaseFactory() {
 		databases = new HashMap<String, DatabaseConfiguration>();
+		managed = new HashMap<String, ManagedDatabase>();
 	}
 
 	/**
@@ -96,7 +116,8 @@ public class DatabaseFactory {
 	}
 	
 	/**
-	 * Return the database with the given name.
+	 * Return the database with the given name. A new database object is
+	 * created and configured on each call.
 	 * 
 	 * @param name a string
 	 * @return a database
@@ -105,6 +126,60 @@ public class DatabaseFactory {
 	public Database getDatabase(String name) throws T2DBException {
 		if (name == null)
 			return getDefaultDatabase();
+		return newDatabase(name);
+	}
+	
+	/**
+	 * Return the shared database with the given name. The database is created
+	 * and configured on first use. Each call increments a reference count and
+	 * must be balanced by a call to {@link #releaseDatabase(String)}. When
+	 * the name is null the default database is acquired.
+	 * 
+	 * @param name a string or null
+	 * @return a shared database
+	 * @throws T2DBException
+	 */
+	public synchronized Database acquireDatabase(String name) throws T2DBException {
+		name = managedName(name);
+		ManagedDatabase md = managed.get(name);
+		if (md == null) {
+			md = new ManagedDatabase(newDatabase(name));
+			managed.put(name, md);
+		}
+		md.references++;
+		return md.database;
+	}
+	
+	/**
+	 * Release a shared database acquired with {@link #acquireDatabase(String)}.
+	 * When the last reference is released the database is closed and removed
+	 * from the factory. A later acquisition will create a new database object.
+	 * When the name is null the default database is released.
+	 * 
+	 * @param name a string or null
+	 * @throws T2DBException
+	 */
+	public synchronized void releaseDatabase(String name) throws T2DBException {
+		name = managedName(name);
+		ManagedDatabase md = managed.get(name);
+		if (md == null)
+			throw T2DBMsg.exception(D.D00117, name);
+		if (--md.references == 0) {
+			managed.remove(name);
+			md.database.close();
+		}
+	}
+	
+	private String managedName(String name) throws T2DBException {
+		if (name != null)
+			return name;
+		if (databases.size() == 1)
+			return databases.keySet().iterator().next();
+		else
+			throw T2DBMsg.exception(D.D00102);
+	}
+	
+	private Database newDatabase(String name) throws T2DBException {
 		DatabaseConfiguration configuration = databases.get(name);
 		if (configuration == null)
 			throw T2DBMsg.exception(D.D00101, name);
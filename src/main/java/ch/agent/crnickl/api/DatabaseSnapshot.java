@@ -0,0 +1,112 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.api;
+
+import java.util.Collection;
+
+import ch.agent.crnickl.T2DBException;
+
+/**
+ * A DatabaseSnapshot is a frozen, read-only view of chronicles, schemas,
+ * properties, and attribute values. All chronicles of a snapshot are
+ * materialized when the snapshot is taken and the snapshot never goes back to
+ * the database for them. A snapshot is immutable and can be shared by
+ * threads without synchronization.
+ * <p>
+ * Chronicles obtained from a snapshot answer questions about names,
+ * descriptions, schemas, attributes, and members from the frozen state.
+ * Series and their values are not part of a snapshot and are read from the
+ * database. Snapshot chronicles are read-only: {@link Chronicle#edit()}
+ * returns an updatable chronicle which rejects every update with an
+ * exception. Chronicles are edited through the database itself.
+ * <p>
+ * Snapshots are obtained with {@link Database#snapshot()} and
+ * {@link Database#snapshot(Chronicle)}.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public interface DatabaseSnapshot {
+
+	/**
+	 * Return the database from which the snapshot was taken.
+	 * 
+	 * @return a database
+	 */
+	Database getDatabase();
+	
+	/**
+	 * Return the chronicle at the root of the snapshot. All other chronicles
+	 * in the snapshot are members of this chronicle, directly or indirectly.
+	 * Ancestors of the root are also frozen but their members are limited to
+	 * the path leading to the root.
+	 * 
+	 * @return the snapshot of the root chronicle
+	 */
+	Chronicle getCollection();
+	
+	/**
+	 * Return the snapshot of the chronicle with the given surrogate. Return
+	 * null if the chronicle is not in the snapshot.
+	 * 
+	 * @param surrogate a surrogate
+	 * @return a chronicle or null
+	 */
+	Chronicle getChronicle(Surrogate surrogate);
+	
+	/**
+	 * Return the snapshot of the chronicle with the given full name.
+	 * If the chronicle is not in the snapshot, return null or 
+	 * throw an exception, depending on <code>mustExist</code>.
+	 * 
+	 * @param name a full name
+	 * @param mustExist if true throw an exception when the chronicle is not found
+	 * @return a chronicle or null (only when mustExist is false)
+	 * @throws T2DBException
+	 */
+	Chronicle getChronicle(String name, boolean mustExist) throws T2DBException;
+	
+	/**
+	 * Return all chronicles in the snapshot, starting with the root and
+	 * continuing in depth-first order. Ancestors of the root are not
+	 * included.
+	 * 
+	 * @return an unmodifiable collection of chronicles
+	 */
+	Collection<Chronicle> getChronicles();
+	
+	/**
+	 * Return all schemas of the database at the time of the snapshot.
+	 * 
+	 * @return an unmodifiable collection of schemas
+	 */
+	Collection<Schema> getSchemas();
+	
+	/**
+	 * Return all properties of the database at the time of the snapshot.
+	 * 
+	 * @return an unmodifiable collection of properties
+	 */
+	Collection<Property<?>> getProperties();
+	
+	/**
+	 * Return the number of chronicles in the snapshot.
+	 * 
+	 * @return the number of chronicles in the snapshot
+	 */
+	int size();
+
+}
@@ -0,0 +1,50 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.api;
+
+import ch.agent.crnickl.T2DBException;
+
+/**
+ * A DoubleValueScanner is a {@link ValueScanner} for numeric data which can
+ * also convert between text and primitive doubles. This avoids creating
+ * strings and boxed numbers when importing large amounts of textual data.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public interface DoubleValueScanner extends ValueScanner<Double> {
+
+	/**
+	 * Scan a character sequence and convert it to a double. Throw an
+	 * exception when the conversion fails. The result is the same as the one
+	 * of {@link #scan(String)} with the equivalent string.
+	 * 
+	 * @param value a character sequence
+	 * @return the value converted to a double
+	 * @throws T2DBException
+	 */
+	double scanDouble(CharSequence value) throws T2DBException;
+	
+	/**
+	 * Convert a double to a string. The result is the same as the one of
+	 * {@link #toString(Object)} with the equivalent object.
+	 * 
+	 * @param value a double
+	 * @return a string
+	 */
+	String toString(double value);
+	
+}
@@ -0,0 +1,35 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.api;
+
+/**
+ * A LongDBObjectId is a {@link DBObjectId} wrapping a number. Objects with
+ * such ids can be identified compactly by a primitive long, without keeping
+ * references to id or surrogate objects.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public interface LongDBObjectId extends DBObjectId {
+
+	/**
+	 * Return the number wrapped by the id.
+	 * 
+	 * @return a positive number
+	 */
+	long value();
+	
+}
@@ -0,0 +1,53 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.api;
+
+import ch.agent.crnickl.T2DBException;
+
+/**
+ * A LongValueScanner is a {@link ValueScanner} for data which can be
+ * represented by a primitive long, like the index of a time. It converts
+ * between text and longs without going through objects of the underlying
+ * data type.
+ * 
+ * @author Jean-Paul Vetterli
+ * @param <T>
+ *            the underlying data type of the values
+ */
+public interface LongValueScanner<T> extends ValueScanner<T> {
+
+	/**
+	 * Scan a character sequence and convert it to a long. Throw an exception
+	 * when the conversion fails.
+	 * 
+	 * @param value a character sequence
+	 * @return the value converted to a long
+	 * @throws T2DBException
+	 */
+	long scanLong(CharSequence value) throws T2DBException;
+	
+	/**
+	 * Convert a long to a string. The result is the same as the one of
+	 * {@link #toString(Object)} with the equivalent object.
+	 * 
+	 * @param value a long
+	 * @return a string
+	 * @throws T2DBException
+	 */
+	String toString(long value) throws T2DBException;
+	
+}
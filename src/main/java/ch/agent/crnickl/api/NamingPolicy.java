@@ -17,8 +17,6 @@
 package ch.agent.crnickl.api;
 
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import ch.agent.crnickl.T2DBException;
 import ch.agent.crnickl.T2DBMsg;
@@ -48,7 +46,7 @@ public class NamingPolicy {
 	 * The string used as separator when joining simple names to form a full name.
 	 */
 	public static final String NAME_SEPARATOR = ".";
-	private static final String NAME_SPLITTER = "\\.";
+	private static final char NAME_SEPARATOR_CHAR = '.';
 	
 	/**
 	 * The string used as separator when joining simple descriptions to form a full descritpion.
@@ -60,8 +58,6 @@ public class NamingPolicy {
 	 */
 	public static final String LIST_SEPARATOR = ", ";
 	
-	private static final Pattern invalidCharPattern = Pattern.compile("[^A-Za-z0-9_\\-]");
-
 	/**
 	 * Construct a naming policy.
 	 */
@@ -96,7 +92,36 @@ public class NamingPolicy {
 	 * @throws T2DBException
 	 */
 	public String[] asStringArray(String name) throws T2DBException {
-		return name.split(NAME_SPLITTER, -1);
+		int count = 1;
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) == NAME_SEPARATOR_CHAR)
+				count++;
+		}
+		String[] result = new String[count];
+		int start = 0;
+		int k = 0;
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) == NAME_SEPARATOR_CHAR) {
+				result[k++] = name.substring(start, i);
+				start = i + 1;
+			}
+		}
+		result[k] = name.substring(start);
+		return result;
+	}
+	
+	/**
+	 * Return a parsed name giving access to the simple names of the input
+	 * parameter without splitting it into new strings.
+	 * 
+	 * @param name a full name
+	 * @return a parsed name
+	 * @throws T2DBException
+	 */
+	public ParsedName parse(String name) throws T2DBException {
+		if (name == null || name.length() == 0)
+			throw T2DBMsg.exception(D.D01102);
+		return new ParsedName(name);
 	}
 	
 	/**
@@ -114,14 +139,29 @@ public class NamingPolicy {
 	public String checkSimpleName(String name, boolean canModify) throws T2DBException {
 		if (name == null || name.length() == 0 || name.length() > NAME_MAX_LENGTH)
 			throw T2DBMsg.exception(D.D01103, name, NAME_MAX_LENGTH);
-		Matcher invalidCharMatcher = invalidCharPattern.matcher(name);
-		if(invalidCharMatcher.find()) {
-			if (canModify)
-				name = invalidCharMatcher.replaceAll("_");
-			else
-				throw T2DBMsg.exception(D.D01104, name);
+		int length = name.length();
+		int i = 0;
+		// fast path: a valid lower case name is returned as is
+		for (; i < length; i++) {
+			char c = name.charAt(i);
+			if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '_' || c == '-'))
+				break;
+		}
+		if (i == length)
+			return name;
+		char[] chars = name.toCharArray();
+		for (; i < length; i++) {
+			char c = chars[i];
+			if (c >= 'A' && c <= 'Z')
+				chars[i] = (char) (c + ('a' - 'A'));
+			else if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '_' || c == '-')) {
+				if (canModify)
+					chars[i] = '_';
+				else
+					throw T2DBMsg.exception(D.D01104, name);
+			}
 		}
-		return name.toLowerCase();
+		return new String(chars);
 	}
 	
 	/**
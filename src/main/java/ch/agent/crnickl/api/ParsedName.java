@@ -0,0 +1,153 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.api;
+
+/**
+ * A ParsedName gives access to the simple names of a full name without
+ * splitting it into new strings. It records the positions of the
+ * {@link NamingPolicy#NAME_SEPARATOR} characters once and computes simple
+ * names and prefixes on demand. A ParsedName can be reused by calling
+ * {@link #reset(String)}. It is not thread-safe.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class ParsedName {
+
+	private static final char SEPARATOR = NamingPolicy.NAME_SEPARATOR.charAt(0);
+	
+	private String name;
+	private int[] separators;
+	private int count;
+	
+	/**
+	 * Construct an empty parsed name.
+	 */
+	public ParsedName() {
+		separators = new int[4];
+	}
+	
+	/**
+	 * Construct a parsed name.
+	 * 
+	 * @param name a non-null full name
+	 */
+	public ParsedName(String name) {
+		this();
+		reset(name);
+	}
+	
+	/**
+	 * Parse a new full name, reusing the internal storage.
+	 * 
+	 * @param name a non-null full name
+	 * @return this parsed name
+	 */
+	public ParsedName reset(String name) {
+		this.name = name;
+		count = 0;
+		int length = name.length();
+		for (int i = 0; i < length; i++) {
+			if (name.charAt(i) == SEPARATOR) {
+				if (count == separators.length) {
+					int[] bigger = new int[count * 2];
+					System.arraycopy(separators, 0, bigger, 0, count);
+					separators = bigger;
+				}
+				separators[count++] = i;
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Return the full name.
+	 * 
+	 * @return the full name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Return the number of simple names. This is always at least 1.
+	 * 
+	 * @return the number of simple names
+	 */
+	public int size() {
+		return count + 1;
+	}
+	
+	/**
+	 * Return the position of the first character of a simple name.
+	 * 
+	 * @param i the index of the simple name, starting with 0
+	 * @return the position of the first character in the full name
+	 */
+	public int start(int i) {
+		return i == 0 ? 0 : separators[i - 1] + 1;
+	}
+	
+	/**
+	 * Return the position following the last character of a simple name.
+	 * 
+	 * @param i the index of the simple name, starting with 0
+	 * @return the position following the last character in the full name
+	 */
+	public int end(int i) {
+		return i == count ? name.length() : separators[i];
+	}
+	
+	/**
+	 * Return a simple name.
+	 * 
+	 * @param i the index of the simple name, starting with 0
+	 * @return the simple name
+	 */
+	public String get(int i) {
+		return count == 0 ? name : name.substring(start(i), end(i));
+	}
+	
+	/**
+	 * Return the full name made of the first simple names.
+	 * 
+	 * @param n the number of simple names, between 1 and {@link #size()}
+	 * @return a full name
+	 */
+	public String getPrefix(int n) {
+		return n == count + 1 ? name : name.substring(0, end(n - 1));
+	}
+	
+	/**
+	 * Test if a simple name is equal to a string. The test does not
+	 * allocate.
+	 * 
+	 * @param i the index of the simple name, starting with 0
+	 * @param simpleName a string
+	 * @return true if the simple name is equal to the string
+	 */
+	public boolean matches(int i, String simpleName) {
+		int start = start(i);
+		int length = end(i) - start;
+		return simpleName.length() == length && name.regionMatches(start, simpleName, 0, length);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+	
+}
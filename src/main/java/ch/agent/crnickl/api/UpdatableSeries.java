@@ -42,8 +42,8 @@ public interface UpdatableSeries<T> extends Series<T>, Updatable {
 	 * Add a value to the list of pending updates. If there is already an update
 	 * pending for the same time, it is replaced. A null value is interpreted as
 	 * a request to delete the value at the given time, possibly reducing the
-	 * range of the time series. The Object is converted using the value type of
-	 * the series. If the value is converted to a null, the effect will be to
+	 * range of the time series. A character sequence is converted using the
+	 * value type of the series. If the value is converted to a null, the effect will be to
 	 * delete the observation.
 	 * 
 	 * @param t a time index
@@ -0,0 +1,64 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.api;
+
+import java.nio.ByteBuffer;
+
+import ch.agent.crnickl.T2DBException;
+
+/**
+ * A ValueCodec converts values to and from a binary representation. It
+ * allows drivers and caches to store values compactly and to read them back
+ * without parsing text. A {@link ValueScanner} can implement this interface
+ * to provide a codec for its data type. When it does not, values are encoded
+ * as text with the scanner.
+ * 
+ * @author Jean-Paul Vetterli
+ * @param <T>
+ *            the underlying data type of the values
+ */
+public interface ValueCodec<T> {
+
+	/**
+	 * Return the number of bytes needed to write the value.
+	 * 
+	 * @param value a non-null value
+	 * @return a positive number
+	 * @throws T2DBException
+	 */
+	int size(T value) throws T2DBException;
+	
+	/**
+	 * Write a value at the current position of the buffer. The buffer must
+	 * have enough space remaining.
+	 * 
+	 * @param value a non-null value
+	 * @param buffer a byte buffer
+	 * @throws T2DBException
+	 */
+	void write(T value, ByteBuffer buffer) throws T2DBException;
+
+	/**
+	 * Read a value from the current position of the buffer.
+	 * 
+	 * @param buffer a byte buffer
+	 * @return a value
+	 * @throws T2DBException
+	 */
+	T read(ByteBuffer buffer) throws T2DBException;
+	
+}
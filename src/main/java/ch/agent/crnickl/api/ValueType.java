@@ -106,6 +106,16 @@ public interface ValueType<T> extends DBObject {
 	 */
 	ValueScanner<T> getScanner();
 	
+	/**
+	 * Return the binary codec. The codec is the value scanner when it
+	 * implements {@link ValueCodec}. Else it is a codec writing values as
+	 * text using the value scanner. The codec does not check that values are
+	 * in the list of allowed values of a restricted value type.
+	 * 
+	 * @return the binary codec
+	 */
+	ValueCodec<T> getCodec();
+	
 	/**
 	 * Return the constant representing the value type when it is a built-in value type.
 	 * Return null if the value type is not built-in.
@@ -142,6 +152,30 @@ public interface ValueType<T> extends DBObject {
 	 */
 	Map<T, String> getValueDescriptions();
 	
+	/**
+	 * Return the dictionary code of an allowed value. Codes are consecutive
+	 * numbers starting with 0, assigned to allowed values in the order of
+	 * {@link #getValues()}. They allow values of restricted value types to be
+	 * kept and compared as small integers. Codes are only valid for this
+	 * value type object: they can change when allowed values are added or
+	 * deleted, and do not reflect pending updates. Return -1 if the value type
+	 * is not restricted or if the value is not allowed.
+	 * 
+	 * @param value a value
+	 * @return a non-negative number or -1
+	 */
+	int getCode(T value);
+	
+	/**
+	 * Return the allowed value with the given dictionary code. Throw an
+	 * exception if the code is not valid. See {@link #getCode(Object)}.
+	 * 
+	 * @param code a non-negative number
+	 * @return an allowed value
+	 * @throws T2DBException
+	 */
+	T getValue(int code) throws T2DBException;
+	
 	/**
 	 * Return values and descriptions as a collection of formatted strings. If a
 	 * value has no description, simply convert it to a string. If a value has a
@@ -0,0 +1,116 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.embedded;
+
+import java.io.File;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.api.DatabaseConfiguration;
+import ch.agent.crnickl.api.Series;
+import ch.agent.crnickl.api.ValueType.StandardValueType;
+import ch.agent.crnickl.impl.ValueAccessMethods;
+import ch.agent.crnickl.mem.MemoryDatabase;
+import ch.agent.crnickl.mem.MemoryStore.SeriesRecord;
+import ch.agent.t2.time.TimeDomainCatalog;
+
+/**
+ * EmbeddedDatabase is a {@link MemoryDatabase} which keeps its data in a
+ * local directory. The directory is specified with the parameter
+ * {@link #DB_PARAM_String_DIRECTORY} of the configuration and is created if
+ * necessary. Metadata and non-numeric series values are kept in memory and
+ * written to a write-ahead log. Numeric series values are also kept in
+ * memory-mapped files, one per series. Modifications are durable once
+ * {@link #commit} returns.
+ * <p>
+ * The database is usable only after {@link #configure}.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class EmbeddedDatabase extends MemoryDatabase {
+
+	/**
+	 * The name of the configuration parameter specifying the directory of the
+	 * database.
+	 */
+	public static final String DB_PARAM_String_DIRECTORY = "dbDirectory";
+	
+	private final EmbeddedStore store;
+	private final ValueAccessMethods<Object> encodedMethods;
+	
+	/**
+	 * Construct an {@link EmbeddedDatabase}.
+	 * 
+	 * @param name the name of the database
+	 * @param timeDomainCatalog the catalog to use for scanning time domains
+	 */
+	public EmbeddedDatabase(String name, TimeDomainCatalog timeDomainCatalog) {
+		this(name, timeDomainCatalog, new EmbeddedStore());
+	}
+	
+	private EmbeddedDatabase(String name, TimeDomainCatalog timeDomainCatalog, EmbeddedStore store) {
+		super(name, timeDomainCatalog, store);
+		this.store = store;
+		this.encodedMethods = new EncodedValueAccessMethods<Object>(store);
+		for (StandardValueType type : StandardValueType.values()) {
+			if (type == StandardValueType.NUMBER)
+				setAccessMethods(type.name(), new MappedValueAccessMethods(store));
+			else
+				setAccessMethods(type.name(), encodedMethods);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The store is opened in the directory specified with
+	 * {@link #DB_PARAM_String_DIRECTORY}.
+	 */
+	@Override
+	public void configure(DatabaseConfiguration configuration) throws T2DBException {
+		String directory = configuration.getParameter(DB_PARAM_String_DIRECTORY, true);
+		store.open(new File(directory));
+		bootstrap();
+		super.configure(configuration);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Modifications not committed are lost.
+	 */
+	@Override
+	public void close() throws T2DBException {
+		store.close();
+		super.close();
+	}
+
+	@Override
+	protected ValueAccessMethods<Object> getDefaultAccessMethods() {
+		return encodedMethods;
+	}
+
+	@Override
+	public <T> boolean hasValues(Series<T> series) throws T2DBException {
+		if (super.hasValues(series))
+			return true;
+		SeriesRecord record = series.getSurrogate().inConstruction() ? null : store.getSeries(id(series.getSurrogate()));
+		if (record == null)
+			return false;
+		return store.ceilingNumber(record, Long.MIN_VALUE) != null;
+	}
+
+}
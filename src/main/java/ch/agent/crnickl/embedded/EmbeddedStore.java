@@ -0,0 +1,1289 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.embedded;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.T2DBMsg;
+import ch.agent.crnickl.T2DBMsg.E;
+import ch.agent.crnickl.impl.BlockCodec;
+import ch.agent.crnickl.mem.MemoryStore;
+
+/**
+ * EmbeddedStore is a {@link MemoryStore} which keeps its data in a directory.
+ * All modifications are encoded as records in a {@link WriteAheadLog}. When
+ * the store is opened, the log is replayed to rebuild the content of the
+ * store. Numeric series values are also kept in {@link SeriesFile}s, one per
+ * series, in the subdirectory <code>series</code>.
+ * <p>
+ * Modifications of numeric values are kept in memory until committed. They
+ * are written to the series files only after the log records describing
+ * them are on the storage device, so that series files never contain
+ * uncommitted values. In the log, the numeric modifications of a series in
+ * one commit are packed into compressed blocks with {@link BlockCodec}.
+ * A checkpoint, taken when the store is opened and closed, forces the
+ * series files to the storage device and removes numeric records from the
+ * log.
+ * <p>
+ * Series files are modified in place, so a crash can leave a file partly
+ * written. Before a series file is modified for the first time after a
+ * checkpoint, a copy of it is written next to it with the suffix
+ * <code>.bak</code>. An empty copy stands for a file which did not exist.
+ * The copies are deleted by the next checkpoint, before numeric records are
+ * removed from the log. When the store is opened, files are first restored
+ * from remaining copies, which are consistent with the last checkpoint, and
+ * numeric records of the log, which all come after that checkpoint, are
+ * applied again. Commits of concurrent threads share log writes, as
+ * explained in {@link WriteAheadLog}.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class EmbeddedStore extends MemoryStore {
+
+	private static final String LOG_NAME = "database.wal";
+	private static final String SERIES_DIR = "series";
+	private static final String BACKUP = ".bak";
+	private static final String TEMP = ".tmp";
+	
+	/**
+	 * The maximum number of series files kept open.
+	 */
+	private static final int MAX_OPEN_FILES = 256;
+	
+	private static final byte VALUE_TYPE_CREATE = 1;
+	private static final byte VALUE_TYPE_UPDATE = 2;
+	private static final byte VALUE_TYPE_DELETE = 3;
+	private static final byte PROPERTY_CREATE = 4;
+	private static final byte PROPERTY_UPDATE = 5;
+	private static final byte PROPERTY_DELETE = 6;
+	private static final byte SCHEMA_CREATE = 7;
+	private static final byte SCHEMA_UPDATE = 8;
+	private static final byte SCHEMA_DELETE = 9;
+	private static final byte CHRONICLE_CREATE = 10;
+	private static final byte CHRONICLE_UPDATE = 11;
+	private static final byte CHRONICLE_DELETE = 12;
+	private static final byte ATTRIBUTE_PUT = 13;
+	private static final byte ATTRIBUTE_DELETE = 14;
+	private static final byte SERIES_CREATE = 15;
+	private static final byte SERIES_DELETE = 16;
+	private static final byte VALUE_PUT = 17;
+	private static final byte VALUE_DELETE = 18;
+	private static final byte NUMBER_BLOCK = 19;
+	private static final byte NUMBER_DELETE_BLOCK = 20;
+	
+	/**
+	 * Marker for a numeric value removed but not yet committed.
+	 */
+	private static final Object REMOVED = new Object();
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Committed modifications waiting for their log records to be durable
+	 * before being applied to series files.
+	 */
+	private static class Batch {
+		private final long ticket;
+		private final Map<Long, NavigableMap<Long, Object>> changes;
+		private final List<Long> deleted;
+		
+		private Batch(long ticket, Map<Long, NavigableMap<Long, Object>> changes, List<Long> deleted) {
+			this.ticket = ticket;
+			this.changes = changes;
+			this.deleted = deleted;
+		}
+	}
+	
+	private File directory;
+	private WriteAheadLog log;
+	private boolean replaying;
+	private final LinkedHashMap<Long, SeriesFile> files;
+	private final Set<Long> backups;
+	private final Object changesLock;
+	private Map<Long, NavigableMap<Long, Object>> changes;
+	private List<Long> deleted;
+	private final LinkedList<Batch> batches;
+
+	/**
+	 * Construct an {@link EmbeddedStore}. The store must be opened before
+	 * use.
+	 */
+	public EmbeddedStore() {
+		super();
+		// access order: the eldest entry is the least recently used file
+		files = new LinkedHashMap<Long, SeriesFile>(16, 0.75f, true);
+		backups = new HashSet<Long>();
+		changesLock = new Object();
+		changes = new HashMap<Long, NavigableMap<Long, Object>>();
+		deleted = new ArrayList<Long>();
+		batches = new LinkedList<Batch>();
+	}
+	
+	/**
+	 * Open the store in a directory. The directory is created if necessary.
+	 * Series files left partly written by a crash are restored and the log
+	 * is replayed. When opening fails, the log and series files are closed
+	 * again.
+	 * 
+	 * @param directory a directory
+	 * @throws T2DBException
+	 */
+	public synchronized void open(File directory) throws T2DBException {
+		if (log != null)
+			throw new IllegalStateException("already open");
+		File seriesDir = new File(directory, SERIES_DIR);
+		if (!seriesDir.isDirectory() && !seriesDir.mkdirs())
+			throw T2DBMsg.exception(E.E00111, directory);
+		this.directory = directory;
+		log = new WriteAheadLog(new File(directory, LOG_NAME));
+		boolean done = false;
+		try {
+			List<byte[]> records;
+			try {
+				restoreBackups(seriesDir);
+				records = log.open();
+			} catch (IOException e) {
+				throw T2DBMsg.exception(e, E.E00111, directory);
+			}
+			replaying = true;
+			try {
+				for (byte[] record : records) {
+					replay(record);
+				}
+			} catch (IOException e) {
+				throw T2DBMsg.exception(e, E.E00113, log.getFile());
+			} finally {
+				replaying = false;
+			}
+			super.commit();
+			checkpoint();
+			done = true;
+		} finally {
+			if (!done)
+				abandon();
+		}
+	}
+	
+	/**
+	 * Give up a store which could not be opened. Replayed modifications not
+	 * yet committed are rolled back, and the log and series files are closed
+	 * without being written. Errors are ignored, since an exception is
+	 * already on its way.
+	 */
+	private void abandon() {
+		synchronized (changesLock) {
+			try {
+				rollback();
+				batches.clear();
+				backups.clear();
+				for (SeriesFile file : files.values()) {
+					try {
+						file.close();
+					} catch (IOException e) {
+						// ignore
+					}
+				}
+				files.clear();
+				try {
+					log.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			} finally {
+				log = null;
+			}
+		}
+	}
+	
+	/**
+	 * Close the store. Modifications not committed are lost.
+	 * 
+	 * @throws T2DBException
+	 */
+	public synchronized void close() throws T2DBException {
+		if (log == null)
+			return;
+		rollback();
+		try {
+			checkpoint();
+			log.close();
+			synchronized (changesLock) {
+				for (SeriesFile file : files.values()) {
+					file.force();
+					file.close();
+				}
+				files.clear();
+			}
+		} catch (IOException e) {
+			throw T2DBMsg.exception(e, E.E00112, directory);
+		} finally {
+			log = null;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The log records of all modifications are written and forced to the
+	 * storage device. Numeric values are then written to series files and
+	 * files of deleted series are removed.
+	 */
+	@Override
+	public void commit() throws T2DBException {
+		Batch batch;
+		synchronized (changesLock) {
+			writeNumbers(changes);
+			batch = new Batch(log.enqueue(), changes, deleted);
+			changes = new HashMap<Long, NavigableMap<Long, Object>>();
+			deleted = new ArrayList<Long>();
+			batches.add(batch);
+			super.commit();
+		}
+		try {
+			log.await(batch.ticket);
+		} catch (IOException e) {
+			throw T2DBMsg.exception(e, E.E00112, log.getFile());
+		}
+		applyDurableBatches();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Pending log records are discarded.
+	 */
+	@Override
+	public void rollback() {
+		synchronized (changesLock) {
+			log.discard();
+			deleted.clear();
+			super.rollback();
+		}
+	}
+	
+	/**
+	 * Remove numeric records from the log. Numeric records are only needed
+	 * until the values are on the storage device in series files. All queued
+	 * log records are written, committed modifications are applied to series
+	 * files, series files are forced, their copies are deleted, and the log
+	 * is rewritten without numeric records. Modifications not yet committed
+	 * are not affected.
+	 * 
+	 * @throws T2DBException
+	 */
+	public void checkpoint() throws T2DBException {
+		synchronized (changesLock) {
+			try {
+				log.flush();
+			} catch (IOException e) {
+				throw T2DBMsg.exception(e, E.E00112, log.getFile());
+			}
+			applyDurableBatches();
+			for (SeriesFile file : files.values()) {
+				file.force();
+			}
+			// copies must go before the numeric records they depend on
+			for (Iterator<Long> it = backups.iterator(); it.hasNext();) {
+				File copy = backupFile(it.next());
+				if (copy.exists() && !copy.delete())
+					throw T2DBMsg.exception(E.E00112, copy);
+				it.remove();
+			}
+			try {
+				List<byte[]> records = log.read();
+				List<byte[]> kept = new ArrayList<byte[]>(records.size());
+				for (byte[] record : records) {
+					if (record[0] != NUMBER_BLOCK && record[0] != NUMBER_DELETE_BLOCK)
+						kept.add(record);
+				}
+				if (kept.size() < records.size())
+					log.rewrite(kept);
+			} catch (IOException e) {
+				throw T2DBMsg.exception(e, E.E00112, log.getFile());
+			}
+		}
+	}
+	
+	/**
+	 * Apply committed modifications to series files, in commit order, as long
+	 * as their log records are durable.
+	 * 
+	 * @throws T2DBException
+	 */
+	private void applyDurableBatches() throws T2DBException {
+		synchronized (changesLock) {
+			while (batches.size() > 0 && log.isDurable(batches.getFirst().ticket)) {
+				Batch batch = batches.getFirst();
+				for (Map.Entry<Long, NavigableMap<Long, Object>> e : batch.changes.entrySet()) {
+					for (Map.Entry<Long, Object> c : e.getValue().entrySet()) {
+						apply(e.getKey(), c.getKey(), c.getValue());
+					}
+				}
+				for (Long id : batch.deleted) {
+					deleteSeriesFile(id);
+				}
+				batches.removeFirst();
+			}
+		}
+	}
+	
+	/**
+	 * Append log records for numeric modifications. Each series gets one
+	 * block of values added or replaced and one block of time indexes
+	 * removed. The records are appended at the end of the batch and their
+	 * replay is skipped for series which do not exist anymore at that point.
+	 * The caller holds the changes lock.
+	 */
+	private void writeNumbers(Map<Long, NavigableMap<Long, Object>> changes) {
+		for (Map.Entry<Long, NavigableMap<Long, Object>> e : changes.entrySet()) {
+			NavigableMap<Long, Object> values = e.getValue();
+			long[] times = new long[values.size()];
+			double[] numbers = new double[values.size()];
+			long[] removed = new long[values.size()];
+			int count = 0;
+			int removedCount = 0;
+			for (Map.Entry<Long, Object> c : values.entrySet()) {
+				if (c.getValue() == REMOVED)
+					removed[removedCount++] = c.getKey();
+				else {
+					times[count] = c.getKey();
+					numbers[count++] = (Double) c.getValue();
+				}
+			}
+			if (count > 0) {
+				Encoder enc = new Encoder(NUMBER_BLOCK);
+				enc.putLong(e.getKey());
+				enc.putBytes(BlockCodec.encode(times, numbers, count));
+				append(enc);
+			}
+			if (removedCount > 0) {
+				Encoder enc = new Encoder(NUMBER_DELETE_BLOCK);
+				enc.putLong(e.getKey());
+				enc.putBytes(BlockCodec.encode(removed, removedCount));
+				append(enc);
+			}
+		}
+	}
+	
+	/* numeric values */
+	
+	private File seriesFile(long id) {
+		return new File(new File(directory, SERIES_DIR), Long.toString(id));
+	}
+	
+	private File backupFile(long id) {
+		return new File(new File(directory, SERIES_DIR), Long.toString(id) + BACKUP);
+	}
+	
+	/**
+	 * Copy the file of a series unless it was already copied since the last
+	 * checkpoint. The copy is written to a temporary file, forced, and
+	 * renamed, so that it is complete when it exists. When the series has
+	 * no file, the copy is empty.
+	 * 
+	 * @param id the series id
+	 * @throws T2DBException
+	 */
+	private void backup(long id) throws T2DBException {
+		synchronized (changesLock) {
+			if (backups.contains(id))
+				return;
+			File source = seriesFile(id);
+			File copy = backupFile(id);
+			File temp = new File(copy.getPath() + TEMP);
+			try {
+				FileOutputStream out = new FileOutputStream(temp);
+				try {
+					FileChannel target = out.getChannel();
+					if (source.exists()) {
+						FileInputStream in = new FileInputStream(source);
+						try {
+							FileChannel channel = in.getChannel();
+							long size = channel.size();
+							long position = 0;
+							while (position < size) {
+								position += channel.transferTo(position, size - position, target);
+							}
+						} finally {
+							in.close();
+						}
+					}
+					target.force(true);
+				} finally {
+					out.close();
+				}
+				if (!temp.renameTo(copy))
+					throw new IOException("cannot rename " + temp + " to " + copy);
+			} catch (IOException e) {
+				throw T2DBMsg.exception(e, E.E00112, copy);
+			}
+			backups.add(id);
+		}
+	}
+	
+	/**
+	 * Restore series files from the copies left by a crash. Unfinished
+	 * copies are deleted. An empty copy means the file did not exist at the
+	 * last checkpoint.
+	 * 
+	 * @param seriesDir the directory of series files
+	 * @throws IOException
+	 */
+	private void restoreBackups(File seriesDir) throws IOException {
+		File[] names = seriesDir.listFiles();
+		if (names == null)
+			throw new IOException("cannot list " + seriesDir);
+		for (File f : names) {
+			String name = f.getName();
+			if (name.endsWith(BACKUP + TEMP)) {
+				if (!f.delete())
+					throw new IOException("cannot delete " + f);
+			} else if (name.endsWith(BACKUP)) {
+				File target = new File(seriesDir, name.substring(0, name.length() - BACKUP.length()));
+				if (f.length() == 0) {
+					if (target.exists() && !target.delete())
+						throw new IOException("cannot delete " + target);
+					if (!f.delete())
+						throw new IOException("cannot delete " + f);
+				} else if (!f.renameTo(target)) {
+					// renaming over an existing file fails on some platforms
+					if (!target.delete() || !f.renameTo(target))
+						throw new IOException("cannot rename " + f + " to " + target);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Return the file of a series, opening it if necessary. When more than
+	 * {@link #MAX_OPEN_FILES} files are open, the least recently used file is
+	 * closed. Files are opened and closed under the changes lock, so that a
+	 * file is never closed while committed values are written to it. A
+	 * closed file can still be read by a thread which got it earlier, because
+	 * its mapping remains valid.
+	 */
+	private SeriesFile getSeriesFile(long id, boolean create) throws T2DBException {
+		synchronized (changesLock) {
+			SeriesFile file = files.get(id);
+			if (file == null) {
+				File f = seriesFile(id);
+				if (!create && !f.exists())
+					return null;
+				try {
+					file = new SeriesFile(f);
+				} catch (IOException e) {
+					throw T2DBMsg.exception(e, E.E00113, f);
+				}
+				files.put(id, file);
+				if (files.size() > MAX_OPEN_FILES) {
+					Iterator<SeriesFile> it = files.values().iterator();
+					SeriesFile eldest = it.next();
+					it.remove();
+					try {
+						eldest.close();
+					} catch (IOException e) {
+						throw T2DBMsg.exception(e, E.E00112, eldest.getFile());
+					}
+				}
+			}
+			return file;
+		}
+	}
+	
+	private void deleteSeriesFile(long id) {
+		synchronized (changesLock) {
+			SeriesFile file = files.remove(id);
+			try {
+				if (file != null)
+					file.close();
+			} catch (IOException e) {
+				// ignore, the file is deleted anyway
+			}
+			seriesFile(id).delete();
+		}
+	}
+	
+	/**
+	 * Write a committed numeric value or remove it from the file of a series.
+	 * 
+	 * @param id the series id
+	 * @param time a time index
+	 * @param value a double or {@link #REMOVED}
+	 * @throws T2DBException
+	 */
+	private void apply(long id, long time, Object value) throws T2DBException {
+		if (value == REMOVED) {
+			SeriesFile file = getSeriesFile(id, false);
+			if (file != null) {
+				backup(id);
+				file.remove(time);
+			}
+		} else {
+			backup(id);
+			SeriesFile file = getSeriesFile(id, true);
+			try {
+				file.put(time, (Double) value);
+			} catch (IOException e) {
+				throw T2DBMsg.exception(e, E.E00112, file.getFile());
+			}
+		}
+	}
+	
+	/**
+	 * Return the file with the committed numeric values of a series. When
+	 * the file does not exist, return null. Modifications not yet written to
+	 * the file are available with {@link #getChangedNumbers}.
+	 * 
+	 * @param record a series record
+	 * @return a series file or null
+	 * @throws T2DBException
+	 */
+	public SeriesFile getSeriesFile(SeriesRecord record) throws T2DBException {
+		return getSeriesFile(record.getId(), false);
+	}
+	
+	/**
+	 * Return the numeric values of a series in a range if some modifications
+	 * have not yet been written to its file. Return null if the file is up to
+	 * date. Only the entries of the file and of the modifications inside the
+	 * range are visited. The map returned is a copy.
+	 * 
+	 * @param record a series record
+	 * @param first the first time index of the range
+	 * @param last the last time index of the range
+	 * @return a map of values keyed by time index or null
+	 * @throws T2DBException
+	 */
+	public NavigableMap<Long, Double> getChangedNumbers(SeriesRecord record, long first, long last) throws T2DBException {
+		synchronized (changesLock) {
+			List<NavigableMap<Long, Object>> layers = layers(record.getId());
+			if (layers.size() == 0)
+				return null;
+			NavigableMap<Long, Double> result = new TreeMap<Long, Double>();
+			if (first > last)
+				return result;
+			SeriesFile file = getSeriesFile(record.getId(), false);
+			if (file != null) {
+				synchronized (file) {
+					int to = file.floor(last) + 1;
+					for (int i = file.ceiling(first); i < to; i++) {
+						result.put(file.getTime(i), file.getValue(i));
+					}
+				}
+			}
+			for (int i = layers.size() - 1; i >= 0; i--) {
+				for (Map.Entry<Long, Object> c : layers.get(i).subMap(first, true, last, true).entrySet()) {
+					if (c.getValue() == REMOVED)
+						result.remove(c.getKey());
+					else
+						result.put(c.getKey(), (Double) c.getValue());
+				}
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * Return the first numeric value of a series at or after a time index,
+	 * taking into account modifications not yet written to its file. Return
+	 * null if there is no such value.
+	 * 
+	 * @param record a series record
+	 * @param time a time index
+	 * @return an entry with a time index and a value or null
+	 * @throws T2DBException
+	 */
+	public Map.Entry<Long, Double> ceilingNumber(SeriesRecord record, long time) throws T2DBException {
+		return nextNumber(record.getId(), time, true);
+	}
+	
+	/**
+	 * Return the last numeric value of a series at or before a time index,
+	 * taking into account modifications not yet written to its file. Return
+	 * null if there is no such value.
+	 * 
+	 * @param record a series record
+	 * @param time a time index
+	 * @return an entry with a time index and a value or null
+	 * @throws T2DBException
+	 */
+	public Map.Entry<Long, Double> floorNumber(SeriesRecord record, long time) throws T2DBException {
+		return nextNumber(record.getId(), time, false);
+	}
+	
+	/**
+	 * Find the nearest time index at or after (or before) a time index in the
+	 * file and in all pending modifications. When the most recent
+	 * modification at that time index is a removal, continue after it.
+	 */
+	private Map.Entry<Long, Double> nextNumber(long id, long time, boolean ceiling) throws T2DBException {
+		synchronized (changesLock) {
+			List<NavigableMap<Long, Object>> layers = layers(id);
+			SeriesFile file = getSeriesFile(id, false);
+			while (true) {
+				Long key = null;
+				Double value = null;
+				if (file != null) {
+					synchronized (file) {
+						int pos = ceiling ? file.ceiling(time) : file.floor(time);
+						if (pos >= 0 && pos < file.size()) {
+							key = file.getTime(pos);
+							value = file.getValue(pos);
+						}
+					}
+				}
+				Object change = null;
+				for (NavigableMap<Long, Object> layer : layers) {
+					Long k = ceiling ? layer.ceilingKey(time) : layer.floorKey(time);
+					if (k != null && (key == null || (ceiling ? k < key : k > key))) {
+						key = k;
+						change = null;
+					}
+					if (k != null && k.equals(key) && change == null)
+						change = layer.get(k);
+				}
+				if (key == null)
+					return null;
+				if (change != REMOVED)
+					return new AbstractMap.SimpleImmutableEntry<Long, Double>(key, change == null ? value : (Double) change);
+				if (key == (ceiling ? Long.MAX_VALUE : Long.MIN_VALUE))
+					return null;
+				time = ceiling ? key + 1 : key - 1;
+			}
+		}
+	}
+	
+	/**
+	 * Return the modifications of a series not yet written to its file, most
+	 * recent first. The caller holds the changes lock.
+	 */
+	private List<NavigableMap<Long, Object>> layers(long id) {
+		List<NavigableMap<Long, Object>> layers = new ArrayList<NavigableMap<Long, Object>>(2);
+		NavigableMap<Long, Object> layer = changes.get(id);
+		if (layer != null && layer.size() > 0)
+			layers.add(layer);
+		for (int i = batches.size() - 1; i >= 0; i--) {
+			layer = batches.get(i).changes.get(id);
+			if (layer != null && layer.size() > 0)
+				layers.add(layer);
+		}
+		return layers;
+	}
+	
+	/**
+	 * Return true if a series has a numeric value at a time index.
+	 * The caller holds the changes lock.
+	 */
+	private boolean hasNumber(long id, long time) throws T2DBException {
+		for (NavigableMap<Long, Object> layer : layers(id)) {
+			Object value = layer.get(time);
+			if (value != null)
+				return value != REMOVED;
+		}
+		SeriesFile file = getSeriesFile(id, false);
+		return file != null && file.find(time) >= 0;
+	}
+	
+	/**
+	 * Record a modification of a numeric value in the current transaction.
+	 */
+	private void change(long id, final long time, Object value) {
+		final NavigableMap<Long, Object> layer;
+		final Object previous;
+		synchronized (changesLock) {
+			NavigableMap<Long, Object> current = changes.get(id);
+			if (current == null) {
+				current = new TreeMap<Long, Object>();
+				changes.put(id, current);
+			}
+			layer = current;
+			previous = layer.put(time, value);
+		}
+		log(new Undo() {
+			@Override
+			protected void undo() {
+				synchronized (changesLock) {
+					if (previous == null)
+						layer.remove(time);
+					else
+						layer.put(time, previous);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Add or replace a numeric value of a series.
+	 * 
+	 * @param record a series record
+	 * @param time a time index
+	 * @param value a value
+	 */
+	public void putNumber(SeriesRecord record, long time, double value) {
+		change(record.getId(), time, value);
+	}
+	
+	/**
+	 * Remove a numeric value of a series. Return true if there was a value.
+	 * 
+	 * @param record a series record
+	 * @param time a time index
+	 * @return true if a value was removed
+	 * @throws T2DBException
+	 */
+	public boolean removeNumber(SeriesRecord record, long time) throws T2DBException {
+		synchronized (changesLock) {
+			if (!hasNumber(record.getId(), time))
+				return false;
+		}
+		change(record.getId(), time, REMOVED);
+		return true;
+	}
+	
+	/**
+	 * Remove all numeric values of a series outside a range. Return the number
+	 * of values removed. When first is larger than last all values are
+	 * removed.
+	 * 
+	 * @param record a series record
+	 * @param first the first time index of the range
+	 * @param last the last time index of the range
+	 * @return the number of values removed
+	 * @throws T2DBException
+	 */
+	public int trimNumbers(SeriesRecord record, long first, long last) throws T2DBException {
+		List<Long> removed = new ArrayList<Long>();
+		if (first > last)
+			times(record, Long.MIN_VALUE, Long.MAX_VALUE, removed);
+		else {
+			if (first > Long.MIN_VALUE)
+				times(record, Long.MIN_VALUE, first - 1, removed);
+			if (last < Long.MAX_VALUE)
+				times(record, last + 1, Long.MAX_VALUE, removed);
+		}
+		int count = 0;
+		for (Long time : removed) {
+			if (removeNumber(record, time))
+				count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Add the time indexes of all numeric values of a series in a range to a
+	 * list.
+	 */
+	private void times(SeriesRecord record, long first, long last, List<Long> times) throws T2DBException {
+		NavigableMap<Long, Double> values = getChangedNumbers(record, first, last);
+		if (values != null)
+			times.addAll(values.keySet());
+		else {
+			SeriesFile file = getSeriesFile(record.getId(), false);
+			if (file == null)
+				return;
+			synchronized (file) {
+				int to = file.floor(last) + 1;
+				for (int i = file.ceiling(first); i < to; i++) {
+					times.add(file.getTime(i));
+				}
+			}
+		}
+	}
+	
+	/* logged modifications */
+	
+	@Override
+	public void createValueType(ValueTypeRecord record) throws T2DBException {
+		Encoder e = encode(VALUE_TYPE_CREATE, record);
+		super.createValueType(record);
+		append(e);
+	}
+
+	@Override
+	public void updateValueType(ValueTypeRecord record) throws T2DBException {
+		Encoder e = encode(VALUE_TYPE_UPDATE, record);
+		super.updateValueType(record);
+		append(e);
+	}
+
+	@Override
+	public void deleteValueType(long id) throws T2DBException {
+		Encoder e = encode(VALUE_TYPE_DELETE, id);
+		super.deleteValueType(id);
+		append(e);
+	}
+
+	@Override
+	public void createProperty(PropertyRecord record) throws T2DBException {
+		Encoder e = encode(PROPERTY_CREATE, record);
+		super.createProperty(record);
+		append(e);
+	}
+
+	@Override
+	public void updateProperty(PropertyRecord record) throws T2DBException {
+		Encoder e = encode(PROPERTY_UPDATE, record);
+		super.updateProperty(record);
+		append(e);
+	}
+
+	@Override
+	public void deleteProperty(long id) throws T2DBException {
+		Encoder e = encode(PROPERTY_DELETE, id);
+		super.deleteProperty(id);
+		append(e);
+	}
+
+	@Override
+	public void createSchema(SchemaRecord record) throws T2DBException {
+		Encoder e = encode(SCHEMA_CREATE, record);
+		super.createSchema(record);
+		append(e);
+	}
+
+	@Override
+	public void updateSchema(SchemaRecord record) throws T2DBException {
+		Encoder e = encode(SCHEMA_UPDATE, record);
+		super.updateSchema(record);
+		append(e);
+	}
+
+	@Override
+	public void deleteSchema(long id) throws T2DBException {
+		Encoder e = encode(SCHEMA_DELETE, id);
+		super.deleteSchema(id);
+		append(e);
+	}
+
+	@Override
+	public void createChronicle(ChronicleRecord record) throws T2DBException {
+		Encoder e = encode(CHRONICLE_CREATE, record);
+		super.createChronicle(record);
+		append(e);
+	}
+
+	@Override
+	public void updateChronicle(ChronicleRecord record) throws T2DBException {
+		Encoder e = encode(CHRONICLE_UPDATE, record);
+		super.updateChronicle(record);
+		append(e);
+	}
+
+	@Override
+	public void deleteChronicle(long id) throws T2DBException {
+		Encoder e = encode(CHRONICLE_DELETE, id);
+		super.deleteChronicle(id);
+		append(e);
+	}
+
+	@Override
+	public void putAttribute(AttributeRecord record) throws T2DBException {
+		Encoder e = encode(ATTRIBUTE_PUT, record);
+		super.putAttribute(record);
+		append(e);
+	}
+
+	@Override
+	public boolean deleteAttribute(long chronicle, long property) {
+		Encoder e = encode(ATTRIBUTE_DELETE, chronicle, property);
+		boolean done = super.deleteAttribute(chronicle, property);
+		if (done)
+			append(e);
+		return done;
+	}
+
+	@Override
+	public void createSeries(SeriesRecord record) throws T2DBException {
+		Encoder e = encode(SERIES_CREATE, record);
+		super.createSeries(record);
+		append(e);
+	}
+
+	@Override
+	public void deleteSeries(long id) throws T2DBException {
+		Encoder e = encode(SERIES_DELETE, id);
+		super.deleteSeries(id);
+		append(e);
+		if (replaying)
+			deleteSeriesFile(id);
+		else {
+			synchronized (changesLock) {
+				deleted.add(id);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The value must be a byte array, as produced by a
+	 * {@link ch.agent.crnickl.api.ValueCodec}.
+	 */
+	@Override
+	public void putValue(SeriesRecord record, long time, Object value) {
+		Encoder e = null;
+		if (!replaying) {
+			e = new Encoder(VALUE_PUT);
+			e.putLong(record.getId());
+			e.putLong(time);
+			e.putBytes((byte[]) value);
+		}
+		super.putValue(record, time, value);
+		append(e);
+	}
+
+	@Override
+	public boolean removeValue(SeriesRecord record, long time) {
+		Encoder e = encode(VALUE_DELETE, record.getId(), time);
+		boolean done = super.removeValue(record, time);
+		if (done)
+			append(e);
+		return done;
+	}
+	
+	/* encoding */
+	
+	/**
+	 * Encoder writes a log record. Encoding into a byte array cannot fail,
+	 * so I/O exceptions are turned into runtime exceptions. Records are
+	 * encoded before the store is modified and appended to the log after
+	 * the modification succeeded.
+	 */
+	private class Encoder {
+		private final ByteArrayOutputStream bytes;
+		private final DataOutputStream out;
+		
+		private Encoder(byte op) {
+			bytes = new ByteArrayOutputStream(64);
+			out = new DataOutputStream(bytes);
+			putByte(op);
+		}
+		
+		private void putByte(int b) {
+			try {
+				out.writeByte(b);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+		private void putBoolean(boolean b) {
+			putByte(b ? 1 : 0);
+		}
+		
+		private void putInt(int i) {
+			try {
+				out.writeInt(i);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+		private void putLong(long l) {
+			try {
+				out.writeLong(l);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+		private void putBytes(byte[] b) {
+			try {
+				out.writeInt(b.length);
+				out.write(b);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+		/**
+		 * Write a string as its length in UTF-8 bytes followed by the bytes.
+		 * A null string is written as length -1.
+		 */
+		private void putString(String s) {
+			try {
+				if (s == null)
+					out.writeInt(-1);
+				else {
+					byte[] b = s.getBytes(UTF8);
+					out.writeInt(b.length);
+					out.write(b);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Append an encoded record to the log. Do nothing if the argument is null.
+	 */
+	private void append(Encoder e) {
+		if (e != null)
+			log.append(e.bytes.toByteArray());
+	}
+	
+	private Encoder encode(byte op, long... ids) {
+		if (replaying)
+			return null;
+		Encoder e = new Encoder(op);
+		for (long id : ids) {
+			e.putLong(id);
+		}
+		return e;
+	}
+	
+	private Encoder encode(byte op, ValueTypeRecord record) {
+		if (replaying)
+			return null;
+		Encoder e = new Encoder(op);
+		e.putLong(record.getId());
+		e.putString(record.getName());
+		e.putBoolean(record.isRestricted());
+		e.putString(record.getScanner());
+		Map<String, String> values = record.getValues();
+		e.putInt(values == null ? -1 : values.size());
+		if (values != null) {
+			for (Map.Entry<String, String> v : values.entrySet()) {
+				e.putString(v.getKey());
+				e.putString(v.getValue());
+			}
+		}
+		return e;
+	}
+
+	private Encoder encode(byte op, PropertyRecord record) {
+		if (replaying)
+			return null;
+		Encoder e = new Encoder(op);
+		e.putLong(record.getId());
+		e.putString(record.getName());
+		e.putLong(record.getValueType());
+		e.putBoolean(record.isIndexed());
+		return e;
+	}
+	
+	private Encoder encode(byte op, SchemaRecord record) {
+		if (replaying)
+			return null;
+		Encoder e = new Encoder(op);
+		e.putLong(record.getId());
+		e.putString(record.getName());
+		e.putLong(record.getBase());
+		e.putInt(record.getComponents().size());
+		for (ComponentRecord c : record.getComponents()) {
+			e.putInt(c.getSeriesNr());
+			e.putInt(c.getNumber());
+			e.putLong(c.getProperty());
+			e.putString(c.getValue());
+			e.putString(c.getDescription());
+			e.putBoolean(c.isErasing());
+		}
+		return e;
+	}
+	
+	private Encoder encode(byte op, ChronicleRecord record) {
+		if (replaying)
+			return null;
+		Encoder e = new Encoder(op);
+		e.putLong(record.getId());
+		e.putLong(record.getParent());
+		e.putString(record.getName());
+		e.putString(record.getDescription());
+		e.putLong(record.getSchema());
+		return e;
+	}
+	
+	private Encoder encode(byte op, AttributeRecord record) {
+		if (replaying)
+			return null;
+		Encoder e = new Encoder(op);
+		e.putLong(record.getChronicle());
+		e.putLong(record.getProperty());
+		e.putString(record.getValue());
+		e.putString(record.getDescription());
+		return e;
+	}
+	
+	private Encoder encode(byte op, SeriesRecord record) {
+		if (replaying)
+			return null;
+		Encoder e = new Encoder(op);
+		e.putLong(record.getId());
+		e.putLong(record.getChronicle());
+		e.putInt(record.getNumber());
+		return e;
+	}
+	
+	/* decoding */
+	
+	private String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+	
+	private byte[] readBytes(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+	
+	private void replay(byte[] record) throws IOException, T2DBException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		byte op = in.readByte();
+		switch (op) {
+		case VALUE_TYPE_CREATE:
+		case VALUE_TYPE_UPDATE:
+			long id = in.readLong();
+			String name = readString(in);
+			boolean restricted = in.readBoolean();
+			String scanner = readString(in);
+			int size = in.readInt();
+			Map<String, String> values = null;
+			if (size >= 0) {
+				values = new LinkedHashMap<String, String>();
+				for (int i = 0; i < size; i++) {
+					values.put(readString(in), readString(in));
+				}
+			}
+			ValueTypeRecord vt = new ValueTypeRecord(id, name, restricted, scanner, values);
+			if (op == VALUE_TYPE_CREATE)
+				createValueType(vt);
+			else
+				updateValueType(vt);
+			break;
+		case VALUE_TYPE_DELETE:
+			deleteValueType(in.readLong());
+			break;
+		case PROPERTY_CREATE:
+		case PROPERTY_UPDATE:
+			PropertyRecord p = new PropertyRecord(in.readLong(), readString(in), in.readLong(), in.readBoolean());
+			if (op == PROPERTY_CREATE)
+				createProperty(p);
+			else
+				updateProperty(p);
+			break;
+		case PROPERTY_DELETE:
+			deleteProperty(in.readLong());
+			break;
+		case SCHEMA_CREATE:
+		case SCHEMA_UPDATE:
+			id = in.readLong();
+			name = readString(in);
+			long base = in.readLong();
+			size = in.readInt();
+			List<ComponentRecord> components = new ArrayList<ComponentRecord>(size);
+			for (int i = 0; i < size; i++) {
+				components.add(new ComponentRecord(in.readInt(), in.readInt(), in.readLong(), 
+						readString(in), readString(in), in.readBoolean()));
+			}
+			SchemaRecord s = new SchemaRecord(id, name, base, components);
+			if (op == SCHEMA_CREATE)
+				createSchema(s);
+			else
+				updateSchema(s);
+			break;
+		case SCHEMA_DELETE:
+			deleteSchema(in.readLong());
+			break;
+		case CHRONICLE_CREATE:
+		case CHRONICLE_UPDATE:
+			ChronicleRecord c = new ChronicleRecord(in.readLong(), in.readLong(), readString(in), 
+					readString(in), in.readLong());
+			if (op == CHRONICLE_CREATE)
+				createChronicle(c);
+			else
+				updateChronicle(c);
+			break;
+		case CHRONICLE_DELETE:
+			deleteChronicle(in.readLong());
+			break;
+		case ATTRIBUTE_PUT:
+			putAttribute(new AttributeRecord(in.readLong(), in.readLong(), readString(in), readString(in)));
+			break;
+		case ATTRIBUTE_DELETE:
+			deleteAttribute(in.readLong(), in.readLong());
+			break;
+		case SERIES_CREATE:
+			createSeries(new SeriesRecord(in.readLong(), in.readLong(), in.readInt()));
+			break;
+		case SERIES_DELETE:
+			deleteSeries(in.readLong());
+			break;
+		case VALUE_PUT:
+			SeriesRecord sr = getSeries(in.readLong());
+			putValue(sr, in.readLong(), readBytes(in));
+			break;
+		case VALUE_DELETE:
+			sr = getSeries(in.readLong());
+			removeValue(sr, in.readLong());
+			break;
+		case NUMBER_BLOCK:
+			id = in.readLong();
+			byte[] block = readBytes(in);
+			if (getSeries(id) != null) {
+				long[] times = new long[BlockCodec.count(block)];
+				double[] numbers = new double[times.length];
+				BlockCodec.decode(block, times, numbers);
+				for (int i = 0; i < times.length; i++) {
+					apply(id, times[i], numbers[i]);
+				}
+			}
+			break;
+		case NUMBER_DELETE_BLOCK:
+			id = in.readLong();
+			block = readBytes(in);
+			if (getSeries(id) != null) {
+				long[] times = new long[BlockCodec.count(block)];
+				BlockCodec.decode(block, times);
+				for (int i = 0; i < times.length; i++) {
+					apply(id, times[i], REMOVED);
+				}
+			}
+			break;
+		default:
+			throw new IOException("unknown record type " + op);
+		}
+	}
+	
+}
@@ -0,0 +1,59 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.embedded;
+
+import java.nio.ByteBuffer;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.api.Series;
+import ch.agent.crnickl.api.ValueCodec;
+import ch.agent.crnickl.mem.MemoryValueAccessMethods;
+
+/**
+ * EncodedValueAccessMethods keeps series values in an {@link EmbeddedStore}
+ * as byte arrays, so that they can be written to the write-ahead log. Values
+ * are converted with the {@link ValueCodec} of the value type of the series.
+ * The implementation is used for all value types except numbers.
+ * 
+ * @author Jean-Paul Vetterli
+ * @param <T> the data type of values
+ */
+public class EncodedValueAccessMethods<T> extends MemoryValueAccessMethods<T> {
+
+	/**
+	 * Construct an {@link EncodedValueAccessMethods}.
+	 * 
+	 * @param store the store of the database
+	 */
+	public EncodedValueAccessMethods(EmbeddedStore store) {
+		super(store);
+	}
+
+	@Override
+	protected Object encode(Series<T> series, T value) throws T2DBException {
+		ValueCodec<T> codec = series.getValueType().getCodec();
+		ByteBuffer buffer = ByteBuffer.allocate(codec.size(value));
+		codec.write(value, buffer);
+		return buffer.array();
+	}
+
+	@Override
+	protected T decode(Series<T> series, Object object) throws T2DBException {
+		return series.getValueType().getCodec().read(ByteBuffer.wrap((byte[]) object));
+	}
+
+}
@@ -0,0 +1,252 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.embedded;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.T2DBMsg;
+import ch.agent.crnickl.T2DBMsg.E;
+import ch.agent.crnickl.api.Series;
+import ch.agent.crnickl.api.UpdatableSeries;
+import ch.agent.crnickl.impl.BatchValueAccessMethods;
+import ch.agent.crnickl.impl.ChronicleUpdatePolicy;
+import ch.agent.crnickl.impl.DatabaseMethodsImpl;
+import ch.agent.crnickl.impl.Permission;
+import ch.agent.crnickl.impl.ValueAccessMethods;
+import ch.agent.crnickl.mem.MemoryId;
+import ch.agent.crnickl.mem.MemoryStore.SeriesRecord;
+import ch.agent.t2.T2Exception;
+import ch.agent.t2.time.Range;
+import ch.agent.t2.time.TimeDomain;
+import ch.agent.t2.time.TimeIndex;
+import ch.agent.t2.timeseries.Observation;
+import ch.agent.t2.timeseries.TimeAddressable;
+
+/**
+ * MappedValueAccessMethods implements {@link BatchValueAccessMethods} for numeric
+ * values of an {@link EmbeddedDatabase}. Values are kept in a
+ * {@link SeriesFile}. Range queries locate their bounds with a binary search
+ * on the time index column and copy values in chunks. While a series has
+ * modifications not yet written to its file, values in the range requested
+ * are merged with these modifications by the store.
+ * <p>
+ * Aligned reads of many series copy values from the time index column
+ * straight into the columns of the result.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class MappedValueAccessMethods extends DatabaseMethodsImpl implements BatchValueAccessMethods {
+
+	private static final int CHUNK = 1024;
+	
+	private final EmbeddedStore store;
+	
+	/**
+	 * Construct a {@link MappedValueAccessMethods}.
+	 * 
+	 * @param store the store of the database
+	 */
+	public MappedValueAccessMethods(EmbeddedStore store) {
+		this.store = store;
+	}
+
+	private SeriesRecord record(Series<Double> series) throws T2DBException {
+		if (series.getSurrogate().inConstruction())
+			return null;
+		return store.getSeries(((MemoryId) series.getSurrogate().getId()).value());
+	}
+	
+	private SeriesRecord existingRecord(Series<Double> series) throws T2DBException {
+		SeriesRecord record = record(series);
+		if (record == null)
+			throw T2DBMsg.exception(E.E50104, series.getSurrogate().toString());
+		return record;
+	}
+	
+	@Override
+	public Range getRange(Series<Double> series) throws T2DBException {
+		check(Permission.READ, series);
+		TimeDomain domain = series.getTimeDomain();
+		SeriesRecord record = record(series);
+		if (record != null) {
+			Map.Entry<Long, Double> first = store.ceilingNumber(record, Long.MIN_VALUE);
+			Map.Entry<Long, Double> last = store.floorNumber(record, Long.MAX_VALUE);
+			if (first != null && last != null)
+				return new Range(domain, first.getKey(), last.getKey());
+		}
+		return new Range(domain);
+	}
+
+	@Override
+	public long getValues(Series<Double> series, Range range, TimeAddressable<Double> ts) throws T2DBException {
+		check(Permission.READ, series);
+		SeriesRecord record = record(series);
+		if (record == null || (range != null && range.isEmpty()))
+			return 0;
+		try {
+			NavigableMap<Long, Double> changed = range == null ? 
+					store.getChangedNumbers(record, Long.MIN_VALUE, Long.MAX_VALUE) : 
+					store.getChangedNumbers(record, range.getFirstIndex(), range.getLastIndex());
+			if (changed != null) {
+				for (Map.Entry<Long, Double> e : changed.entrySet()) {
+					ts.put(e.getKey(), e.getValue());
+				}
+				return changed.size();
+			}
+			SeriesFile file = store.getSeriesFile(record);
+			if (file == null)
+				return 0;
+			synchronized (file) {
+				int from = range == null ? 0 : file.ceiling(range.getFirstIndex());
+				int to = range == null ? file.size() : file.floor(range.getLastIndex()) + 1;
+				long[] times = new long[Math.min(CHUNK, Math.max(0, to - from))];
+				double[] values = new double[times.length];
+				for (int pos = from; pos < to; pos += CHUNK) {
+					int end = Math.min(pos + CHUNK, to);
+					file.get(pos, end, times, values);
+					for (int i = 0; i < end - pos; i++) {
+						ts.put(times[i], values[i]);
+					}
+				}
+				return Math.max(0, to - from);
+			}
+		} catch (T2Exception e) {
+			if (range == null)
+				throw T2DBMsg.exception(e, E.E50121, series.getName(true));
+			else
+				throw T2DBMsg.exception(e, E.E50120, series.getName(true), range.toString());
+		}
+	}
+
+	@Override
+	public long getValues(List<Series<Double>> series, Range range, double[][] columns) throws T2DBException {
+		long first = range.getFirstIndex();
+		long last = range.getLastIndex();
+		long count = 0;
+		long[] times = null;
+		double[] values = null;
+		for (int s = 0; s < series.size(); s++) {
+			check(Permission.READ, series.get(s));
+			SeriesRecord record = record(series.get(s));
+			if (record == null)
+				continue;
+			double[] column = columns[s];
+			NavigableMap<Long, Double> changed = store.getChangedNumbers(record, first, last);
+			if (changed != null) {
+				for (Map.Entry<Long, Double> e : changed.entrySet()) {
+					column[(int) (e.getKey() - first)] = e.getValue();
+					count++;
+				}
+				continue;
+			}
+			SeriesFile file = store.getSeriesFile(record);
+			if (file == null)
+				continue;
+			if (times == null) {
+				times = new long[CHUNK];
+				values = new double[CHUNK];
+			}
+			synchronized (file) {
+				int from = file.ceiling(first);
+				int to = file.floor(last) + 1;
+				for (int pos = from; pos < to; pos += CHUNK) {
+					int end = Math.min(pos + CHUNK, to);
+					file.get(pos, end, times, values);
+					for (int i = 0; i < end - pos; i++) {
+						column[(int) (times[i] - first)] = values[i];
+					}
+				}
+				count += Math.max(0, to - from);
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public Observation<Double> getFirst(Series<Double> series, TimeIndex time) throws T2DBException {
+		check(Permission.READ, series);
+		SeriesRecord record = record(series);
+		if (record == null)
+			return null;
+		return observation(series, store.ceilingNumber(record, time == null ? Long.MIN_VALUE : time.asLong()));
+	}
+
+	@Override
+	public Observation<Double> getLast(Series<Double> series, TimeIndex time) throws T2DBException {
+		check(Permission.READ, series);
+		SeriesRecord record = record(series);
+		if (record == null)
+			return null;
+		return observation(series, store.floorNumber(record, time == null ? Long.MAX_VALUE : time.asLong()));
+	}
+	
+	private Observation<Double> observation(Series<Double> series, Map.Entry<Long, Double> e) throws T2DBException {
+		if (e == null)
+			return null;
+		return new Observation<Double>(series.getTimeDomain().time(e.getKey()), e.getValue());
+	}
+
+	@Override
+	public boolean deleteValue(UpdatableSeries<Double> series, TimeIndex t, ChronicleUpdatePolicy policy) throws T2DBException {
+		check(Permission.MODIFY, series);
+		SeriesRecord record = existingRecord(series);
+		policy.willDelete(series, t);
+		boolean done = policy.deleteValue(series, t);
+		if (!done)
+			done = store.removeNumber(record, t.asLong());
+		return done;
+	}
+
+	@Override
+	public boolean updateSeries(UpdatableSeries<Double> series, Range range, ChronicleUpdatePolicy policy) throws T2DBException {
+		check(Permission.MODIFY, series);
+		SeriesRecord record = existingRecord(series);
+		policy.willUpdate(series, range);
+		boolean done = policy.update(series, range);
+		if (!done) {
+			if (range.isEmpty())
+				done = store.trimNumbers(record, 1, 0) > 0;
+			else
+				done = store.trimNumbers(record, range.getFirstIndex(), range.getLastIndex()) > 0;
+		}
+		return done;
+	}
+
+	@Override
+	public long updateValues(UpdatableSeries<Double> series, TimeAddressable<Double> values, ChronicleUpdatePolicy policy) throws T2DBException {
+		check(Permission.MODIFY, series);
+		SeriesRecord record = existingRecord(series);
+		long count = 0;
+		for (Observation<Double> obs : values) {
+			Double value = obs.getValue();
+			if (values.isMissing(value)) {
+				TimeIndex time = obs.getTime();
+				policy.willDelete(series, time);
+				if (policy.deleteValue(series, time) || store.removeNumber(record, time.asLong()))
+					count++;
+			} else {
+				store.putNumber(record, obs.getIndex(), value);
+				count++;
+			}
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,319 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.embedded;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * SeriesFile keeps the values of a numeric series in a memory-mapped file. The
+ * file has a header followed by two columns of equal capacity: a column of
+ * time indexes sorted in ascending order and a column of values. Searches
+ * use a binary search over the mapped index column. Appending a value after
+ * the last one costs a constant time, inserting or removing a value shifts
+ * the following values.
+ * <p>
+ * When the columns are full the capacity is doubled, the file is extended
+ * and mapped again, and the value column is moved to its new position.
+ * <p>
+ * All methods are synchronized.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class SeriesFile {
+
+	private static final int MAGIC = 0x43524e4b; // "CRNK"
+	private static final int VERSION = 1;
+	private static final int HEADER = 16;
+	private static final int MIN_CAPACITY = 64;
+	
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private MappedByteBuffer buffer;
+	private LongBuffer index;
+	private DoubleBuffer values;
+	private int count;
+	private int capacity;
+	private boolean dirty;
+	
+	/**
+	 * Open a series file. The file is created if it does not exist.
+	 * 
+	 * @param file a file
+	 * @throws IOException
+	 */
+	public SeriesFile(File file) throws IOException {
+		this.file = file;
+		boolean exists = file.exists() && file.length() >= HEADER;
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		if (exists) {
+			map(readCapacity());
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+				throw new IOException("not a series file: " + file);
+			count = buffer.getInt(8);
+		} else {
+			map(MIN_CAPACITY);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, 0);
+			buffer.putInt(12, MIN_CAPACITY);
+			dirty = true;
+		}
+	}
+	
+	private int readCapacity() throws IOException {
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+		return header.getInt(12);
+	}
+	
+	private void map(int capacity) throws IOException {
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size(capacity));
+		this.capacity = capacity;
+		buffer.position(HEADER);
+		buffer.limit(HEADER + 8 * capacity);
+		index = buffer.slice().asLongBuffer();
+		buffer.limit(HEADER + 16 * capacity);
+		buffer.position(HEADER + 8 * capacity);
+		values = buffer.slice().asDoubleBuffer();
+		buffer.clear();
+	}
+	
+	private long size(int capacity) {
+		return HEADER + 16L * capacity;
+	}
+	
+	/**
+	 * Return the file.
+	 * 
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Return the number of values.
+	 * 
+	 * @return the number of values
+	 */
+	public synchronized int size() {
+		return count;
+	}
+	
+	/**
+	 * Return the time index at a position.
+	 * 
+	 * @param position a non-negative number less than the size
+	 * @return a time index
+	 */
+	public synchronized long getTime(int position) {
+		return index.get(position);
+	}
+	
+	/**
+	 * Return the value at a position.
+	 * 
+	 * @param position a non-negative number less than the size
+	 * @return a value
+	 */
+	public synchronized double getValue(int position) {
+		return values.get(position);
+	}
+	
+	/**
+	 * Return the position of a time index. If the time index is not found,
+	 * return <code>-(insertion point) - 1</code>, like
+	 * {@link java.util.Arrays#binarySearch(long[], long)}.
+	 * 
+	 * @param time a time index
+	 * @return the position of the time index or a negative number
+	 */
+	public synchronized int find(long time) {
+		int low = 0;
+		int high = count - 1;
+		// fast path for appends and for the last value
+		if (count > 0) {
+			long last = index.get(high);
+			if (time > last)
+				return -(count + 1);
+			if (time == last)
+				return high;
+		}
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long t = index.get(mid);
+			if (t < time)
+				low = mid + 1;
+			else if (t > time)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+	
+	/**
+	 * Return the position of the first time index at or after the time
+	 * given. Return the size if there is no such time index.
+	 * 
+	 * @param time a time index
+	 * @return a position
+	 */
+	public synchronized int ceiling(long time) {
+		int pos = find(time);
+		return pos >= 0 ? pos : -pos - 1;
+	}
+	
+	/**
+	 * Return the position of the last time index at or before the time
+	 * given. Return -1 if there is no such time index.
+	 * 
+	 * @param time a time index
+	 * @return a position
+	 */
+	public synchronized int floor(long time) {
+		int pos = find(time);
+		return pos >= 0 ? pos : -pos - 2;
+	}
+	
+	/**
+	 * Copy the time indexes and the values in a range of positions.
+	 * 
+	 * @param from the first position
+	 * @param to the position following the last position
+	 * @param times an array of size at least <code>to - from</code>
+	 * @param vals an array of size at least <code>to - from</code>
+	 */
+	public synchronized void get(int from, int to, long[] times, double[] vals) {
+		LongBuffer i = index.duplicate();
+		i.position(from);
+		i.get(times, 0, to - from);
+		DoubleBuffer v = values.duplicate();
+		v.position(from);
+		v.get(vals, 0, to - from);
+	}
+
+	/**
+	 * Add or replace a value. Return the previous value or null.
+	 * 
+	 * @param time a time index
+	 * @param value a value
+	 * @return the previous value or null
+	 * @throws IOException
+	 */
+	public synchronized Double put(long time, double value) throws IOException {
+		int pos = find(time);
+		if (pos >= 0) {
+			double previous = values.get(pos);
+			values.put(pos, value);
+			dirty = true;
+			return previous;
+		}
+		pos = -pos - 1;
+		if (count == capacity)
+			grow();
+		shift(pos, count, pos + 1);
+		index.put(pos, time);
+		values.put(pos, value);
+		setCount(count + 1);
+		return null;
+	}
+	
+	/**
+	 * Remove the value at a time index. Return the value removed or null.
+	 * 
+	 * @param time a time index
+	 * @return the value removed or null
+	 */
+	public synchronized Double remove(long time) {
+		int pos = find(time);
+		if (pos < 0)
+			return null;
+		double previous = values.get(pos);
+		shift(pos + 1, count, pos);
+		setCount(count - 1);
+		return previous;
+	}
+	
+	/**
+	 * Move the entries in positions <code>[from, to)</code> to start at
+	 * position <code>dest</code>.
+	 */
+	private void shift(int from, int to, int dest) {
+		int n = to - from;
+		if (n <= 0 || from == dest)
+			return;
+		long[] t = new long[n];
+		double[] v = new double[n];
+		LongBuffer i = index.duplicate();
+		i.position(from);
+		i.get(t);
+		i.position(dest);
+		i.put(t);
+		DoubleBuffer d = values.duplicate();
+		d.position(from);
+		d.get(v);
+		d.position(dest);
+		d.put(v);
+	}
+	
+	private void setCount(int count) {
+		this.count = count;
+		buffer.putInt(8, count);
+		dirty = true;
+	}
+	
+	private void grow() throws IOException {
+		int oldCapacity = capacity;
+		double[] v = new double[count];
+		values.duplicate().get(v);
+		raf.setLength(size(2 * oldCapacity));
+		map(2 * oldCapacity);
+		values.duplicate().put(v);
+		buffer.putInt(12, capacity);
+		dirty = true;
+	}
+	
+	/**
+	 * Write modifications to the storage device.
+	 */
+	public synchronized void force() {
+		if (dirty) {
+			buffer.force();
+			dirty = false;
+		}
+	}
+	
+	/**
+	 * Close the file. The mapping remains valid until it is garbage collected.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		force();
+		channel.close();
+		raf.close();
+	}
+	
+}
@@ -0,0 +1,402 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.embedded;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * WriteAheadLog is an append-only log of records written in batches. A
+ * batch contains all records added with {@link #append} between two
+ * commits. It is framed with its length and a CRC32 checksum and is the unit
+ * of atomicity: when the log is opened, an incomplete or corrupt batch at the
+ * end of the file, left by an interrupted write, is discarded and the file is
+ * truncated.
+ * <p>
+ * Commits use group commit. A commit is done in two steps. {@link #enqueue}
+ * closes the current batch and returns a ticket. {@link #await} returns when
+ * the batch with the ticket is on the storage device. The first thread
+ * arriving in {@link #await} writes all queued batches and forces the file
+ * once, while other threads wait. Threads arriving during the write find
+ * their batches queued and are served by the next write. The number of
+ * forces therefore depends on the number of concurrent committers, not on
+ * the number of batches.
+ * <p>
+ * When a write or a force fails, the log becomes unusable and all further
+ * commits fail.
+ * <p>
+ * Records which are not needed anymore can be removed with {@link #rewrite}.
+ * The new content is written to a temporary file which replaces the log
+ * once it is on the storage device.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class WriteAheadLog {
+
+	private final File file;
+	private final Object monitor;
+	private List<byte[]> pending;
+	private List<List<byte[]>> queue;
+	private long enqueued;
+	private long durable;
+	private boolean writing;
+	private IOException error;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	
+	/**
+	 * Construct a {@link WriteAheadLog}.
+	 * 
+	 * @param file a file
+	 */
+	public WriteAheadLog(File file) {
+		this.file = file;
+		this.monitor = new Object();
+		this.pending = new ArrayList<byte[]>();
+		this.queue = new ArrayList<List<byte[]>>();
+	}
+	
+	/**
+	 * Return the file.
+	 * 
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Read the records of all complete batches, truncate the file after the
+	 * last complete batch, and open the file for appending.
+	 * 
+	 * @return the list of records in the order they were written
+	 * @throws IOException
+	 */
+	public List<byte[]> open() throws IOException {
+		synchronized (monitor) {
+			File temp = temporaryFile();
+			if (!file.exists() && temp.exists() && !temp.renameTo(file))
+				throw new IOException("cannot rename " + temp + " to " + file);
+			List<byte[]> records = new ArrayList<byte[]>();
+			long valid = read(records);
+			raf = new RandomAccessFile(file, "rw");
+			channel = raf.getChannel();
+			if (channel.size() > valid)
+				channel.truncate(valid);
+			channel.position(valid);
+			error = null;
+			return records;
+		}
+	}
+	
+	/**
+	 * Read the records of all complete batches in the file. The caller must
+	 * make sure that no batch is queued.
+	 * 
+	 * @return the list of records in the order they were written
+	 * @throws IOException
+	 */
+	public List<byte[]> read() throws IOException {
+		synchronized (monitor) {
+			List<byte[]> records = new ArrayList<byte[]>();
+			read(records);
+			return records;
+		}
+	}
+	
+	/**
+	 * Read records into a list and return the length of the valid part of
+	 * the file.
+	 */
+	private long read(List<byte[]> records) throws IOException {
+		long valid = 0;
+		if (file.exists()) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				CRC32 crc = new CRC32();
+				while (true) {
+					int length = in.readInt();
+					int checksum = in.readInt();
+					if (length < 0)
+						break;
+					byte[] batch = new byte[length];
+					in.readFully(batch);
+					crc.reset();
+					crc.update(batch);
+					if ((int) crc.getValue() != checksum)
+						break;
+					split(batch, records);
+					valid += 8 + length;
+				}
+			} catch (EOFException e) {
+				// incomplete batch at the end
+			} finally {
+				in.close();
+			}
+		}
+		return valid;
+	}
+	
+	private void split(byte[] batch, List<byte[]> records) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(batch));
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			byte[] record = new byte[in.readInt()];
+			in.readFully(record);
+			records.add(record);
+		}
+	}
+	
+	/**
+	 * Add a record to the current batch.
+	 * 
+	 * @param record an array of bytes
+	 */
+	public void append(byte[] record) {
+		synchronized (monitor) {
+			pending.add(record);
+		}
+	}
+	
+	/**
+	 * Forget all records of the current batch.
+	 */
+	public void discard() {
+		synchronized (monitor) {
+			pending.clear();
+		}
+	}
+	
+	/**
+	 * Close the current batch and queue it for writing. Return a ticket for
+	 * {@link #await}. When the current batch is empty, nothing is queued and
+	 * the ticket returned is the ticket of the last batch queued.
+	 * 
+	 * @return a ticket
+	 */
+	public long enqueue() {
+		synchronized (monitor) {
+			if (pending.size() > 0) {
+				queue.add(pending);
+				pending = new ArrayList<byte[]>();
+				enqueued++;
+			}
+			return enqueued;
+		}
+	}
+	
+	/**
+	 * Return true if the batch with the given ticket is on the storage
+	 * device.
+	 * 
+	 * @param ticket a ticket returned by {@link #enqueue}
+	 * @return true if the batch is durable
+	 */
+	public boolean isDurable(long ticket) {
+		synchronized (monitor) {
+			return durable >= ticket;
+		}
+	}
+	
+	/**
+	 * Wait until the batch with the given ticket and all batches queued
+	 * before it are on the storage device. If no other thread is writing, the
+	 * current thread writes all queued batches and forces the file.
+	 * 
+	 * @param ticket a ticket returned by {@link #enqueue}
+	 * @throws IOException
+	 */
+	public void await(long ticket) throws IOException {
+		List<List<byte[]>> batches;
+		long last;
+		synchronized (monitor) {
+			while (true) {
+				if (error != null)
+					throw new IOException("log unusable after an earlier error", error);
+				if (durable >= ticket)
+					return;
+				if (!writing)
+					break;
+				try {
+					monitor.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+			writing = true;
+			batches = queue;
+			queue = new ArrayList<List<byte[]>>();
+			last = enqueued;
+		}
+		IOException failure = null;
+		try {
+			write(batches);
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			synchronized (monitor) {
+				writing = false;
+				if (failure == null)
+					durable = last;
+				else
+					error = failure;
+				monitor.notifyAll();
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+	
+	/**
+	 * Commit the current batch. This is equivalent to 
+	 * <code>await(enqueue())</code>.
+	 * 
+	 * @throws IOException
+	 */
+	public void commit() throws IOException {
+		await(enqueue());
+	}
+	
+	/**
+	 * Wait until all queued batches are on the storage device.
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		long ticket;
+		synchronized (monitor) {
+			ticket = enqueued;
+		}
+		await(ticket);
+	}
+	
+	/**
+	 * Replace all batches in the file with a single batch containing the
+	 * records given. The new content is written to a temporary file, which
+	 * is forced and renamed to the log file. The current batch is not
+	 * affected. The caller must make sure that no batch is queued, for
+	 * example with {@link #flush}.
+	 * 
+	 * @param records the records to keep
+	 * @throws IOException
+	 */
+	public void rewrite(List<byte[]> records) throws IOException {
+		synchronized (monitor) {
+			if (error != null)
+				throw new IOException("log unusable after an earlier error", error);
+			if (writing || queue.size() > 0)
+				throw new IllegalStateException("batches queued");
+			List<List<byte[]>> batches = new ArrayList<List<byte[]>>(1);
+			if (records.size() > 0)
+				batches.add(records);
+			File temp = temporaryFile();
+			RandomAccessFile tempRaf = new RandomAccessFile(temp, "rw");
+			try {
+				tempRaf.setLength(0);
+				write(tempRaf.getChannel(), batches);
+			} finally {
+				tempRaf.close();
+			}
+			try {
+				channel.close();
+				raf.close();
+				raf = null;
+				channel = null;
+				// when the log file cannot be replaced, open() finds the temporary file
+				if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+					throw new IOException("cannot rename " + temp + " to " + file);
+				raf = new RandomAccessFile(file, "rw");
+				channel = raf.getChannel();
+				channel.position(channel.size());
+			} catch (IOException e) {
+				error = e;
+				throw e;
+			}
+		}
+	}
+	
+	private File temporaryFile() {
+		return new File(file.getPath() + ".tmp");
+	}
+	
+	private void write(List<List<byte[]>> batches) throws IOException {
+		write(channel, batches);
+	}
+	
+	private void write(FileChannel target, List<List<byte[]>> batches) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		ByteArrayOutputStream batchBytes = new ByteArrayOutputStream();
+		DataOutputStream batchOut = new DataOutputStream(batchBytes);
+		CRC32 crc = new CRC32();
+		for (List<byte[]> batch : batches) {
+			batchBytes.reset();
+			batchOut.writeInt(batch.size());
+			for (byte[] record : batch) {
+				batchOut.writeInt(record.length);
+				batchOut.write(record);
+			}
+			batchOut.flush();
+			byte[] payload = batchBytes.toByteArray();
+			crc.reset();
+			crc.update(payload);
+			out.writeInt(payload.length);
+			out.writeInt((int) crc.getValue());
+			out.write(payload);
+		}
+		out.flush();
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		while (buffer.hasRemaining()) {
+			target.write(buffer);
+		}
+		target.force(false);
+	}
+	
+	/**
+	 * Close the file. Records not committed are lost.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		synchronized (monitor) {
+			pending.clear();
+			queue.clear();
+			if (raf != null) {
+				channel.close();
+				raf.close();
+				raf = null;
+				channel = null;
+			}
+		}
+	}
+	
+}
@@ -75,8 +75,8 @@ public class AttributeImpl<T> implements Attribute<T> {
 		if (vt.isCompatible(value))
 			set((T) value);
 		else {
-			if (value instanceof String)
-				set(vt.scan((String) value));
+			if (value instanceof CharSequence)
+				set(ValueTypeImpl.scan(vt, (CharSequence) value));
 			else
 				throw T2DBMsg.exception(D.D10114, value, vt.getType().getName());
 		}
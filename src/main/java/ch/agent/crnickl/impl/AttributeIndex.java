@@ -0,0 +1,484 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.T2DBMsg;
+import ch.agent.crnickl.T2DBMsg.D;
+import ch.agent.crnickl.api.Attribute;
+import ch.agent.crnickl.api.Chronicle;
+import ch.agent.crnickl.api.DBObject;
+import ch.agent.crnickl.api.Property;
+import ch.agent.crnickl.api.Surrogate;
+import ch.agent.crnickl.api.UpdateEvent;
+import ch.agent.crnickl.api.UpdateEventOperation;
+import ch.agent.crnickl.api.UpdateEventSubscriber;
+import ch.agent.crnickl.api.ValueType;
+
+/**
+ * An AttributeIndex keeps a {@link Bitmap} of chronicles for each value of
+ * an indexed property. Chronicles are numbered by the index in the order it
+ * first meets them, and bitmaps contain these numbers. Positions are keyed
+ * on long keys assigned by {@link SurrogateKeys}. Like
+ * {@link Property#getChronicles(Object, int)}, the index only considers
+ * attribute values explicitly specified for chronicles.
+ * <p>
+ * A bitmap is built from the database the first time a value is looked up.
+ * It is maintained afterwards from the update events of chronicles, which
+ * are received when updates are committed. When a chronicle is modified,
+ * its value is read again for each indexed property. When a property is
+ * modified or deleted, its bitmaps are dropped, and so are the bitmaps of
+ * properties with a value type which is modified or deleted.
+ * <p>
+ * When the value type of a property is restricted, bitmaps are kept in an
+ * array indexed by the dictionary codes of the values (see
+ * {@link ValueType#getCode(Object)}). Else they are kept in a map.
+ * <p>
+ * Queries combining several attributes are evaluated in memory with the
+ * operations of {@link Bitmap}. For example, chronicles with currency CHF
+ * and type bond which are not listed on SIX are found with:
+ * <pre>
+ * Bitmap b = index.lookUp(currency, "CHF").and(index.lookUp(type, "bond"))
+ *     .andNot(index.lookUp(exchange, "SIX"));
+ * List&lt;Surrogate&gt; result = index.getSurrogates(b, 0);
+ * </pre>
+ * Bitmaps handed out by the index are only meaningful while positions are
+ * not reassigned. A caller keeping bitmaps must bracket their use with
+ * {@link #acquire} and {@link #release}. The positions of deleted chronicles
+ * are reused, and {@link #clear} renumbers chronicles, only when no bitmap
+ * is in use.
+ * <p>
+ * The index is thread-safe.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class AttributeIndex implements UpdateEventSubscriber {
+
+	/**
+	 * The bitmaps of an indexed property. The generation is incremented on
+	 * each event which can change the bitmaps, so that a bitmap built
+	 * concurrently can be recognized as stale. Codes are taken from the value
+	 * type of the property when the index is created, and remain valid
+	 * because the index is dropped when the value type is modified.
+	 */
+	private static class PropertyIndex {
+		private final Property<?> property;
+		private final ValueType<Object> valueType;
+		private final Map<Object, Bitmap> bitmaps;
+		private Bitmap[] coded;
+		private int generation;
+		
+		@SuppressWarnings("unchecked")
+		private PropertyIndex(Property<?> property) {
+			this.property = property;
+			valueType = (ValueType<Object>) property.getValueType();
+			if (valueType.isRestricted()) {
+				bitmaps = null;
+				coded = new Bitmap[valueType.getValueDescriptions().size()];
+			} else {
+				bitmaps = new HashMap<Object, Bitmap>();
+				coded = null;
+			}
+		}
+		
+		private Bitmap get(Object value) {
+			if (coded == null)
+				return bitmaps.get(value);
+			int code = valueType.getCode(value);
+			return code < 0 || code >= coded.length ? null : coded[code];
+		}
+		
+		private void put(Object value, Bitmap bitmap) {
+			if (coded == null)
+				bitmaps.put(value, bitmap);
+			else {
+				int code = valueType.getCode(value);
+				if (code >= 0) {
+					if (code >= coded.length)
+						coded = Arrays.copyOf(coded, code + 1);
+					coded[code] = bitmap;
+				}
+			}
+		}
+		
+		/**
+		 * Put a chronicle into the bitmap of the value and remove it from
+		 * all other bitmaps.
+		 */
+		private void update(int position, Object value) {
+			if (coded == null) {
+				for (Map.Entry<Object, Bitmap> e : bitmaps.entrySet()) {
+					if (e.getKey().equals(value))
+						e.getValue().set(position);
+					else
+						e.getValue().clear(position);
+				}
+			} else {
+				int code = value == null ? -1 : valueType.getCode(value);
+				for (int i = 0; i < coded.length; i++) {
+					if (coded[i] != null) {
+						if (i == code)
+							coded[i].set(position);
+						else
+							coded[i].clear(position);
+					}
+				}
+			}
+		}
+		
+		private void clear(int position) {
+			if (coded == null) {
+				for (Bitmap bitmap : bitmaps.values()) {
+					bitmap.clear(position);
+				}
+			} else {
+				for (Bitmap bitmap : coded) {
+					if (bitmap != null)
+						bitmap.clear(position);
+				}
+			}
+		}
+	}
+	
+	private final DatabaseBackend database;
+	private final Map<Surrogate, PropertyIndex> properties;
+	private final SurrogateKeys keys;
+	private final LongMap<Integer> positions;
+	private final List<Surrogate> chronicles;
+	/**
+	 * Positions of deleted chronicles available for reuse.
+	 */
+	private Bitmap free;
+	/**
+	 * Positions of chronicles deleted while bitmaps were in use.
+	 */
+	private Bitmap released;
+	/**
+	 * Positions assigned by {@link #toBitmap} to chronicles in no bitmap
+	 * of the index.
+	 */
+	private Bitmap temporary;
+	private int users;
+	
+	/**
+	 * Construct an attribute index. The index must be subscribed to
+	 * chronicle, property, and value type events.
+	 * 
+	 * @param database a database
+	 */
+	public AttributeIndex(DatabaseBackend database) {
+		this.database = database;
+		properties = new HashMap<Surrogate, PropertyIndex>();
+		keys = new SurrogateKeys(database);
+		positions = new LongMap<Integer>();
+		chronicles = new ArrayList<Surrogate>();
+		free = new Bitmap();
+		released = new Bitmap();
+		temporary = new Bitmap();
+	}
+	
+	/**
+	 * Return the bitmap of chronicles with the given attribute value. The
+	 * bitmap is a copy and can be modified by the caller. An exception is
+	 * thrown if the property is not indexed.
+	 * 
+	 * @param property an indexed property
+	 * @param value a value
+	 * @return a bitmap of chronicles
+	 * @throws T2DBException
+	 */
+	public <T> Bitmap lookUp(Property<T> property, T value) throws T2DBException {
+		if (!property.isIndexed())
+			throw T2DBMsg.exception(D.D20111, property.getName());
+		property.check(value);
+		PropertyIndex index;
+		int generation;
+		synchronized (this) {
+			index = properties.get(property.getSurrogate());
+			if (index == null) {
+				index = new PropertyIndex(property);
+				properties.put(property.getSurrogate(), index);
+			}
+			Bitmap bitmap = index.get(value);
+			if (bitmap != null)
+				return bitmap.copy();
+			generation = index.generation;
+		}
+		// read outside the lock, the database may publish events meanwhile
+		List<Chronicle> found = database.getChroniclesByAttributeValue(property, value, 0);
+		synchronized (this) {
+			Bitmap bitmap = new Bitmap();
+			for (Chronicle chronicle : found) {
+				bitmap.set(position(chronicle.getSurrogate()));
+			}
+			if (properties.get(property.getSurrogate()) == index && index.generation == generation)
+				index.put(value, bitmap.copy());
+			return bitmap;
+		}
+	}
+	
+	/**
+	 * Return a bitmap with the given chronicles. The bitmap can be combined
+	 * with bitmaps obtained from {@link #lookUp}. Chronicles without a
+	 * position get a temporary one, which is reused after the last
+	 * {@link #release}, unless the chronicle is put into a bitmap of the
+	 * index meanwhile. The method must be called between {@link #acquire}
+	 * and {@link #release}.
+	 * 
+	 * @param surrogates a collection of chronicle surrogates
+	 * @return a bitmap
+	 */
+	public synchronized Bitmap toBitmap(Collection<Surrogate> surrogates) {
+		if (users <= 0)
+			throw new IllegalStateException("not acquired");
+		Bitmap bitmap = new Bitmap();
+		for (Surrogate surrogate : surrogates) {
+			Integer position = positions.get(key(surrogate));
+			if (position == null) {
+				position = position(surrogate);
+				temporary.set(position);
+			}
+			bitmap.set(position);
+		}
+		return bitmap;
+	}
+	
+	/**
+	 * Return true if the chronicle is in the bitmap.
+	 * 
+	 * @param bitmap a bitmap obtained from the index
+	 * @param surrogate a chronicle surrogate
+	 * @return true if the chronicle is in the bitmap
+	 */
+	public synchronized boolean contains(Bitmap bitmap, Surrogate surrogate) {
+		long key = keys.find(surrogate);
+		Integer position = key == -1 ? null : positions.get(key);
+		return position != null && bitmap.get(position);
+	}
+	
+	/**
+	 * Return the surrogate of the chronicle with the given position. Return
+	 * null if the chronicle has been deleted.
+	 * 
+	 * @param position a position found in a bitmap
+	 * @return a surrogate or null
+	 */
+	public synchronized Surrogate getSurrogate(int position) {
+		return chronicles.get(position);
+	}
+	
+	/**
+	 * Return the surrogates of the chronicles in a bitmap. It is possible to
+	 * limit the size of the result.
+	 * 
+	 * @param bitmap a bitmap obtained from the index
+	 * @param maxSize the maximum size of the result, 0 for no limit
+	 * @return a list of surrogates
+	 */
+	public synchronized List<Surrogate> getSurrogates(Bitmap bitmap, int maxSize) {
+		List<Surrogate> result = new ArrayList<Surrogate>();
+		for (int p = bitmap.next(0); p >= 0; p = bitmap.next(p + 1)) {
+			if (maxSize > 0 && result.size() == maxSize)
+				break;
+			Surrogate surrogate = chronicles.get(p);
+			if (surrogate != null)
+				result.add(surrogate);
+		}
+		return result;
+	}
+	
+	/**
+	 * Declare that bitmaps obtained from the index are in use. Positions
+	 * are not reassigned until a matching {@link #release}.
+	 */
+	public synchronized void acquire() {
+		users++;
+	}
+	
+	/**
+	 * Declare that bitmaps obtained since the matching {@link #acquire} are
+	 * not used anymore. When no bitmap is in use, positions of chronicles
+	 * deleted meanwhile and temporary positions become available for reuse.
+	 */
+	public synchronized void release() {
+		if (users <= 0)
+			throw new IllegalStateException("not acquired");
+		if (--users == 0) {
+			for (int p = temporary.next(0); p >= 0; p = temporary.next(p + 1)) {
+				positions.remove(key(chronicles.get(p)));
+				keys.remove(chronicles.get(p));
+				chronicles.set(p, null);
+			}
+			if (!released.isEmpty() || !temporary.isEmpty()) {
+				free = free.or(released).or(temporary);
+				released = new Bitmap();
+				temporary = new Bitmap();
+			}
+		}
+	}
+	
+	/**
+	 * Forget all bitmaps. They will be built again from the database when
+	 * looked up. When no bitmap is in use, chronicles also lose their
+	 * positions. Else they keep them, so that bitmaps in use remain
+	 * meaningful.
+	 */
+	public synchronized void clear() {
+		for (PropertyIndex index : properties.values()) {
+			index.generation++;
+		}
+		properties.clear();
+		if (users == 0) {
+			positions.clear();
+			keys.clear();
+			chronicles.clear();
+			free = new Bitmap();
+			released = new Bitmap();
+			temporary = new Bitmap();
+		}
+	}
+	
+	@Override
+	public void notify(UpdateEvent event) {
+		switch (event.getType()) {
+		case CHRONICLE:
+			if (event.getOperation() == UpdateEventOperation.DELETE)
+				deleted(event.getSurrogate());
+			else
+				modified(event.getSurrogate(), event.getSource());
+			break;
+		case PROPERTY:
+			dropProperty(event.getSurrogate());
+			break;
+		case VALUE_TYPE:
+			dropValueType(event.getSurrogate());
+			break;
+		default:
+		}
+	}
+	
+	private long key(Surrogate surrogate) {
+		return keys.key(surrogate);
+	}
+	
+	/**
+	 * Return the position of a chronicle put into a bitmap of the index.
+	 * A temporary position becomes permanent.
+	 */
+	private int position(Surrogate surrogate) {
+		long key = key(surrogate);
+		Integer position = positions.get(key);
+		if (position != null)
+			temporary.clear(position);
+		else {
+			position = free.next(0);
+			if (position < 0) {
+				position = chronicles.size();
+				chronicles.add(surrogate);
+			} else {
+				free.clear(position);
+				chronicles.set(position, surrogate);
+			}
+			positions.put(key, position);
+		}
+		return position;
+	}
+	
+	private synchronized void dropProperty(Surrogate surrogate) {
+		PropertyIndex index = properties.remove(surrogate);
+		if (index != null)
+			index.generation++;
+	}
+	
+	private synchronized void dropValueType(Surrogate surrogate) {
+		Iterator<PropertyIndex> it = properties.values().iterator();
+		while (it.hasNext()) {
+			PropertyIndex index = it.next();
+			if (index.valueType.getSurrogate().equals(surrogate)) {
+				index.generation++;
+				it.remove();
+			}
+		}
+	}
+	
+	private synchronized void deleted(Surrogate surrogate) {
+		long key = keys.find(surrogate);
+		Integer position = key == -1 ? null : positions.remove(key);
+		keys.remove(surrogate);
+		for (PropertyIndex index : properties.values()) {
+			index.generation++;
+			if (position != null)
+				index.clear(position);
+		}
+		if (position != null) {
+			chronicles.set(position, null);
+			temporary.clear(position);
+			if (users == 0)
+				free.set(position);
+			else
+				released.set(position);
+		}
+	}
+	
+	private void modified(Surrogate surrogate, DBObject source) {
+		List<PropertyIndex> indexes;
+		synchronized (this) {
+			if (properties.isEmpty())
+				return;
+			indexes = new ArrayList<PropertyIndex>(properties.values());
+		}
+		Chronicle chronicle = (Chronicle) source;
+		for (PropertyIndex index : indexes) {
+			Object value;
+			try {
+				value = getAttributeValue(database, chronicle, index.property);
+			} catch (T2DBException e) {
+				// the bitmaps cannot be maintained and will be built again
+				dropProperty(index.property.getSurrogate());
+				continue;
+			}
+			synchronized (this) {
+				if (properties.get(index.property.getSurrogate()) != index)
+					continue;
+				index.generation++;
+				index.update(position(surrogate), value);
+			}
+		}
+	}
+	
+	/**
+	 * Return the value of an attribute explicitly specified for a chronicle,
+	 * or null.
+	 */
+	static <T> T getAttributeValue(DatabaseBackend database, Chronicle chronicle, Property<T> property) throws T2DBException {
+		Attribute<T> attribute = new AttributeImpl<T>(new AttributeDefinitionImpl<T>(0, 1, property, null));
+		if (database.getAttributeValue(Collections.singletonList(chronicle), attribute))
+			return attribute.get();
+		else
+			return null;
+	}
+	
+}
@@ -0,0 +1,54 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.List;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.api.Series;
+import ch.agent.t2.time.Range;
+
+/**
+ * BatchValueAccessMethods is an optional extension of
+ * {@link ValueAccessMethods} for numeric values. It is used when the values
+ * of many series are requested at once, aligned on a common range.
+ * Implementations read the values of all series in a single batched request.
+ * Access methods not implementing this interface are used one series at a
+ * time.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public interface BatchValueAccessMethods extends ValueAccessMethods<Double> {
+
+	/**
+	 * Copy the values of series in a range into columns. The column at
+	 * position <code>i</code> receives the values of the series at position
+	 * <code>i</code> in the list. Element <code>j</code> of a column
+	 * corresponds to the time index <code>range.getFirstIndex() + j</code>.
+	 * Columns are filled with {@link Double#NaN} before the call; elements
+	 * without a value must not be touched. Series in construction must be
+	 * skipped. Return the number of values copied.
+	 * 
+	 * @param series a list of series
+	 * @param range a non-empty range
+	 * @param columns an array of columns with one column per series
+	 * @return the number of values copied
+	 * @throws T2DBException
+	 */
+	long getValues(List<Series<Double>> series, Range range, double[][] columns) throws T2DBException;
+	
+}
@@ -0,0 +1,481 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.Arrays;
+
+/**
+ * A Bitmap is a compressed set of non-negative int positions. Positions are
+ * grouped in chunks of 65536 by their upper 16 bits. A chunk with few
+ * positions keeps them in a sorted array of their lower 16 bits, a dense
+ * chunk keeps 1024 long words of bits. Chunks switch representation as
+ * positions are added or removed.
+ * <p>
+ * The set operations {@link #and}, {@link #or} and {@link #andNot} return
+ * new bitmaps and leave their operands unchanged.
+ * <p>
+ * The implementation is not thread-safe.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class Bitmap {
+
+	/**
+	 * Chunks with more positions than this keep bits.
+	 */
+	private static final int ARRAY_MAX = 4096;
+	private static final int WORDS = 1024;
+	
+	/**
+	 * A chunk keeps the positions sharing the same upper 16 bits. Exactly one
+	 * of array and bits is not null.
+	 */
+	private static class Chunk {
+		private char[] array;
+		private long[] bits;
+		private int cardinality;
+		
+		private Chunk(char[] array, long[] bits, int cardinality) {
+			this.array = array;
+			this.bits = bits;
+			this.cardinality = cardinality;
+		}
+		
+		private Chunk copy() {
+			return new Chunk(array == null ? null : Arrays.copyOf(array, cardinality), 
+					bits == null ? null : bits.clone(), cardinality);
+		}
+		
+		private boolean contains(char low) {
+			if (array != null)
+				return Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+			else
+				return (bits[low >>> 6] & (1L << low)) != 0;
+		}
+		
+		private boolean add(char low) {
+			if (array != null) {
+				int i = Arrays.binarySearch(array, 0, cardinality, low);
+				if (i >= 0)
+					return false;
+				if (cardinality == ARRAY_MAX) {
+					bits = toBits();
+					array = null;
+				} else {
+					i = -i - 1;
+					if (cardinality == array.length)
+						array = Arrays.copyOf(array, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+					System.arraycopy(array, i, array, i + 1, cardinality - i);
+					array[i] = low;
+					cardinality++;
+					return true;
+				}
+			}
+			long mask = 1L << low;
+			long word = bits[low >>> 6];
+			if ((word & mask) != 0)
+				return false;
+			bits[low >>> 6] = word | mask;
+			cardinality++;
+			return true;
+		}
+		
+		private boolean remove(char low) {
+			if (array != null) {
+				int i = Arrays.binarySearch(array, 0, cardinality, low);
+				if (i < 0)
+					return false;
+				System.arraycopy(array, i + 1, array, i, cardinality - i - 1);
+				cardinality--;
+				return true;
+			}
+			long mask = 1L << low;
+			long word = bits[low >>> 6];
+			if ((word & mask) == 0)
+				return false;
+			bits[low >>> 6] = word & ~mask;
+			cardinality--;
+			// convert back only well below the limit, to avoid flip-flopping
+			if (cardinality <= ARRAY_MAX / 2) {
+				array = toArray(bits, cardinality);
+				bits = null;
+			}
+			return true;
+		}
+		
+		/**
+		 * Return the smallest position at or after low, or -1.
+		 */
+		private int next(int low) {
+			if (array != null) {
+				int i = Arrays.binarySearch(array, 0, cardinality, (char) low);
+				if (i < 0)
+					i = -i - 1;
+				return i < cardinality ? array[i] : -1;
+			}
+			int w = low >>> 6;
+			long word = bits[w] & (-1L << low);
+			while (true) {
+				if (word != 0)
+					return w * 64 + Long.numberOfTrailingZeros(word);
+				if (++w == WORDS)
+					return -1;
+				word = bits[w];
+			}
+		}
+		
+		private long[] toBits() {
+			if (bits != null)
+				return bits;
+			long[] result = new long[WORDS];
+			for (int i = 0; i < cardinality; i++) {
+				char low = array[i];
+				result[low >>> 6] |= 1L << low;
+			}
+			return result;
+		}
+	}
+	
+	private static char[] toArray(long[] bits, int cardinality) {
+		char[] result = new char[cardinality];
+		int k = 0;
+		for (int w = 0; w < WORDS; w++) {
+			long word = bits[w];
+			while (word != 0) {
+				result[k++] = (char) (w * 64 + Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Return a chunk for the bits, or null if no bit is set. The bits are
+	 * kept by the chunk.
+	 */
+	private static Chunk fromBits(long[] bits) {
+		int cardinality = 0;
+		for (long word : bits) {
+			cardinality += Long.bitCount(word);
+		}
+		if (cardinality == 0)
+			return null;
+		if (cardinality <= ARRAY_MAX)
+			return new Chunk(toArray(bits, cardinality), null, cardinality);
+		else
+			return new Chunk(null, bits, cardinality);
+	}
+	
+	private static final int AND = 0;
+	private static final int OR = 1;
+	private static final int AND_NOT = 2;
+	
+	/**
+	 * Combine two chunks. The result is null if empty.
+	 */
+	private static Chunk combine(Chunk a, Chunk b, int operation) {
+		if (a.array != null && b.array != null) {
+			char[] result = new char[operation == OR ? a.cardinality + b.cardinality : a.cardinality];
+			int i = 0, j = 0, k = 0;
+			while (i < a.cardinality && j < b.cardinality) {
+				char x = a.array[i];
+				char y = b.array[j];
+				if (x < y) {
+					if (operation != AND)
+						result[k++] = x;
+					i++;
+				} else if (x > y) {
+					if (operation == OR)
+						result[k++] = y;
+					j++;
+				} else {
+					if (operation != AND_NOT)
+						result[k++] = x;
+					i++;
+					j++;
+				}
+			}
+			if (operation != AND) {
+				while (i < a.cardinality)
+					result[k++] = a.array[i++];
+			}
+			if (operation == OR) {
+				while (j < b.cardinality)
+					result[k++] = b.array[j++];
+			}
+			if (k == 0)
+				return null;
+			if (k > ARRAY_MAX)
+				return fromBits(new Chunk(result, null, k).toBits());
+			return new Chunk(result, null, k);
+		}
+		if (operation != OR && a.array != null) {
+			// filter the array against the bits
+			char[] result = new char[a.cardinality];
+			int k = 0;
+			for (int i = 0; i < a.cardinality; i++) {
+				char x = a.array[i];
+				if (b.contains(x) == (operation == AND))
+					result[k++] = x;
+			}
+			return k == 0 ? null : new Chunk(result, null, k);
+		}
+		long[] x = a.toBits();
+		long[] y = b.toBits();
+		long[] result = new long[WORDS];
+		for (int w = 0; w < WORDS; w++) {
+			switch (operation) {
+			case AND:
+				result[w] = x[w] & y[w];
+				break;
+			case OR:
+				result[w] = x[w] | y[w];
+				break;
+			default:
+				result[w] = x[w] & ~y[w];
+			}
+		}
+		return fromBits(result);
+	}
+	
+	private char[] keys;
+	private Chunk[] chunks;
+	private int size;
+	
+	/**
+	 * Construct an empty bitmap.
+	 */
+	public Bitmap() {
+		this(4);
+	}
+	
+	private Bitmap(int capacity) {
+		keys = new char[capacity];
+		chunks = new Chunk[capacity];
+	}
+	
+	private int find(char key) {
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+	
+	private void append(char key, Chunk chunk) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			chunks = Arrays.copyOf(chunks, size * 2);
+		}
+		keys[size] = key;
+		chunks[size++] = chunk;
+	}
+	
+	/**
+	 * Return true if the position is in the bitmap.
+	 * 
+	 * @param position a non-negative number
+	 * @return true if the position is in the bitmap
+	 */
+	public boolean get(int position) {
+		int i = find((char) (position >>> 16));
+		return i >= 0 && chunks[i].contains((char) position);
+	}
+	
+	/**
+	 * Add a position to the bitmap.
+	 * 
+	 * @param position a non-negative number
+	 * @return true if the position was not yet in the bitmap
+	 */
+	public boolean set(int position) {
+		if (position < 0)
+			throw new IllegalArgumentException("position negative");
+		char key = (char) (position >>> 16);
+		int i = find(key);
+		if (i < 0) {
+			i = -i - 1;
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				chunks = Arrays.copyOf(chunks, size * 2);
+			}
+			System.arraycopy(keys, i, keys, i + 1, size - i);
+			System.arraycopy(chunks, i, chunks, i + 1, size - i);
+			keys[i] = key;
+			chunks[i] = new Chunk(new char[4], null, 0);
+			size++;
+		}
+		return chunks[i].add((char) position);
+	}
+	
+	/**
+	 * Remove a position from the bitmap.
+	 * 
+	 * @param position a non-negative number
+	 * @return true if the position was in the bitmap
+	 */
+	public boolean clear(int position) {
+		int i = find((char) (position >>> 16));
+		if (i < 0 || !chunks[i].remove((char) position))
+			return false;
+		if (chunks[i].cardinality == 0) {
+			System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+			System.arraycopy(chunks, i + 1, chunks, i, size - i - 1);
+			chunks[--size] = null;
+		}
+		return true;
+	}
+	
+	/**
+	 * Return the smallest position in the bitmap which is greater than or
+	 * equal to the argument. Return -1 if there is no such position.
+	 * <p>
+	 * All positions are visited with:
+	 * <pre>
+	 * for (int p = bitmap.next(0); p >= 0; p = bitmap.next(p + 1)) { ... }
+	 * </pre>
+	 * 
+	 * @param position a non-negative number
+	 * @return a position or -1
+	 */
+	public int next(int position) {
+		if (position < 0)
+			return -1;
+		char key = (char) (position >>> 16);
+		int i = find(key);
+		if (i >= 0) {
+			int low = chunks[i].next(position & 0xFFFF);
+			if (low >= 0)
+				return (key << 16) | low;
+			i++;
+		} else
+			i = -i - 1;
+		return i < size ? (keys[i] << 16) | chunks[i].next(0) : -1;
+	}
+	
+	/**
+	 * Return the number of positions in the bitmap.
+	 * 
+	 * @return the number of positions
+	 */
+	public int cardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < size; i++) {
+			cardinality += chunks[i].cardinality;
+		}
+		return cardinality;
+	}
+	
+	/**
+	 * Return true if the bitmap is empty.
+	 * 
+	 * @return true if the bitmap is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Return a copy of the bitmap.
+	 * 
+	 * @return a new bitmap
+	 */
+	public Bitmap copy() {
+		Bitmap result = new Bitmap(Math.max(4, size));
+		for (int i = 0; i < size; i++) {
+			result.append(keys[i], chunks[i].copy());
+		}
+		return result;
+	}
+	
+	/**
+	 * Return a new bitmap with the positions present in both bitmaps.
+	 * 
+	 * @param other a bitmap
+	 * @return a new bitmap
+	 */
+	public Bitmap and(Bitmap other) {
+		Bitmap result = new Bitmap(Math.max(4, Math.min(size, other.size)));
+		int i = 0, j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j])
+				i++;
+			else if (keys[i] > other.keys[j])
+				j++;
+			else {
+				Chunk c = combine(chunks[i], other.chunks[j], AND);
+				if (c != null)
+					result.append(keys[i], c);
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Return a new bitmap with the positions present in either bitmap.
+	 * 
+	 * @param other a bitmap
+	 * @return a new bitmap
+	 */
+	public Bitmap or(Bitmap other) {
+		Bitmap result = new Bitmap(Math.max(4, size + other.size));
+		int i = 0, j = 0;
+		while (i < size || j < other.size) {
+			if (j == other.size || i < size && keys[i] < other.keys[j])
+				result.append(keys[i], chunks[i++].copy());
+			else if (i == size || keys[i] > other.keys[j])
+				result.append(other.keys[j], other.chunks[j++].copy());
+			else {
+				result.append(keys[i], combine(chunks[i], other.chunks[j], OR));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Return a new bitmap with the positions present in this bitmap but not
+	 * in the other.
+	 * 
+	 * @param other a bitmap
+	 * @return a new bitmap
+	 */
+	public Bitmap andNot(Bitmap other) {
+		Bitmap result = new Bitmap(Math.max(4, size));
+		int j = 0;
+		for (int i = 0; i < size; i++) {
+			while (j < other.size && other.keys[j] < keys[i])
+				j++;
+			Chunk c = j < other.size && other.keys[j] == keys[i] ? 
+					combine(chunks[i], other.chunks[j], AND_NOT) : chunks[i].copy();
+			if (c != null)
+				result.append(keys[i], c);
+		}
+		return result;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder("[");
+		for (int p = next(0); p >= 0; p = next(p + 1)) {
+			if (b.length() > 1)
+				b.append(", ");
+			b.append(p);
+		}
+		return b.append("]").toString();
+	}
+	
+}
@@ -0,0 +1,449 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.impl;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.T2DBMsg;
+import ch.agent.crnickl.T2DBMsg.D;
+
+/**
+ * BlockCodec packs contiguous observations of a series into compact blocks.
+ * It can be used by {@link ValueAccessMethods} implementations to store or
+ * transfer values. Time indexes must be in strictly increasing order.
+ * <p>
+ * Time indexes are encoded with delta-of-delta encoding: regular series,
+ * where consecutive time indexes are separated by the same gap, need about
+ * one bit per time index. Numbers are encoded by taking the exclusive or of
+ * consecutive values and storing only the meaningful bits, in the manner of
+ * the Gorilla time series database. Strings are dictionary encoded: each
+ * distinct string is stored once and values are replaced by codes.
+ * <p>
+ * A block starts with a kind and a count. {@link #count(byte[])} returns the
+ * count, which is used to size the arrays passed to the decoding methods.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class BlockCodec {
+
+	private static final int TIMES = 1;
+	private static final int NUMBERS = 2;
+	private static final int STRINGS = 3;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * BitWriter accumulates bits in a growing byte array, most significant
+	 * bit first.
+	 */
+	private static class BitWriter {
+		private byte[] bytes;
+		private long bits;
+		
+		private BitWriter(int capacity) {
+			bytes = new byte[Math.max(16, capacity)];
+		}
+		
+		private void write(long value, int n) {
+			if (((bits + n + 7) >>> 3) > bytes.length) {
+				byte[] b = new byte[bytes.length * 2 + 8];
+				System.arraycopy(bytes, 0, b, 0, bytes.length);
+				bytes = b;
+			}
+			while (n > 0) {
+				int free = 8 - (int) (bits & 7);
+				int take = Math.min(free, n);
+				int chunk = (int) (value >>> (n - take)) & ((1 << take) - 1);
+				bytes[(int) (bits >>> 3)] |= chunk << (free - take);
+				bits += take;
+				n -= take;
+			}
+		}
+		
+		private void writeBit(boolean bit) {
+			write(bit ? 1 : 0, 1);
+		}
+		
+		private void writeVarint(long value) {
+			while ((value & ~0x7FL) != 0) {
+				write((value & 0x7F) | 0x80, 8);
+				value >>>= 7;
+			}
+			write(value, 8);
+		}
+		
+		private byte[] toByteArray() {
+			byte[] b = new byte[(int) ((bits + 7) >>> 3)];
+			System.arraycopy(bytes, 0, b, 0, b.length);
+			return b;
+		}
+	}
+	
+	/**
+	 * BitReader reads bits written by a {@link BitWriter}.
+	 */
+	private static class BitReader {
+		private final byte[] bytes;
+		private long bits;
+		
+		private BitReader(byte[] bytes) {
+			this.bytes = bytes;
+		}
+		
+		private long read(int n) throws T2DBException {
+			if (bits + n > ((long) bytes.length << 3))
+				throw T2DBMsg.exception(D.D00119, "truncated");
+			long value = 0;
+			while (n > 0) {
+				int free = 8 - (int) (bits & 7);
+				int take = Math.min(free, n);
+				int b = (bytes[(int) (bits >>> 3)] & 0xFF) >>> (free - take);
+				value = (value << take) | (b & ((1 << take) - 1));
+				bits += take;
+				n -= take;
+			}
+			return value;
+		}
+		
+		private boolean readBit() throws T2DBException {
+			return read(1) != 0;
+		}
+		
+		private long readVarint() throws T2DBException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				long b = read(8);
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw T2DBMsg.exception(D.D00119, "varint");
+		}
+	}
+	
+	/**
+	 * Return the number of observations in a block.
+	 * 
+	 * @param block a block
+	 * @return the number of observations
+	 * @throws T2DBException
+	 */
+	public static int count(byte[] block) throws T2DBException {
+		BitReader in = new BitReader(block);
+		in.read(8);
+		return count(in);
+	}
+	
+	private static int count(BitReader in) throws T2DBException {
+		long count = in.readVarint();
+		if (count > Integer.MAX_VALUE)
+			throw T2DBMsg.exception(D.D00119, "count");
+		return (int) count;
+	}
+	
+	private static BitReader reader(byte[] block, int kind) throws T2DBException {
+		BitReader in = new BitReader(block);
+		int k = (int) in.read(8);
+		if (k != kind)
+			throw T2DBMsg.exception(D.D00119, "kind " + k);
+		return in;
+	}
+	
+	/**
+	 * Encode time indexes.
+	 * 
+	 * @param times an array of time indexes in increasing order
+	 * @param count the number of time indexes to encode
+	 * @return a block
+	 */
+	public static byte[] encode(long[] times, int count) {
+		BitWriter out = new BitWriter(count / 8 + 16);
+		out.write(TIMES, 8);
+		out.writeVarint(count);
+		writeTimes(out, times, count);
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Decode time indexes. The array must be large enough for all time
+	 * indexes in the block.
+	 * 
+	 * @param block a block encoded with {@link #encode(long[], int)}
+	 * @param times an array for the time indexes
+	 * @return the number of time indexes
+	 * @throws T2DBException
+	 */
+	public static int decode(byte[] block, long[] times) throws T2DBException {
+		BitReader in = reader(block, TIMES);
+		int count = count(in);
+		readTimes(in, times, count);
+		return count;
+	}
+	
+	/**
+	 * Encode time indexes and numbers.
+	 * 
+	 * @param times an array of time indexes in increasing order
+	 * @param values an array of numbers
+	 * @param count the number of observations to encode
+	 * @return a block
+	 */
+	public static byte[] encode(long[] times, double[] values, int count) {
+		BitWriter out = new BitWriter(count + 16);
+		out.write(NUMBERS, 8);
+		out.writeVarint(count);
+		writeTimes(out, times, count);
+		writeNumbers(out, values, count);
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Decode time indexes and numbers. The arrays must be large enough for
+	 * all observations in the block.
+	 * 
+	 * @param block a block encoded with {@link #encode(long[], double[], int)}
+	 * @param times an array for the time indexes
+	 * @param values an array for the numbers
+	 * @return the number of observations
+	 * @throws T2DBException
+	 */
+	public static int decode(byte[] block, long[] times, double[] values) throws T2DBException {
+		BitReader in = reader(block, NUMBERS);
+		int count = count(in);
+		readTimes(in, times, count);
+		readNumbers(in, values, count);
+		return count;
+	}
+	
+	/**
+	 * Encode time indexes and strings. Strings can be null.
+	 * 
+	 * @param times an array of time indexes in increasing order
+	 * @param values an array of strings
+	 * @param count the number of observations to encode
+	 * @return a block
+	 */
+	public static byte[] encode(long[] times, String[] values, int count) {
+		BitWriter out = new BitWriter(count + 16);
+		out.write(STRINGS, 8);
+		out.writeVarint(count);
+		writeTimes(out, times, count);
+		Map<String, Integer> codes = new HashMap<String, Integer>();
+		String[] dictionary = new String[count];
+		int[] valueCodes = new int[count];
+		for (int i = 0; i < count; i++) {
+			Integer code = codes.get(values[i]);
+			if (code == null) {
+				code = codes.size();
+				codes.put(values[i], code);
+				dictionary[code] = values[i];
+			}
+			valueCodes[i] = code;
+		}
+		out.writeVarint(codes.size());
+		for (int i = 0; i < codes.size(); i++) {
+			if (dictionary[i] == null)
+				out.writeVarint(0);
+			else {
+				byte[] b = dictionary[i].getBytes(UTF8);
+				out.writeVarint(b.length + 1);
+				for (byte x : b) {
+					out.write(x & 0xFF, 8);
+				}
+			}
+		}
+		int width = width(codes.size());
+		for (int i = 0; i < count; i++) {
+			out.write(valueCodes[i], width);
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Decode time indexes and strings. The arrays must be large enough for
+	 * all observations in the block.
+	 * 
+	 * @param block a block encoded with {@link #encode(long[], String[], int)}
+	 * @param times an array for the time indexes
+	 * @param values an array for the strings
+	 * @return the number of observations
+	 * @throws T2DBException
+	 */
+	public static int decode(byte[] block, long[] times, String[] values) throws T2DBException {
+		BitReader in = reader(block, STRINGS);
+		int count = count(in);
+		readTimes(in, times, count);
+		int size = count(in);
+		if (size > count)
+			throw T2DBMsg.exception(D.D00119, "dictionary");
+		String[] dictionary = new String[size];
+		for (int i = 0; i < size; i++) {
+			int length = count(in);
+			if (length > 0) {
+				byte[] b = new byte[length - 1];
+				for (int j = 0; j < b.length; j++) {
+					b[j] = (byte) in.read(8);
+				}
+				dictionary[i] = new String(b, UTF8);
+			}
+		}
+		int width = width(size);
+		for (int i = 0; i < count; i++) {
+			int code = (int) in.read(width);
+			if (code >= size)
+				throw T2DBMsg.exception(D.D00119, "code " + code);
+			values[i] = dictionary[code];
+		}
+		return count;
+	}
+	
+	/**
+	 * Return the number of bits needed for codes smaller than size.
+	 */
+	private static int width(int size) {
+		return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+	}
+	
+	/* time indexes */
+	
+	private static void writeTimes(BitWriter out, long[] times, int count) {
+		long prev = 0;
+		long delta = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0)
+				out.write(times[0], 64);
+			else {
+				long d = times[i] - prev;
+				long dod = d - delta;
+				if (dod == 0)
+					out.writeBit(false);
+				else if (fits(dod, 7)) {
+					out.write(0x2, 2);
+					out.write(dod, 7);
+				} else if (fits(dod, 9)) {
+					out.write(0x6, 3);
+					out.write(dod, 9);
+				} else if (fits(dod, 12)) {
+					out.write(0xE, 4);
+					out.write(dod, 12);
+				} else {
+					out.write(0xF, 4);
+					out.write(dod, 64);
+				}
+				delta = d;
+			}
+			prev = times[i];
+		}
+	}
+	
+	private static boolean fits(long value, int bits) {
+		long limit = 1L << (bits - 1);
+		return value >= -limit && value < limit;
+	}
+	
+	private static void readTimes(BitReader in, long[] times, int count) throws T2DBException {
+		long prev = 0;
+		long delta = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0)
+				prev = in.read(64);
+			else {
+				long dod;
+				if (!in.readBit())
+					dod = 0;
+				else if (!in.readBit())
+					dod = signed(in.read(7), 7);
+				else if (!in.readBit())
+					dod = signed(in.read(9), 9);
+				else if (!in.readBit())
+					dod = signed(in.read(12), 12);
+				else
+					dod = in.read(64);
+				delta += dod;
+				prev += delta;
+			}
+			times[i] = prev;
+		}
+	}
+	
+	private static long signed(long value, int bits) {
+		return (value << (64 - bits)) >> (64 - bits);
+	}
+	
+	/* numbers */
+	
+	private static void writeNumbers(BitWriter out, double[] values, int count) {
+		long prev = 0;
+		int leading = -1;
+		int trailing = 0;
+		for (int i = 0; i < count; i++) {
+			long bits = Double.doubleToRawLongBits(values[i]);
+			if (i == 0)
+				out.write(bits, 64);
+			else {
+				long xor = bits ^ prev;
+				if (xor == 0)
+					out.writeBit(false);
+				else {
+					out.writeBit(true);
+					int lz = Math.min(31, Long.numberOfLeadingZeros(xor));
+					int tz = Long.numberOfTrailingZeros(xor);
+					if (leading >= 0 && lz >= leading && tz >= trailing) {
+						out.writeBit(false);
+						out.write(xor >>> trailing, 64 - leading - trailing);
+					} else {
+						leading = lz;
+						trailing = tz;
+						int meaningful = 64 - lz - tz;
+						out.writeBit(true);
+						out.write(lz, 5);
+						out.write(meaningful & 0x3F, 6);
+						out.write(xor >>> tz, meaningful);
+					}
+				}
+			}
+			prev = bits;
+		}
+	}
+	
+	private static void readNumbers(BitReader in, double[] values, int count) throws T2DBException {
+		long prev = 0;
+		int leading = -1;
+		int trailing = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0)
+				prev = in.read(64);
+			else if (in.readBit()) {
+				if (in.readBit()) {
+					leading = (int) in.read(5);
+					int meaningful = (int) in.read(6);
+					if (meaningful == 0)
+						meaningful = 64;
+					trailing = 64 - leading - meaningful;
+					if (trailing < 0)
+						throw T2DBMsg.exception(D.D00119, "xor");
+				} else if (leading < 0)
+					throw T2DBMsg.exception(D.D00119, "xor");
+				prev ^= in.read(64 - leading - trailing) << trailing;
+			}
+			values[i] = Double.longBitsToDouble(prev);
+		}
+	}
+	
+}
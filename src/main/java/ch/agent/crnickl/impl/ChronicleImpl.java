@@ -26,6 +26,7 @@ import ch.agent.crnickl.T2DBMsg.D;
 import ch.agent.crnickl.api.Attribute;
 import ch.agent.crnickl.api.AttributeDefinition;
 import ch.agent.crnickl.api.Chronicle;
+import ch.agent.crnickl.api.ParsedName;
 import ch.agent.crnickl.api.Schema;
 import ch.agent.crnickl.api.Series;
 import ch.agent.crnickl.api.SeriesDefinition;
@@ -150,6 +151,23 @@ public class ChronicleImpl extends DBObjectImpl implements Chronicle {
 		private String description;
 		private Chronicle collection;
 		private Schema schema;
+		private Names names;
+	}
+	
+	/**
+	 * Names keeps the full name of a chronicle and the surrogates of its
+	 * ancestors, nearest first, for one generation of names.
+	 */
+	private static class Names {
+		private final int generation;
+		private final String fullName;
+		private final Surrogate[] ancestors;
+		
+		private Names(int generation, String fullName, Surrogate[] ancestors) {
+			this.generation = generation;
+			this.fullName = fullName;
+			this.ancestors = ancestors;
+		}
 	}
 	
 	private Data data;
@@ -232,28 +250,38 @@ public class ChronicleImpl extends DBObjectImpl implements Chronicle {
 		DatabaseCache cache = getDatabase().getCache();
 		Chronicle chronicle = cache.lookUpChronicle(fullName);
 		if (chronicle == null) {
-			String[] parts = getDatabase().getNamingPolicy().split(fullName);
-			if (parts[0] == null) {
+			ParsedName parsed = getDatabase().getNamingPolicy().parse(fullName);
+			int last = parsed.size() - 1;
+			// find the longest prefix already in the cache
+			int next = last;
+			while (next > 0) {
+				chronicle = cache.lookUpChronicle(parsed.getPrefix(next));
+				if (chronicle != null)
+					break;
+				next--;
+			}
+			if (next == 0) {
 				chronicle = getDatabase().getTopChronicle();
-				boolean isNameSpace = chronicle.getName(true).equals(fullName);
+				boolean isNameSpace = parsed.matches(0, chronicle.getName(true));
 				if (getDatabase().isStrictNameSpaceMode()) {
 					// it must be the name space itself
 					if (!isNameSpace)
-						throw T2DBMsg.exception(D.D40103, chronicle.getName(true), fullName);
+						throw T2DBMsg.exception(D.D40103, chronicle.getName(true), parsed.get(0));
 				} else {
 					// tolerate name space
 					if (!isNameSpace) {
-						chronicle = chronicle.getChronicle(parts[1], mustExist);
+						chronicle = chronicle.getChronicle(parsed.get(0), last == 0 ? mustExist : true);
 						// cache top level entities
 						if (chronicle != null)
 							cache.store((ChronicleImpl)chronicle);
 					}
 				}
-			} else {
-				chronicle = findChronicle(parts[0], true);
+				next = 1;
+			}
+			for (; next <= last && chronicle != null; next++) {
 				// cache entities with children
 				cache.store((ChronicleImpl)chronicle);
-				chronicle = chronicle.getChronicle(parts[1], mustExist);
+				chronicle = chronicle.getChronicle(parsed.get(next), next == last ? mustExist : true);
 				// cache the chronicle if it has a schema ?
 			}
 		}
@@ -296,6 +324,16 @@ public class ChronicleImpl extends DBObjectImpl implements Chronicle {
 		return getDatabase().getChroniclesByParent(this);
 	}
 
+	@Override
+	public Collection<Chronicle> getMembers(String after, int maxSize) throws T2DBException {
+		return getDatabase().getChroniclesByParent(this, after, maxSize);
+	}
+
+	@Override
+	public int countMembers() throws T2DBException {
+		return getDatabase().countChroniclesByParent(this);
+	}
+
 	@Override
 	public Schema getSchema(boolean effective) throws T2DBException {
 		getData();
@@ -310,14 +348,54 @@ public class ChronicleImpl extends DBObjectImpl implements Chronicle {
 	
 	@Override
 	public String getName(boolean full) throws T2DBException {
-		if (full)
-			return getDatabase().getNamingPolicy().fullName(getNames());
-		else {
+		if (full) {
+			if (isNameCacheable())
+				return getNameCache().fullName;
+			else
+				return getDatabase().getNamingPolicy().fullName(getNames());
+		} else {
 			getData();
 			return data.name;
 		}
 	}
 	
+	/**
+	 * Return true if the full name and the ancestors of the chronicle can be
+	 * kept with its state. This is the case when the name and the collection
+	 * of the chronicle are those in the database.
+	 * 
+	 * @return true if names can be kept
+	 */
+	protected boolean isNameCacheable() {
+		return true;
+	}
+	
+	/**
+	 * Return the full name and the ancestors of the chronicle, computing them
+	 * if they are not available for the current generation of names.
+	 * 
+	 * @return the names of the chronicle
+	 * @throws T2DBException
+	 */
+	private Names getNameCache() throws T2DBException {
+		getData();
+		Data d = data;
+		int generation = getDatabase().getNameGeneration();
+		Names names = d.names;
+		if (names == null || names.generation != generation) {
+			List<Surrogate> ancestors = new ArrayList<Surrogate>();
+			Chronicle c = getCollection();
+			while (c != null) {
+				ancestors.add(c.getSurrogate());
+				c = c.isTopChronicle() ? null : c.getCollection();
+			}
+			names = new Names(generation, getDatabase().getNamingPolicy().fullName(getNames()), 
+					ancestors.toArray(new Surrogate[ancestors.size()]));
+			d.names = names;
+		}
+		return names;
+	}
+	
 	@Override
 	public List<String> getNames() throws T2DBException {
 		List<String> names = null;
@@ -469,7 +547,14 @@ public class ChronicleImpl extends DBObjectImpl implements Chronicle {
 		else {
 			if (isTopChronicle())
 				return false;
-			else
+			else if (isNameCacheable()) {
+				Surrogate target = collection.getSurrogate();
+				for (Surrogate ancestor : getNameCache().ancestors) {
+					if (ancestor.equals(target))
+						return true;
+				}
+				return false;
+			} else
 				return ((ChronicleImpl) getCollection()).isMemberOf(collection);
 		}
 	}
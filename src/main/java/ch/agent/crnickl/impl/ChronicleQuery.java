@@ -0,0 +1,352 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.api.Chronicle;
+import ch.agent.crnickl.api.ChroniclePredicate;
+import ch.agent.crnickl.api.ChroniclePredicate.Operator;
+import ch.agent.crnickl.api.ChronicleVisitor;
+import ch.agent.crnickl.api.Property;
+import ch.agent.crnickl.api.Schema;
+import ch.agent.crnickl.api.Surrogate;
+import ch.agent.crnickl.api.ValueType;
+
+/**
+ * A ChronicleQuery finds the chronicles satisfying a
+ * {@link ChroniclePredicate}. The query is planned in two steps.
+ * <p>
+ * First, the conditions of the top-level conjunction are evaluated as sets
+ * where possible. Attribute conditions on indexed properties are evaluated
+ * with the {@link AttributeIndex}. Other conditions are passed to
+ * {@link DatabaseBackend#getChronicles(ChroniclePredicate)}, which returns
+ * null when the backend cannot evaluate them. Sets are combined as
+ * {@link Bitmap}s.
+ * <p>
+ * Second, candidates are tested with the remaining conditions, one at a time,
+ * and passed to the visitor. Candidates are the chronicles in the
+ * intersection of the sets, when at least one condition could be evaluated as
+ * a set. Else they are the chronicles found by traversing the collection of a
+ * {@link Operator#MEMBER} condition or, lacking one, the whole database.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class ChronicleQuery {
+
+	private final DatabaseBackend database;
+	private final ChroniclePredicate predicate;
+	private final AttributeIndex index;
+	/**
+	 * The sets of chronicles of predicates already evaluated. A null value
+	 * means that the predicate cannot be evaluated as a set.
+	 */
+	private final Map<ChroniclePredicate, Bitmap> sets;
+	/**
+	 * The dictionary codes of the values of attribute predicates on
+	 * restricted value types, which are tested one chronicle at a time.
+	 */
+	private final Map<ChroniclePredicate, BitSet> codes;
+	private boolean stopped;
+	
+	/**
+	 * Construct a chronicle query.
+	 * 
+	 * @param database a database
+	 * @param predicate a predicate
+	 */
+	public ChronicleQuery(DatabaseBackend database, ChroniclePredicate predicate) {
+		if (predicate == null)
+			throw new IllegalArgumentException("predicate null");
+		this.database = database;
+		this.predicate = predicate;
+		this.index = database.getAttributeIndex();
+		this.sets = new IdentityHashMap<ChroniclePredicate, Bitmap>();
+		this.codes = new IdentityHashMap<ChroniclePredicate, BitSet>();
+	}
+	
+	/**
+	 * Pass each chronicle satisfying the predicate to the visitor. The depth
+	 * is always 0. Returning false stops the query.
+	 * 
+	 * @param visitor a chronicle visitor
+	 * @throws T2DBException
+	 */
+	public void execute(final ChronicleVisitor visitor) throws T2DBException {
+		// sets are only valid while bitmaps are acquired
+		index.acquire();
+		try {
+			run(visitor);
+		} finally {
+			sets.clear();
+			index.release();
+		}
+	}
+	
+	private void run(final ChronicleVisitor visitor) throws T2DBException {
+		final List<ChroniclePredicate> conditions = new ArrayList<ChroniclePredicate>();
+		if (predicate.getOperator() == Operator.AND)
+			conditions.addAll(predicate.getOperands());
+		else
+			conditions.add(predicate);
+		
+		Bitmap candidates = null;
+		List<Bitmap> excluded = new ArrayList<Bitmap>();
+		List<ChroniclePredicate> remaining = new ArrayList<ChroniclePredicate>();
+		for (ChroniclePredicate condition : conditions) {
+			if (condition.getOperator() == Operator.NOT) {
+				Bitmap set = evaluate(condition.getOperands().get(0));
+				if (set == null)
+					remaining.add(condition);
+				else
+					excluded.add(set);
+			} else {
+				Bitmap set = evaluate(condition);
+				if (set == null)
+					remaining.add(condition);
+				else
+					candidates = candidates == null ? set : candidates.and(set);
+			}
+		}
+		
+		if (candidates != null) {
+			for (Bitmap set : excluded) {
+				candidates = candidates.andNot(set);
+			}
+			for (int p = candidates.next(0); p >= 0; p = candidates.next(p + 1)) {
+				Surrogate surrogate = index.getSurrogate(p);
+				if (surrogate == null)
+					continue; // deleted meanwhile
+				Chronicle chronicle = database.getChronicle(surrogate);
+				if (test(remaining, chronicle) && !visitor.visit(chronicle, 0))
+					break;
+			}
+		} else {
+			// negated conditions evaluated as sets are tested using their sets
+			Chronicle root = database.getTopChronicle();
+			for (ChroniclePredicate condition : conditions) {
+				if (condition.getOperator() == Operator.MEMBER) {
+					root = condition.getCollection();
+					break;
+				}
+			}
+			final ChroniclePredicate implied = root.isTopChronicle() ? null : findMember(conditions, root);
+			ChronicleVisitor filter = new ChronicleVisitor() {
+				@Override
+				public boolean visit(Chronicle chronicle, int depth) throws T2DBException {
+					if (depth > 0 && !stopped) {
+						boolean ok = true;
+						for (ChroniclePredicate condition : conditions) {
+							if (condition != implied && !test(condition, chronicle)) {
+								ok = false;
+								break;
+							}
+						}
+						if (ok && !visitor.visit(chronicle, 0))
+							stopped = true;
+					}
+					return !stopped;
+				}
+			};
+			new ChronicleTraversal(database, filter, -1, 1).traverse(root);
+		}
+	}
+	
+	/**
+	 * Return the chronicles satisfying the predicate. 
+	 * 
+	 * @param maxSize the maximum size of the result, 0 for no limit
+	 * @return a list of chronicles
+	 * @throws T2DBException
+	 */
+	public List<Chronicle> execute(final int maxSize) throws T2DBException {
+		final List<Chronicle> result = new ArrayList<Chronicle>();
+		execute(new ChronicleVisitor() {
+			@Override
+			public boolean visit(Chronicle chronicle, int depth) throws T2DBException {
+				result.add(chronicle);
+				return maxSize <= 0 || result.size() < maxSize;
+			}
+		});
+		return result;
+	}
+	
+	private ChroniclePredicate findMember(List<ChroniclePredicate> conditions, Chronicle collection) {
+		for (ChroniclePredicate condition : conditions) {
+			if (condition.getOperator() == Operator.MEMBER && condition.getCollection() == collection)
+				return condition;
+		}
+		return null;
+	}
+	
+	/**
+	 * Return the set of chronicles satisfying a predicate or null if it
+	 * cannot be evaluated as a set.
+	 */
+	private Bitmap evaluate(ChroniclePredicate predicate) throws T2DBException {
+		if (sets.containsKey(predicate))
+			return sets.get(predicate);
+		Bitmap set = null;
+		if (predicate.getOperator() == Operator.ATTRIBUTE && predicate.getProperty().isIndexed())
+			set = lookUp(predicate.getProperty(), predicate.getValues());
+		else {
+			Collection<Surrogate> surrogates = database.getChronicles(predicate);
+			if (surrogates != null)
+				set = index.toBitmap(surrogates);
+			else {
+				switch (predicate.getOperator()) {
+				case AND:
+					set = evaluateAnd(predicate.getOperands());
+					break;
+				case OR:
+					set = evaluateOr(predicate.getOperands());
+					break;
+				case NOT:
+					// there is no set of all chronicles to take the complement from
+					evaluate(predicate.getOperands().get(0));
+					break;
+				default:
+				}
+			}
+		}
+		sets.put(predicate, set);
+		return set;
+	}
+	
+	private Bitmap evaluateAnd(List<ChroniclePredicate> operands) throws T2DBException {
+		Bitmap result = null;
+		List<Bitmap> excluded = new ArrayList<Bitmap>();
+		boolean complete = true;
+		for (ChroniclePredicate operand : operands) {
+			if (operand.getOperator() == Operator.NOT) {
+				Bitmap set = evaluate(operand.getOperands().get(0));
+				if (set == null)
+					complete = false;
+				else
+					excluded.add(set);
+			} else {
+				Bitmap set = evaluate(operand);
+				if (set == null)
+					complete = false;
+				else
+					result = result == null ? set : result.and(set);
+			}
+		}
+		if (!complete || result == null)
+			return null;
+		for (Bitmap set : excluded) {
+			result = result.andNot(set);
+		}
+		return result;
+	}
+	
+	private Bitmap evaluateOr(List<ChroniclePredicate> operands) throws T2DBException {
+		Bitmap result = null;
+		boolean complete = true;
+		for (ChroniclePredicate operand : operands) {
+			Bitmap set = evaluate(operand);
+			if (set == null)
+				complete = false;
+			else if (complete)
+				result = result == null ? set : result.or(set);
+		}
+		return complete ? result : null;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> Bitmap lookUp(Property<T> property, Collection<?> values) throws T2DBException {
+		Bitmap result = null;
+		for (Object value : values) {
+			Bitmap set = index.lookUp(property, (T) value);
+			result = result == null ? set : result.or(set);
+		}
+		return result;
+	}
+	
+	private boolean test(List<ChroniclePredicate> predicates, Chronicle chronicle) throws T2DBException {
+		for (ChroniclePredicate predicate : predicates) {
+			if (!test(predicate, chronicle))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Test a predicate on a chronicle, using the set of the predicate when
+	 * it has been evaluated.
+	 */
+	private boolean test(ChroniclePredicate predicate, Chronicle chronicle) throws T2DBException {
+		Bitmap set = sets.get(predicate);
+		if (set != null)
+			return index.contains(set, chronicle.getSurrogate());
+		switch (predicate.getOperator()) {
+		case MEMBER:
+			return !chronicle.equals(predicate.getCollection()) && chronicle.isMemberOf(predicate.getCollection());
+		case SCHEMA:
+			Schema schema = chronicle.getSchema(true);
+			return schema != null && schema.getSurrogate().equals(predicate.getSchema().getSurrogate());
+		case ATTRIBUTE:
+			return accepts(predicate, predicate.getProperty(), chronicle);
+		case AND:
+			return test(predicate.getOperands(), chronicle);
+		case OR:
+			for (ChroniclePredicate operand : predicate.getOperands()) {
+				if (test(operand, chronicle))
+					return true;
+			}
+			return false;
+		case NOT:
+			return !test(predicate.getOperands().get(0), chronicle);
+		default:
+			throw new IllegalArgumentException(predicate.getOperator().name());
+		}
+	}
+	
+	/**
+	 * Return true if the attribute value of a chronicle is one of the values
+	 * of an attribute predicate. Values of restricted value types are
+	 * compared by their codes.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> boolean accepts(ChroniclePredicate predicate, Property<T> property, Chronicle chronicle) throws T2DBException {
+		T value = AttributeIndex.getAttributeValue(database, chronicle, property);
+		if (value == null)
+			return false;
+		ValueType<T> valueType = property.getValueType();
+		if (!valueType.isRestricted())
+			return predicate.getValues().contains(value);
+		BitSet set = codes.get(predicate);
+		if (set == null) {
+			set = new BitSet();
+			for (Object v : predicate.getValues()) {
+				int code = valueType.getCode((T) v);
+				if (code >= 0)
+					set.set(code);
+			}
+			codes.put(predicate, set);
+		}
+		int code = valueType.getCode(value);
+		return code >= 0 && set.get(code);
+	}
+	
+}
@@ -0,0 +1,187 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.T2DBMsg;
+import ch.agent.crnickl.T2DBMsg.D;
+import ch.agent.crnickl.api.Chronicle;
+import ch.agent.crnickl.api.ChronicleVisitor;
+
+/**
+ * A ChronicleTraversal passes a chronicle and its members, directly or
+ * indirectly, to a {@link ChronicleVisitor}. With a parallelism larger than 1,
+ * the members of sibling subtrees are fetched and visited concurrently by a
+ * fixed number of threads. Each task visits one chronicle and fetches its
+ * members with a single request to the database, so the number of requests in
+ * flight never exceeds the number of threads.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class ChronicleTraversal {
+
+	private class Task implements Runnable {
+		private final Chronicle chronicle;
+		private final int depth;
+		
+		private Task(Chronicle chronicle, int depth) {
+			this.chronicle = chronicle;
+			this.depth = depth;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				if (failure == null) {
+					if (visitor.visit(chronicle, depth) && descend(depth)) {
+						for (Chronicle member : database.getChroniclesByParent(chronicle)) {
+							if (failure != null)
+								break;
+							submit(new Task(member, depth + 1));
+						}
+					}
+				}
+			} catch (Throwable t) {
+				fail(t);
+			} finally {
+				done();
+			}
+		}
+	}
+	
+	private final DatabaseBackend database;
+	private final ChronicleVisitor visitor;
+	private final int maxDepth;
+	private final int parallelism;
+	private ExecutorService executor;
+	private final AtomicInteger pending;
+	private volatile Throwable failure;
+	
+	/**
+	 * Construct a chronicle traversal.
+	 * 
+	 * @param database a database
+	 * @param visitor a chronicle visitor
+	 * @param maxDepth the maximum depth or a negative number for no limit
+	 * @param parallelism the number of threads
+	 */
+	public ChronicleTraversal(DatabaseBackend database, ChronicleVisitor visitor, int maxDepth, int parallelism) {
+		if (visitor == null)
+			throw new IllegalArgumentException("visitor null");
+		this.database = database;
+		this.visitor = visitor;
+		this.maxDepth = maxDepth;
+		this.parallelism = parallelism;
+		this.pending = new AtomicInteger();
+	}
+	
+	/**
+	 * Traverse a chronicle and its members. This method returns when all
+	 * chronicles have been visited or when the traversal failed.
+	 * 
+	 * @param collection the chronicle at the root of the traversal
+	 * @throws T2DBException
+	 */
+	public void traverse(Chronicle collection) throws T2DBException {
+		if (parallelism <= 1)
+			traverse(collection, 0);
+		else {
+			executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "crnickl-traversal-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			try {
+				submit(new Task(collection, 0));
+				awaitCompletion();
+			} finally {
+				executor.shutdownNow();
+			}
+			if (failure != null) {
+				if (failure instanceof T2DBException)
+					throw (T2DBException) failure;
+				if (failure instanceof RuntimeException)
+					throw (RuntimeException) failure;
+				if (failure instanceof Error)
+					throw (Error) failure;
+				throw T2DBMsg.exception(failure, D.D00118, collection);
+			}
+		}
+	}
+	
+	private void traverse(Chronicle chronicle, int depth) throws T2DBException {
+		if (visitor.visit(chronicle, depth) && descend(depth)) {
+			for (Chronicle member : database.getChroniclesByParent(chronicle)) {
+				traverse(member, depth + 1);
+			}
+		}
+	}
+	
+	private boolean descend(int depth) {
+		return maxDepth < 0 || depth < maxDepth;
+	}
+	
+	private void submit(Task task) {
+		pending.incrementAndGet();
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			fail(e);
+			done();
+		}
+	}
+	
+	private void fail(Throwable t) {
+		synchronized (pending) {
+			if (failure == null)
+				failure = t;
+		}
+	}
+	
+	private void done() {
+		if (pending.decrementAndGet() == 0) {
+			synchronized (pending) {
+				pending.notifyAll();
+			}
+		}
+	}
+	
+	private void awaitCompletion() throws T2DBException {
+		synchronized (pending) {
+			while (pending.get() > 0) {
+				try {
+					pending.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					fail(e);
+					return;
+				}
+			}
+		}
+	}
+	
+}
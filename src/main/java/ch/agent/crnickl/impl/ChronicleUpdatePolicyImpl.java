@@ -32,6 +32,7 @@ import ch.agent.t2.time.TimeIndex;
  */
 public class ChronicleUpdatePolicyImpl implements ChronicleUpdatePolicy {
 	
+	private DatabaseBackend database;
 	private ChronicleUpdatePolicyExtension extension;
 
 	/**
@@ -41,27 +42,32 @@ public class ChronicleUpdatePolicyImpl implements ChronicleUpdatePolicy {
 	 * @param extension a chronicle update policy extension
 	 */
 	public ChronicleUpdatePolicyImpl(DatabaseBackend database, ChronicleUpdatePolicyExtension extension) {
+		this.database = database;
 		this.extension = extension;
 	}
 
 	@Override
 	public void willDelete(UpdatableChronicle entity) throws T2DBException {
-		int entityCount = entity.getMembers().size();
-		int seriesCount = entity.getSeries().size();
-		if (entityCount > 0 || seriesCount > 0)
+		if (database.hasMembers(entity) || database.hasSeries(entity)) {
+			// the counts are only needed for the message
+			int entityCount = entity.countMembers();
+			int seriesCount = entity.getSeries().size();
 			throw T2DBMsg.exception(D.D40130, entity.getName(true), entityCount, seriesCount);
+		}
 		if (extension != null)
 			extension.willDelete(entity);
 	}
 
 	@Override
 	public void willDelete(UpdatableSeries<?> series) throws T2DBException {
-		try {
-			Range range = series.getRange();
-			if (!range.isEmpty())
+		if (database.hasValues(series)) {
+			// the range is only needed for the message
+			try {
+				Range range = series.getRange();
 				throw T2DBMsg.exception(D.D50130, series.getName(true), range.toString());
-		} catch (T2Exception e) {
-			throw T2DBMsg.exception(e, D.D50102, series.getName(true));
+			} catch (T2Exception e) {
+				throw T2DBMsg.exception(e, D.D50102, series.getName(true));
+			}
 		}
 		if (extension != null)
 			extension.willDelete(series);
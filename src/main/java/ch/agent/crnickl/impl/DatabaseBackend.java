@@ -18,15 +18,19 @@ package ch.agent.crnickl.impl;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import ch.agent.crnickl.T2DBException;
 import ch.agent.crnickl.api.Attribute;
 import ch.agent.crnickl.api.AttributeDefinition;
 import ch.agent.crnickl.api.Chronicle;
+import ch.agent.crnickl.api.ChroniclePredicate;
 import ch.agent.crnickl.api.DBObjectId;
+import ch.agent.crnickl.api.DBObjectType;
 import ch.agent.crnickl.api.Database;
 import ch.agent.crnickl.api.Property;
 import ch.agent.crnickl.api.Schema;
+import ch.agent.crnickl.api.SchemaComponent;
 import ch.agent.crnickl.api.Series;
 import ch.agent.crnickl.api.SeriesDefinition;
 import ch.agent.crnickl.api.Surrogate;
@@ -169,6 +173,21 @@ public interface DatabaseBackend extends Database, PermissionChecker {
 	 */
 	DatabaseCache getCache();
 	
+	/**
+	 * Return the generation of chronicle names. The generation changes when
+	 * a chronicle is modified or deleted and when the name space mode
+	 * changes. Objects keeping full names compare generations to find out
+	 * when names must be computed again.
+	 * 
+	 * @return the generation of chronicle names
+	 */
+	int getNameGeneration();
+	
+	/**
+	 * Start a new generation of chronicle names.
+	 */
+	void newNameGeneration();
+	
 	/**
 	 * Return the chronicle update policy object.
 	 * 
@@ -183,6 +202,22 @@ public interface DatabaseBackend extends Database, PermissionChecker {
 	 */
 	SchemaUpdatePolicy getSchemaUpdatePolicy();
 	
+	/**
+	 * Return the attribute index. The index keeps bitmaps of chronicles by
+	 * value for indexed properties. It is created on first use.
+	 * 
+	 * @return the attribute index
+	 */
+	AttributeIndex getAttributeIndex();
+	
+	/**
+	 * Return the schema index. The index keeps the schemas extending each
+	 * schema. It is created on first use.
+	 * 
+	 * @return the schema index
+	 */
+	SchemaIndex getSchemaIndex();
+	
 	/**
 	 * Return a {@link DBObjectId} corresponding to an object. The actual form
 	 * of the input depends on the current database driver.
@@ -194,6 +229,17 @@ public interface DatabaseBackend extends Database, PermissionChecker {
 	 */
 	DBObjectId makeDBObjectId(Object object) throws T2DBException;
 	
+	/**
+	 * Return a surrogate for an object of the database. When the id is not
+	 * null, the result is the canonical surrogate of the object, kept in a
+	 * pool as long as it is used.
+	 * 
+	 * @param dot a database object type
+	 * @param id an id or null for an object in construction
+	 * @return a surrogate
+	 */
+	Surrogate makeSurrogate(DBObjectType dot, DBObjectId id);
+	
 	/**
 	 * Get the property with the given name from the database. 
 	 * The result is null when there is no such property.
@@ -333,6 +379,50 @@ public interface DatabaseBackend extends Database, PermissionChecker {
 	 * @throws T2DBException
 	 */
 	Collection<Chronicle> getChroniclesByParent(Chronicle parent) throws T2DBException;
+	
+	/**
+	 * Get a page of chronicles with a given parent. Chronicles are sorted by
+	 * simple name. The page starts with the first chronicle with a simple name
+	 * greater than <code>after</code>, or with the very first chronicle when
+	 * <code>after</code> is null. The next page is obtained by passing the
+	 * simple name of the last chronicle of the page.
+	 * 
+	 * @param parent a chronicle
+	 * @param after a simple name or null
+	 * @param maxSize the maximum number of chronicles to return
+	 * @return at most maxSize direct children chronicles of the parent
+	 * @throws T2DBException
+	 */
+	Collection<Chronicle> getChroniclesByParent(Chronicle parent, String after, int maxSize) throws T2DBException;
+	
+	/**
+	 * Return the number of chronicles with a given parent.
+	 * 
+	 * @param parent a chronicle
+	 * @return the number of direct children chronicles of the parent
+	 * @throws T2DBException
+	 */
+	int countChroniclesByParent(Chronicle parent) throws T2DBException;
+	
+	/**
+	 * Test if a chronicle has members. This is a cheap probe, meant to be
+	 * implemented without loading any member.
+	 * 
+	 * @param chronicle a chronicle
+	 * @return true if the chronicle has at least one member
+	 * @throws T2DBException
+	 */
+	boolean hasMembers(Chronicle chronicle) throws T2DBException;
+	
+	/**
+	 * Test if a chronicle has series. This is a cheap probe, meant to be
+	 * implemented without loading any series.
+	 * 
+	 * @param chronicle a chronicle
+	 * @return true if the chronicle has at least one series
+	 * @throws T2DBException
+	 */
+	boolean hasSeries(Chronicle chronicle) throws T2DBException;
 
 	/**
 	 * Get a number of chronicles with a given property value from the database.
@@ -345,6 +435,17 @@ public interface DatabaseBackend extends Database, PermissionChecker {
 	 */
 	<T>List<Chronicle> getChroniclesByAttributeValue(Property<T> property, T value, int maxSize) throws T2DBException;
 	
+	/**
+	 * Return the surrogates of all chronicles satisfying a predicate, or
+	 * null if the backend cannot evaluate the predicate. This method is used
+	 * by {@link ChronicleQuery} to push predicates to the backend. 
+	 * 
+	 * @param predicate a predicate
+	 * @return a collection of surrogates or null
+	 * @throws T2DBException
+	 */
+	Collection<Surrogate> getChronicles(ChroniclePredicate predicate) throws T2DBException;
+	
 	/**
 	 * Get an array of series in a chronicle from the database. The numbers
 	 * identify the series within the schema. Non-positive numbers are skipped,
@@ -405,6 +506,16 @@ public interface DatabaseBackend extends Database, PermissionChecker {
 	 */
 	<T>Observation<T> getFirstObservation(Series<T> series, TimeIndex time) throws T2DBException;
 	
+	/**
+	 * Test if a series has values. This is a cheap probe, meant to be
+	 * implemented without computing the range of the series.
+	 * 
+	 * @param series a series
+	 * @return true if the series has at least one value
+	 * @throws T2DBException
+	 */
+	<T>boolean hasValues(Series<T> series) throws T2DBException;
+	
 	/**
 	 * Return the observation at a given time index or the last preceding
 	 * observation. If the time index is null return the last observation.
@@ -518,6 +629,15 @@ public interface DatabaseBackend extends Database, PermissionChecker {
 	 */
 	Collection<Surrogate> getSchemaSurrogates(String pattern) throws T2DBException;
 	
+	/**
+	 * Return the surrogates of all schemas, each mapped to the surrogate of
+	 * its base schema. Schemas without a base are mapped to null.
+	 * 
+	 * @return a map of schema surrogates
+	 * @throws T2DBException
+	 */
+	Map<Surrogate, Surrogate> getSchemaBases() throws T2DBException;
+	
 	/**
 	 * Return the updatable schema corresponding to a schema.
 	 * 
@@ -566,4 +686,26 @@ public interface DatabaseBackend extends Database, PermissionChecker {
 	 */
 	Surrogate findChronicle(SeriesDefinition ss, Schema schema) throws T2DBException;
 	
+	/**
+	 * Return chronicles using series definitions or attribute definitions
+	 * with a schema dependent on the given schema. A series definition is in
+	 * use when a chronicle has a series with the same number. An attribute
+	 * definition is in use when a chronicle has a value for its property. The
+	 * result maps each definition in use to a chronicle using it. Definitions
+	 * not in use are not in the result. The method is equivalent to calling
+	 * {@link #findChronicle(SeriesDefinition, Schema)} and
+	 * {@link #findChronicle(Property, Schema)} for each definition but allows
+	 * a backend to check all definitions in one pass.
+	 * <p>
+	 * This is technical method used in schema management.
+	 * 
+	 * @param series a collection of series definitions
+	 * @param attributes a collection of chronicle attribute definitions
+	 * @param schema a schema
+	 * @return a map of definitions to surrogates
+	 * @throws T2DBException
+	 */
+	Map<SchemaComponent, Surrogate> findChronicles(Collection<SeriesDefinition> series, 
+			Collection<AttributeDefinition<?>> attributes, Schema schema) throws T2DBException;
+	
 }
@@ -17,9 +17,17 @@
 package ch.agent.crnickl.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import ch.agent.core.KeyedException;
@@ -29,14 +37,21 @@ import ch.agent.crnickl.T2DBMsg;
 import ch.agent.crnickl.T2DBMsg.D;
 import ch.agent.crnickl.api.AttributeDefinition;
 import ch.agent.crnickl.api.Chronicle;
+import ch.agent.crnickl.api.ChroniclePredicate;
+import ch.agent.crnickl.api.ChroniclePredicate.Operator;
+import ch.agent.crnickl.api.ChronicleVisitor;
 import ch.agent.crnickl.api.DBObject;
+import ch.agent.crnickl.api.DBObjectId;
 import ch.agent.crnickl.api.DBObjectType;
 import ch.agent.crnickl.api.DatabaseConfiguration;
+import ch.agent.crnickl.api.DatabaseSnapshot;
 import ch.agent.crnickl.api.MessageListener;
 import ch.agent.crnickl.api.NamingPolicy;
 import ch.agent.crnickl.api.Property;
 import ch.agent.crnickl.api.Schema;
+import ch.agent.crnickl.api.SchemaComponent;
 import ch.agent.crnickl.api.Series;
+import ch.agent.crnickl.api.SeriesDefinition;
 import ch.agent.crnickl.api.Surrogate;
 import ch.agent.crnickl.api.UpdatableChronicle;
 import ch.agent.crnickl.api.UpdatableProperty;
@@ -47,9 +62,12 @@ import ch.agent.crnickl.api.UpdateEvent;
 import ch.agent.crnickl.api.UpdateEventOperation;
 import ch.agent.crnickl.api.UpdateEventPublisher;
 import ch.agent.crnickl.api.ValueType;
+import ch.agent.crnickl.api.ValueType.StandardValueType;
+import ch.agent.t2.T2Exception;
 import ch.agent.t2.time.Range;
 import ch.agent.t2.time.TimeDomainCatalog;
 import ch.agent.t2.time.TimeIndex;
+import ch.agent.t2.timeseries.AbstractTimeSeries;
 import ch.agent.t2.timeseries.Observation;
 import ch.agent.t2.timeseries.TimeAddressable;
 
@@ -61,7 +79,7 @@ import ch.agent.t2.timeseries.TimeAddressable;
  */
 public abstract class DatabaseBackendImpl implements DatabaseBackend {
 
-	private int hashCode = -1;
+	private final int hashCode;
 	
 	private DatabaseCache cache;
 	private final TimeDomainCatalog timeDomainCatalog;
@@ -70,11 +88,16 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 	private MessageListener messageListener;
 	private PermissionChecker permissionChecker;
 	private SchemaUpdatePolicy sup;
+	private AttributeIndex attributeIndex;
+	private SchemaIndex schemaIndex;
 	private ChronicleUpdatePolicyExtension eupx;
 	private ChronicleUpdatePolicy eup;
 	private NamingPolicy nm;
 	private boolean strictNameSpaceMode;
+	private final AtomicInteger nameGeneration;
+	private final SurrogatePool surrogates;
 	private Map<String, ValueAccessMethods<?>> am;
+	private Map<StandardValueType, ValueAccessMethods<?>> standardAm;
 	
 	/**
 	 * Construct a {@link DatabaseBackend}.
@@ -83,10 +106,14 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 	 * @param timeDomainCatalog the catalog to use for scanning time domains
 	 */
 	public DatabaseBackendImpl(String name, TimeDomainCatalog timeDomainCatalog) {
+		nameGeneration = new AtomicInteger();
+		hashCode = name.hashCode();
+		surrogates = new SurrogatePool(this);
 		topChronicle = new NameSpace(name, String.format("%s (%s)", getClass().getSimpleName(), name), new SurrogateImpl(this, DBObjectType.CHRONICLE, null));
 		setMessageListener(null);
 		nm = new NamingPolicy();
 		am = new HashMap<String, ValueAccessMethods<?>>();
+		standardAm = new EnumMap<StandardValueType, ValueAccessMethods<?>>(StandardValueType.class);
 		this.timeDomainCatalog = timeDomainCatalog;
 	}
 	
@@ -106,6 +133,28 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 	@Override
 	public void clear() throws T2DBException {
 		getCache().clear();
+		if (attributeIndex != null)
+			attributeIndex.clear();
+		if (schemaIndex != null)
+			schemaIndex.clear();
+	}
+	
+	/**
+	 * Forget the state kept in memory which can reflect modifications not
+	 * committed. Implementations of {@link #rollback()} must call this method
+	 * once modifications have been reverted. It clears the cache and the
+	 * schema index, which is maintained before commit, and discards pending
+	 * update events.
+	 */
+	protected void rolledBack() {
+		if (getCache() != null)
+			getCache().clear();
+		synchronized (this) {
+			if (schemaIndex != null)
+				schemaIndex.clear();
+		}
+		if (getUpdateEventPublisher() instanceof UpdateEventPublisherImpl)
+			((UpdateEventPublisherImpl) getUpdateEventPublisher()).clear();
 	}
 
 	private MessageListener getDefaultMessageListener() {
@@ -151,16 +200,54 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 		};
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Access methods of standard value types are found in a table indexed by
+	 * {@link StandardValueType}. Only access methods of custom value types
+	 * are looked up by external representation.
+	 */
 	@SuppressWarnings("unchecked")
 	@Override
 	public <T>ValueAccessMethods<T> getAccessMethods(ValueType<T> valueType) {
-		ValueAccessMethods<?> accessMethods = am.get(valueType.getExternalRepresentation());
+		StandardValueType standard = valueType.getStandardValueType();
+		ValueAccessMethods<?> accessMethods = standard == null ? 
+				am.get(valueType.getExternalRepresentation()) : standardAm.get(standard);
 		return (ValueAccessMethods<T>) accessMethods;
 	}
 
 	@Override
 	public <T>void setAccessMethods(String valueTypeExternalRepresentation, ValueAccessMethods<T> accessMethods) {
 		am.put(valueTypeExternalRepresentation, (ValueAccessMethods<?>)accessMethods);
+		StandardValueType standard = standardValueType(valueTypeExternalRepresentation);
+		if (standard != null)
+			standardAm.put(standard, (ValueAccessMethods<?>)accessMethods);
+	}
+	
+	private StandardValueType standardValueType(String externalRepresentation) {
+		for (StandardValueType standard : StandardValueType.values()) {
+			if (standard.name().equals(externalRepresentation))
+				return standard;
+		}
+		return null;
+	}
+	
+	/**
+	 * Return the access methods for the values of a series. The access
+	 * methods are bound to {@link SeriesDefinitionImpl} objects, shared by
+	 * all series of a schema, and kept in {@link SeriesImpl} objects when
+	 * first used.
+	 * 
+	 * @param series a series
+	 * @return an access methods object
+	 * @throws T2DBException
+	 */
+	@SuppressWarnings("unchecked")
+	private <T>ValueAccessMethods<T> accessMethods(Series<T> series) throws T2DBException {
+		if (series instanceof SeriesImpl)
+			return ((SeriesImpl<T>) series).getAccessMethods();
+		else
+			return ((ValueTypeImpl<T>) series.getValueType()).getAccessMethods();
 	}
 	
 	@Override
@@ -170,16 +257,36 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 	
 	@Override
 	public void setStrictNameSpaceMode(boolean strictNameSpaceMode) {
-		if (strictNameSpaceMode != this.strictNameSpaceMode)
+		if (strictNameSpaceMode != this.strictNameSpaceMode) {
 			getCache().clear(); // avoid a mixture of strict and loose names in the cache
+			newNameGeneration();
+		}
 		this.strictNameSpaceMode = strictNameSpaceMode;
 	}
+	
+	@Override
+	public int getNameGeneration() {
+		return nameGeneration.get();
+	}
+
+	@Override
+	public void newNameGeneration() {
+		nameGeneration.incrementAndGet();
+	}
 
 	@Override
 	public Surrogate makeSurrogate(String string) throws T2DBException {
 		return SurrogateImpl.makeSurrogate(this, string);
 	}
 
+	@Override
+	public Surrogate makeSurrogate(DBObjectType dot, DBObjectId id) {
+		if (id == null)
+			return new SurrogateImpl(this, dot, id);
+		else
+			return surrogates.get(dot, id);
+	}
+
 	/**
 	 * Check the validity of a surrogate for this database and a given database object type.
 	 * 
@@ -297,6 +404,26 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 		return sup;
 	}
 	
+	@Override
+	public synchronized AttributeIndex getAttributeIndex() {
+		if (attributeIndex == null) {
+			attributeIndex = new AttributeIndex(this);
+			getUpdateEventPublisher().subscribe(attributeIndex, DBObjectType.CHRONICLE, false);
+			getUpdateEventPublisher().subscribe(attributeIndex, DBObjectType.PROPERTY, false);
+			getUpdateEventPublisher().subscribe(attributeIndex, DBObjectType.VALUE_TYPE, false);
+		}
+		return attributeIndex;
+	}
+	
+	@Override
+	public synchronized SchemaIndex getSchemaIndex() {
+		if (schemaIndex == null) {
+			schemaIndex = new SchemaIndex(this);
+			getUpdateEventPublisher().subscribe(schemaIndex, DBObjectType.SCHEMA, true);
+		}
+		return schemaIndex;
+	}
+	
 	@Override
 	public UpdateEventPublisher getUpdateEventPublisher() {
 		if (eventHub == null)
@@ -360,19 +487,15 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 		String name = getTopChronicle().getName(true);
 		name = getNamingPolicy().checkSimpleName(name, false);
 		if (!isStrictNameSpaceMode()) {
-			Collection<Chronicle> topMembers = null;
+			// check that there is no top member named like the name space
+			Chronicle topMember = null;
 			try {
-				topMembers = topChronicle.getMembers();
+				topMember = getChronicleOrNull(topChronicle, name);
 			} catch (T2DBException e) {
 				// probably the database has not been set up yet, so nothing wrong
-				topMembers = new ArrayList<Chronicle>();
-			}
-			// check that there is no top member named like the name space
-			for (Chronicle en : topMembers) {
-				if (en.getName(false).equals(name)){
-					throw T2DBMsg.exception(D.D00110, name);
-				}
 			}
+			if (topMember != null)
+				throw T2DBMsg.exception(D.D00110, name);
 		}
 	}
 	
@@ -383,6 +506,53 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 		return topChronicle;
 	}
 	
+	@Override
+	public DatabaseSnapshot snapshot() throws T2DBException {
+		return snapshot(getTopChronicle());
+	}
+
+	@Override
+	public DatabaseSnapshot snapshot(Chronicle collection) throws T2DBException {
+		return new DatabaseSnapshotImpl(this, collection);
+	}
+
+	@Override
+	public void traverse(Chronicle collection, ChronicleVisitor visitor, int maxDepth, int parallelism) throws T2DBException {
+		new ChronicleTraversal(this, visitor, maxDepth, parallelism).traverse(collection);
+	}
+	
+	@Override
+	public void query(ChroniclePredicate predicate, ChronicleVisitor visitor) throws T2DBException {
+		new ChronicleQuery(this, predicate).execute(visitor);
+	}
+	
+	@Override
+	public List<Chronicle> query(ChroniclePredicate predicate, int maxSize) throws T2DBException {
+		return new ChronicleQuery(this, predicate).execute(maxSize);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This default implementation evaluates {@link Operator#ATTRIBUTE}
+	 * predicates with {@link #getChroniclesByAttributeValue}, and returns
+	 * null for all other predicates.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public Collection<Surrogate> getChronicles(ChroniclePredicate predicate) throws T2DBException {
+		if (predicate.getOperator() != Operator.ATTRIBUTE)
+			return null;
+		Property<Object> property = (Property<Object>) predicate.getProperty();
+		Set<Surrogate> result = new LinkedHashSet<Surrogate>();
+		for (Object value : predicate.getValues()) {
+			for (Chronicle chronicle : getChroniclesByAttributeValue(property, value, 0)) {
+				result.add(chronicle.getSurrogate());
+			}
+		}
+		return result;
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * <p>
@@ -438,29 +608,155 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 		return chronicle;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This default implementation gets all chronicles with the parent and
+	 * keeps the requested page. Backends able to page in the database should
+	 * override it.
+	 */
+	@Override
+	public Collection<Chronicle> getChroniclesByParent(Chronicle parent, String after, int maxSize) throws T2DBException {
+		TreeMap<String, Chronicle> page = new TreeMap<String, Chronicle>();
+		if (maxSize > 0) {
+			for (Chronicle chronicle : getChroniclesByParent(parent)) {
+				String name = chronicle.getName(false);
+				if (after == null || name.compareTo(after) > 0) {
+					page.put(name, chronicle);
+					if (page.size() > maxSize)
+						page.pollLastEntry();
+				}
+			}
+		}
+		return new ArrayList<Chronicle>(page.values());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This default implementation gets all chronicles with the parent and
+	 * counts them. Backends able to count in the database should override it.
+	 */
+	@Override
+	public int countChroniclesByParent(Chronicle parent) throws T2DBException {
+		return getChroniclesByParent(parent).size();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This default implementation asks for a page of one member. Backends
+	 * should override it with a cheaper existence test.
+	 */
+	@Override
+	public boolean hasMembers(Chronicle chronicle) throws T2DBException {
+		return getChroniclesByParent(chronicle, null, 1).size() > 0;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This default implementation gets all series of the chronicle. Backends
+	 * should override it with a cheaper existence test.
+	 */
+	@Override
+	public boolean hasSeries(Chronicle chronicle) throws T2DBException {
+		return chronicle.getSeries().size() > 0;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This default implementation gets the first observation of the series.
+	 */
+	@Override
+	public <T> boolean hasValues(Series<T> series) throws T2DBException {
+		return getFirstObservation(series, null) != null;
+	}
+	
 	@Override
 	public <T> Range getRange(Series<T> series) throws T2DBException {
-		return ((ValueTypeImpl<T>) series.getValueType()).getAccessMethods().getRange(series);
+		return accessMethods(series).getRange(series);
 	}
 
 	@Override
 	public <T> long getValues(Series<T> series, Range range, TimeAddressable<T> ts) throws T2DBException {
-		return ((ValueTypeImpl<T>) series.getValueType()).getAccessMethods().getValues(series, range, ts);
+		return accessMethods(series).getValues(series, range, ts);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Series are grouped by access methods. Each group with access methods
+	 * implementing {@link BatchValueAccessMethods} is read in a single
+	 * request. Other series are read one at a time.
+	 */
+	@Override
+	public double[][] getValues(List<Series<Double>> series, Range range) throws T2DBException {
+		int size;
+		try {
+			size = range.getSizeAsInt();
+		} catch (T2Exception e) {
+			throw T2DBMsg.exception(e, D.D50132, range.toString());
+		}
+		double[][] columns = new double[series.size()][size];
+		Map<ValueAccessMethods<Double>, List<Integer>> groups = new IdentityHashMap<ValueAccessMethods<Double>, List<Integer>>();
+		for (int i = 0; i < series.size(); i++) {
+			// fails on series with a value type other than numeric
+			Series<Double> s = series.get(i).typeCheck(Double.class);
+			if (!s.getTimeDomain().equals(range.getTimeDomain()))
+				throw T2DBMsg.exception(D.D50131, s.getName(true), range.toString(), s.getTimeDomain().getLabel());
+			Arrays.fill(columns[i], Double.NaN);
+			if (size == 0 || s.getSurrogate().inConstruction())
+				continue;
+			ValueAccessMethods<Double> methods = accessMethods(s);
+			List<Integer> group = groups.get(methods);
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(methods, group);
+			}
+			group.add(i);
+		}
+		for (Map.Entry<ValueAccessMethods<Double>, List<Integer>> e : groups.entrySet()) {
+			List<Integer> group = e.getValue();
+			if (e.getKey() instanceof BatchValueAccessMethods) {
+				List<Series<Double>> batch = new ArrayList<Series<Double>>(group.size());
+				double[][] batchColumns = new double[group.size()][];
+				for (int i = 0; i < group.size(); i++) {
+					batch.add(series.get(group.get(i)));
+					batchColumns[i] = columns[group.get(i)];
+				}
+				((BatchValueAccessMethods) e.getKey()).getValues(batch, range, batchColumns);
+			} else {
+				for (Integer i : group) {
+					Series<Double> s = series.get(i);
+					TimeAddressable<Double> ts = AbstractTimeSeries.make(Double.class, range.getTimeDomain(), true);
+					e.getKey().getValues(s, range, ts);
+					long first = range.getFirstIndex();
+					for (Observation<Double> obs : ts) {
+						Double value = obs.getValue();
+						if (value != null)
+							columns[i][(int) (obs.getIndex() - first)] = value;
+					}
+				}
+			}
+		}
+		return columns;
 	}
 	
 	@Override
 	public <T> Observation<T> getFirstObservation(Series<T> series, TimeIndex time) throws T2DBException {
-		return ((ValueTypeImpl<T>) series.getValueType()).getAccessMethods().getFirst(series, time);
+		return accessMethods(series).getFirst(series, time);
 	}
 
 	@Override
 	public <T> Observation<T> getLastObservation(Series<T> series, TimeIndex time) throws T2DBException {
-		return ((ValueTypeImpl<T>) series.getValueType()).getAccessMethods().getLast(series, time);
+		return accessMethods(series).getLast(series, time);
 	}
 	
 	@Override
 	public <T>boolean update(UpdatableSeries<T> series, Range range) throws T2DBException {
-		boolean done = ((ValueTypeImpl<T>) series.getValueType()).getAccessMethods().updateSeries(series, range, getChronicleUpdatePolicy());
+		boolean done = accessMethods(series).updateSeries(series, range, getChronicleUpdatePolicy());
 		if (done)
 			publish(new UpdateEventImpl(UpdateEventOperation.MODIFY, series));
 		return done;
@@ -468,7 +764,7 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 
 	@Override
 	public <T>boolean deleteValue(UpdatableSeries<T> series, TimeIndex t) throws T2DBException {
-		boolean done = ((ValueTypeImpl<T>) series.getValueType()).getAccessMethods().deleteValue(series, t, getChronicleUpdatePolicy());
+		boolean done = accessMethods(series).deleteValue(series, t, getChronicleUpdatePolicy());
 		if (done)
 			publish(new UpdateEventImpl(UpdateEventOperation.MODIFY, series));
 		return done;
@@ -476,7 +772,7 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 	
 	@Override
 	public <T>long update(UpdatableSeries<T> series, TimeAddressable<T> values) throws T2DBException {
-		long count = ((ValueTypeImpl<T>) series.getValueType()).getAccessMethods().updateValues(series, values, getChronicleUpdatePolicy());
+		long count = accessMethods(series).updateValues(series, values, getChronicleUpdatePolicy());
 		if (count > 0) {
 			UpdateEventImpl event = new UpdateEventImpl(UpdateEventOperation.MODIFY, series);
 			if (getMessageListener().isListened(Level.FINER))
@@ -556,6 +852,46 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 		return result;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This default implementation loads all schemas. Backends should
+	 * override it when the base of a schema can be read directly.
+	 */
+	@Override
+	public Map<Surrogate, Surrogate> getSchemaBases() throws T2DBException {
+		Map<Surrogate, Surrogate> result = new HashMap<Surrogate, Surrogate>();
+		for (UpdatableSchema schema : getUpdatableSchemas("*")) {
+			UpdatableSchema base = schema.getBase();
+			result.put(schema.getSurrogate(), base == null ? null : base.getSurrogate());
+		}
+		return result;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This default implementation checks each definition separately.
+	 * Backends should override it when all definitions can be checked 
+	 * with a single query.
+	 */
+	@Override
+	public Map<SchemaComponent, Surrogate> findChronicles(Collection<SeriesDefinition> series,
+			Collection<AttributeDefinition<?>> attributes, Schema schema) throws T2DBException {
+		Map<SchemaComponent, Surrogate> result = new IdentityHashMap<SchemaComponent, Surrogate>();
+		for (SeriesDefinition ss : series) {
+			Surrogate entity = findChronicle(ss, schema);
+			if (entity != null)
+				result.put(ss, entity);
+		}
+		for (AttributeDefinition<?> def : attributes) {
+			Surrogate entity = findChronicle(def.getProperty(), schema);
+			if (entity != null)
+				result.put(def, entity);
+		}
+		return result;
+	}
+	
 	@Override
 	public UpdatableSchema getUpdatableSchema(Schema schema) throws T2DBException {
 		if (schema instanceof UpdatableSchema)
@@ -590,12 +926,14 @@ public abstract class DatabaseBackendImpl implements DatabaseBackend {
 		return new UpdatableSchemaImpl(name, base, null, null, surrogate);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The hash code is the one of the database name and is computed once.
+	 */
 	@Override
 	public int hashCode() {
-		if (hashCode >= 0)
-			return  hashCode;
-		else
-			return toString().hashCode();
+		return hashCode;
 	}
 
 	@Override
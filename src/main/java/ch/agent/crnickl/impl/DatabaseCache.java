@@ -16,6 +16,8 @@
  */
 package ch.agent.crnickl.impl;
 
+import java.util.List;
+
 import ch.agent.crnickl.T2DBException;
 import ch.agent.crnickl.api.Chronicle;
 import ch.agent.crnickl.api.Property;
@@ -56,6 +58,16 @@ public interface DatabaseCache {
 	 */
 	ChronicleImpl lookUpChronicle(String name);
 	
+	/**
+	 * Return all chronicles in the cache with a name equal to the prefix or
+	 * starting with the prefix followed by a name separator. When the prefix is
+	 * null or empty, return all chronicles in the cache.
+	 * 
+	 * @param prefix a full name or null
+	 * @return a list of chronicles, possibly empty
+	 */
+	List<ChronicleImpl> lookUpChronicles(String prefix);
+	
 	/**
 	 * Look up a property in the cache by name. If not in the cache
 	 * get it from the database. Throw an exception if not found.
@@ -93,6 +105,17 @@ public interface DatabaseCache {
 	 */
 	void clear(Chronicle chronicle);
 	
+	/**
+	 * Remove the chronicle with a name and all chronicles with a name
+	 * starting with it, followed by a name separator, from the cache. This
+	 * method must be called before renaming or deleting a chronicle, because
+	 * the names of its descendants change or disappear.
+	 * 
+	 * @param name
+	 *            the full name of a chronicle
+	 */
+	void clearTree(String name);
+	
 	/**
 	 * Remove a schema from the cache if present. This method must be called
 	 * before renaming or deleting a schema.
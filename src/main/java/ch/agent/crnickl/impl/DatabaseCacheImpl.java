@@ -142,7 +142,7 @@ public class DatabaseCacheImpl implements DatabaseCache {
 	private int removedTotal;
 	private int removedTotalThreshold = 1;
 	private Map<Object, ChronicleImpl> byIdCache;
-	private Map<String, ChronicleImpl> byNameCache;
+	private NameTrie<ChronicleImpl> byNameCache;
 	private Map<Object, SchemaRefCounter> schemaCache;
 	private Map<Object, PropertyRefCounter> propCache;
 	private Map<String, Property<?>> propByNameCache;
@@ -159,7 +159,7 @@ public class DatabaseCacheImpl implements DatabaseCache {
 		this.db = db;
 		this.capacity = capacity;
 		byIdCache = Collections.synchronizedMap(new ChronicleCache(capacity, loadFactor, this));
-		byNameCache = Collections.synchronizedMap(new HashMap<String, ChronicleImpl>());
+		byNameCache = new NameTrie<ChronicleImpl>();
 		schemaCache = Collections.synchronizedMap(new HashMap<Object, SchemaRefCounter>());
 		propCache = Collections.synchronizedMap(new HashMap<Object, PropertyRefCounter>());
 		propByNameCache = Collections.synchronizedMap(new HashMap<String, Property<?>>());
@@ -209,7 +209,16 @@ public class DatabaseCacheImpl implements DatabaseCache {
 //		else
 //			message(Level.INFO, String.format("*** CACHE HIT: %s %s %d", ent.toString(), ent.getKey().toString(), size()));
 //		return ent;
-		return byNameCache.get(name);
+		synchronized (byNameCache) {
+			return byNameCache.get(name);
+		}
+	}
+	
+	@Override
+	public List<ChronicleImpl> lookUpChronicles(String prefix) {
+		synchronized (byNameCache) {
+			return byNameCache.getAll(prefix);
+		}
 	}
 	
 	@Override
@@ -237,11 +246,22 @@ public class DatabaseCacheImpl implements DatabaseCache {
 	}
 
 	private void remove(ChronicleImpl entity) {
+		try {
+			unRefSchema(entity);
+			synchronized (byNameCache) {
+				byNameCache.remove(entity.getName(true));
+			}
+		} catch (T2DBException e) {
+			// never happens since entity in cache has full info 
+			throw new RuntimeException("bug", e);
+		}
+	}
+	
+	private void unRefSchema(ChronicleImpl entity) {
 		try {
 			Schema schema = entity.getSchema(false);
 			if (schema != null)
 				unRef((SchemaImpl) schema);
-			byNameCache.remove(entity.getName(true));
 		} catch (T2DBException e) {
 			// never happens since entity in cache has full info 
 			throw new RuntimeException("bug", e);
@@ -251,7 +271,9 @@ public class DatabaseCacheImpl implements DatabaseCache {
 	private void put(ChronicleImpl entity) {
 		try {
 			byIdCache.put(((SurrogateImpl) entity.getSurrogate()).getId(), entity);
-			byNameCache.put(entity.getName(true), entity);
+			synchronized (byNameCache) {
+				byNameCache.put(entity.getName(true), entity);
+			}
 		} catch (T2DBException e) {
 			// never happens since entity in cache has full info 
 			throw new RuntimeException("bug", e);
@@ -391,7 +413,9 @@ public class DatabaseCacheImpl implements DatabaseCache {
 	 * such objects are expected to be (very very) rare.
 	 */
 	private void reset() {
-		byNameCache.clear();
+		synchronized (byNameCache) {
+			byNameCache.clear();
+		}
 		byIdCache.clear();
 		schemaCache.clear();
 		propCache.clear();
@@ -413,9 +437,40 @@ public class DatabaseCacheImpl implements DatabaseCache {
 		}
 	}
 
+	@Override
+	public void clearTree(String name) {
+		List<ChronicleImpl> removed;
+		synchronized (byNameCache) {
+			removed = byNameCache.removeAll(name);
+		}
+		for (ChronicleImpl e : removed) {
+			if (byIdCache.remove(((SurrogateImpl) e.getSurrogate()).getId()) != null)
+				unRefSchema(e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The cache is cleared when it contains the schema or a schema extending
+	 * it, because resolved schemas include the components of their bases.
+	 */
 	@Override
 	public void clear(Schema schema) {
-		if (schemaCache.get(((SurrogateImpl) schema.getSurrogate()).getId()) != null)
+		boolean cached = schemaCache.get(((SurrogateImpl) schema.getSurrogate()).getId()) != null;
+		if (!cached && !schemaCache.isEmpty()) {
+			try {
+				for (Surrogate s : ((DatabaseBackend) db).getSchemaIndex().getDescendants(schema.getSurrogate())) {
+					if (schemaCache.get(((SurrogateImpl) s).getId()) != null) {
+						cached = true;
+						break;
+					}
+				}
+			} catch (T2DBException e) {
+				cached = true;
+			}
+		}
+		if (cached)
 			clear(); // keep it simple, schema updates are very rare
 	}
 
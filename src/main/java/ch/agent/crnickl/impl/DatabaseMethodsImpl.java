@@ -50,7 +50,7 @@ public class DatabaseMethodsImpl implements DatabaseMethods, PermissionChecker {
 	
 	@Override
 	public Surrogate makeSurrogate(Database db, DBObjectType dot, DBObjectId id) {
-		return new SurrogateImpl((DatabaseBackend) db, dot, id);
+		return ((DatabaseBackend) db).makeSurrogate(dot, id);
 	}
 
 	@Override
@@ -0,0 +1,590 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.T2DBMsg;
+import ch.agent.crnickl.T2DBMsg.D;
+import ch.agent.crnickl.api.Attribute;
+import ch.agent.crnickl.api.AttributeDefinition;
+import ch.agent.crnickl.api.Chronicle;
+import ch.agent.crnickl.api.DBObjectId;
+import ch.agent.crnickl.api.Database;
+import ch.agent.crnickl.api.DatabaseSnapshot;
+import ch.agent.crnickl.api.Property;
+import ch.agent.crnickl.api.Schema;
+import ch.agent.crnickl.api.Series;
+import ch.agent.crnickl.api.Surrogate;
+import ch.agent.crnickl.api.UpdatableChronicle;
+import ch.agent.crnickl.api.UpdatableSeries;
+
+/**
+ * Default implementation of {@link DatabaseSnapshot}. All chronicles are
+ * materialized in the constructor. After construction, the snapshot and its
+ * chronicles are never modified. All fields are final, so a snapshot can be
+ * shared by threads once the constructor has returned.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class DatabaseSnapshotImpl implements DatabaseSnapshot {
+
+	/**
+	 * A frozen attribute value. A new attribute is made each time the
+	 * attribute is requested, because attributes are modifiable.
+	 */
+	private static class FrozenAttribute<T> {
+		private final AttributeDefinition<T> definition;
+		private final T value;
+		private final String description;
+		
+		@SuppressWarnings("unchecked")
+		private FrozenAttribute(AttributeDefinition<T> definition, Attribute<?> attribute) {
+			this.definition = definition;
+			this.value = (T) attribute.get();
+			this.description = attribute.getDescription(false);
+		}
+		
+		private Attribute<T> thaw() throws T2DBException {
+			Attribute<T> attribute = definition.getAttribute();
+			if (value == null)
+				attribute.reset();
+			else
+				attribute.set(value);
+			attribute.setDescription(description);
+			return attribute;
+		}
+	}
+	
+	/**
+	 * A frozen chronicle. Name, description, collection, and schema are preset
+	 * when constructing the chronicle and are never loaded from the database.
+	 */
+	private class FrozenChronicle extends ChronicleImpl {
+		
+		private final Map<String, FrozenAttribute<?>> attributes;
+		
+		private FrozenChronicle(Chronicle chronicle, Chronicle collection) throws T2DBException {
+			super(chronicle.getName(false), chronicle.getDescription(false), collection, 
+					chronicle.getSchema(false), chronicle.getSurrogate());
+			attributes = new LinkedHashMap<String, FrozenAttribute<?>>();
+		}
+		
+		@Override
+		public UpdatableChronicle edit() {
+			return new FrozenUpdatableChronicle(this);
+		}
+
+		@Override
+		public Collection<Chronicle> getMembers() throws T2DBException {
+			return membersOf(this);
+		}
+
+		@Override
+		public Collection<Chronicle> getMembers(String after, int maxSize) throws T2DBException {
+			return membersOf(this, after, maxSize);
+		}
+
+		@Override
+		public int countMembers() throws T2DBException {
+			return members.get(this).size();
+		}
+
+		@Override
+		public Chronicle getChronicle(String simpleName, boolean mustExist) throws T2DBException {
+			return memberOf(this, simpleName, mustExist);
+		}
+
+		@Override
+		public Chronicle findChronicle(String fullName, boolean mustExist) throws T2DBException {
+			return DatabaseSnapshotImpl.this.getChronicle(fullName, mustExist);
+		}
+
+		@Override
+		public Attribute<?> getAttribute(String attrName, boolean mustExist) throws T2DBException {
+			FrozenAttribute<?> attribute = attributes.get(attrName);
+			if (attribute != null)
+				return attribute.thaw();
+			Schema esch = getSchema(true);
+			if (esch == null) {
+				if (mustExist)
+					throw T2DBMsg.exception(D.D40114, getName(true));
+			} else
+				esch.getAttributeDefinition(attrName, mustExist);
+			return null;
+		}
+
+		@Override
+		public Collection<Attribute<?>> getAttributes() throws T2DBException {
+			Collection<Attribute<?>> result = new ArrayList<Attribute<?>>(attributes.size());
+			for (FrozenAttribute<?> attribute : attributes.values()) {
+				result.add(attribute.thaw());
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * A frozen name space. It is equal to the top chronicle of its database.
+	 * Like frozen chronicles, it rejects all modifications.
+	 */
+	private class FrozenNameSpace extends NameSpace {
+
+		private FrozenNameSpace(Chronicle topChronicle) throws T2DBException {
+			super(topChronicle.getName(false), topChronicle.getDescription(false), topChronicle.getSurrogate());
+		}
+		
+		@Override
+		public UpdatableChronicle edit() {
+			return new FrozenUpdatableChronicle(this);
+		}
+
+		@Override
+		public UpdatableChronicle createChronicle(String name, boolean tweakable, String description, 
+				Collection<Attribute<?>> attributes, Schema schema) throws T2DBException {
+			throw T2DBMsg.exception(D.D40116, getName(true));
+		}
+
+		@Override
+		public void setCollection(Chronicle collection) throws T2DBException {
+			throw T2DBMsg.exception(D.D40116, getName(true));
+		}
+
+		@Override
+		public void setSchema(Schema schema) throws T2DBException {
+			throw T2DBMsg.exception(D.D40116, getName(true));
+		}
+
+		@Override
+		public void applyUpdates() throws T2DBException {
+			throw T2DBMsg.exception(D.D40116, getName(true));
+		}
+
+		@Override
+		public void updateAttributes(Collection<Attribute<?>> attributes) throws T2DBException {
+			throw T2DBMsg.exception(D.D40116, getName(true));
+		}
+
+		@Override
+		public Collection<Chronicle> getMembers() throws T2DBException {
+			return membersOf(this);
+		}
+
+		@Override
+		public Collection<Chronicle> getMembers(String after, int maxSize) throws T2DBException {
+			return membersOf(this, after, maxSize);
+		}
+
+		@Override
+		public int countMembers() throws T2DBException {
+			return members.get(this).size();
+		}
+
+		@Override
+		public Chronicle getChronicle(String simpleName, boolean mustExist) throws T2DBException {
+			return memberOf(this, simpleName, mustExist);
+		}
+
+		@Override
+		public Chronicle findChronicle(String fullName, boolean mustExist) throws T2DBException {
+			return DatabaseSnapshotImpl.this.getChronicle(fullName, mustExist);
+		}
+
+		@Override
+		public int hashCode() {
+			return super.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Chronicle))
+				return false;
+			Chronicle other = (Chronicle) obj;
+			return other.isTopChronicle() && getDatabase().equals(other.getDatabase());
+		}
+
+	}
+	
+	/**
+	 * The updatable chronicle of a frozen chronicle. It gives the same answers
+	 * as the frozen chronicle and rejects all modifications.
+	 */
+	private static class FrozenUpdatableChronicle implements UpdatableChronicle {
+		
+		private final Chronicle frozen;
+		
+		private FrozenUpdatableChronicle(Chronicle frozen) {
+			this.frozen = frozen;
+		}
+		
+		private T2DBException frozen() throws T2DBException {
+			return T2DBMsg.exception(D.D40116, frozen.getName(true));
+		}
+
+		@Override
+		public Surrogate getSurrogate() {
+			return frozen.getSurrogate();
+		}
+
+		@Override
+		public Database getDatabase() {
+			return frozen.getDatabase();
+		}
+
+		@Override
+		public DBObjectId getId() {
+			return frozen.getId();
+		}
+
+		@Override
+		public boolean inConstruction() {
+			return frozen.inConstruction();
+		}
+
+		@Override
+		public boolean isValid() {
+			return frozen.isValid();
+		}
+
+		@Override
+		public UpdatableChronicle edit() {
+			return this;
+		}
+
+		@Override
+		public boolean isTopChronicle() {
+			return frozen.isTopChronicle();
+		}
+
+		@Override
+		public boolean isMemberOf(Chronicle collection) throws T2DBException {
+			return frozen.isMemberOf(collection);
+		}
+
+		@Override
+		public Chronicle getChronicle(String simpleName, boolean mustExist) throws T2DBException {
+			return frozen.getChronicle(simpleName, mustExist);
+		}
+
+		@Override
+		public Chronicle findChronicle(String fullName, boolean mustExist) throws T2DBException {
+			return frozen.findChronicle(fullName, mustExist);
+		}
+
+		@Override
+		public Chronicle getCollection() throws T2DBException {
+			return frozen.getCollection();
+		}
+
+		@Override
+		public Collection<Chronicle> getMembers() throws T2DBException {
+			return frozen.getMembers();
+		}
+
+		@Override
+		public Collection<Chronicle> getMembers(String after, int maxSize) throws T2DBException {
+			return frozen.getMembers(after, maxSize);
+		}
+
+		@Override
+		public int countMembers() throws T2DBException {
+			return frozen.countMembers();
+		}
+
+		@Override
+		public String getName(boolean full) throws T2DBException {
+			return frozen.getName(full);
+		}
+
+		@Override
+		public List<String> getNames() throws T2DBException {
+			return frozen.getNames();
+		}
+
+		@Override
+		public String getDescription(boolean full) throws T2DBException {
+			return frozen.getDescription(full);
+		}
+
+		@Override
+		public List<String> getDescriptions() throws T2DBException {
+			return frozen.getDescriptions();
+		}
+
+		@Override
+		public Schema getSchema(boolean effective) throws T2DBException {
+			return frozen.getSchema(effective);
+		}
+
+		@Override
+		public Attribute<?> getAttribute(String name, boolean mustExist) throws T2DBException {
+			return frozen.getAttribute(name, mustExist);
+		}
+
+		@Override
+		public Collection<Attribute<?>> getAttributes() throws T2DBException {
+			return frozen.getAttributes();
+		}
+
+		@Override
+		public <T> Series<T> getSeries(String name) throws T2DBException {
+			return frozen.getSeries(name);
+		}
+
+		@Override
+		public <T> Series<T>[] getSeries(String[] names, Class<T> type, boolean mustBeDefined) throws T2DBException {
+			return frozen.getSeries(names, type, mustBeDefined);
+		}
+
+		@Override
+		public Collection<Series<?>> getSeries() throws T2DBException {
+			return frozen.getSeries();
+		}
+
+		@Override
+		public void setName(String name) throws T2DBException {
+			throw frozen();
+		}
+
+		@Override
+		public void setDescription(String description) throws T2DBException {
+			throw frozen();
+		}
+
+		@Override
+		public void setAttribute(Attribute<?> value) throws T2DBException {
+			throw frozen();
+		}
+
+		@Override
+		public void setCollection(Chronicle collection) throws T2DBException {
+			throw frozen();
+		}
+
+		@Override
+		public void setSchema(Schema schema) throws T2DBException {
+			throw frozen();
+		}
+
+		@Override
+		public void destroy() throws T2DBException {
+			throw frozen();
+		}
+
+		@Override
+		public <T> UpdatableSeries<T> createSeries(String name) throws T2DBException {
+			throw frozen();
+		}
+
+		@Override
+		public <T> UpdatableSeries<T> updateSeries(String name) throws T2DBException {
+			throw frozen();
+		}
+
+		@Override
+		public UpdatableChronicle createChronicle(String name, boolean tweakName, String description, 
+				Collection<Attribute<?>> attributes, Schema schema) throws T2DBException {
+			throw frozen();
+		}
+
+		@Override
+		public void applyUpdates() throws T2DBException {
+			throw frozen();
+		}
+
+		@Override
+		public int hashCode() {
+			return frozen.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return frozen.equals(obj);
+		}
+
+		@Override
+		public String toString() {
+			return frozen.toString();
+		}
+	}
+	
+	private final DatabaseBackend database;
+	private final Chronicle root;
+	private final List<Chronicle> chronicles;
+	private final Map<Surrogate, Chronicle> bySurrogate;
+	private final Map<String, Chronicle> byName;
+	private final Map<Chronicle, NavigableMap<String, Chronicle>> members;
+	private final Collection<Schema> schemas;
+	private final Collection<Property<?>> properties;
+
+	/**
+	 * Construct a snapshot of a chronicle and of all its members, directly or
+	 * indirectly.
+	 * 
+	 * @param database a database
+	 * @param collection a chronicle
+	 * @throws T2DBException
+	 */
+	public DatabaseSnapshotImpl(DatabaseBackend database, Chronicle collection) throws T2DBException {
+		this.database = database;
+		chronicles = new ArrayList<Chronicle>();
+		bySurrogate = new HashMap<Surrogate, Chronicle>();
+		byName = new HashMap<String, Chronicle>();
+		members = new HashMap<Chronicle, NavigableMap<String, Chronicle>>();
+		
+		// freeze ancestors, top chronicle first
+		List<Chronicle> ancestors = new ArrayList<Chronicle>();
+		for (Chronicle c = collection; c != null; c = c.getCollection()) {
+			ancestors.add(c);
+		}
+		Collections.reverse(ancestors);
+		Chronicle parent = new FrozenNameSpace(ancestors.get(0));
+		members.put(parent, new TreeMap<String, Chronicle>());
+		for (int i = 1; i < ancestors.size() - 1; i++) {
+			parent = freeze(ancestors.get(i), parent);
+		}
+		
+		if (collection.isTopChronicle()) {
+			root = parent;
+			register(root);
+		} else {
+			root = freeze(collection, parent);
+			register(root);
+		}
+		materialize(collection, root);
+		
+		schemas = Collections.unmodifiableCollection(database.getSchemas("*"));
+		properties = Collections.unmodifiableCollection(database.getProperties("*"));
+	}
+	
+	private void materialize(Chronicle chronicle, Chronicle frozen) throws T2DBException {
+		for (Chronicle member : database.getChroniclesByParent(chronicle)) {
+			Chronicle frozenMember = freeze(member, frozen);
+			register(frozenMember);
+			materialize(member, frozenMember);
+		}
+	}
+	
+	private Chronicle freeze(Chronicle chronicle, Chronicle frozenParent) throws T2DBException {
+		FrozenChronicle frozen = new FrozenChronicle(chronicle, frozenParent);
+		Schema schema = frozen.getSchema(true);
+		if (schema != null) {
+			for (AttributeDefinition<?> def : schema.getAttributeDefinitions()) {
+				if (!def.isComplete())
+					throw T2DBMsg.exception(D.D40115, frozen.getName(true), def.getNumber());
+				frozen.attributes.put(def.getName(), freeze(def, chronicle.getAttribute(def.getName(), true)));
+			}
+		}
+		members.put(frozen, new TreeMap<String, Chronicle>());
+		members.get(frozenParent).put(frozen.getName(false), frozen);
+		return frozen;
+	}
+	
+	private <T> FrozenAttribute<T> freeze(AttributeDefinition<T> def, Attribute<?> attribute) {
+		return new FrozenAttribute<T>(def, attribute);
+	}
+	
+	private void register(Chronicle frozen) throws T2DBException {
+		chronicles.add(frozen);
+		// the surrogate of the top chronicle has no id and cannot be hashed
+		if (!frozen.getSurrogate().inConstruction())
+			bySurrogate.put(frozen.getSurrogate(), frozen);
+		byName.put(frozen.getName(true), frozen);
+	}
+	
+	private Collection<Chronicle> membersOf(Chronicle frozen) {
+		return Collections.unmodifiableCollection(members.get(frozen).values());
+	}
+	
+	private Collection<Chronicle> membersOf(Chronicle frozen, String after, int maxSize) {
+		NavigableMap<String, Chronicle> m = members.get(frozen);
+		Collection<Chronicle> page = new ArrayList<Chronicle>();
+		for (Chronicle member : (after == null ? m : m.tailMap(after, false)).values()) {
+			if (page.size() >= maxSize)
+				break;
+			page.add(member);
+		}
+		return page;
+	}
+	
+	private Chronicle memberOf(Chronicle frozen, String simpleName, boolean mustExist) throws T2DBException {
+		Chronicle member = members.get(frozen).get(simpleName);
+		if (member == null && mustExist)
+			throw T2DBMsg.exception(D.D40102, frozen.getName(true), simpleName);
+		return member;
+	}
+	
+	@Override
+	public Database getDatabase() {
+		return database;
+	}
+
+	@Override
+	public Chronicle getCollection() {
+		return root;
+	}
+
+	@Override
+	public Chronicle getChronicle(Surrogate surrogate) {
+		return surrogate.inConstruction() ? null : bySurrogate.get(surrogate);
+	}
+
+	@Override
+	public Chronicle getChronicle(String name, boolean mustExist) throws T2DBException {
+		Chronicle chronicle = byName.get(name);
+		if (chronicle == null && mustExist)
+			throw T2DBMsg.exception(D.D40102, root.getName(true), name);
+		return chronicle;
+	}
+
+	@Override
+	public Collection<Chronicle> getChronicles() {
+		return Collections.unmodifiableList(chronicles);
+	}
+
+	@Override
+	public Collection<Schema> getSchemas() {
+		return schemas;
+	}
+
+	@Override
+	public Collection<Property<?>> getProperties() {
+		return properties;
+	}
+
+	@Override
+	public int size() {
+		return chronicles.size();
+	}
+
+	@Override
+	public String toString() {
+		return root.toString();
+	}
+
+}
@@ -0,0 +1,251 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A LongMap maps primitive long keys to values. It is meant for large
+ * indexes keyed on object ids, where a map with boxed keys costs one
+ * {@link Long} and one entry object per mapping. Keys and values are kept
+ * in two arrays using open addressing with linear probing. Null values are
+ * not supported.
+ * <p>
+ * The implementation is not thread-safe.
+ * 
+ * @author Jean-Paul Vetterli
+ * @param <V> the value type
+ */
+public class LongMap<V> {
+
+	private static final int MIN_CAPACITY = 16;
+	
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	private int mask;
+	
+	/**
+	 * Construct an empty map.
+	 */
+	public LongMap() {
+		this(MIN_CAPACITY);
+	}
+	
+	/**
+	 * Construct an empty map with room for a number of mappings.
+	 * 
+	 * @param expected the expected number of mappings
+	 */
+	public LongMap(int expected) {
+		int capacity = MIN_CAPACITY;
+		while (capacity * 3 < expected * 4)
+			capacity <<= 1;
+		allocate(capacity);
+	}
+	
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+	
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+	
+	private int find(long key) {
+		for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key)
+				return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Return the number of mappings.
+	 * 
+	 * @return the number of mappings
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Return true if the map is empty.
+	 * 
+	 * @return true if the map is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Return the value mapped to a key or null.
+	 * 
+	 * @param key a key
+	 * @return a value or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int i = find(key);
+		return i < 0 ? null : (V) values[i];
+	}
+	
+	/**
+	 * Return true if a value is mapped to a key.
+	 * 
+	 * @param key a key
+	 * @return true if the key is in the map
+	 */
+	public boolean containsKey(long key) {
+		return find(key) >= 0;
+	}
+	
+	/**
+	 * Map a value to a key. Return the value previously mapped to the key
+	 * or null.
+	 * 
+	 * @param key a key
+	 * @param value a non-null value
+	 * @return the previous value or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null)
+			throw new IllegalArgumentException("value null");
+		int i = slot(key);
+		while (values[i] != null) {
+			if (keys[i] == key) {
+				V previous = (V) values[i];
+				values[i] = value;
+				return previous;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size * 4 > keys.length * 3)
+			rehash(keys.length * 2);
+		return null;
+	}
+	
+	/**
+	 * Remove the mapping of a key. Return the value which was mapped to the
+	 * key or null.
+	 * 
+	 * @param key a key
+	 * @return the removed value or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int i = find(key);
+		if (i < 0)
+			return null;
+		V previous = (V) values[i];
+		values[i] = null;
+		size--;
+		// shift back following entries of the cluster
+		for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+			int h = slot(keys[j]);
+			if (i <= j ? (h <= i || h > j) : (h <= i && h > j)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				values[j] = null;
+				i = j;
+			}
+		}
+		return previous;
+	}
+	
+	/**
+	 * Remove all mappings.
+	 */
+	public void clear() {
+		allocate(MIN_CAPACITY);
+		size = 0;
+	}
+	
+	/**
+	 * Return a view of the values. The view does not support removal and
+	 * must not be used while the map is being modified.
+	 * 
+	 * @return a collection of values
+	 */
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new Iterator<V>() {
+					private final Object[] slots = values;
+					private int next = advance(0);
+					
+					private int advance(int i) {
+						while (i < slots.length && slots[i] == null)
+							i++;
+						return i;
+					}
+					
+					@Override
+					public boolean hasNext() {
+						return next < slots.length;
+					}
+
+					@SuppressWarnings("unchecked")
+					@Override
+					public V next() {
+						if (next >= slots.length)
+							throw new NoSuchElementException();
+						V value = (V) slots[next];
+						next = advance(next + 1);
+						return value;
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+	
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				int j = slot(oldKeys[i]);
+				while (values[j] != null)
+					j = (j + 1) & mask;
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+	
+}
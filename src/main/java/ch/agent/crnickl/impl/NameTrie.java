@@ -0,0 +1,431 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.agent.crnickl.api.NamingPolicy;
+
+/**
+ * A NameTrie maps full names to values. Names are split into simple names
+ * on {@link NamingPolicy#NAME_SEPARATOR} and stored in a compressed trie: a
+ * node holds one or more simple names and chains of nodes without values are
+ * collapsed into a single node. The simple names shared by many full names
+ * are stored only once. Besides exact lookups, the trie supports
+ * enumerating and removing all names starting with a given prefix. Lookups
+ * do not allocate.
+ * <p>
+ * The implementation is not thread-safe.
+ * 
+ * @author Jean-Paul Vetterli
+ * @param <V> the value type
+ */
+public class NameTrie<V> {
+
+	private static final char SEPARATOR = NamingPolicy.NAME_SEPARATOR.charAt(0);
+	
+	private static class Node<V> {
+		private String label;
+		private int firstLength;
+		private int hash;
+		private V value;
+		// open addressing with linear probing, keyed on the first simple name
+		private Node<V>[] children;
+		private int count;
+		
+		private Node(String label, V value) {
+			this.label = label;
+			this.firstLength = segmentEnd(label, 0);
+			this.hash = hash(label, 0, firstLength);
+			this.value = value;
+		}
+		
+		private Node<V> find(String name, int start, int end) {
+			if (children == null)
+				return null;
+			int mask = children.length - 1;
+			int length = end - start;
+			for (int i = spread(hash(name, start, end)) & mask; children[i] != null; i = (i + 1) & mask) {
+				Node<V> child = children[i];
+				if (child.firstLength == length && name.regionMatches(start, child.label, 0, length))
+					return child;
+			}
+			return null;
+		}
+		
+		private int slot(Node<V> child) {
+			int mask = children.length - 1;
+			for (int i = spread(child.hash) & mask; children[i] != null; i = (i + 1) & mask) {
+				if (children[i] == child)
+					return i;
+			}
+			throw new IllegalStateException("bug");
+		}
+		
+		private void add(Node<V> child) {
+			if (children == null)
+				children = nodes(4);
+			else if ((count + 1) * 4 > children.length * 3) {
+				Node<V>[] old = children;
+				children = nodes(old.length * 2);
+				count = 0;
+				for (Node<V> n : old) {
+					if (n != null)
+						add(n);
+				}
+			}
+			int mask = children.length - 1;
+			int i = spread(child.hash) & mask;
+			while (children[i] != null)
+				i = (i + 1) & mask;
+			children[i] = child;
+			count++;
+		}
+		
+		private void remove(Node<V> child) {
+			int mask = children.length - 1;
+			int i = slot(child);
+			children[i] = null;
+			count--;
+			// shift back following entries of the cluster
+			for (int j = (i + 1) & mask; children[j] != null; j = (j + 1) & mask) {
+				int h = spread(children[j].hash) & mask;
+				if (i <= j ? (h <= i || h > j) : (h <= i && h > j)) {
+					children[i] = children[j];
+					children[j] = null;
+					i = j;
+				}
+			}
+			if (count == 0)
+				children = null;
+		}
+		
+		private Node<V> onlyChild() {
+			for (Node<V> n : children) {
+				if (n != null)
+					return n;
+			}
+			throw new IllegalStateException("bug");
+		}
+		
+		private void collect(List<V> values) {
+			if (value != null)
+				values.add(value);
+			if (children != null) {
+				for (Node<V> n : children) {
+					if (n != null)
+						n.collect(values);
+				}
+			}
+		}
+	}
+	
+	private Node<V> root;
+	private int size;
+	
+	/**
+	 * Construct an empty trie.
+	 */
+	public NameTrie() {
+		root = new Node<V>("", null);
+	}
+	
+	/**
+	 * Return the number of names in the trie.
+	 * 
+	 * @return the number of names
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Remove all names from the trie.
+	 */
+	public void clear() {
+		root = new Node<V>("", null);
+		size = 0;
+	}
+	
+	/**
+	 * Return the value of a name or null if the name is not in the trie.
+	 * 
+	 * @param name a non-empty full name
+	 * @return a value or null
+	 */
+	public V get(String name) {
+		return get(name, name.length());
+	}
+	
+	/**
+	 * Return the value of the name made of the first characters of a string.
+	 * Return null if the name is not in the trie. This is useful for looking
+	 * up the ancestors of a full name without creating substrings.
+	 * 
+	 * @param name a string
+	 * @param length the length of the name, a positive number
+	 * @return a value or null
+	 */
+	public V get(String name, int length) {
+		Node<V> node = root;
+		int pos = 0;
+		while (true) {
+			Node<V> child = node.find(name, pos, segmentEnd(name, pos, length));
+			if (child == null)
+				return null;
+			int end = pos + child.label.length();
+			if (end > length || !name.regionMatches(pos, child.label, 0, child.label.length()))
+				return null;
+			if (end == length)
+				return child.value;
+			if (name.charAt(end) != SEPARATOR)
+				return null;
+			pos = end + 1;
+			node = child;
+		}
+	}
+	
+	/**
+	 * Associate a value with a name. Return the value previously associated
+	 * with the name, or null.
+	 * 
+	 * @param name a non-empty full name
+	 * @param value a non-null value
+	 * @return the previous value or null
+	 */
+	public V put(String name, V value) {
+		if (value == null)
+			throw new IllegalArgumentException("value null");
+		int length = name.length();
+		Node<V> node = root;
+		int pos = 0;
+		while (true) {
+			Node<V> child = node.find(name, pos, segmentEnd(name, pos, length));
+			if (child == null) {
+				node.add(new Node<V>(name.substring(pos), value));
+				size++;
+				return null;
+			}
+			String label = child.label;
+			int labelLength = label.length();
+			int i = 0;
+			while (i < labelLength && pos + i < length && label.charAt(i) == name.charAt(pos + i))
+				i++;
+			if (i == labelLength && (pos + i == length || name.charAt(pos + i) == SEPARATOR)) {
+				if (pos + i == length) {
+					V previous = child.value;
+					child.value = value;
+					if (previous == null)
+						size++;
+					return previous;
+				}
+				pos += i + 1;
+				node = child;
+				continue;
+			}
+			// split the child at the last common separator
+			int k = i < labelLength ? i : labelLength - 1;
+			while (!(label.charAt(k) == SEPARATOR && (pos + k == length || name.charAt(pos + k) == SEPARATOR)))
+				k--;
+			Node<V> tail = new Node<V>(label.substring(k + 1), child.value);
+			tail.children = child.children;
+			tail.count = child.count;
+			child.label = label.substring(0, k);
+			child.value = null;
+			child.children = null;
+			child.count = 0;
+			child.add(tail);
+			if (pos + k == length)
+				child.value = value;
+			else
+				child.add(new Node<V>(name.substring(pos + k + 1), value));
+			size++;
+			return null;
+		}
+	}
+	
+	/**
+	 * Remove a name from the trie. Names starting with the name are not
+	 * removed. Return the value which was associated with the name, or null.
+	 * 
+	 * @param name a non-empty full name
+	 * @return the removed value or null
+	 */
+	public V remove(String name) {
+		int length = name.length();
+		Node<V> parent = null;
+		Node<V> node = root;
+		int pos = 0;
+		while (true) {
+			Node<V> child = node.find(name, pos, segmentEnd(name, pos, length));
+			if (child == null)
+				return null;
+			int end = pos + child.label.length();
+			if (end > length || !name.regionMatches(pos, child.label, 0, child.label.length()))
+				return null;
+			if (end == length) {
+				V previous = child.value;
+				if (previous != null) {
+					child.value = null;
+					size--;
+					if (child.children == null) {
+						node.remove(child);
+						compact(parent, node);
+					} else
+						compact(node, child);
+				}
+				return previous;
+			}
+			if (name.charAt(end) != SEPARATOR)
+				return null;
+			pos = end + 1;
+			parent = node;
+			node = child;
+		}
+	}
+	
+	/**
+	 * Return the values of a name and of all names starting with it, followed
+	 * by a {@link NamingPolicy#NAME_SEPARATOR}. When the prefix is null or
+	 * empty, return all values.
+	 * 
+	 * @param prefix a full name or null
+	 * @return a list of values, possibly empty
+	 */
+	public List<V> getAll(String prefix) {
+		List<V> values = new ArrayList<V>();
+		if (prefix == null || prefix.length() == 0)
+			root.collect(values);
+		else {
+			Node<V>[] found = locate(prefix);
+			if (found != null)
+				found[1].collect(values);
+		}
+		return values;
+	}
+	
+	/**
+	 * Remove a name and all names starting with it, followed by a
+	 * {@link NamingPolicy#NAME_SEPARATOR}. When the prefix is null or empty,
+	 * remove all names. Return the removed values.
+	 * 
+	 * @param prefix a full name or null
+	 * @return a list of removed values, possibly empty
+	 */
+	public List<V> removeAll(String prefix) {
+		List<V> values = new ArrayList<V>();
+		if (prefix == null || prefix.length() == 0) {
+			root.collect(values);
+			clear();
+		} else {
+			Node<V>[] found = locate(prefix);
+			if (found != null) {
+				found[1].collect(values);
+				found[0].remove(found[1]);
+				size -= values.size();
+				compact(found[2], found[0]);
+			}
+		}
+		return values;
+	}
+	
+	/**
+	 * Find the highest node whose names all start with the prefix. Return an
+	 * array with its parent, the node, and the parent of the parent, or null.
+	 */
+	private Node<V>[] locate(String prefix) {
+		int length = prefix.length();
+		Node<V> parent = null;
+		Node<V> node = root;
+		int pos = 0;
+		while (true) {
+			Node<V> child = node.find(prefix, pos, segmentEnd(prefix, pos, length));
+			if (child == null)
+				return null;
+			String label = child.label;
+			int end = pos + label.length();
+			if (end >= length) {
+				// the prefix must end on a separator of the label 
+				if (!label.regionMatches(0, prefix, pos, length - pos))
+					return null;
+				if (end > length && label.charAt(length - pos) != SEPARATOR)
+					return null;
+				Node<V>[] found = nodes(3);
+				found[0] = node;
+				found[1] = child;
+				found[2] = parent;
+				return found;
+			}
+			if (!prefix.regionMatches(pos, label, 0, label.length()) || prefix.charAt(end) != SEPARATOR)
+				return null;
+			pos = end + 1;
+			parent = node;
+			node = child;
+		}
+	}
+	
+	/**
+	 * Restore the invariant after a removal: except for the root, a node
+	 * without value has at least two children.
+	 */
+	private void compact(Node<V> parent, Node<V> node) {
+		if (node == root || node.value != null)
+			return;
+		if (node.children == null)
+			parent.remove(node);
+		else if (node.count == 1) {
+			// merge the node with its only child, the first simple name is unchanged
+			Node<V> child = node.onlyChild();
+			node.label = node.label + SEPARATOR + child.label;
+			node.value = child.value;
+			node.children = child.children;
+			node.count = child.count;
+		}
+	}
+	
+	/**
+	 * Create an array of nodes. Generic arrays cannot be created directly.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <V> Node<V>[] nodes(int length) {
+		return new Node[length];
+	}
+	
+	private static int segmentEnd(String name, int start) {
+		return segmentEnd(name, start, name.length());
+	}
+	
+	private static int segmentEnd(String name, int start, int limit) {
+		int i = start;
+		while (i < limit && name.charAt(i) != SEPARATOR)
+			i++;
+		return i;
+	}
+	
+	private static int hash(String name, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++)
+			h = 31 * h + name.charAt(i);
+		return h;
+	}
+	
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+	
+}
@@ -17,9 +17,12 @@
 package ch.agent.crnickl.impl;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import ch.agent.crnickl.T2DBException;
 import ch.agent.crnickl.T2DBMsg;
@@ -41,6 +44,7 @@ public class SchemaComponents<T extends SchemaComponent> implements SchemaCompon
 	private Map<Integer, T> components;
 	private Map<Integer, T> editedComponents;
 	private Map<String, T> byName;
+	private Set<Integer> changes;
 	private SchemaComponentContainer container;
 	
 	/**
@@ -53,6 +57,7 @@ public class SchemaComponents<T extends SchemaComponent> implements SchemaCompon
 	public SchemaComponents(Collection<T> components) throws T2DBException {
 		this.components = new TreeMap<Integer, T>();
 		this.byName = new HashMap<String, T>();
+		this.changes = new TreeSet<Integer>();
 
 		if (components != null) {
 			for (T component : components) {
@@ -132,6 +137,18 @@ public class SchemaComponents<T extends SchemaComponent> implements SchemaCompon
 		return name == null ? null : byName.get(name);
 	}
 
+	/**
+	 * Return the numbers of all components edited, added, or deleted since
+	 * the collection was last consolidated. Numbers are sorted. A number is
+	 * included as soon as a component is edited, even if it is eventually 
+	 * left unchanged.
+	 * 
+	 * @return the set of numbers of modified components
+	 */
+	public Set<Integer> getChanges() {
+		return Collections.unmodifiableSet(changes);
+	}
+	
 	/**
 	 * Enter edit mode and edit the component specified.
 	 * Return the component with the given number or null if not
@@ -144,8 +161,10 @@ public class SchemaComponents<T extends SchemaComponent> implements SchemaCompon
 	public T editComponent(int number) {
 		edit();
 		T component = editedComponents.get(number);
-		if (component != null)
+		if (component != null) {
 			component.edit();
+			changes.add(number);
+		}
 		return component;
 	}
  	
@@ -172,6 +191,7 @@ public class SchemaComponents<T extends SchemaComponent> implements SchemaCompon
 			editedComponents.put(number, component);
 			if (component instanceof Containable)
 				((Containable) component).setContainer(this);
+			changes.add(number);
 			added = true;
 		}
 		return added;
@@ -193,6 +213,7 @@ public class SchemaComponents<T extends SchemaComponent> implements SchemaCompon
 				byName.remove(name);
 			if (component instanceof Containable)
 				((Containable) component).setContainer(null);
+			changes.add(number);
 		}
 		return component != null;
 	}
@@ -226,6 +247,7 @@ public class SchemaComponents<T extends SchemaComponent> implements SchemaCompon
 			}
 			editedComponents = null;
 		}
+		changes.clear();
 	}
 
 	private void makeIndex() throws T2DBException {
@@ -0,0 +1,214 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.api.DBObject;
+import ch.agent.crnickl.api.Surrogate;
+import ch.agent.crnickl.api.UpdatableSchema;
+import ch.agent.crnickl.api.UpdateEvent;
+import ch.agent.crnickl.api.UpdateEventOperation;
+import ch.agent.crnickl.api.UpdateEventSubscriber;
+
+/**
+ * A SchemaIndex keeps the inheritance relation between schemas. It finds
+ * the schemas extending a given schema without loading any schema. The index
+ * is loaded from the database on first use with
+ * {@link DatabaseBackend#getSchemaBases()}. It is maintained from the update
+ * events of schemas and by {@link UpdatableSchemaImpl#applyUpdates()}, so
+ * that it also reflects modifications not yet committed. On rollback, it is
+ * cleared by {@link DatabaseBackendImpl#rolledBack()}.
+ * <p>
+ * Schemas are identified by long keys assigned by {@link SurrogateKeys}:
+ * the compact keys of their surrogates when ids implement
+ * {@link ch.agent.crnickl.api.LongDBObjectId}, else keys numbered by the
+ * index.
+ * <p>
+ * The index is thread-safe.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class SchemaIndex implements UpdateEventSubscriber {
+
+	/**
+	 * The base key of a schema without base.
+	 */
+	private static final long NO_BASE = -1;
+	
+	private final DatabaseBackend database;
+	private final SurrogateKeys keys;
+	private LongMap<Long> bases; // null when not loaded
+	private LongMap<Set<Long>> derived;
+	
+	/**
+	 * Construct a schema index. The index must be subscribed to schema
+	 * events.
+	 * 
+	 * @param database a database
+	 */
+	public SchemaIndex(DatabaseBackend database) {
+		this.database = database;
+		this.keys = new SurrogateKeys(database);
+	}
+	
+	private long key(Surrogate surrogate) {
+		return keys.key(surrogate);
+	}
+	
+	private void load() throws T2DBException {
+		if (bases == null) {
+			Map<Surrogate, Surrogate> loaded = database.getSchemaBases();
+			bases = new LongMap<Long>(loaded.size());
+			derived = new LongMap<Set<Long>>();
+			for (Map.Entry<Surrogate, Surrogate> e : loaded.entrySet()) {
+				link(key(e.getKey()), e.getValue() == null ? NO_BASE : key(e.getValue()));
+			}
+		}
+	}
+	
+	private void link(long schema, long base) {
+		bases.put(schema, base);
+		if (base != NO_BASE) {
+			Set<Long> set = derived.get(base);
+			if (set == null) {
+				set = new LinkedHashSet<Long>();
+				derived.put(base, set);
+			}
+			set.add(schema);
+		}
+	}
+	
+	private void unlink(long schema) {
+		Long base = bases.remove(schema);
+		if (base != null && base != NO_BASE) {
+			Set<Long> set = derived.get(base);
+			if (set != null) {
+				set.remove(schema);
+				if (set.isEmpty())
+					derived.remove(base);
+			}
+		}
+	}
+	
+	private List<Surrogate> surrogates(Collection<Long> set) throws T2DBException {
+		List<Surrogate> result = new ArrayList<Surrogate>(set.size());
+		for (Long key : set) {
+			result.add(this.keys.surrogate(key));
+		}
+		return result;
+	}
+	
+	/**
+	 * Return the surrogates of the schemas directly extending a schema.
+	 * 
+	 * @param schema a schema surrogate
+	 * @return a collection of schema surrogates
+	 * @throws T2DBException
+	 */
+	public synchronized Collection<Surrogate> getDerived(Surrogate schema) throws T2DBException {
+		load();
+		Set<Long> set = derived.get(key(schema));
+		if (set == null)
+			return Collections.emptyList();
+		else
+			return surrogates(set);
+	}
+	
+	/**
+	 * Return the surrogates of the schemas extending a schema, directly or
+	 * indirectly.
+	 * 
+	 * @param schema a schema surrogate
+	 * @return a collection of schema surrogates
+	 * @throws T2DBException
+	 */
+	public synchronized Collection<Surrogate> getDescendants(Surrogate schema) throws T2DBException {
+		load();
+		Set<Long> result = new LinkedHashSet<Long>();
+		List<Long> pending = new ArrayList<Long>();
+		pending.add(key(schema));
+		for (int i = 0; i < pending.size(); i++) {
+			Set<Long> set = derived.get(pending.get(i));
+			if (set != null) {
+				for (Long s : set) {
+					if (result.add(s))
+						pending.add(s);
+				}
+			}
+		}
+		return surrogates(result);
+	}
+	
+	/**
+	 * Set the base of a schema. Nothing is done when the index is not loaded.
+	 * 
+	 * @param schema a schema surrogate
+	 * @param base a schema surrogate or null
+	 */
+	public synchronized void put(Surrogate schema, Surrogate base) {
+		if (bases != null) {
+			long key = key(schema);
+			unlink(key);
+			link(key, base == null ? NO_BASE : key(base));
+		}
+	}
+	
+	/**
+	 * Remove a schema. Nothing is done when the index is not loaded.
+	 * 
+	 * @param schema a schema surrogate
+	 */
+	public synchronized void remove(Surrogate schema) {
+		if (bases != null) {
+			unlink(key(schema));
+			keys.remove(schema);
+		}
+	}
+	
+	/**
+	 * Forget the index. It will be loaded again on next use.
+	 */
+	public synchronized void clear() {
+		bases = null;
+		derived = null;
+		keys.clear();
+	}
+	
+	@Override
+	public void notify(UpdateEvent event) {
+		if (event.getOperation() == UpdateEventOperation.DELETE)
+			remove(event.getSurrogate());
+		else {
+			DBObject source = event.getSource();
+			if (source instanceof UpdatableSchemaImpl) {
+				// the base as applied, ignoring later edits
+				UpdatableSchema base = ((UpdatableSchemaImpl) source).getPreviousBase();
+				put(event.getSurrogate(), base == null ? null : base.getSurrogate());
+			} else
+				clear();
+		}
+	}
+	
+}
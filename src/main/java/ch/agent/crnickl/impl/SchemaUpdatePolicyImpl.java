@@ -16,7 +16,9 @@
  */
 package ch.agent.crnickl.impl;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import ch.agent.crnickl.T2DBException;
 import ch.agent.crnickl.T2DBMsg;
@@ -25,6 +27,7 @@ import ch.agent.crnickl.api.AttributeDefinition;
 import ch.agent.crnickl.api.Chronicle;
 import ch.agent.crnickl.api.Property;
 import ch.agent.crnickl.api.Schema;
+import ch.agent.crnickl.api.SchemaComponent;
 import ch.agent.crnickl.api.SeriesDefinition;
 import ch.agent.crnickl.api.Surrogate;
 import ch.agent.crnickl.api.UpdatableSchema;
@@ -40,21 +43,25 @@ public class SchemaUpdatePolicyImpl implements SchemaUpdatePolicy {
 	private static class Visitor implements UpdatableSchemaVisitor {
 
 		private SchemaUpdatePolicyImpl policy;
+		private List<SeriesDefinition> series;
+		private List<AttributeDefinition<?>> attributes;
 
 		private Visitor(SchemaUpdatePolicyImpl policy) {
 			this.policy = policy;
+			this.series = new ArrayList<SeriesDefinition>();
+			this.attributes = new ArrayList<AttributeDefinition<?>>();
 		}
 
 		@Override
 		public void visit(UpdatableSchema schema, SeriesDefinition def,	SeriesDefinition original) throws T2DBException {
 			if (def == null) {
 				if (!original.isErasing())
-					policy.willDeleteOrErase(schema, original);
+					series.add(original);
 				// deleting an erasing series is like adding the series
 			} else {
 				if (def.isErasing()) {
 					if (original == null || !original.isErasing())
-						policy.willDeleteOrErase(schema, def);
+						series.add(def);
 				} else {
 					// schema should have been resolved so don't check for completeness
 				}
@@ -67,14 +74,14 @@ public class SchemaUpdatePolicyImpl implements SchemaUpdatePolicy {
 			throws T2DBException {
 			if (attrDef == null) {
 				if (!origAttrDef.isErasing())
-					policy.willDeleteOrErase(schema, seriesDef, origAttrDef);
+					policy.willDeleteOrErase(schema, seriesDef, origAttrDef, attributes);
 				// deleting an erasing attribute is like adding the series
 			} else {
 				if (attrDef.isErasing()) {
 					Schema resolved = schema.resolve();
 					AttributeDefinition<?> def = resolved.getAttributeDefinition(attrDef.getNumber(), false);
 					if (def != null)
-						policy.willDeleteOrErase(schema, seriesDef, def);
+						policy.willDeleteOrErase(schema, seriesDef, def, attributes);
 				} else {
 					// schema should have been resolved so don't check for completeness
 					if (origAttrDef != null)
@@ -85,7 +92,6 @@ public class SchemaUpdatePolicyImpl implements SchemaUpdatePolicy {
 	}
 
 	private DatabaseBackend database;
-	private UpdatableSchemaVisitor visitor;
 
 	/**
 	 * Construct a {@link SchemaUpdatePolicy}.
@@ -94,7 +100,6 @@ public class SchemaUpdatePolicyImpl implements SchemaUpdatePolicy {
 	 */
 	public SchemaUpdatePolicyImpl(DatabaseBackend database) {
 		this.database = database;
-		this.visitor = new Visitor(this);
 	}
 
 	/**
@@ -106,12 +111,7 @@ public class SchemaUpdatePolicyImpl implements SchemaUpdatePolicy {
 	@Override
 	public void willDelete(UpdatableSchema schema) throws T2DBException {
 		// (1) cannot delete if schema used as a base for another schema
-		Collection<UpdatableSchema> schemas = database.getUpdatableSchemas("*");
-		int count = 0;
-		for (UpdatableSchema s : schemas) {
-			if (schema.equals(s.getBase()))
-				count++;
-		}
+		int count = database.getSchemaIndex().getDerived(schema.getSurrogate()).size();
 		if (count > 0)
 			throw T2DBMsg.exception(D.D30140, schema.getName(), count);
 		
@@ -134,7 +134,9 @@ public class SchemaUpdatePolicyImpl implements SchemaUpdatePolicy {
 	@Override
 	public void willUpdate(UpdatableSchema schema) throws T2DBException {
 		try {
+			Visitor visitor = new Visitor(this);
 			((UpdatableSchemaImpl) schema).traverse(true, visitor);
+			willDeleteOrErase(schema, visitor.series, visitor.attributes);
 		} catch (T2DBException e) {
 			throw T2DBMsg.exception(e, D.D30105, schema.getName());
 		}
@@ -142,18 +144,6 @@ public class SchemaUpdatePolicyImpl implements SchemaUpdatePolicy {
 
 	/**
 	 * A series definition can be deleted only if there are no series using it.
-	 */
-	private void willDeleteOrErase(UpdatableSchema schema, SeriesDefinition ss) throws T2DBException {
-		Surrogate entity = database.findChronicle(ss, schema);
-		if (entity != null)
-			throw T2DBMsg.exception(D.D30150, ss.getNumber(), schema.getName(), chronicleName(entity));
-	}
-	
-	/**
-	 * Reject the deletion of a built-in series attribute. Other series
-	 * attributes can always be deleted because they only have a default value,
-	 * in the schema.
-	 * <p>
 	 * A chronicle attribute definition can be deleted if it is not in use by
 	 * any chronicle. It is in use if there is at least one chronicle with a
 	 * non-default value for the attribute. Such values are in an attribute
@@ -162,16 +152,40 @@ public class SchemaUpdatePolicyImpl implements SchemaUpdatePolicy {
 	 * being inspected here. So the check must only take into account chronicles
 	 * having this schema or having a schema directly or indirectly extending
 	 * this schema.
+	 * <p>
+	 * All definitions are checked with a single request to the database.
 	 */
-	private void willDeleteOrErase(UpdatableSchema schema, SeriesDefinition ss, AttributeDefinition<?> def) throws T2DBException {
-		if (ss != null) { 
-			if (database.isBuiltIn(def))
-				throw T2DBMsg.exception(D.D30148, def.getNumber(), ss.getNumber(), schema.getName()); 
-		} else {
-			Surrogate entity = database.findChronicle(def.getProperty(), schema);
+	private void willDeleteOrErase(UpdatableSchema schema, List<SeriesDefinition> series, List<AttributeDefinition<?>> attributes) throws T2DBException {
+		if (series.size() == 0 && attributes.size() == 0)
+			return;
+		Map<SchemaComponent, Surrogate> inUse = database.findChronicles(series, attributes, schema);
+		if (inUse.size() == 0)
+			return;
+		for (AttributeDefinition<?> def : attributes) {
+			Surrogate entity = inUse.get(def);
 			if (entity != null)
 				throw T2DBMsg.exception(D.D30146, def.getNumber(), schema.getName(), chronicleName(entity));
 		}
+		for (SeriesDefinition ss : series) {
+			Surrogate entity = inUse.get(ss);
+			if (entity != null)
+				throw T2DBMsg.exception(D.D30150, ss.getNumber(), schema.getName(), chronicleName(entity));
+		}
+	}
+	
+	/**
+	 * Reject the deletion of a built-in series attribute. Other series
+	 * attributes can always be deleted because they only have a default value,
+	 * in the schema. Chronicle attribute definitions are collected 
+	 * for checking when all updates have been visited.
+	 */
+	private void willDeleteOrErase(UpdatableSchema schema, SeriesDefinition ss, AttributeDefinition<?> def, 
+			List<AttributeDefinition<?>> attributes) throws T2DBException {
+		if (ss != null) { 
+			if (database.isBuiltIn(def))
+				throw T2DBMsg.exception(D.D30148, def.getNumber(), ss.getNumber(), schema.getName()); 
+		} else
+			attributes.add(def);
 	}
 
 	/**
@@ -39,6 +39,21 @@ public class SeriesDefinitionImpl extends SchemaComponentImpl implements SeriesD
 	private int number;
 	private String description;
 	private SchemaComponents<AttributeDefinition<?>> attributes;
+	private volatile AccessBinding binding; // lazy
+	
+	/**
+	 * The value access methods bound to a value type. The binding is
+	 * immutable, so that it can be shared safely by all series of the schema.
+	 */
+	private static class AccessBinding {
+		private final ValueType<?> type;
+		private final ValueAccessMethods<?> methods;
+		
+		private AccessBinding(ValueType<?> type, ValueAccessMethods<?> methods) {
+			this.type = type;
+			this.methods = methods;
+		}
+	}
 	
 	/**
 	 * Construct a {@link SeriesDefinition}.
@@ -140,6 +155,27 @@ public class SeriesDefinitionImpl extends SchemaComponentImpl implements SeriesD
 		return def == null ? null : def.getValue();
 	}
 
+	/**
+	 * Return the value access methods of the series defined. They are resolved
+	 * from the value type on first use and kept in the definition, which is
+	 * shared by all series of the schema. They are resolved again if the
+	 * value type of the definition is modified.
+	 * 
+	 * @return a value access methods object
+	 * @throws T2DBException
+	 */
+	public ValueAccessMethods<?> getAccessMethods() throws T2DBException {
+		ValueType<?> type = getValueType();
+		if (type == null)
+			throw T2DBMsg.exception(D.D10102, String.valueOf(type));
+		AccessBinding b = binding;
+		if (b == null || b.type != type) {
+			b = new AccessBinding(type, ((ValueTypeImpl<?>) type).getAccessMethods());
+			binding = b;
+		}
+		return b.methods;
+	}
+
 	@Override
 	public boolean isSparse() {
 		@SuppressWarnings("unchecked")
@@ -53,6 +53,7 @@ public class SeriesImpl<T> extends DBObjectImpl implements Series<T> {
 	private SeriesDefinition schema; // lazy
 	private TimeDomain timeDomain; // lazy
 	private ValueType<T> type; // lazy
+	private ValueAccessMethods<T> accessMethods; // lazy
 	
 	/**
 	 * Construct a {@link Series}.
@@ -101,9 +102,13 @@ public class SeriesImpl<T> extends DBObjectImpl implements Series<T> {
 
 	@Override
 	public String getName(boolean full) throws T2DBException {
-		if (full)
-			return getDatabase().getNamingPolicy().fullName(getNames());
-		else {
+		if (full) {
+			Chronicle chronicle = getChronicle();
+			if (chronicle.isTopChronicle())
+				return getDatabase().getNamingPolicy().fullName(getNames());
+			// reuse the full name kept by the chronicle
+			return getDatabase().getNamingPolicy().fullName(chronicle.getName(true), getName(false));
+		} else {
 			if (name == null)
 				name = getDefinition().getName();
 			return name;
@@ -130,6 +135,26 @@ public class SeriesImpl<T> extends DBObjectImpl implements Series<T> {
 		return type;
 	}
 
+	/**
+	 * Return the value access methods of the series. They are taken on first
+	 * use from the series definition, where they are bound, and kept in the
+	 * series, so that accessing values does not require looking them up again.
+	 * 
+	 * @return a value access methods object
+	 * @throws T2DBException
+	 */
+	@SuppressWarnings("unchecked")
+	public ValueAccessMethods<T> getAccessMethods() throws T2DBException {
+		if (accessMethods == null) {
+			SeriesDefinition def = getDefinition();
+			if (def instanceof SeriesDefinitionImpl)
+				accessMethods = (ValueAccessMethods<T>) ((SeriesDefinitionImpl) def).getAccessMethods();
+			else
+				accessMethods = ((ValueTypeImpl<T>) getValueType()).getAccessMethods();
+		}
+		return accessMethods;
+	}
+
 	@Override
 	public TimeDomain getTimeDomain() throws T2DBException {
 		if (timeDomain == null)
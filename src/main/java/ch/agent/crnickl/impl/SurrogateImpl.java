@@ -24,6 +24,7 @@ import ch.agent.crnickl.api.DBObject;
 import ch.agent.crnickl.api.DBObjectId;
 import ch.agent.crnickl.api.DBObjectType;
 import ch.agent.crnickl.api.Database;
+import ch.agent.crnickl.api.LongDBObjectId;
 import ch.agent.crnickl.api.Surrogate;
 
 /**
@@ -82,11 +83,18 @@ public class SurrogateImpl implements Surrogate {
 		
 	}
 	
+	/**
+	 * The number of bits used for the id in a compact key. The remaining high
+	 * order bits hold the type of the object.
+	 */
+	private static final int KEY_ID_BITS = 56;
+	private static final long KEY_ID_MASK = (1L << KEY_ID_BITS) - 1;
+	
 	private String string;
 	private int hashCode;
 	
-	private DatabaseBackend db;
-	private DBObjectType dot;
+	private final DatabaseBackend db;
+	private final DBObjectType dot;
 	private DBObjectId id;
 	
 	/**
@@ -101,6 +109,23 @@ public class SurrogateImpl implements Surrogate {
 		this.db = db;
 		this.dot = dot;
 		this.id = id;
+		this.hashCode = hash();
+	}
+	
+	/**
+	 * Create a surrogate from a compact key.
+	 * The key must have been produced by {@link #getKey()}.
+	 * 
+	 * @param db a database
+	 * @param key a compact key
+	 * @return a surrogate
+	 * @throws T2DBException
+	 */
+	protected static Surrogate makeSurrogate(DatabaseBackend db, long key) throws T2DBException {
+		int type = (int) (key >>> KEY_ID_BITS);
+		if (type >= DBObjectType.values().length)
+			throw T2DBMsg.exception(D.D02104, Long.toString(key));
+		return db.makeSurrogate(DBObjectType.values()[type], db.makeDBObjectId(key & KEY_ID_MASK));
 	}
 	
 	/**
@@ -119,7 +144,7 @@ public class SurrogateImpl implements Surrogate {
 			String dbName = db.getTopChronicle().getName(true);
 			if (!dbName.equals(parts[0]))
 				throw T2DBMsg.exception(D.D02103, parts[0], dbName);
-			return new SurrogateImpl(db, 
+			return db.makeSurrogate(
 					DBObjectType.values()[Integer.parseInt(parts[1])], 
 					db.makeDBObjectId(parts[2]));
 		} catch (Throwable t) {
@@ -134,9 +159,36 @@ public class SurrogateImpl implements Surrogate {
 		if (((SurrogateImpl) surrogate).dot != dot || ((SurrogateImpl) surrogate).id == null)
 			throw new RuntimeException("bug: " + surrogate.toString());
 		this.id = ((SurrogateImpl) surrogate).id;
-		this.hashCode = -1;
+		this.hashCode = hash();
 		this.string = null;
 	}
+	
+	/**
+	 * Return true if the surrogate has a compact key. This requires an id
+	 * implementing {@link LongDBObjectId}, with a number small enough.
+	 * 
+	 * @return true if {@link #getKey()} can be used
+	 */
+	public boolean hasKey() {
+		return id instanceof LongDBObjectId && (((LongDBObjectId) id).value() & ~KEY_ID_MASK) == 0;
+	}
+	
+	/**
+	 * Return a compact key identifying the object within its database. The key
+	 * combines the type of the object and the number wrapped by its id. It
+	 * requires an id implementing {@link LongDBObjectId}.
+	 * 
+	 * @return a non-negative number
+	 * @throws IllegalStateException if the surrogate is in construction or its id is not a number
+	 */
+	public long getKey() {
+		if (!(id instanceof LongDBObjectId))
+			throw new IllegalStateException("not a long id: " + toString());
+		long value = ((LongDBObjectId) id).value();
+		if ((value & ~KEY_ID_MASK) != 0)
+			throw new IllegalStateException("id too large: " + toString());
+		return ((long) dot.ordinal() << KEY_ID_BITS) | value;
+	}
 
 	@Override
 	public DatabaseBackend getDatabase() {
@@ -186,17 +238,22 @@ public class SurrogateImpl implements Surrogate {
 	public int hashCode() {
 		if (inConstruction())
 			throw new IllegalStateException();
-		if (hashCode <= 0) {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + ((db == null) ? 0 : db.hashCode());
-			result = prime * result + ((dot == null) ? 0 : dot.hashCode());
-			result = prime * result + ((id == null) ? 0 : id.hashCode());
-			hashCode = result;
-		}
 		return hashCode;
 	}
 	
+	/**
+	 * Compute the hash code once. The type ordinal is used instead of the
+	 * identity hash of the enum, and the hash of the database is precomputed.
+	 */
+	private int hash() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((db == null) ? 0 : db.hashCode());
+		result = prime * result + ((dot == null) ? 0 : dot.ordinal());
+		result = prime * result + ((id == null) ? 0 : id.hashCode());
+		return result;
+	}
+	
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj)
@@ -206,10 +263,12 @@ public class SurrogateImpl implements Surrogate {
 		if (getClass() != obj.getClass())
 			return false;
 		SurrogateImpl other = (SurrogateImpl) obj;
+		if (hashCode != other.hashCode)
+			return false;
 		if (db == null) {
 			if (other.db != null)
 				return false;
-		} else if (!db.equals(other.db))
+		} else if (db != other.db && !db.equals(other.db))
 			return false;
 		if (dot != other.dot)
 			return false;
@@ -0,0 +1,127 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.api.Surrogate;
+
+/**
+ * SurrogateKeys maps surrogates to long keys, for indexes kept in a
+ * {@link LongMap}. A surrogate with a compact key is mapped to it (see
+ * {@link SurrogateImpl#getKey()}). Other surrogates, for example those of
+ * backends with ids which are not numbers, are numbered with negative keys
+ * below -1, in the order they are met. These keys are only valid for the
+ * object which assigned them.
+ * <p>
+ * The implementation is not thread-safe.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+class SurrogateKeys {
+
+	private final DatabaseBackend database;
+	private final Map<Surrogate, Long> keys;
+	private final LongMap<Surrogate> surrogates;
+	private long next;
+	
+	/**
+	 * Construct a {@link SurrogateKeys}.
+	 * 
+	 * @param database a database
+	 */
+	public SurrogateKeys(DatabaseBackend database) {
+		this.database = database;
+		keys = new HashMap<Surrogate, Long>();
+		surrogates = new LongMap<Surrogate>();
+		next = -2;
+	}
+	
+	/**
+	 * Return the key of a surrogate. A key is assigned if the surrogate has
+	 * no compact key and was not met before.
+	 * 
+	 * @param surrogate a surrogate
+	 * @return a key
+	 */
+	public long key(Surrogate surrogate) {
+		SurrogateImpl s = (SurrogateImpl) surrogate;
+		if (s.hasKey())
+			return s.getKey();
+		Long key = keys.get(surrogate);
+		if (key == null) {
+			key = next--;
+			keys.put(surrogate, key);
+			surrogates.put(key, surrogate);
+		}
+		return key;
+	}
+	
+	/**
+	 * Return the key of a surrogate, or -1 if the surrogate has no compact
+	 * key and was not met before. No key is assigned.
+	 * 
+	 * @param surrogate a surrogate
+	 * @return a key or -1
+	 */
+	public long find(Surrogate surrogate) {
+		SurrogateImpl s = (SurrogateImpl) surrogate;
+		if (s.hasKey())
+			return s.getKey();
+		Long key = keys.get(surrogate);
+		return key == null ? -1 : key;
+	}
+	
+	/**
+	 * Return the surrogate with the given key.
+	 * 
+	 * @param key a key returned by {@link #key(Surrogate)}
+	 * @return a surrogate
+	 * @throws T2DBException
+	 */
+	public Surrogate surrogate(long key) throws T2DBException {
+		if (key >= 0)
+			return SurrogateImpl.makeSurrogate(database, key);
+		Surrogate surrogate = surrogates.get(key);
+		if (surrogate == null)
+			throw new IllegalArgumentException("unknown key: " + key);
+		return surrogate;
+	}
+	
+	/**
+	 * Forget the key assigned to a surrogate. Nothing is done if the
+	 * surrogate has a compact key.
+	 * 
+	 * @param surrogate a surrogate
+	 */
+	public void remove(Surrogate surrogate) {
+		Long key = keys.remove(surrogate);
+		if (key != null)
+			surrogates.remove(key);
+	}
+	
+	/**
+	 * Forget all keys assigned.
+	 */
+	public void clear() {
+		keys.clear();
+		surrogates.clear();
+	}
+	
+}
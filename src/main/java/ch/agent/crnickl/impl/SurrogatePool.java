@@ -0,0 +1,142 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.impl;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.agent.crnickl.api.DBObjectId;
+import ch.agent.crnickl.api.DBObjectType;
+
+/**
+ * A SurrogatePool keeps a canonical {@link SurrogateImpl} for each object of
+ * a database. When surrogates are obtained from the pool, equal surrogates
+ * are usually the same object, which saves memory and reduces equality tests
+ * to identity checks. Surrogates are only weakly referenced by the pool and
+ * disappear from it when they are no longer used elsewhere.
+ * <p>
+ * Surrogates in construction are never pooled. When such a surrogate is
+ * upgraded, it becomes equal to, but is not the same object as, the pooled
+ * surrogate.
+ * <p>
+ * The implementation is thread-safe. The pool is split into stripes by
+ * object type and id hash, each with its own lock, so that threads looking
+ * up different objects rarely wait for each other. Surrogates no longer
+ * used are discarded from a stripe when a surrogate is added to it.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class SurrogatePool {
+
+	/**
+	 * The number of stripes per object type, a power of 2.
+	 */
+	private static final int STRIPES = 16;
+	
+	private static class Ref extends WeakReference<SurrogateImpl> {
+		private final DBObjectId id;
+		
+		private Ref(SurrogateImpl surrogate, ReferenceQueue<SurrogateImpl> queue) {
+			super(surrogate, queue);
+			this.id = surrogate.getId();
+		}
+	}
+	
+	/**
+	 * A stripe is a part of the pool with its own lock and reference queue.
+	 */
+	private static class Stripe {
+		private final Map<DBObjectId, Ref> pool = new HashMap<DBObjectId, Ref>();
+		private final ReferenceQueue<SurrogateImpl> queue = new ReferenceQueue<SurrogateImpl>();
+		
+		/**
+		 * Discard entries of surrogates no longer used. The caller holds the
+		 * lock of the stripe.
+		 */
+		private void expunge() {
+			Ref ref;
+			while ((ref = (Ref) queue.poll()) != null) {
+				if (pool.get(ref.id) == ref)
+					pool.remove(ref.id);
+			}
+		}
+	}
+	
+	private final DatabaseBackend db;
+	private final Stripe[] stripes;
+	
+	/**
+	 * Construct a surrogate pool.
+	 * 
+	 * @param db the database of all surrogates in the pool
+	 */
+	public SurrogatePool(DatabaseBackend db) {
+		this.db = db;
+		stripes = new Stripe[DBObjectType.values().length * STRIPES];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+	
+	private Stripe stripe(DBObjectType dot, DBObjectId id) {
+		int h = id.hashCode();
+		h ^= (h >>> 16);
+		return stripes[dot.ordinal() * STRIPES + (h & (STRIPES - 1))];
+	}
+	
+	/**
+	 * Return the canonical surrogate for an object, creating it if
+	 * necessary.
+	 * 
+	 * @param dot a database object type
+	 * @param id a non-null id
+	 * @return a surrogate
+	 */
+	public SurrogateImpl get(DBObjectType dot, DBObjectId id) {
+		Stripe stripe = stripe(dot, id);
+		synchronized (stripe) {
+			Ref ref = stripe.pool.get(id);
+			SurrogateImpl surrogate = ref == null ? null : ref.get();
+			if (surrogate == null) {
+				stripe.expunge();
+				surrogate = new SurrogateImpl(db, dot, id);
+				stripe.pool.put(id, new Ref(surrogate, stripe.queue));
+			}
+			return surrogate;
+		}
+	}
+	
+	/**
+	 * Return the number of surrogates in the pool. The number includes
+	 * surrogates which are no longer used but have not yet been discarded.
+	 * 
+	 * @return the number of surrogates in the pool
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.expunge();
+				size += stripe.pool.size();
+			}
+		}
+		return size;
+	}
+
+}
@@ -85,6 +85,17 @@ public class UpdatableChronicleImpl extends ChronicleImpl implements UpdatableCh
 		return result;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Names are not kept while the chronicle is in construction or while its
+	 * name or its collection are being modified.
+	 */
+	@Override
+	protected boolean isNameCacheable() {
+		return name == null && collection == null && !getSurrogate().inConstruction();
+	}
+
 	@Override
 	public String getDescription(boolean full) throws T2DBException {
 		String result = null;
@@ -278,7 +289,9 @@ public class UpdatableChronicleImpl extends ChronicleImpl implements UpdatableCh
 		boolean done = false;
 		getDatabase().getCache().clear(this); // a bit of overkill
 		if (delete) {
+			getDatabase().getCache().clearTree(getName(true));
 			getDatabase().deleteChronicle(this);
+			getDatabase().newNameGeneration();
 			delete = false;
 			done = true;
 		} else {
@@ -358,6 +371,7 @@ public class UpdatableChronicleImpl extends ChronicleImpl implements UpdatableCh
 	
 	private boolean updateIfModified() throws T2DBException {
 		boolean anything = false;
+		boolean renamed = false;
 		String name = getName(false);
 		String description = getDescription(false);
 		Chronicle current = getDatabase().getChronicle(this);
@@ -365,7 +379,9 @@ public class UpdatableChronicleImpl extends ChronicleImpl implements UpdatableCh
 		Schema schema = getSchema(false);
 		if (!equal(name, current.getName(false))) {
 			getDatabase().getNamingPolicy().checkSimpleName(name, false);
+			getDatabase().getCache().clearTree(current.getName(true));
 			anything = true;
+			renamed = true;
 		}
 		if (!equal(description, current.getDescription(false))) {
 			anything = true;
@@ -376,6 +392,8 @@ public class UpdatableChronicleImpl extends ChronicleImpl implements UpdatableCh
 			throw T2DBMsg.exception(D.D40111, getName(true)); // not supported (yet)
 		if (anything)
 			getDatabase().update(this);
+		if (renamed)
+			getDatabase().newNameGeneration();
 		return anything;
 	}
 
@@ -84,6 +84,7 @@ public class UpdatableSchemaImpl extends SchemaImpl implements UpdatableSchema {
 			getDatabase().getCache().clear(this);
 			policy.willDelete(this);
 			getDatabase().deleteSchema(this);
+			getDatabase().getSchemaIndex().remove(getSurrogate());
 			delete = false;
 		} else {
 			if (getSurrogate().inConstruction()) {
@@ -95,6 +96,7 @@ public class UpdatableSchemaImpl extends SchemaImpl implements UpdatableSchema {
 				getDatabase().update(this);
 			}
 			update();
+			getDatabase().getSchemaIndex().put(getSurrogate(), base == null ? null : base.getSurrogate());
 		}
 	}
 	
@@ -585,12 +587,16 @@ public class UpdatableSchemaImpl extends SchemaImpl implements UpdatableSchema {
 		Map<Integer, AttributeDefinition<?>> editedADs = updated.getAttributeDefinitionsObject().getMap();
 		Map<Integer, AttributeDefinition<?>> origADs = 
 				original == null ? new HashMap<Integer, AttributeDefinition<?>>() : original.getAttributeDefinitionsObject().getMap();
-		total += visit(visitor, null, editedADs, origADs);
 		
 		// visit edited series definitions 
 		Map<Integer, SeriesDefinition> editedSDs = updated.getSeriesDefinitionsObject().getMap();
 		Map<Integer, SeriesDefinition> originalSDs = 
 				original == null ? new HashMap<Integer, SeriesDefinition>() : original.getSeriesDefinitionsObject().getMap();
+		
+		if (resolve && original != null && !hasPendingEditsInBases())
+			return traverseChanges(visitor, editedADs, origADs, editedSDs, originalSDs);
+
+		total += visit(visitor, null, editedADs, origADs);
 			
 		// visit deleted definitions
 		Set<Integer> deletedSDs = new HashSet<Integer>(originalSDs.keySet());
@@ -620,6 +626,76 @@ public class UpdatableSchemaImpl extends SchemaImpl implements UpdatableSchema {
 		return total;
 	}
 
+	/**
+	 * Visit only the definitions with numbers modified in this schema. When
+	 * bases have no pending edits, the resolved original and updated schemas
+	 * can only differ on these numbers, so there is no need to compare all
+	 * definitions. Series attribute definitions are compared for each
+	 * modified series.
+	 */
+	private int traverseChanges(UpdatableSchemaVisitor visitor, 
+			Map<Integer, AttributeDefinition<?>> editedADs, Map<Integer, AttributeDefinition<?>> origADs,
+			Map<Integer, SeriesDefinition> editedSDs, Map<Integer, SeriesDefinition> originalSDs) throws T2DBException {
+		int total = 0;
+		for (Integer number : getAttributeDefinitionsObject().getChanges()) {
+			AttributeDefinition<?> editedAD = editedADs.get(number);
+			AttributeDefinition<?> origAD = origADs.get(number);
+			if (editedAD == null) {
+				if (origAD != null) {
+					visitor.visit(this, null, null, origAD);
+					total++;
+				}
+			} else if (!editedAD.equals(origAD)) {
+				visitor.visit(this, null, editedAD, origAD);
+				total++;
+			}
+		}
+		for (Integer number : getSeriesDefinitionsObject().getChanges()) {
+			SeriesDefinition editedSD = editedSDs.get(number);
+			SeriesDefinition origSD = originalSDs.get(number);
+			if (editedSD == null) {
+				if (origSD != null) {
+					visitor.visit(this, null, origSD);
+					total++;
+				}
+				continue;
+			}
+			if (!equalIgnoringAttributes(editedSD, origSD)) {
+				visitor.visit(this, editedSD, origSD);
+				total++;
+			}
+			Map<Integer, AttributeDefinition<?>> editedSADs = 
+					((SeriesDefinitionImpl) editedSD).getAttributeDefinitionsObject().getMap();
+			Map<Integer, AttributeDefinition<?>> origSADs = 
+					origSD == null ? new HashMap<Integer, AttributeDefinition<?>>() :
+					((SeriesDefinitionImpl) origSD).getAttributeDefinitionsObject().getMap();
+			total += visit(visitor, editedSD, editedSADs, origSADs);
+		}
+		return total;
+	}
+	
+	/**
+	 * Return true if a base schema has been modified but not yet updated.
+	 * The resolved schema then includes modifications which do not appear 
+	 * in the changes of this schema.
+	 * 
+	 * @return true if a base schema has pending edits
+	 * @throws T2DBException
+	 */
+	private boolean hasPendingEditsInBases() throws T2DBException {
+		for (UpdatableSchema schema : getSchemaList()) {
+			if (!(schema instanceof UpdatableSchemaImpl))
+				return true;
+			UpdatableSchemaImpl s = (UpdatableSchemaImpl) schema;
+			if (s.base != s.editedBase)
+				return true;
+			if (s != this && (s.getAttributeDefinitionsObject().getChanges().size() > 0 
+					|| s.getSeriesDefinitionsObject().getChanges().size() > 0))
+				return true;
+		}
+		return false;
+	}
+
 	protected int visit(UpdatableSchemaVisitor visitor, SeriesDefinition seriesDef,
 			Map<Integer, AttributeDefinition<?>> editedADs,
 			Map<Integer, AttributeDefinition<?>> origADs) throws T2DBException {
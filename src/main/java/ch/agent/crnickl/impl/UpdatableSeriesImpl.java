@@ -207,8 +207,8 @@ public class UpdatableSeriesImpl<T> extends SeriesImpl<T> implements UpdatableSe
 		if (vt.isCompatible(value))
 			setValue(t, (T) value);
 		else {
-			if (value instanceof String)
-				setValue(t, vt.scan((String) value));
+			if (value instanceof CharSequence)
+				setValue(t, ValueTypeImpl.scan(vt, (CharSequence) value));
 			else
 				throw T2DBMsg.exception(D.D10114, value, vt.getType().getName());
 		}
@@ -17,6 +17,9 @@
 package ch.agent.crnickl.impl;
 
 import java.lang.reflect.Constructor;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -31,16 +34,21 @@ import java.util.regex.Pattern;
 import ch.agent.crnickl.T2DBException;
 import ch.agent.crnickl.T2DBMsg;
 import ch.agent.crnickl.T2DBMsg.D;
+import ch.agent.crnickl.api.BooleanValueScanner;
 import ch.agent.crnickl.api.Database;
+import ch.agent.crnickl.api.DoubleValueScanner;
+import ch.agent.crnickl.api.LongValueScanner;
 import ch.agent.crnickl.api.NamingPolicy;
 import ch.agent.crnickl.api.Surrogate;
 import ch.agent.crnickl.api.UpdatableValueType;
+import ch.agent.crnickl.api.ValueCodec;
 import ch.agent.crnickl.api.ValueScanner;
 import ch.agent.crnickl.api.ValueType;
 import ch.agent.t2.applied.DateTime;
 import ch.agent.t2.time.Day;
 import ch.agent.t2.time.TimeDomain;
 import ch.agent.t2.time.TimeDomainCatalog;
+import ch.agent.t2.time.TimeIndex;
 
 /**
  * Default implementation of {@link ValueType}.
@@ -56,12 +64,102 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 	private static final int MAX_NAME_LENGTH = 25;
 	private static final String NAME_PATTERN = "[A-Za-z0-9_][A-Za-z0-9_,\\-]*";
 	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Return the number of bytes needed to write a string as text. The UTF-8
+	 * length is computed from the characters, so that the string is encoded
+	 * only once, by {@link #writeText}. Like the encoder, the computation
+	 * counts one byte for a surrogate which is not part of a pair.
+	 */
+	private static int textSize(String value) {
+		int length = value.length();
+		int size = length;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80)
+				continue;
+			if (c < 0x800)
+				size++;
+			else if (Character.isHighSurrogate(c)) {
+				if (i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+					// 4 bytes for 2 chars
+					size += 2;
+					i++;
+				}
+			} else if (!Character.isLowSurrogate(c))
+				size += 2;
+		}
+		return 4 + size;
+	}
+	
+	/**
+	 * Write a string as text, with its UTF-8 length first.
+	 */
+	private static void writeText(String value, ByteBuffer buffer) {
+		byte[] bytes = value.getBytes(UTF8);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+	
+	/**
+	 * Read a string written with {@link #writeText}.
+	 */
+	private static String readText(ByteBuffer buffer, Class<?> type) throws T2DBException {
+		try {
+			int length = buffer.getInt();
+			if (length < 0 || length > buffer.remaining())
+				throw T2DBMsg.exception(D.D10124, type.getName());
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			return new String(bytes, UTF8);
+		} catch (BufferUnderflowException e) {
+			throw T2DBMsg.exception(e, D.D10124, type.getName());
+		}
+	}
+	
+	/**
+	 * A TextCodec is the codec of value types with a scanner which is not a
+	 * {@link ValueCodec}. It writes values as text, using the scanner.
+	 */
+	public static class TextCodec<T> implements ValueCodec<T> {
+		
+		private final ValueScanner<T> scanner;
+		
+		/**
+		 * Construct a text codec.
+		 * 
+		 * @param scanner a value scanner
+		 */
+		public TextCodec(ValueScanner<T> scanner) {
+			this.scanner = scanner;
+		}
+		
+		@Override
+		public int size(T value) throws T2DBException {
+			return textSize(scanner.toString(value));
+		}
+
+		@Override
+		public void write(T value, ByteBuffer buffer) throws T2DBException {
+			writeText(scanner.toString(value), buffer);
+		}
+
+		@Override
+		public T read(ByteBuffer buffer) throws T2DBException {
+			return scanner.scan(readText(buffer, scanner.getType()));
+		}
+		
+	}
+	
 	/**
 	 * A value scanner for boolean data. The scanner parses strings as
 	 * {@link java.lang.Boolean}. The string "true" (case insensitive) is
 	 * interpreted as true, all others as false.
 	 */
-	public static class BooleanScanner implements ValueScanner<Boolean> {
+	public static class BooleanScanner implements BooleanValueScanner, ValueCodec<Boolean> {
+		
+		private static final String TRUE = Boolean.TRUE.toString();
 		
 		@Override
 		public Class<Boolean> getType() {
@@ -74,21 +172,65 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 
 		@Override
 		public Boolean scan(String value) throws T2DBException {
-			return new Boolean(value);
+			return Boolean.valueOf(scanBoolean(value));
+		}
+
+		@Override
+		public boolean scanBoolean(CharSequence value) {
+			if (value == null || value.length() != TRUE.length())
+				return false;
+			for (int i = 0; i < TRUE.length(); i++) {
+				if (Character.toLowerCase(value.charAt(i)) != TRUE.charAt(i))
+					return false;
+			}
+			return true;
 		}
 
 		@Override
 		public String toString(Boolean value) {
 			return value == null ? null : value.toString();
 		}
+
+		@Override
+		public String toString(boolean value) {
+			return Boolean.toString(value);
+		}
+
+		@Override
+		public int size(Boolean value) {
+			return 1;
+		}
+
+		@Override
+		public void write(Boolean value, ByteBuffer buffer) {
+			buffer.put((byte) (value.booleanValue() ? 1 : 0));
+		}
+
+		@Override
+		public Boolean read(ByteBuffer buffer) throws T2DBException {
+			try {
+				return Boolean.valueOf(buffer.get() != 0);
+			} catch (BufferUnderflowException e) {
+				throw T2DBMsg.exception(e, D.D10124, getType().getName());
+			}
+		}
 		
 	}
 	
 	/**
 	 * A value scanner for numeric data. The scanner parses strings as
 	 * {@link java.lang.Double}. A hyphen ("-") is interpreted as Double.NaN.
+	 * Plain decimal numbers with at most 15 significant digits and a small
+	 * exponent are converted directly, without creating any object. Other
+	 * inputs are converted by {@link Double#parseDouble(String)}.
 	 */
-	public static class NumberScanner implements ValueScanner<Double> {
+	public static class NumberScanner implements DoubleValueScanner, ValueCodec<Double> {
+		
+		private static final long MAX_MANTISSA = 1L << 53;
+		private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+		};
 		
 		@Override
 		public Class<Double> getType() {
@@ -101,11 +243,76 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 
 		@Override
 		public Double scan(String value) throws T2DBException {
+			return scanDouble(value);
+		}
+
+		@Override
+		public double scanDouble(CharSequence value) throws T2DBException {
+			if (value == null)
+				throw T2DBMsg.exception(D.D10103, value);
+			int length = value.length();
+			if (length == 1 && value.charAt(0) == '-')
+				return Double.NaN;
+			int i = 0;
+			boolean negative = false;
+			if (length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) {
+				negative = value.charAt(0) == '-';
+				i++;
+			}
+			long mantissa = 0;
+			int digits = 0;
+			int scale = 0;
+			boolean point = false;
+			boolean any = false;
+			for (; i < length; i++) {
+				char c = value.charAt(i);
+				if (c >= '0' && c <= '9') {
+					any = true;
+					if (mantissa != 0 || c != '0')
+						digits++;
+					mantissa = mantissa * 10 + (c - '0');
+					if (point)
+						scale--;
+					if (digits > 15)
+						return parse(value);
+				} else if (c == '.' && !point)
+					point = true;
+				else
+					break;
+			}
+			if (!any)
+				return parse(value);
+			if (i < length) {
+				char c = value.charAt(i);
+				if (c != 'e' && c != 'E' || ++i == length)
+					return parse(value);
+				boolean negativeExponent = false;
+				c = value.charAt(i);
+				if (c == '-' || c == '+') {
+					negativeExponent = c == '-';
+					if (++i == length)
+						return parse(value);
+				}
+				int exponent = 0;
+				for (; i < length; i++) {
+					c = value.charAt(i);
+					if (c < '0' || c > '9' || exponent > 1000)
+						return parse(value);
+					exponent = exponent * 10 + (c - '0');
+				}
+				scale += negativeExponent ? -exponent : exponent;
+			}
+			if (mantissa > MAX_MANTISSA || scale < -22 || scale > 22)
+				return parse(value);
+			// exact operands, a single correctly rounded operation
+			double result = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+			return negative ? -result : result;
+		}
+		
+		private double parse(CharSequence value) throws T2DBException {
 			try {
-				return new Double(value);
+				return Double.parseDouble(value.toString());
 			} catch (NumberFormatException e) {
-				if (value != null && value.equals("-"))
-					return Double.NaN;
 				throw T2DBMsg.exception(D.D10103, value);
 			}
 		}
@@ -114,6 +321,30 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 		public String toString(Double value) {
 			return value == null ? null : value.toString();
 		}
+
+		@Override
+		public String toString(double value) {
+			return Double.toString(value);
+		}
+
+		@Override
+		public int size(Double value) {
+			return 8;
+		}
+
+		@Override
+		public void write(Double value, ByteBuffer buffer) {
+			buffer.putDouble(value);
+		}
+
+		@Override
+		public Double read(ByteBuffer buffer) throws T2DBException {
+			try {
+				return buffer.getDouble();
+			} catch (BufferUnderflowException e) {
+				throw T2DBMsg.exception(e, D.D10124, getType().getName());
+			}
+		}
 		
 	}
 	
@@ -123,7 +354,7 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 	 * the design committee has decided to implement 
 	 * textual data with {@link java.lang.String}.
 	 */
-	public static class TextScanner implements ValueScanner<String> {
+	public static class TextScanner implements ValueScanner<String>, ValueCodec<String> {
 
 		@Override
 		public Class<String> getType() {
@@ -143,6 +374,21 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 		public String toString(String value) {
 			return value;
 		}
+
+		@Override
+		public int size(String value) {
+			return textSize(value);
+		}
+
+		@Override
+		public void write(String value, ByteBuffer buffer) {
+			writeText(value, buffer);
+		}
+
+		@Override
+		public String read(ByteBuffer buffer) throws T2DBException {
+			return readText(buffer, String.class);
+		}
 		
 	}
 	
@@ -224,9 +470,10 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 	}
 	
 	/**
-	 * A value scanner for data representing {@link Day}s.
+	 * A value scanner for data representing {@link Day}s. As a
+	 * {@link LongValueScanner}, it represents a day by its time index.
 	 */
-	public static class DateScanner implements ValueScanner<Day> {
+	public static class DateScanner implements LongValueScanner<Day>, ValueCodec<Day> {
 
 		@Override
 		public Class<Day> getType() {
@@ -246,17 +493,47 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 			}
 		}
 
+		@Override
+		public long scanLong(CharSequence value) throws T2DBException {
+			return scan(value == null ? null : value.toString()).asLong();
+		}
+
 		@Override
 		public String toString(Day value) {
 			return value == null ? null : value.toString();
 		}
+
+		@Override
+		public String toString(long value) {
+			return Day.DOMAIN.time(value).toString();
+		}
+
+		@Override
+		public int size(Day value) {
+			return 8;
+		}
+
+		@Override
+		public void write(Day value, ByteBuffer buffer) {
+			buffer.putLong(value.asLong());
+		}
+
+		@Override
+		public Day read(ByteBuffer buffer) throws T2DBException {
+			try {
+				return new Day(Day.DOMAIN.time(buffer.getLong()));
+			} catch (Exception e) {
+				throw T2DBMsg.exception(e, D.D10124, getType().getName());
+			}
+		}
 		
 	}
 	
 	/**
-	 * A value scanner for data representing {@link DateTime}s.
+	 * A value scanner for data representing {@link DateTime}s. As a
+	 * {@link LongValueScanner}, it represents a time stamp by its time index.
 	 */
-	public static class DateTimeScanner implements ValueScanner<DateTime> {
+	public static class DateTimeScanner implements LongValueScanner<DateTime>, ValueCodec<DateTime> {
 
 		@Override
 		public Class<DateTime> getType() {
@@ -276,10 +553,39 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 			}
 		}
 
+		@Override
+		public long scanLong(CharSequence value) throws T2DBException {
+			return scan(value == null ? null : value.toString()).asLong();
+		}
+
 		@Override
 		public String toString(DateTime value) {
 			return value == null ? null : value.toString();
 		}
+
+		@Override
+		public String toString(long value) {
+			return DateTime.DOMAIN.time(value).toString();
+		}
+
+		@Override
+		public int size(DateTime value) {
+			return 8;
+		}
+
+		@Override
+		public void write(DateTime value, ByteBuffer buffer) {
+			buffer.putLong(value.asLong());
+		}
+
+		@Override
+		public DateTime read(ByteBuffer buffer) throws T2DBException {
+			try {
+				return new DateTime(DateTime.DOMAIN.time(buffer.getLong()));
+			} catch (Exception e) {
+				throw T2DBMsg.exception(e, D.D10124, getType().getName());
+			}
+		}
 		
 	}
 	
@@ -320,7 +626,30 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 		
 	}
 	
+	/**
+	 * A Dictionary assigns consecutive codes to the allowed values of a
+	 * restricted value type. It is built from a map of allowed values and is
+	 * immutable.
+	 */
+	private static class Dictionary<T> {
+		private final Map<T, String> source;
+		private final Object[] values;
+		private final Map<T, Integer> codes;
+		
+		private Dictionary(Map<T, String> source) {
+			this.source = source;
+			values = source.keySet().toArray();
+			codes = new HashMap<T, Integer>(values.length * 2);
+			int code = 0;
+			for (T value : source.keySet()) {
+				codes.put(value, code++);
+			}
+		}
+	}
+	
 	private ValueScanner<T> scanner;
+	private ValueCodec<T> codec;
+	private Dictionary<T> dictionary;
 	private ValueAccessMethods<T> am; // can be null, but getting throws an exception
 	private String name;
 	private boolean restricted;
@@ -512,6 +841,18 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 		return scanner;
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public ValueCodec<T> getCodec() {
+		if (codec == null) {
+			if (scanner instanceof ValueCodec)
+				codec = (ValueCodec<T>) scanner;
+			else
+				codec = new TextCodec<T>(scanner);
+		}
+		return codec;
+	}
+
 	@Override
 	public Set<T> getValues() {
 		return values.keySet();
@@ -522,6 +863,36 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 		return values;
 	}
 
+	/**
+	 * Return the dictionary of the allowed values, building it again when the
+	 * allowed values have been reloaded.
+	 */
+	private Dictionary<T> getDictionary() {
+		Dictionary<T> d = dictionary;
+		if (d == null || d.source != values) {
+			d = new Dictionary<T>(values);
+			dictionary = d;
+		}
+		return d;
+	}
+	
+	@Override
+	public int getCode(T value) {
+		if (!isRestricted())
+			return -1;
+		Integer code = getDictionary().codes.get(value);
+		return code == null ? -1 : code;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T getValue(int code) throws T2DBException {
+		Dictionary<T> d = getDictionary();
+		if (!isRestricted() || code < 0 || code >= d.values.length)
+			throw T2DBMsg.exception(D.D10125, getName(), code);
+		return (T) d.values[code];
+	}
+
 	@Override
 	public boolean isCompatible(Object obj) {
 		return obj == null || getType().isInstance(obj);
@@ -544,6 +915,84 @@ public class ValueTypeImpl<T> extends DBObjectImpl implements ValueType<T> {
 		return result;
 	}
 
+	/**
+	 * Scan a character sequence and convert it to a value. When the value
+	 * type is not restricted, numbers and booleans are converted with
+	 * {@link #scanDouble} and {@link #scanBoolean}, without creating a
+	 * string. Else the result is the same as the one of {@link #scan(String)}.
+	 * 
+	 * @param value a character sequence
+	 * @return a value or null
+	 * @throws T2DBException
+	 */
+	@SuppressWarnings("unchecked")
+	public T scan(CharSequence value) throws T2DBException {
+		if (value != null && value.length() > 0 && !isRestricted()) {
+			if (scanner instanceof DoubleValueScanner)
+				return (T) Double.valueOf(scanDouble(value));
+			if (scanner instanceof BooleanValueScanner)
+				return (T) Boolean.valueOf(scanBoolean(value));
+		}
+		return scan(value == null ? null : value.toString());
+	}
+	
+	/**
+	 * Scan a character sequence with a value type. A {@link ValueTypeImpl}
+	 * scans it with {@link #scan(CharSequence)}, other value types with
+	 * {@link ValueType#scan(String)}.
+	 * 
+	 * @param type a value type
+	 * @param value a character sequence
+	 * @return a value or null
+	 * @throws T2DBException
+	 */
+	static <T> T scan(ValueType<T> type, CharSequence value) throws T2DBException {
+		if (type instanceof ValueTypeImpl)
+			return ((ValueTypeImpl<T>) type).scan(value);
+		return type.scan(value == null ? null : value.toString());
+	}
+	
+	/**
+	 * Scan a character sequence and convert it to a double. When the scanner
+	 * is a {@link DoubleValueScanner} and the value type is not restricted,
+	 * the conversion does not create any object. Else the value is scanned
+	 * with {@link #scan(String)} and must be a number. An empty sequence is
+	 * converted to NaN.
+	 * 
+	 * @param value a character sequence
+	 * @return a double
+	 * @throws T2DBException
+	 */
+	public double scanDouble(CharSequence value) throws T2DBException {
+		if (value != null && value.length() == 0 && !isRestricted())
+			return Double.NaN;
+		if (scanner instanceof DoubleValueScanner && !isRestricted())
+			return ((DoubleValueScanner) scanner).scanDouble(value);
+		T result = scan(value == null ? null : value.toString());
+		if (result instanceof Number)
+			return ((Number) result).doubleValue();
+		throw T2DBMsg.exception(D.D10114, value, getName());
+	}
+	
+	/**
+	 * Scan a character sequence and convert it to a boolean. When the scanner
+	 * is a {@link BooleanValueScanner} and the value type is not restricted,
+	 * the conversion does not create any object. Else the value is scanned
+	 * with {@link #scan(String)} and must be a boolean.
+	 * 
+	 * @param value a character sequence
+	 * @return a boolean
+	 * @throws T2DBException
+	 */
+	public boolean scanBoolean(CharSequence value) throws T2DBException {
+		if (scanner instanceof BooleanValueScanner && !isRestricted())
+			return ((BooleanValueScanner) scanner).scanBoolean(value);
+		T result = scan(value == null ? null : value.toString());
+		if (result instanceof Boolean)
+			return ((Boolean) result).booleanValue();
+		throw T2DBMsg.exception(D.D10114, value, getName());
+	}
+
 	@Override
 	public void check(T value) throws T2DBException {
 		if (isRestricted() && !values.containsKey(value))
@@ -0,0 +1,774 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.mem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.T2DBMsg;
+import ch.agent.crnickl.T2DBMsg.D;
+import ch.agent.crnickl.T2DBMsg.E;
+import ch.agent.crnickl.api.Attribute;
+import ch.agent.crnickl.api.AttributeDefinition;
+import ch.agent.crnickl.api.Chronicle;
+import ch.agent.crnickl.api.ChroniclePredicate;
+import ch.agent.crnickl.api.DBObjectId;
+import ch.agent.crnickl.api.DBObjectType;
+import ch.agent.crnickl.api.Property;
+import ch.agent.crnickl.api.Schema;
+import ch.agent.crnickl.api.SchemaComponent;
+import ch.agent.crnickl.api.Series;
+import ch.agent.crnickl.api.SeriesDefinition;
+import ch.agent.crnickl.api.Surrogate;
+import ch.agent.crnickl.api.UpdatableChronicle;
+import ch.agent.crnickl.api.UpdatableProperty;
+import ch.agent.crnickl.api.UpdatableSchema;
+import ch.agent.crnickl.api.UpdatableSeries;
+import ch.agent.crnickl.api.UpdatableValueType;
+import ch.agent.crnickl.api.UpdateEventOperation;
+import ch.agent.crnickl.api.ValueScanner;
+import ch.agent.crnickl.api.ValueType;
+import ch.agent.crnickl.api.ValueType.StandardValueType;
+import ch.agent.crnickl.impl.AttributeDefinitionImpl;
+import ch.agent.crnickl.impl.ChronicleImpl;
+import ch.agent.crnickl.impl.DatabaseBackend;
+import ch.agent.crnickl.impl.DatabaseBackendImpl;
+import ch.agent.crnickl.impl.Permission;
+import ch.agent.crnickl.impl.PropertyImpl;
+import ch.agent.crnickl.impl.SeriesDefinitionImpl;
+import ch.agent.crnickl.impl.SeriesImpl;
+import ch.agent.crnickl.impl.SurrogateImpl;
+import ch.agent.crnickl.impl.UpdatableSchemaImpl;
+import ch.agent.crnickl.impl.UpdateEventImpl;
+import ch.agent.crnickl.impl.ValueAccessMethods;
+import ch.agent.crnickl.impl.ValueTypeImpl;
+import ch.agent.crnickl.mem.MemoryStore.AttributeRecord;
+import ch.agent.crnickl.mem.MemoryStore.ChronicleRecord;
+import ch.agent.crnickl.mem.MemoryStore.ComponentRecord;
+import ch.agent.crnickl.mem.MemoryStore.PropertyRecord;
+import ch.agent.crnickl.mem.MemoryStore.SchemaRecord;
+import ch.agent.crnickl.mem.MemoryStore.SeriesRecord;
+import ch.agent.crnickl.mem.MemoryStore.ValueTypeRecord;
+import ch.agent.t2.time.TimeDomainCatalog;
+
+/**
+ * MemoryDatabase is a complete {@link DatabaseBackend} keeping all data in
+ * memory. It requires no external software and is meant for tests,
+ * benchmarks, and small embedded applications. It also serves as a reference
+ * for the behavior expected from other implementations.
+ * <p>
+ * Data is kept in a {@link MemoryStore} and series values are accessed with
+ * {@link MemoryValueAccessMethods}, which are used for all value types. A new
+ * database contains the value types and properties required by the built-in
+ * series attributes. Modifications are effective immediately and can be
+ * reverted with {@link #rollback} until {@link #commit} is called.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class MemoryDatabase extends DatabaseBackendImpl {
+
+	private final MemoryStore store;
+	private final ValueAccessMethods<Object> accessMethods;
+	
+	/**
+	 * Construct a {@link MemoryDatabase} with built-in value types and
+	 * properties.
+	 * 
+	 * @param name the name of the database
+	 * @param timeDomainCatalog the catalog to use for scanning time domains
+	 */
+	public MemoryDatabase(String name, TimeDomainCatalog timeDomainCatalog) {
+		this(name, timeDomainCatalog, new MemoryStore());
+		try {
+			bootstrap();
+		} catch (T2DBException e) {
+			throw new RuntimeException("bug", e);
+		}
+	}
+
+	/**
+	 * Construct a {@link MemoryDatabase} using an existing store.
+	 * 
+	 * @param name the name of the database
+	 * @param timeDomainCatalog the catalog to use for scanning time domains
+	 * @param store a memory store
+	 */
+	protected MemoryDatabase(String name, TimeDomainCatalog timeDomainCatalog, MemoryStore store) {
+		super(name, timeDomainCatalog);
+		this.store = store;
+		this.accessMethods = new MemoryValueAccessMethods<Object>(store);
+		for (StandardValueType type : StandardValueType.values()) {
+			setAccessMethods(type.name(), accessMethods);
+		}
+	}
+	
+	/**
+	 * Add the value types and properties of built-in attributes to an empty store.
+	 * 
+	 * @throws T2DBException
+	 */
+	protected void bootstrap() throws T2DBException {
+		if (store.isEmpty()) {
+			bootstrap(DatabaseBackend.BUILTIN_PROP_SYMBOL, "name", StandardValueType.NAME);
+			bootstrap(DatabaseBackend.BUILTIN_PROP_TYPE, "type", StandardValueType.TYPE);
+			bootstrap(DatabaseBackend.BUILTIN_PROP_TIME_DOMAIN, "timedomain", StandardValueType.TIMEDOMAIN);
+			bootstrap(DatabaseBackend.BUILTIN_PROP_SPARSITY, "boolean", StandardValueType.BOOLEAN);
+			store.commit();
+		}
+	}
+	
+	private void bootstrap(String property, String valueType, StandardValueType type) throws T2DBException {
+		long id = store.nextId();
+		store.createValueType(new ValueTypeRecord(id, valueType, false, type.name(), null));
+		store.createProperty(new PropertyRecord(store.nextId(), property, id, false));
+	}
+	
+	/**
+	 * Return the store.
+	 * 
+	 * @return the store
+	 */
+	protected MemoryStore getStore() {
+		return store;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Values of custom value types are accessed with the same methods as
+	 * values of standard types.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> ValueAccessMethods<T> getAccessMethods(ValueType<T> valueType) {
+		ValueAccessMethods<T> methods = super.getAccessMethods(valueType);
+		if (methods == null)
+			methods = (ValueAccessMethods<T>) getDefaultAccessMethods();
+		return methods;
+	}
+	
+	/**
+	 * Return the access methods used for values of custom value types.
+	 * 
+	 * @return value access methods
+	 */
+	protected ValueAccessMethods<Object> getDefaultAccessMethods() {
+		return accessMethods;
+	}
+
+	/**
+	 * Return the number wrapped by the id of a surrogate. Return zero if the
+	 * surrogate is in construction.
+	 * 
+	 * @param surrogate a surrogate
+	 * @return a positive number or zero
+	 */
+	protected long id(Surrogate surrogate) {
+		return surrogate.inConstruction() ? 0 : ((MemoryId) surrogate.getId()).value();
+	}
+	
+	/**
+	 * Return a surrogate for an object of this database.
+	 * 
+	 * @param dot a database object type
+	 * @param id a positive number
+	 * @return a surrogate
+	 */
+	protected Surrogate surrogate(DBObjectType dot, long id) {
+		return makeSurrogate(dot, new MemoryId(id));
+	}
+	
+	private void upgrade(Surrogate surrogate, DBObjectType dot, long id) {
+		((SurrogateImpl) surrogate).upgrade(surrogate(dot, id));
+	}
+	
+	@Override
+	public DBObjectId makeDBObjectId(Object object) throws T2DBException {
+		try {
+			if (object instanceof MemoryId)
+				return (MemoryId) object;
+			if (object instanceof Number)
+				return new MemoryId(((Number) object).longValue());
+			return new MemoryId(Long.parseLong(object.toString()));
+		} catch (Exception e) {
+			throw T2DBMsg.exception(e, D.D02105, object);
+		}
+	}
+
+	@Override
+	public void commit() throws T2DBException {
+		store.commit();
+		getUpdateEventPublisher().release();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * All modifications since the last commit are reverted, then state
+	 * kept in memory is discarded with {@link #rolledBack()}.
+	 */
+	@Override
+	public void rollback() throws T2DBException {
+		store.rollback();
+		rolledBack();
+	}
+	
+	/* value types */
+	
+	@Override
+	public <T> ValueType<T> getValueType(Surrogate surrogate) throws T2DBException {
+		checkSurrogate(surrogate, DBObjectType.VALUE_TYPE);
+		ValueTypeRecord record = store.getValueType(id(surrogate));
+		if (record == null)
+			throw T2DBMsg.exception(E.E10110, surrogate.toString());
+		return valueType(record, surrogate);
+	}
+
+	@Override
+	public <T> ValueType<T> getValueType(String name) throws T2DBException {
+		ValueTypeRecord record = store.getValueType(name);
+		if (record == null)
+			throw T2DBMsg.exception(E.E10109, name);
+		return valueType(record, surrogate(DBObjectType.VALUE_TYPE, record.getId()));
+	}
+
+	@Override
+	public Collection<ValueType<?>> getValueTypes(String pattern) throws T2DBException {
+		List<ValueTypeRecord> records = store.getValueTypes(pattern);
+		Collection<ValueType<?>> result = new ArrayList<ValueType<?>>(records.size());
+		for (ValueTypeRecord record : records) {
+			result.add(valueType(record, surrogate(DBObjectType.VALUE_TYPE, record.getId())));
+		}
+		return result;
+	}
+	
+	private <T> ValueType<T> valueType(ValueTypeRecord record, Surrogate surrogate) throws T2DBException {
+		return new ValueTypeImpl<T>(record.getName(), record.isRestricted(), record.getScanner(), record.getValues(), surrogate);
+	}
+	
+	private <T> ValueTypeRecord valueTypeRecord(long id, UpdatableValueType<T> valueType) throws T2DBException {
+		// the scanner is used because toString only accepts committed values 
+		ValueScanner<T> scanner = valueType.getScanner();
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		for (Map.Entry<T, String> e : valueType.getValueDescriptions().entrySet()) {
+			values.put(scanner.toString(e.getKey()), e.getValue());
+		}
+		return new ValueTypeRecord(id, valueType.getName(), valueType.isRestricted(), 
+				valueType.getExternalRepresentation(), values);
+	}
+
+	@Override
+	public <T> void create(UpdatableValueType<T> valueType) throws T2DBException {
+		check(Permission.CREATE, valueType);
+		long id = store.nextId();
+		store.createValueType(valueTypeRecord(id, valueType));
+		upgrade(valueType.getSurrogate(), DBObjectType.VALUE_TYPE, id);
+		publish(new UpdateEventImpl(UpdateEventOperation.CREATE, valueType));
+	}
+
+	@Override
+	public void update(UpdatableValueType<?> valueType) throws T2DBException {
+		check(Permission.MODIFY, valueType);
+		store.updateValueType(valueTypeRecord(id(valueType.getSurrogate()), valueType));
+		publish(new UpdateEventImpl(UpdateEventOperation.MODIFY, valueType));
+	}
+
+	@Override
+	public void deleteValueType(UpdatableValueType<?> valueType) throws T2DBException {
+		check(Permission.MODIFY, valueType);
+		getSchemaUpdatePolicy().willDelete(valueType);
+		store.deleteValueType(id(valueType.getSurrogate()));
+		publish(new UpdateEventImpl(UpdateEventOperation.DELETE, valueType));
+	}
+	
+	/* properties */
+
+	@Override
+	public Property<?> getProperty(Surrogate surrogate) throws T2DBException {
+		checkSurrogate(surrogate, DBObjectType.PROPERTY);
+		PropertyRecord record = store.getProperty(id(surrogate));
+		if (record == null)
+			throw T2DBMsg.exception(E.E20109, surrogate.toString());
+		return property(record, surrogate);
+	}
+
+	@Override
+	public Property<?> getProperty(String name) throws T2DBException {
+		PropertyRecord record = store.getProperty(name);
+		return record == null ? null : property(record, surrogate(DBObjectType.PROPERTY, record.getId()));
+	}
+
+	@Override
+	public Collection<Property<?>> getProperties(String pattern) throws T2DBException {
+		List<PropertyRecord> records = store.getProperties(pattern);
+		Collection<Property<?>> result = new ArrayList<Property<?>>(records.size());
+		for (PropertyRecord record : records) {
+			result.add(property(record, surrogate(DBObjectType.PROPERTY, record.getId())));
+		}
+		return result;
+	}
+	
+	private <T> Property<T> property(PropertyRecord record, Surrogate surrogate) throws T2DBException {
+		ValueType<T> valueType = getValueType(surrogate(DBObjectType.VALUE_TYPE, record.getValueType()));
+		return new PropertyImpl<T>(record.getName(), valueType, record.isIndexed(), surrogate);
+	}
+	
+	private PropertyRecord propertyRecord(long id, UpdatableProperty<?> property) {
+		return new PropertyRecord(id, property.getName(), id(property.getValueType().getSurrogate()), property.isIndexed());
+	}
+
+	@Override
+	public void create(UpdatableProperty<?> property) throws T2DBException {
+		check(Permission.CREATE, property);
+		long id = store.nextId();
+		store.createProperty(propertyRecord(id, property));
+		upgrade(property.getSurrogate(), DBObjectType.PROPERTY, id);
+		publish(new UpdateEventImpl(UpdateEventOperation.CREATE, property));
+	}
+
+	@Override
+	public void update(UpdatableProperty<?> property) throws T2DBException {
+		check(Permission.MODIFY, property);
+		store.updateProperty(propertyRecord(id(property.getSurrogate()), property));
+		publish(new UpdateEventImpl(UpdateEventOperation.MODIFY, property));
+	}
+
+	@Override
+	public void deleteProperty(UpdatableProperty<?> property) throws T2DBException {
+		check(Permission.MODIFY, property);
+		String name = property.getName();
+		if (name.equals(BUILTIN_PROP_SYMBOL) || name.equals(BUILTIN_PROP_TYPE) 
+				|| name.equals(BUILTIN_PROP_TIME_DOMAIN) || name.equals(BUILTIN_PROP_SPARSITY))
+			throw T2DBMsg.exception(E.E20120, name);
+		getSchemaUpdatePolicy().willDelete(property);
+		store.deleteProperty(id(property.getSurrogate()));
+		publish(new UpdateEventImpl(UpdateEventOperation.DELETE, property));
+	}
+	
+	/* schemas */
+
+	@Override
+	public Collection<Surrogate> getSchemaSurrogates(String pattern) throws T2DBException {
+		List<SchemaRecord> records = store.getSchemas(pattern);
+		Collection<Surrogate> result = new ArrayList<Surrogate>(records.size());
+		for (SchemaRecord record : records) {
+			result.add(surrogate(DBObjectType.SCHEMA, record.getId()));
+		}
+		return result;
+	}
+
+	@Override
+	public Map<Surrogate, Surrogate> getSchemaBases() throws T2DBException {
+		List<SchemaRecord> records = store.getSchemas("*");
+		Map<Surrogate, Surrogate> result = new HashMap<Surrogate, Surrogate>(records.size() * 2);
+		for (SchemaRecord record : records) {
+			result.put(surrogate(DBObjectType.SCHEMA, record.getId()), 
+					record.getBase() == 0 ? null : surrogate(DBObjectType.SCHEMA, record.getBase()));
+		}
+		return result;
+	}
+
+	@Override
+	public UpdatableSchema getUpdatableSchema(Surrogate surrogate) throws T2DBException {
+		checkSurrogate(surrogate, DBObjectType.SCHEMA);
+		SchemaRecord record = store.getSchema(id(surrogate));
+		if (record == null)
+			throw T2DBMsg.exception(E.E30109, surrogate.toString());
+		UpdatableSchema base = null;
+		if (record.getBase() != 0)
+			base = getUpdatableSchema(surrogate(DBObjectType.SCHEMA, record.getBase()));
+		Collection<AttributeDefinition<?>> attributeDefs = new ArrayList<AttributeDefinition<?>>();
+		Map<Integer, ComponentRecord> seriesRecords = new LinkedHashMap<Integer, ComponentRecord>();
+		Map<Integer, Collection<AttributeDefinition<?>>> seriesAttributeDefs = new HashMap<Integer, Collection<AttributeDefinition<?>>>();
+		for (ComponentRecord c : record.getComponents()) {
+			if (c.getNumber() == 0) {
+				seriesRecords.put(c.getSeriesNr(), c);
+				seriesAttributeDefs.put(c.getSeriesNr(), new ArrayList<AttributeDefinition<?>>());
+			} else if (c.getSeriesNr() == 0)
+				attributeDefs.add(attributeDefinition(c));
+			else
+				seriesAttributeDefs.get(c.getSeriesNr()).add(attributeDefinition(c));
+		}
+		Collection<SeriesDefinition> seriesDefs = new ArrayList<SeriesDefinition>(seriesRecords.size());
+		for (ComponentRecord c : seriesRecords.values()) {
+			SeriesDefinitionImpl def = new SeriesDefinitionImpl(c.getSeriesNr(), c.getDescription(), seriesAttributeDefs.get(c.getSeriesNr()));
+			if (c.isErasing()) {
+				def.edit();
+				def.setErasing(true);
+			}
+			seriesDefs.add(def);
+		}
+		return new UpdatableSchemaImpl(record.getName(), base, attributeDefs, seriesDefs, surrogate);
+	}
+	
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private AttributeDefinition<?> attributeDefinition(ComponentRecord c) throws T2DBException {
+		AttributeDefinitionImpl<?> def = null;
+		if (c.isErasing()) {
+			def = new AttributeDefinitionImpl(c.getSeriesNr(), c.getNumber(), null, null);
+			def.edit();
+			def.setErasing(true);
+		} else {
+			Property<?> property = getProperty(surrogate(DBObjectType.PROPERTY, c.getProperty()));
+			Object value = c.getValue() == null ? null : property.scan(c.getValue());
+			def = new AttributeDefinitionImpl(c.getSeriesNr(), c.getNumber(), property, value);
+		}
+		return def;
+	}
+
+	private SchemaRecord schemaRecord(long id, UpdatableSchema schema) throws T2DBException {
+		List<ComponentRecord> components = new ArrayList<ComponentRecord>();
+		for (AttributeDefinition<?> def : schema.getAttributeDefinitions()) {
+			components.add(componentRecord(schema, 0, def));
+		}
+		for (SeriesDefinition ss : schema.getSeriesDefinitions()) {
+			components.add(new ComponentRecord(ss.getNumber(), 0, 0, null, ss.getDescription(), ss.isErasing()));
+			for (AttributeDefinition<?> def : ss.getAttributeDefinitions()) {
+				components.add(componentRecord(schema, ss.getNumber(), def));
+			}
+		}
+		UpdatableSchema base = schema.getBase();
+		return new SchemaRecord(id, schema.getName(), base == null ? 0 : id(base.getSurrogate()), components);
+	}
+	
+	private ComponentRecord componentRecord(UpdatableSchema schema, int seriesNr, AttributeDefinition<?> def) throws T2DBException {
+		if (def.isErasing())
+			return new ComponentRecord(seriesNr, def.getNumber(), 0, null, null, true);
+		Property<?> property = def.getProperty();
+		if (property == null)
+			throw T2DBMsg.exception(E.E30130);
+		String value = def.getValue() == null ? null : property.getValueType().toString(def.getValue());
+		return new ComponentRecord(seriesNr, def.getNumber(), id(property.getSurrogate()), value, null, false);
+	}
+	
+	@Override
+	public void create(UpdatableSchema schema) throws T2DBException {
+		check(Permission.CREATE, schema);
+		long id = store.nextId();
+		store.createSchema(schemaRecord(id, schema));
+		upgrade(schema.getSurrogate(), DBObjectType.SCHEMA, id);
+		publish(new UpdateEventImpl(UpdateEventOperation.CREATE, schema));
+	}
+
+	@Override
+	public void update(UpdatableSchema schema) throws T2DBException {
+		check(Permission.MODIFY, schema);
+		store.updateSchema(schemaRecord(id(schema.getSurrogate()), schema));
+		publish(new UpdateEventImpl(UpdateEventOperation.MODIFY, schema));
+	}
+
+	@Override
+	public void deleteSchema(UpdatableSchema schema) throws T2DBException {
+		check(Permission.MODIFY, schema);
+		store.deleteSchema(id(schema.getSurrogate()));
+		publish(new UpdateEventImpl(UpdateEventOperation.DELETE, schema));
+	}
+
+	@Override
+	public Surrogate findChronicle(Schema schema) throws T2DBException {
+		return chronicleSurrogate(store.findChronicleBySchema(id(schema.getSurrogate())));
+	}
+
+	@Override
+	public Surrogate findChronicle(Property<?> property, Schema schema) throws T2DBException {
+		return chronicleSurrogate(store.findChronicleByAttribute(id(property.getSurrogate()), id(schema.getSurrogate())));
+	}
+
+	@Override
+	public Surrogate findChronicle(SeriesDefinition ss, Schema schema) throws T2DBException {
+		return chronicleSurrogate(store.findChronicleBySeries(ss.getNumber(), id(schema.getSurrogate())));
+	}
+	
+	@Override
+	public Map<SchemaComponent, Surrogate> findChronicles(Collection<SeriesDefinition> series,
+			Collection<AttributeDefinition<?>> attributes, Schema schema) throws T2DBException {
+		Set<Integer> numbers = new HashSet<Integer>();
+		for (SeriesDefinition ss : series) {
+			numbers.add(ss.getNumber());
+		}
+		Set<Long> properties = new HashSet<Long>();
+		for (AttributeDefinition<?> def : attributes) {
+			properties.add(id(def.getProperty().getSurrogate()));
+		}
+		Map<Integer, Long> seriesResult = new HashMap<Integer, Long>();
+		Map<Long, Long> propertyResult = new HashMap<Long, Long>();
+		store.findChronicles(numbers, properties, id(schema.getSurrogate()), seriesResult, propertyResult);
+		Map<SchemaComponent, Surrogate> result = new IdentityHashMap<SchemaComponent, Surrogate>();
+		for (SeriesDefinition ss : series) {
+			Long chronicle = seriesResult.get(ss.getNumber());
+			if (chronicle != null)
+				result.put(ss, chronicleSurrogate(chronicle));
+		}
+		for (AttributeDefinition<?> def : attributes) {
+			Long chronicle = propertyResult.get(id(def.getProperty().getSurrogate()));
+			if (chronicle != null)
+				result.put(def, chronicleSurrogate(chronicle));
+		}
+		return result;
+	}
+	
+	private Surrogate chronicleSurrogate(long id) {
+		return id == 0 ? null : surrogate(DBObjectType.CHRONICLE, id);
+	}
+	
+	/* chronicles */
+	
+	/**
+	 * Return the number wrapped by the id of a chronicle. Return zero for the
+	 * top chronicle and for a chronicle in construction.
+	 * 
+	 * @param chronicle a chronicle or null
+	 * @return a positive number or zero
+	 */
+	private long key(Chronicle chronicle) {
+		return chronicle == null || chronicle.isTopChronicle() ? 0 : id(chronicle.getSurrogate());
+	}
+	
+	private Chronicle chronicle(ChronicleRecord record, Surrogate surrogate, Chronicle parent) throws T2DBException {
+		ChronicleImpl.RawData data = new ChronicleImpl.RawData();
+		data.setSurrogate(surrogate);
+		data.setName(record.getName());
+		data.setDescription(record.getDescription());
+		if (parent == null)
+			parent = record.getParent() == 0 ? getTopChronicle() : getChronicle(surrogate(DBObjectType.CHRONICLE, record.getParent()));
+		data.setCollection(parent);
+		if (record.getSchema() != 0)
+			data.setSchema(surrogate(DBObjectType.SCHEMA, record.getSchema()));
+		return new ChronicleImpl(data);
+	}
+	
+	private Collection<Chronicle> chronicles(List<ChronicleRecord> records, Chronicle parent) throws T2DBException {
+		Collection<Chronicle> result = new ArrayList<Chronicle>(records.size());
+		for (ChronicleRecord record : records) {
+			result.add(chronicle(record, surrogate(DBObjectType.CHRONICLE, record.getId()), parent));
+		}
+		return result;
+	}
+
+	@Override
+	public Chronicle getChronicle(Chronicle chronicle) throws T2DBException {
+		Surrogate surrogate = chronicle.getSurrogate();
+		checkSurrogate(surrogate, DBObjectType.CHRONICLE);
+		ChronicleRecord record = store.getChronicle(id(surrogate));
+		if (record == null)
+			throw T2DBMsg.exception(E.E40104, surrogate.toString());
+		return chronicle(record, surrogate, null);
+	}
+
+	@Override
+	public Chronicle getChronicleOrNull(Chronicle parent, String simpleName) throws T2DBException {
+		ChronicleRecord record = store.getMember(key(parent), simpleName);
+		return record == null ? null : chronicle(record, surrogate(DBObjectType.CHRONICLE, record.getId()), parent);
+	}
+
+	@Override
+	public Collection<Chronicle> getChroniclesByParent(Chronicle parent) throws T2DBException {
+		return chronicles(store.getMembers(key(parent), null, Integer.MAX_VALUE), parent);
+	}
+
+	@Override
+	public Collection<Chronicle> getChroniclesByParent(Chronicle parent, String after, int maxSize) throws T2DBException {
+		return chronicles(store.getMembers(key(parent), after, maxSize), parent);
+	}
+
+	@Override
+	public int countChroniclesByParent(Chronicle parent) throws T2DBException {
+		return store.countMembers(key(parent));
+	}
+
+	@Override
+	public boolean hasMembers(Chronicle chronicle) throws T2DBException {
+		return store.countMembers(key(chronicle)) > 0;
+	}
+
+	@Override
+	public boolean hasSeries(Chronicle chronicle) throws T2DBException {
+		return store.hasSeries(key(chronicle));
+	}
+
+	@Override
+	public <T> boolean hasValues(Series<T> series) throws T2DBException {
+		SeriesRecord record = series.getSurrogate().inConstruction() ? null : store.getSeries(id(series.getSurrogate()));
+		return record != null && !record.getValues().isEmpty();
+	}
+
+	@Override
+	public void create(UpdatableChronicle chronicle) throws T2DBException {
+		check(Permission.CREATE, chronicle);
+		getChronicleUpdatePolicy().willUpdate(chronicle);
+		Schema schema = chronicle.getSchema(false);
+		long id = store.nextId();
+		store.createChronicle(new ChronicleRecord(id, key(chronicle.getCollection()), chronicle.getName(false), 
+				chronicle.getDescription(false), schema == null ? 0 : id(schema.getSurrogate())));
+		upgrade(chronicle.getSurrogate(), DBObjectType.CHRONICLE, id);
+		publish(new UpdateEventImpl(UpdateEventOperation.CREATE, chronicle));
+	}
+
+	@Override
+	public void update(UpdatableChronicle chronicle) throws T2DBException {
+		check(Permission.MODIFY, chronicle);
+		getChronicleUpdatePolicy().willUpdate(chronicle);
+		long id = id(chronicle.getSurrogate());
+		ChronicleRecord current = store.getChronicle(id);
+		if (current == null)
+			throw T2DBMsg.exception(E.E40104, chronicle.getSurrogate().toString());
+		store.updateChronicle(new ChronicleRecord(id, current.getParent(), chronicle.getName(false), 
+				chronicle.getDescription(false), current.getSchema()));
+		publish(new UpdateEventImpl(UpdateEventOperation.MODIFY, chronicle));
+	}
+
+	@Override
+	public void deleteChronicle(UpdatableChronicle chronicle) throws T2DBException {
+		check(Permission.MODIFY, chronicle);
+		getChronicleUpdatePolicy().willDelete(chronicle);
+		if (!getChronicleUpdatePolicy().deleteChronicle(chronicle))
+			store.deleteChronicle(id(chronicle.getSurrogate()));
+		publish(new UpdateEventImpl(UpdateEventOperation.DELETE, chronicle));
+	}
+	
+	/* attribute values */
+
+	@Override
+	public boolean getAttributeValue(List<Chronicle> chronicles, Attribute<?> attribute) throws T2DBException {
+		long property = id(attribute.getProperty().getSurrogate());
+		for (Chronicle chronicle : chronicles) {
+			AttributeRecord record = store.getAttribute(key(chronicle), property);
+			if (record != null) {
+				attribute.scan(record.getValue());
+				String description = record.getDescription();
+				if (description != null && description.length() > 0)
+					attribute.setDescription(description);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public <T> List<Chronicle> getChroniclesByAttributeValue(Property<T> property, T value, int maxSize) throws T2DBException {
+		List<Long> ids = store.getChroniclesByAttribute(id(property.getSurrogate()), 
+				property.getValueType().toString(value), maxSize);
+		List<Chronicle> result = new ArrayList<Chronicle>(ids.size());
+		for (Long id : ids) {
+			result.add(getChronicle(surrogate(DBObjectType.CHRONICLE, id)));
+		}
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This implementation also evaluates {@link ChroniclePredicate.Operator#MEMBER} and
+	 * {@link ChroniclePredicate.Operator#SCHEMA} predicates with the chronicle tree of the
+	 * store.
+	 */
+	@Override
+	public Collection<Surrogate> getChronicles(ChroniclePredicate predicate) throws T2DBException {
+		List<Long> ids;
+		switch (predicate.getOperator()) {
+		case MEMBER:
+			Chronicle collection = predicate.getCollection();
+			if (!collection.isTopChronicle() && collection.getSurrogate().inConstruction())
+				return new ArrayList<Surrogate>();
+			ids = store.getDescendants(key(collection));
+			break;
+		case SCHEMA:
+			Surrogate schema = predicate.getSchema().getSurrogate();
+			if (schema.inConstruction())
+				return new ArrayList<Surrogate>();
+			ids = store.getChroniclesBySchema(id(schema));
+			break;
+		default:
+			return super.getChronicles(predicate);
+		}
+		List<Surrogate> result = new ArrayList<Surrogate>(ids.size());
+		for (Long id : ids) {
+			result.add(surrogate(DBObjectType.CHRONICLE, id));
+		}
+		return result;
+	}
+
+	@Override
+	public void update(UpdatableChronicle chronicle, AttributeDefinition<?> def, String value, String description) throws T2DBException {
+		check(Permission.MODIFY, chronicle);
+		store.putAttribute(new AttributeRecord(id(chronicle.getSurrogate()), id(def.getProperty().getSurrogate()), value, description));
+		publish(new UpdateEventImpl(UpdateEventOperation.MODIFY, chronicle));
+	}
+
+	@Override
+	public void deleteAttributeValue(UpdatableChronicle chronicle, AttributeDefinition<?> def) throws T2DBException {
+		check(Permission.MODIFY, chronicle);
+		if (store.deleteAttribute(id(chronicle.getSurrogate()), id(def.getProperty().getSurrogate())))
+			publish(new UpdateEventImpl(UpdateEventOperation.MODIFY, chronicle));
+	}
+	
+	/* series */
+
+	@Override
+	public <T> Series<T> getSeries(Surrogate surrogate) throws T2DBException {
+		checkSurrogate(surrogate, DBObjectType.SERIES);
+		SeriesRecord record = store.getSeries(id(surrogate));
+		if (record == null)
+			throw T2DBMsg.exception(E.E50104, surrogate.toString());
+		Chronicle chronicle = getChronicle(surrogate(DBObjectType.CHRONICLE, record.getChronicle()));
+		return new SeriesImpl<T>(chronicle, null, record.getNumber(), surrogate);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public <T> Series<T>[] getSeries(Chronicle chronicle, String[] names, int[] numbers) throws T2DBException {
+		Series<T>[] result = new Series[names.length];
+		long id = key(chronicle);
+		if (id != 0) {
+			for (int i = 0; i < names.length; i++) {
+				if (numbers[i] > 0) {
+					SeriesRecord record = store.getSeries(id, numbers[i]);
+					if (record != null)
+						result[i] = new SeriesImpl<T>(chronicle, names[i], numbers[i], surrogate(DBObjectType.SERIES, record.getId()));
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public <T> void create(UpdatableSeries<T> series) throws T2DBException {
+		check(Permission.CREATE, series);
+		long id = store.nextId();
+		store.createSeries(new SeriesRecord(id, id(series.getChronicle().getSurrogate()), series.getNumber()));
+		upgrade(series.getSurrogate(), DBObjectType.SERIES, id);
+		publish(new UpdateEventImpl(UpdateEventOperation.CREATE, series));
+	}
+
+	@Override
+	public <T> void deleteSeries(UpdatableSeries<T> series) throws T2DBException {
+		check(Permission.MODIFY, series);
+		getChronicleUpdatePolicy().willDelete(series);
+		if (!getChronicleUpdatePolicy().deleteSeries(series))
+			store.deleteSeries(id(series.getSurrogate()));
+		publish(new UpdateEventImpl(UpdateEventOperation.DELETE, series));
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.mem;
+
+import ch.agent.crnickl.api.LongDBObjectId;
+
+/**
+ * MemoryId is the {@link ch.agent.crnickl.api.DBObjectId} of objects in a {@link MemoryDatabase}.
+ * It wraps a positive number.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class MemoryId implements LongDBObjectId {
+
+	private final long id;
+	
+	/**
+	 * Construct a {@link MemoryId}.
+	 * 
+	 * @param id a positive number
+	 */
+	public MemoryId(long id) {
+		if (id < 1)
+			throw new IllegalArgumentException("id < 1");
+		this.id = id;
+	}
+
+	/**
+	 * Return the number wrapped by the id.
+	 * 
+	 * @return a positive number
+	 */
+	@Override
+	public long value() {
+		return id;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (id ^ (id >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		return id == ((MemoryId) obj).id;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(id);
+	}
+
+}
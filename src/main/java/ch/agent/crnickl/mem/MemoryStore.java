@@ -0,0 +1,1661 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.mem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.T2DBMsg;
+import ch.agent.crnickl.T2DBMsg.D;
+import ch.agent.crnickl.T2DBMsg.E;
+import ch.agent.crnickl.api.ValueType.StandardValueType;
+import ch.agent.crnickl.impl.LongMap;
+
+/**
+ * MemoryStore keeps the raw records of a {@link MemoryDatabase}. Records are
+ * immutable and are replaced when updated, with the exception of series
+ * values, which are kept in a concurrent sorted map per series. Metadata is
+ * protected by a read-write lock. All identifiers are positive numbers taken
+ * from a single sequence. The number zero stands for "nothing", and as a
+ * parent identifier it stands for the top chronicle.
+ * <p>
+ * All modifications are recorded in an undo log until {@link #commit} or
+ * {@link #rollback} is called.
+ * 
+ * @author Jean-Paul Vetterli
+ */
+public class MemoryStore {
+
+	/**
+	 * The record of a value type.
+	 */
+	public static class ValueTypeRecord {
+		private final long id;
+		private final String name;
+		private final boolean restricted;
+		private final String scanner;
+		private final Map<String, String> values;
+
+		/**
+		 * Construct a value type record.
+		 * 
+		 * @param id a positive number
+		 * @param name a string
+		 * @param restricted true if the value type has a list of allowed values
+		 * @param scanner a standard value type keyword or a class name
+		 * @param values a map of allowed values and their description or null
+		 */
+		public ValueTypeRecord(long id, String name, boolean restricted, String scanner, Map<String, String> values) {
+			this.id = id;
+			this.name = name;
+			this.restricted = restricted;
+			this.scanner = scanner;
+			this.values = values == null ? Collections.<String, String>emptyMap() : 
+				Collections.unmodifiableMap(new LinkedHashMap<String, String>(values));
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isRestricted() {
+			return restricted;
+		}
+
+		public String getScanner() {
+			return scanner;
+		}
+
+		public Map<String, String> getValues() {
+			return values;
+		}
+	}
+	
+	/**
+	 * The record of a property.
+	 */
+	public static class PropertyRecord {
+		private final long id;
+		private final String name;
+		private final long valueType;
+		private final boolean indexed;
+
+		/**
+		 * Construct a property record.
+		 * 
+		 * @param id a positive number
+		 * @param name a string
+		 * @param valueType the id of the value type
+		 * @param indexed true if the property is suitable for searches
+		 */
+		public PropertyRecord(long id, String name, long valueType, boolean indexed) {
+			this.id = id;
+			this.name = name;
+			this.valueType = valueType;
+			this.indexed = indexed;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getValueType() {
+			return valueType;
+		}
+
+		public boolean isIndexed() {
+			return indexed;
+		}
+	}
+	
+	/**
+	 * The record of a schema component. A component with a series number and
+	 * an attribute number of zero is a series definition. Other components are
+	 * attribute definitions, of the schema when the series number is zero,
+	 * else of the series.
+	 */
+	public static class ComponentRecord {
+		private final int seriesNr;
+		private final int number;
+		private final long property;
+		private final String value;
+		private final String description;
+		private final boolean erasing;
+
+		/**
+		 * Construct a schema component record.
+		 * 
+		 * @param seriesNr a series number or zero
+		 * @param number an attribute number or zero
+		 * @param property the id of the property or zero
+		 * @param value the default value as a string or null
+		 * @param description the description of a series or null
+		 * @param erasing true if the component erases an inherited component
+		 */
+		public ComponentRecord(int seriesNr, int number, long property, String value, String description, boolean erasing) {
+			this.seriesNr = seriesNr;
+			this.number = number;
+			this.property = property;
+			this.value = value;
+			this.description = description;
+			this.erasing = erasing;
+		}
+
+		public int getSeriesNr() {
+			return seriesNr;
+		}
+
+		public int getNumber() {
+			return number;
+		}
+
+		public long getProperty() {
+			return property;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		public boolean isErasing() {
+			return erasing;
+		}
+	}
+	
+	/**
+	 * The record of a schema.
+	 */
+	public static class SchemaRecord {
+		private final long id;
+		private final String name;
+		private final long base;
+		private final List<ComponentRecord> components;
+
+		/**
+		 * Construct a schema record.
+		 * 
+		 * @param id a positive number
+		 * @param name a string
+		 * @param base the id of the base schema or zero
+		 * @param components a list of components
+		 */
+		public SchemaRecord(long id, String name, long base, List<ComponentRecord> components) {
+			this.id = id;
+			this.name = name;
+			this.base = base;
+			this.components = Collections.unmodifiableList(new ArrayList<ComponentRecord>(components));
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getBase() {
+			return base;
+		}
+
+		public List<ComponentRecord> getComponents() {
+			return components;
+		}
+	}
+	
+	/**
+	 * The record of a chronicle.
+	 */
+	public static class ChronicleRecord {
+		private final long id;
+		private final long parent;
+		private final String name;
+		private final String description;
+		private final long schema;
+		
+		/**
+		 * Construct a chronicle record.
+		 * 
+		 * @param id a positive number
+		 * @param parent the id of the parent chronicle or zero for the top chronicle
+		 * @param name a simple name
+		 * @param description a string
+		 * @param schema the id of the schema or zero
+		 */
+		public ChronicleRecord(long id, long parent, String name, String description, long schema) {
+			this.id = id;
+			this.parent = parent;
+			this.name = name;
+			this.description = description;
+			this.schema = schema;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public long getParent() {
+			return parent;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		public long getSchema() {
+			return schema;
+		}
+	}
+	
+	/**
+	 * The record of an attribute value.
+	 */
+	public static class AttributeRecord {
+		private final long chronicle;
+		private final long property;
+		private final String value;
+		private final String description;
+
+		/**
+		 * Construct an attribute value record.
+		 * 
+		 * @param chronicle the id of the chronicle
+		 * @param property the id of the property
+		 * @param value the value as a string
+		 * @param description a description or null
+		 */
+		public AttributeRecord(long chronicle, long property, String value, String description) {
+			this.chronicle = chronicle;
+			this.property = property;
+			this.value = value;
+			this.description = description;
+		}
+
+		public long getChronicle() {
+			return chronicle;
+		}
+
+		public long getProperty() {
+			return property;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+	}
+	
+	/**
+	 * The record of a series. The values are kept in a concurrent map keyed
+	 * by time index.
+	 */
+	public static class SeriesRecord {
+		private final long id;
+		private final long chronicle;
+		private final int number;
+		private final ConcurrentNavigableMap<Long, Object> values;
+
+		/**
+		 * Construct a series record.
+		 * 
+		 * @param id a positive number
+		 * @param chronicle the id of the chronicle
+		 * @param number the series number
+		 */
+		public SeriesRecord(long id, long chronicle, int number) {
+			this.id = id;
+			this.chronicle = chronicle;
+			this.number = number;
+			this.values = new ConcurrentSkipListMap<Long, Object>();
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public long getChronicle() {
+			return chronicle;
+		}
+
+		public int getNumber() {
+			return number;
+		}
+
+		/**
+		 * Return the values of the series. The map must only be modified
+		 * using methods of {@link MemoryStore}.
+		 * 
+		 * @return a sorted map of values keyed by time index
+		 */
+		public ConcurrentNavigableMap<Long, Object> getValues() {
+			return values;
+		}
+	}
+	
+	/**
+	 * An undo action reverts a single modification.
+	 */
+	protected static abstract class Undo {
+		/**
+		 * Revert the modification.
+		 */
+		protected abstract void undo();
+	}
+	
+	private final AtomicLong sequence;
+	private final ReentrantReadWriteLock lock;
+	private final Map<Long, ValueTypeRecord> valueTypes;
+	private final Map<String, Long> valueTypesByName;
+	private final Map<Long, PropertyRecord> properties;
+	private final Map<String, Long> propertiesByName;
+	private final Map<Long, SchemaRecord> schemas;
+	private final Map<String, Long> schemasByName;
+	private final LongMap<ChronicleRecord> chronicles;
+	private final LongMap<NavigableMap<String, Long>> members;
+	private final LongMap<Map<Long, AttributeRecord>> attributes;
+	private final LongMap<SeriesRecord> series;
+	private final LongMap<Map<Integer, SeriesRecord>> seriesByChronicle;
+	private final List<Undo> undoLog;
+	
+	/**
+	 * Construct an empty {@link MemoryStore}.
+	 */
+	public MemoryStore() {
+		sequence = new AtomicLong();
+		lock = new ReentrantReadWriteLock();
+		valueTypes = new HashMap<Long, ValueTypeRecord>();
+		valueTypesByName = new TreeMap<String, Long>();
+		properties = new HashMap<Long, PropertyRecord>();
+		propertiesByName = new TreeMap<String, Long>();
+		schemas = new HashMap<Long, SchemaRecord>();
+		schemasByName = new TreeMap<String, Long>();
+		chronicles = new LongMap<ChronicleRecord>();
+		members = new LongMap<NavigableMap<String, Long>>();
+		attributes = new LongMap<Map<Long, AttributeRecord>>();
+		series = new LongMap<SeriesRecord>();
+		seriesByChronicle = new LongMap<Map<Integer, SeriesRecord>>();
+		undoLog = new ArrayList<Undo>();
+	}
+	
+	/**
+	 * Return a new identifier.
+	 * 
+	 * @return a positive number
+	 */
+	public long nextId() {
+		return sequence.incrementAndGet();
+	}
+	
+	/**
+	 * Make sure identifiers returned by {@link #nextId} are larger than the
+	 * identifier given.
+	 * 
+	 * @param id a positive number
+	 */
+	private void reserve(long id) {
+		while (true) {
+			long current = sequence.get();
+			if (current >= id || sequence.compareAndSet(current, id))
+				break;
+		}
+	}
+	
+	/**
+	 * Return true if the store contains no value types.
+	 * 
+	 * @return true if the store is empty
+	 */
+	public boolean isEmpty() {
+		lock.readLock().lock();
+		try {
+			return valueTypes.isEmpty();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Forget all modifications recorded in the undo log.
+	 * 
+	 * @throws T2DBException
+	 */
+	public void commit() throws T2DBException {
+		synchronized (undoLog) {
+			undoLog.clear();
+		}
+	}
+	
+	/**
+	 * Revert all modifications recorded in the undo log, in reverse order.
+	 */
+	public void rollback() {
+		lock.writeLock().lock();
+		try {
+			synchronized (undoLog) {
+				for (int i = undoLog.size() - 1; i >= 0; i--) {
+					undoLog.get(i).undo();
+				}
+				undoLog.clear();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Record an undo action in the undo log.
+	 * 
+	 * @param undo an undo action
+	 */
+	protected void log(Undo undo) {
+		synchronized (undoLog) {
+			undoLog.add(undo);
+		}
+	}
+	
+	/**
+	 * Turn a name pattern into a regular expression. In a name pattern an
+	 * asterisk stands for zero or more characters. A null pattern matches all
+	 * names.
+	 * 
+	 * @param pattern a name pattern or null
+	 * @return a regular expression pattern
+	 */
+	private Pattern regex(String pattern) {
+		if (pattern == null)
+			pattern = "*";
+		StringBuilder b = new StringBuilder();
+		int start = 0;
+		while (true) {
+			int star = pattern.indexOf('*', start);
+			if (star < 0)
+				break;
+			if (star > start)
+				b.append(Pattern.quote(pattern.substring(start, star)));
+			b.append(".*");
+			start = star + 1;
+		}
+		if (start < pattern.length())
+			b.append(Pattern.quote(pattern.substring(start)));
+		return Pattern.compile(b.toString());
+	}
+	
+	private <T> List<T> select(Map<String, Long> byName, Map<Long, T> records, String pattern) {
+		Pattern regex = regex(pattern);
+		List<T> result = new ArrayList<T>();
+		for (Map.Entry<String, Long> e : byName.entrySet()) {
+			if (regex.matcher(e.getKey()).matches())
+				result.add(records.get(e.getValue()));
+		}
+		return result;
+	}
+
+	/* value types */
+	
+	/**
+	 * Return the value type with the given id or null.
+	 * 
+	 * @param id a positive number
+	 * @return a value type record or null
+	 */
+	public ValueTypeRecord getValueType(long id) {
+		lock.readLock().lock();
+		try {
+			return valueTypes.get(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the value type with the given name or null.
+	 * 
+	 * @param name a string
+	 * @return a value type record or null
+	 */
+	public ValueTypeRecord getValueType(String name) {
+		lock.readLock().lock();
+		try {
+			Long id = valueTypesByName.get(name);
+			return id == null ? null : valueTypes.get(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return value types with names matching a pattern, sorted by name.
+	 * 
+	 * @param pattern a name pattern
+	 * @return a list of value type records
+	 */
+	public List<ValueTypeRecord> getValueTypes(String pattern) {
+		lock.readLock().lock();
+		try {
+			return select(valueTypesByName, valueTypes, pattern);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Add a value type.
+	 * 
+	 * @param record a value type record
+	 * @throws T2DBException if the name is already used
+	 */
+	public void createValueType(ValueTypeRecord record) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			if (valueTypesByName.containsKey(record.getName()))
+				throw T2DBMsg.exception(E.E10114, record.getName());
+			putValueType(record);
+			reserve(record.getId());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Replace a value type. Values removed from a restricted value type may
+	 * not be used as default values in schemas or as attribute values.
+	 * 
+	 * @param record a value type record
+	 * @throws T2DBException
+	 */
+	public void updateValueType(ValueTypeRecord record) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			ValueTypeRecord current = valueTypes.get(record.getId());
+			if (current == null)
+				throw T2DBMsg.exception(E.E10110, record.getId());
+			Long other = valueTypesByName.get(record.getName());
+			if (other != null && other.longValue() != record.getId())
+				throw T2DBMsg.exception(E.E10146, current.getName());
+			for (String value : current.getValues().keySet()) {
+				if (!record.getValues().containsKey(value))
+					checkValueNotUsed(current, value);
+			}
+			putValueType(record);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void checkValueNotUsed(ValueTypeRecord valueType, String value) throws T2DBException {
+		Set<Long> props = new HashSet<Long>();
+		for (PropertyRecord p : properties.values()) {
+			if (p.getValueType() == valueType.getId())
+				props.add(p.getId());
+		}
+		for (SchemaRecord s : schemas.values()) {
+			for (ComponentRecord c : s.getComponents()) {
+				if (props.contains(c.getProperty()) && value.equals(c.getValue()))
+					throw T2DBMsg.exception(E.E10157, valueType.getName(), value);
+			}
+		}
+		for (Map<Long, AttributeRecord> values : attributes.values()) {
+			for (AttributeRecord a : values.values()) {
+				if (props.contains(a.getProperty()) && value.equals(a.getValue()))
+					throw T2DBMsg.exception(E.E10158, valueType.getName(), value);
+			}
+		}
+	}
+	
+	/**
+	 * Remove a value type. The value type may not be used by a property or
+	 * be the default value of a schema attribute.
+	 * 
+	 * @param id a positive number
+	 * @throws T2DBException
+	 */
+	public void deleteValueType(long id) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			ValueTypeRecord current = valueTypes.get(id);
+			if (current == null)
+				throw T2DBMsg.exception(E.E10110, id);
+			Set<Long> typeProps = new HashSet<Long>();
+			for (PropertyRecord p : properties.values()) {
+				if (p.getValueType() == id)
+					throw T2DBMsg.exception(E.E10149, current.getName());
+				if (StandardValueType.TYPE.name().equals(valueTypes.get(p.getValueType()).getScanner()))
+					typeProps.add(p.getId());
+			}
+			// value types are also used by name, typically as series types
+			for (SchemaRecord s : schemas.values()) {
+				for (ComponentRecord c : s.getComponents()) {
+					if (typeProps.contains(c.getProperty()) && current.getName().equals(c.getValue()))
+						throw T2DBMsg.exception(E.E10149, current.getName());
+				}
+			}
+			removeValueType(current);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void putValueType(final ValueTypeRecord record) {
+		final ValueTypeRecord previous = valueTypes.put(record.getId(), record);
+		if (previous != null)
+			valueTypesByName.remove(previous.getName());
+		valueTypesByName.put(record.getName(), record.getId());
+		log(new Undo() {
+			@Override
+			protected void undo() {
+				valueTypesByName.remove(record.getName());
+				valueTypes.remove(record.getId());
+				if (previous != null) {
+					valueTypes.put(previous.getId(), previous);
+					valueTypesByName.put(previous.getName(), previous.getId());
+				}
+			}
+		});
+	}
+	
+	private void removeValueType(final ValueTypeRecord record) {
+		valueTypes.remove(record.getId());
+		valueTypesByName.remove(record.getName());
+		log(new Undo() {
+			@Override
+			protected void undo() {
+				valueTypes.put(record.getId(), record);
+				valueTypesByName.put(record.getName(), record.getId());
+			}
+		});
+	}
+	
+	/* properties */
+	
+	/**
+	 * Return the property with the given id or null.
+	 * 
+	 * @param id a positive number
+	 * @return a property record or null
+	 */
+	public PropertyRecord getProperty(long id) {
+		lock.readLock().lock();
+		try {
+			return properties.get(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the property with the given name or null.
+	 * 
+	 * @param name a string
+	 * @return a property record or null
+	 */
+	public PropertyRecord getProperty(String name) {
+		lock.readLock().lock();
+		try {
+			Long id = propertiesByName.get(name);
+			return id == null ? null : properties.get(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return properties with names matching a pattern, sorted by name.
+	 * 
+	 * @param pattern a name pattern
+	 * @return a list of property records
+	 */
+	public List<PropertyRecord> getProperties(String pattern) {
+		lock.readLock().lock();
+		try {
+			return select(propertiesByName, properties, pattern);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Add a property.
+	 * 
+	 * @param record a property record
+	 * @throws T2DBException if the name is already used or the value type does not exist
+	 */
+	public void createProperty(PropertyRecord record) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			if (propertiesByName.containsKey(record.getName()))
+				throw T2DBMsg.exception(E.E20114, record.getName());
+			if (!valueTypes.containsKey(record.getValueType()))
+				throw T2DBMsg.exception(E.E10110, record.getValueType());
+			putProperty(record);
+			reserve(record.getId());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Replace a property.
+	 * 
+	 * @param record a property record
+	 * @throws T2DBException
+	 */
+	public void updateProperty(PropertyRecord record) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			PropertyRecord current = properties.get(record.getId());
+			if (current == null)
+				throw T2DBMsg.exception(E.E20109, record.getId());
+			Long other = propertiesByName.get(record.getName());
+			if (other != null && other.longValue() != record.getId())
+				throw T2DBMsg.exception(E.E20116, current.getName());
+			putProperty(record);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Remove a property. The property may not be used in a schema or 
+	 * by an attribute value. 
+	 * 
+	 * @param id a positive number
+	 * @throws T2DBException
+	 */
+	public void deleteProperty(long id) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			PropertyRecord current = properties.get(id);
+			if (current == null)
+				throw T2DBMsg.exception(E.E20109, id);
+			for (SchemaRecord s : schemas.values()) {
+				for (ComponentRecord c : s.getComponents()) {
+					if (c.getProperty() == id)
+						throw T2DBMsg.exception(E.E20119, current.getName());
+				}
+			}
+			for (Map<Long, AttributeRecord> values : attributes.values()) {
+				if (values.containsKey(id))
+					throw T2DBMsg.exception(E.E20119, current.getName());
+			}
+			removeProperty(current);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void putProperty(final PropertyRecord record) {
+		final PropertyRecord previous = properties.put(record.getId(), record);
+		if (previous != null)
+			propertiesByName.remove(previous.getName());
+		propertiesByName.put(record.getName(), record.getId());
+		log(new Undo() {
+			@Override
+			protected void undo() {
+				propertiesByName.remove(record.getName());
+				properties.remove(record.getId());
+				if (previous != null) {
+					properties.put(previous.getId(), previous);
+					propertiesByName.put(previous.getName(), previous.getId());
+				}
+			}
+		});
+	}
+	
+	private void removeProperty(final PropertyRecord record) {
+		properties.remove(record.getId());
+		propertiesByName.remove(record.getName());
+		log(new Undo() {
+			@Override
+			protected void undo() {
+				properties.put(record.getId(), record);
+				propertiesByName.put(record.getName(), record.getId());
+			}
+		});
+	}
+	
+	/* schemas */
+	
+	/**
+	 * Return the schema with the given id or null.
+	 * 
+	 * @param id a positive number
+	 * @return a schema record or null
+	 */
+	public SchemaRecord getSchema(long id) {
+		lock.readLock().lock();
+		try {
+			return schemas.get(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return schemas with names matching a pattern, sorted by name.
+	 * 
+	 * @param pattern a name pattern
+	 * @return a list of schema records
+	 */
+	public List<SchemaRecord> getSchemas(String pattern) {
+		lock.readLock().lock();
+		try {
+			return select(schemasByName, schemas, pattern);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Add a schema.
+	 * 
+	 * @param record a schema record
+	 * @throws T2DBException if the name is already used or the base cannot be found
+	 */
+	public void createSchema(SchemaRecord record) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			if (schemasByName.containsKey(record.getName()))
+				throw T2DBMsg.exception(D.D30108, record.getName());
+			checkSchema(record);
+			putSchema(record);
+			reserve(record.getId());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Replace a schema.
+	 * 
+	 * @param record a schema record
+	 * @throws T2DBException
+	 */
+	public void updateSchema(SchemaRecord record) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			if (!schemas.containsKey(record.getId()))
+				throw T2DBMsg.exception(E.E30109, record.getId());
+			Long other = schemasByName.get(record.getName());
+			if (other != null && other.longValue() != record.getId())
+				throw T2DBMsg.exception(D.D30108, record.getName());
+			checkSchema(record);
+			putSchema(record);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void checkSchema(SchemaRecord record) throws T2DBException {
+		if (record.getBase() != 0 && !schemas.containsKey(record.getBase()))
+			throw T2DBMsg.exception(E.E30116, record.getBase(), record.getName());
+		for (ComponentRecord c : record.getComponents()) {
+			if (c.getProperty() != 0 && !properties.containsKey(c.getProperty()))
+				throw T2DBMsg.exception(E.E20109, c.getProperty());
+		}
+	}
+	
+	/**
+	 * Remove a schema.
+	 * 
+	 * @param id a positive number
+	 * @throws T2DBException
+	 */
+	public void deleteSchema(long id) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			final SchemaRecord current = schemas.get(id);
+			if (current == null)
+				throw T2DBMsg.exception(E.E30109, id);
+			schemas.remove(id);
+			schemasByName.remove(current.getName());
+			log(new Undo() {
+				@Override
+				protected void undo() {
+					schemas.put(current.getId(), current);
+					schemasByName.put(current.getName(), current.getId());
+				}
+			});
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void putSchema(final SchemaRecord record) {
+		final SchemaRecord previous = schemas.put(record.getId(), record);
+		if (previous != null)
+			schemasByName.remove(previous.getName());
+		schemasByName.put(record.getName(), record.getId());
+		log(new Undo() {
+			@Override
+			protected void undo() {
+				schemasByName.remove(record.getName());
+				schemas.remove(record.getId());
+				if (previous != null) {
+					schemas.put(previous.getId(), previous);
+					schemasByName.put(previous.getName(), previous.getId());
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Return the id of a schema and of all schemas extending it directly or
+	 * indirectly.
+	 * 
+	 * @param id a positive number
+	 * @return a set of schema ids
+	 */
+	private Set<Long> extensions(long id) {
+		Set<Long> result = new HashSet<Long>();
+		result.add(id);
+		boolean added = true;
+		while (added) {
+			added = false;
+			for (SchemaRecord s : schemas.values()) {
+				if (s.getBase() != 0 && result.contains(s.getBase()) && result.add(s.getId()))
+					added = true;
+			}
+		}
+		return result;
+	}
+	
+	/* chronicles */
+	
+	/**
+	 * Return the chronicle with the given id or null.
+	 * 
+	 * @param id a positive number
+	 * @return a chronicle record or null
+	 */
+	public ChronicleRecord getChronicle(long id) {
+		lock.readLock().lock();
+		try {
+			return chronicles.get(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the member of a chronicle with the given simple name or null.
+	 * 
+	 * @param parent the id of a chronicle or zero for the top chronicle
+	 * @param name a simple name
+	 * @return a chronicle record or null
+	 */
+	public ChronicleRecord getMember(long parent, String name) {
+		lock.readLock().lock();
+		try {
+			NavigableMap<String, Long> names = members.get(parent);
+			Long id = names == null ? null : names.get(name);
+			return id == null ? null : chronicles.get(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return members of a chronicle sorted by simple name. Only members with
+	 * a name following the name given are returned. 
+	 * 
+	 * @param parent the id of a chronicle or zero for the top chronicle
+	 * @param after a simple name or null to start with the first member
+	 * @param maxSize the maximum number of records to return
+	 * @return a list of chronicle records
+	 */
+	public List<ChronicleRecord> getMembers(long parent, String after, int maxSize) {
+		lock.readLock().lock();
+		try {
+			List<ChronicleRecord> result = new ArrayList<ChronicleRecord>();
+			NavigableMap<String, Long> names = members.get(parent);
+			if (names != null) {
+				Map<String, Long> page = after == null ? names : names.tailMap(after, false);
+				Iterator<Long> it = page.values().iterator();
+				while (result.size() < maxSize && it.hasNext()) {
+					result.add(chronicles.get(it.next()));
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the number of members of a chronicle.
+	 * 
+	 * @param parent the id of a chronicle or zero for the top chronicle
+	 * @return the number of members
+	 */
+	public int countMembers(long parent) {
+		lock.readLock().lock();
+		try {
+			NavigableMap<String, Long> names = members.get(parent);
+			return names == null ? 0 : names.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the ids of the members of a chronicle, directly or indirectly.
+	 * 
+	 * @param parent the id of a chronicle or zero for the top chronicle
+	 * @return a list of chronicle ids
+	 */
+	public List<Long> getDescendants(long parent) {
+		lock.readLock().lock();
+		try {
+			List<Long> result = new ArrayList<Long>();
+			addDescendants(parent, false, result);
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Add the ids of the members of a chronicle, directly or indirectly, to
+	 * a list. When inheriting, members with a schema and their own members
+	 * are skipped. The caller holds the lock.
+	 * 
+	 * @param parent the id of a chronicle or zero for the top chronicle
+	 * @param inheriting if true skip members with a schema
+	 * @param result a list of chronicle ids
+	 */
+	private void addDescendants(long parent, boolean inheriting, List<Long> result) {
+		int next = result.size();
+		long current = parent;
+		while (true) {
+			NavigableMap<String, Long> names = members.get(current);
+			if (names != null) {
+				for (Long id : names.values()) {
+					if (!inheriting || chronicles.get(id).getSchema() == 0)
+						result.add(id);
+				}
+			}
+			if (next == result.size())
+				break;
+			current = result.get(next++);
+		}
+	}
+	
+	/**
+	 * Add a chronicle.
+	 * 
+	 * @param record a chronicle record
+	 * @throws T2DBException if the name is already used in the parent
+	 */
+	public void createChronicle(ChronicleRecord record) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			if (record.getParent() != 0 && !chronicles.containsKey(record.getParent()))
+				throw T2DBMsg.exception(E.E40104, record.getParent());
+			if (record.getSchema() != 0 && !schemas.containsKey(record.getSchema()))
+				throw T2DBMsg.exception(E.E30109, record.getSchema());
+			NavigableMap<String, Long> names = members.get(record.getParent());
+			if (names != null && names.containsKey(record.getName()))
+				throw T2DBMsg.exception(E.E40109, record.getName());
+			putChronicle(record);
+			reserve(record.getId());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Replace a chronicle. The parent cannot be modified.
+	 * 
+	 * @param record a chronicle record
+	 * @throws T2DBException
+	 */
+	public void updateChronicle(ChronicleRecord record) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			ChronicleRecord current = chronicles.get(record.getId());
+			if (current == null)
+				throw T2DBMsg.exception(E.E40104, record.getId());
+			if (current.getParent() != record.getParent())
+				throw T2DBMsg.exception(E.E40111, current.getName());
+			Long other = members.get(current.getParent()).get(record.getName());
+			if (other != null && other.longValue() != record.getId())
+				throw T2DBMsg.exception(E.E40111, current.getName());
+			putChronicle(record);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Remove a chronicle and its attribute values. The chronicle may not
+	 * have members or series.
+	 * 
+	 * @param id a positive number
+	 * @throws T2DBException
+	 */
+	public void deleteChronicle(long id) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			final ChronicleRecord current = chronicles.get(id);
+			if (current == null)
+				throw T2DBMsg.exception(E.E40104, id);
+			NavigableMap<String, Long> names = members.get(id);
+			Map<Integer, SeriesRecord> numbers = seriesByChronicle.get(id);
+			if ((names != null && names.size() > 0) || (numbers != null && numbers.size() > 0))
+				throw T2DBMsg.exception(E.E40110, current.getName());
+			final Map<Long, AttributeRecord> values = attributes.remove(id);
+			chronicles.remove(id);
+			members.get(current.getParent()).remove(current.getName());
+			log(new Undo() {
+				@Override
+				protected void undo() {
+					chronicles.put(current.getId(), current);
+					members.get(current.getParent()).put(current.getName(), current.getId());
+					if (values != null)
+						attributes.put(current.getId(), values);
+				}
+			});
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void putChronicle(final ChronicleRecord record) {
+		NavigableMap<String, Long> names = members.get(record.getParent());
+		if (names == null) {
+			names = new TreeMap<String, Long>();
+			members.put(record.getParent(), names);
+		}
+		final ChronicleRecord previous = chronicles.put(record.getId(), record);
+		if (previous != null)
+			names.remove(previous.getName());
+		names.put(record.getName(), record.getId());
+		log(new Undo() {
+			@Override
+			protected void undo() {
+				NavigableMap<String, Long> names = members.get(record.getParent());
+				names.remove(record.getName());
+				chronicles.remove(record.getId());
+				if (previous != null) {
+					chronicles.put(previous.getId(), previous);
+					names.put(previous.getName(), previous.getId());
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Return the id of a chronicle explicitly using the schema or zero.
+	 * 
+	 * @param schema the id of a schema
+	 * @return the id of a chronicle or zero
+	 */
+	public long findChronicleBySchema(long schema) {
+		lock.readLock().lock();
+		try {
+			for (ChronicleRecord c : chronicles.values()) {
+				if (c.getSchema() == schema)
+					return c.getId();
+			}
+			return 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the ids of chronicles with the schema as effective schema. These
+	 * are the chronicles explicitly using the schema and their members,
+	 * directly or indirectly, which inherit it.
+	 * 
+	 * @param schema the id of a schema
+	 * @return a list of chronicle ids
+	 */
+	public List<Long> getChroniclesBySchema(long schema) {
+		lock.readLock().lock();
+		try {
+			List<Long> result = new ArrayList<Long>();
+			for (ChronicleRecord c : chronicles.values()) {
+				if (c.getSchema() == schema) {
+					result.add(c.getId());
+					addDescendants(c.getId(), true, result);
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the id of a chronicle with a value for the property and with the
+	 * schema or a schema extending it. Return zero if there is no such
+	 * chronicle.
+	 * 
+	 * @param property the id of a property
+	 * @param schema the id of a schema
+	 * @return the id of a chronicle or zero
+	 */
+	public long findChronicleByAttribute(long property, long schema) {
+		lock.readLock().lock();
+		try {
+			Set<Long> family = extensions(schema);
+			for (ChronicleRecord c : chronicles.values()) {
+				if (family.contains(c.getSchema())) {
+					Map<Long, AttributeRecord> values = attributes.get(c.getId());
+					if (values != null && values.containsKey(property))
+						return c.getId();
+				}
+			}
+			return 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the id of a chronicle with a series with the given number and
+	 * with the schema or a schema extending it. Return zero if there is no
+	 * such chronicle.
+	 * 
+	 * @param number a series number
+	 * @param schema the id of a schema
+	 * @return the id of a chronicle or zero
+	 */
+	public long findChronicleBySeries(int number, long schema) {
+		lock.readLock().lock();
+		try {
+			Set<Long> family = extensions(schema);
+			for (ChronicleRecord c : chronicles.values()) {
+				if (family.contains(c.getSchema())) {
+					Map<Integer, SeriesRecord> numbers = seriesByChronicle.get(c.getId());
+					if (numbers != null && numbers.containsKey(number))
+						return c.getId();
+				}
+			}
+			return 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Find chronicles using series numbers or properties with the schema or a
+	 * schema extending it. Chronicles are scanned once for all numbers and
+	 * properties. For each number and each property in use, the id of a
+	 * chronicle using it is put into the corresponding result map.
+	 * 
+	 * @param numbers a set of series numbers
+	 * @param properties a set of property ids
+	 * @param schema the id of a schema
+	 * @param seriesResult a map receiving chronicle ids keyed by series number
+	 * @param propertyResult a map receiving chronicle ids keyed by property id
+	 */
+	public void findChronicles(Set<Integer> numbers, Set<Long> properties, long schema, 
+			Map<Integer, Long> seriesResult, Map<Long, Long> propertyResult) {
+		lock.readLock().lock();
+		try {
+			Set<Long> family = extensions(schema);
+			int pending = numbers.size() + properties.size();
+			for (ChronicleRecord c : chronicles.values()) {
+				if (pending == 0)
+					break;
+				if (!family.contains(c.getSchema()))
+					continue;
+				if (seriesResult.size() < numbers.size()) {
+					Map<Integer, SeriesRecord> byNumber = seriesByChronicle.get(c.getId());
+					if (byNumber != null) {
+						for (Integer number : numbers) {
+							if (!seriesResult.containsKey(number) && byNumber.containsKey(number)) {
+								seriesResult.put(number, c.getId());
+								pending--;
+							}
+						}
+					}
+				}
+				if (propertyResult.size() < properties.size()) {
+					Map<Long, AttributeRecord> values = attributes.get(c.getId());
+					if (values != null) {
+						for (Long property : properties) {
+							if (!propertyResult.containsKey(property) && values.containsKey(property)) {
+								propertyResult.put(property, c.getId());
+								pending--;
+							}
+						}
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/* attribute values */
+	
+	/**
+	 * Return the value of an attribute of a chronicle or null.
+	 * 
+	 * @param chronicle the id of a chronicle
+	 * @param property the id of a property
+	 * @return an attribute value record or null
+	 */
+	public AttributeRecord getAttribute(long chronicle, long property) {
+		lock.readLock().lock();
+		try {
+			Map<Long, AttributeRecord> values = attributes.get(chronicle);
+			return values == null ? null : values.get(property);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the ids of chronicles with the given attribute value.
+	 * 
+	 * @param property the id of a property
+	 * @param value a value as a string
+	 * @param maxSize the maximum number of ids to return
+	 * @return a list of chronicle ids
+	 */
+	public List<Long> getChroniclesByAttribute(long property, String value, int maxSize) {
+		lock.readLock().lock();
+		try {
+			List<Long> result = new ArrayList<Long>();
+			for (Map<Long, AttributeRecord> values : attributes.values()) {
+				if (maxSize > 0 && result.size() >= maxSize)
+					break;
+				AttributeRecord a = values.get(property);
+				if (a != null && a.getValue().equals(value))
+					result.add(a.getChronicle());
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Add or replace the value of an attribute.
+	 * 
+	 * @param record an attribute value record
+	 * @throws T2DBException
+	 */
+	public void putAttribute(final AttributeRecord record) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			if (!chronicles.containsKey(record.getChronicle()))
+				throw T2DBMsg.exception(E.E40104, record.getChronicle());
+			if (!properties.containsKey(record.getProperty()))
+				throw T2DBMsg.exception(E.E20109, record.getProperty());
+			Map<Long, AttributeRecord> values = attributes.get(record.getChronicle());
+			if (values == null) {
+				values = new HashMap<Long, AttributeRecord>();
+				attributes.put(record.getChronicle(), values);
+			}
+			final AttributeRecord previous = values.put(record.getProperty(), record);
+			log(new Undo() {
+				@Override
+				protected void undo() {
+					Map<Long, AttributeRecord> values = attributes.get(record.getChronicle());
+					if (previous == null)
+						values.remove(record.getProperty());
+					else
+						values.put(previous.getProperty(), previous);
+				}
+			});
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Remove the value of an attribute. Return true if there was a value.
+	 * 
+	 * @param chronicle the id of a chronicle
+	 * @param property the id of a property
+	 * @return true if a value was removed
+	 */
+	public boolean deleteAttribute(long chronicle, long property) {
+		lock.writeLock().lock();
+		try {
+			final Map<Long, AttributeRecord> values = attributes.get(chronicle);
+			final AttributeRecord previous = values == null ? null : values.remove(property);
+			if (previous != null) {
+				log(new Undo() {
+					@Override
+					protected void undo() {
+						values.put(previous.getProperty(), previous);
+					}
+				});
+			}
+			return previous != null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/* series */
+	
+	/**
+	 * Return the series with the given id or null.
+	 * 
+	 * @param id a positive number
+	 * @return a series record or null
+	 */
+	public SeriesRecord getSeries(long id) {
+		lock.readLock().lock();
+		try {
+			return series.get(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return the series of a chronicle with the given number or null.
+	 * 
+	 * @param chronicle the id of a chronicle
+	 * @param number a series number
+	 * @return a series record or null
+	 */
+	public SeriesRecord getSeries(long chronicle, int number) {
+		lock.readLock().lock();
+		try {
+			Map<Integer, SeriesRecord> numbers = seriesByChronicle.get(chronicle);
+			return numbers == null ? null : numbers.get(number);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Return true if the chronicle has at least one series.
+	 * 
+	 * @param chronicle the id of a chronicle
+	 * @return true if the chronicle has series
+	 */
+	public boolean hasSeries(long chronicle) {
+		lock.readLock().lock();
+		try {
+			Map<Integer, SeriesRecord> numbers = seriesByChronicle.get(chronicle);
+			return numbers != null && numbers.size() > 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Add a series.
+	 * 
+	 * @param record a series record
+	 * @throws T2DBException if the chronicle already has a series with the same number
+	 */
+	public void createSeries(final SeriesRecord record) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			if (!chronicles.containsKey(record.getChronicle()))
+				throw T2DBMsg.exception(E.E40104, record.getChronicle());
+			Map<Integer, SeriesRecord> numbers = seriesByChronicle.get(record.getChronicle());
+			if (numbers == null) {
+				numbers = new HashMap<Integer, SeriesRecord>();
+				seriesByChronicle.put(record.getChronicle(), numbers);
+			}
+			if (numbers.containsKey(record.getNumber()))
+				throw T2DBMsg.exception(E.E50111, record.getId());
+			numbers.put(record.getNumber(), record);
+			series.put(record.getId(), record);
+			reserve(record.getId());
+			log(new Undo() {
+				@Override
+				protected void undo() {
+					series.remove(record.getId());
+					seriesByChronicle.get(record.getChronicle()).remove(record.getNumber());
+				}
+			});
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Remove a series and its values.
+	 * 
+	 * @param id a positive number
+	 * @throws T2DBException
+	 */
+	public void deleteSeries(long id) throws T2DBException {
+		lock.writeLock().lock();
+		try {
+			final SeriesRecord current = series.remove(id);
+			if (current == null)
+				throw T2DBMsg.exception(E.E50104, id);
+			seriesByChronicle.get(current.getChronicle()).remove(current.getNumber());
+			log(new Undo() {
+				@Override
+				protected void undo() {
+					series.put(current.getId(), current);
+					seriesByChronicle.get(current.getChronicle()).put(current.getNumber(), current);
+				}
+			});
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/* series values */
+	
+	/**
+	 * Add or replace a value of a series.
+	 * 
+	 * @param record a series record
+	 * @param time a time index
+	 * @param value a non-null value
+	 */
+	public void putValue(final SeriesRecord record, final long time, Object value) {
+		final Object previous = record.getValues().put(time, value);
+		log(new Undo() {
+			@Override
+			protected void undo() {
+				if (previous == null)
+					record.getValues().remove(time);
+				else
+					record.getValues().put(time, previous);
+			}
+		});
+	}
+	
+	/**
+	 * Remove a value of a series. Return true if there was a value.
+	 * 
+	 * @param record a series record
+	 * @param time a time index
+	 * @return true if a value was removed
+	 */
+	public boolean removeValue(final SeriesRecord record, final long time) {
+		final Object previous = record.getValues().remove(time);
+		if (previous != null) {
+			log(new Undo() {
+				@Override
+				protected void undo() {
+					record.getValues().put(time, previous);
+				}
+			});
+		}
+		return previous != null;
+	}
+	
+	/**
+	 * Remove all values of a series outside a range. Return the number of
+	 * values removed. When first is larger than last all values are
+	 * removed.
+	 * 
+	 * @param record a series record
+	 * @param first the first time index of the range
+	 * @param last the last time index of the range
+	 * @return the number of values removed
+	 */
+	public int trimValues(SeriesRecord record, long first, long last) {
+		List<Long> removed = new ArrayList<Long>();
+		if (first > last)
+			removed.addAll(record.getValues().keySet());
+		else {
+			removed.addAll(record.getValues().headMap(first, false).keySet());
+			removed.addAll(record.getValues().tailMap(last, false).keySet());
+		}
+		int count = 0;
+		for (Long time : removed) {
+			if (removeValue(record, time))
+				count++;
+		}
+		return count;
+	}
+	
+}
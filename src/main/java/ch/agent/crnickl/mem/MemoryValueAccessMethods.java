@@ -0,0 +1,219 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.agent.crnickl.mem;
+
+import java.util.Map;
+
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.T2DBMsg;
+import ch.agent.crnickl.T2DBMsg.E;
+import ch.agent.crnickl.api.Series;
+import ch.agent.crnickl.api.UpdatableSeries;
+import ch.agent.crnickl.impl.ChronicleUpdatePolicy;
+import ch.agent.crnickl.impl.DatabaseMethodsImpl;
+import ch.agent.crnickl.impl.Permission;
+import ch.agent.crnickl.impl.ValueAccessMethods;
+import ch.agent.crnickl.mem.MemoryStore.SeriesRecord;
+import ch.agent.t2.T2Exception;
+import ch.agent.t2.time.Range;
+import ch.agent.t2.time.TimeDomain;
+import ch.agent.t2.time.TimeIndex;
+import ch.agent.t2.timeseries.Observation;
+import ch.agent.t2.timeseries.TimeAddressable;
+
+/**
+ * MemoryValueAccessMethods implements {@link ValueAccessMethods} for a
+ * {@link MemoryDatabase}. The implementation is generic and is used for all
+ * value types. Values are kept as objects in a concurrent sorted map keyed by
+ * time index.
+ * 
+ * @author Jean-Paul Vetterli
+ * @param <T> the data type of values
+ */
+public class MemoryValueAccessMethods<T> extends DatabaseMethodsImpl implements ValueAccessMethods<T> {
+
+	private final MemoryStore store;
+	
+	/**
+	 * Construct a {@link MemoryValueAccessMethods}.
+	 * 
+	 * @param store the store of the database
+	 */
+	public MemoryValueAccessMethods(MemoryStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Return the series record or null if the series is in construction or
+	 * does not exist.
+	 * 
+	 * @param series a series
+	 * @return a series record or null
+	 * @throws T2DBException
+	 */
+	private SeriesRecord record(Series<T> series) throws T2DBException {
+		if (series.getSurrogate().inConstruction())
+			return null;
+		return store.getSeries(((MemoryId) series.getSurrogate().getId()).value());
+	}
+	
+	private SeriesRecord existingRecord(Series<T> series) throws T2DBException {
+		SeriesRecord record = record(series);
+		if (record == null)
+			throw T2DBMsg.exception(E.E50104, series.getSurrogate().toString());
+		return record;
+	}
+	
+	@Override
+	public Range getRange(Series<T> series) throws T2DBException {
+		check(Permission.READ, series);
+		TimeDomain domain = series.getTimeDomain();
+		SeriesRecord record = record(series);
+		if (record != null) {
+			Map.Entry<Long, Object> first = record.getValues().firstEntry();
+			Map.Entry<Long, Object> last = record.getValues().lastEntry();
+			if (first != null && last != null)
+				return new Range(domain, first.getKey(), last.getKey());
+		}
+		return new Range(domain);
+	}
+
+	@Override
+	public long getValues(Series<T> series, Range range, TimeAddressable<T> ts) throws T2DBException {
+		check(Permission.READ, series);
+		SeriesRecord record = record(series);
+		if (record == null || (range != null && range.isEmpty()))
+			return 0;
+		Map<Long, Object> values = range == null ? record.getValues() : 
+			record.getValues().subMap(range.getFirstIndex(), true, range.getLastIndex(), true);
+		long count = 0;
+		try {
+			for (Map.Entry<Long, Object> e : values.entrySet()) {
+				ts.put(e.getKey(), decode(series, e.getValue()));
+				count++;
+			}
+		} catch (T2Exception e) {
+			if (range == null)
+				throw T2DBMsg.exception(e, E.E50121, series.getName(true));
+			else
+				throw T2DBMsg.exception(e, E.E50120, series.getName(true), range.toString());
+		}
+		return count;
+	}
+
+	@Override
+	public Observation<T> getFirst(Series<T> series, TimeIndex time) throws T2DBException {
+		check(Permission.READ, series);
+		SeriesRecord record = record(series);
+		if (record == null)
+			return null;
+		Map.Entry<Long, Object> e = time == null ? record.getValues().firstEntry() : 
+			record.getValues().ceilingEntry(time.asLong());
+		return observation(series, e);
+	}
+
+	@Override
+	public Observation<T> getLast(Series<T> series, TimeIndex time) throws T2DBException {
+		check(Permission.READ, series);
+		SeriesRecord record = record(series);
+		if (record == null)
+			return null;
+		Map.Entry<Long, Object> e = time == null ? record.getValues().lastEntry() : 
+			record.getValues().floorEntry(time.asLong());
+		return observation(series, e);
+	}
+	
+	private Observation<T> observation(Series<T> series, Map.Entry<Long, Object> e) throws T2DBException {
+		if (e == null)
+			return null;
+		return new Observation<T>(series.getTimeDomain().time(e.getKey()), decode(series, e.getValue()));
+	}
+	
+	/**
+	 * Return the object to keep in the store for a value. This implementation
+	 * keeps the value itself.
+	 * 
+	 * @param series a series
+	 * @param value a non-null value
+	 * @return the object to keep in the store
+	 * @throws T2DBException
+	 */
+	protected Object encode(Series<T> series, T value) throws T2DBException {
+		return value;
+	}
+	
+	/**
+	 * Return the value corresponding to an object kept in the store. This is
+	 * the inverse of {@link #encode}.
+	 * 
+	 * @param series a series
+	 * @param object an object kept in the store
+	 * @return a value
+	 * @throws T2DBException
+	 */
+	@SuppressWarnings("unchecked")
+	protected T decode(Series<T> series, Object object) throws T2DBException {
+		return (T) object;
+	}
+
+	@Override
+	public boolean deleteValue(UpdatableSeries<T> series, TimeIndex t, ChronicleUpdatePolicy policy) throws T2DBException {
+		check(Permission.MODIFY, series);
+		SeriesRecord record = existingRecord(series);
+		policy.willDelete(series, t);
+		boolean done = policy.deleteValue(series, t);
+		if (!done)
+			done = store.removeValue(record, t.asLong());
+		return done;
+	}
+
+	@Override
+	public boolean updateSeries(UpdatableSeries<T> series, Range range, ChronicleUpdatePolicy policy) throws T2DBException {
+		check(Permission.MODIFY, series);
+		SeriesRecord record = existingRecord(series);
+		policy.willUpdate(series, range);
+		boolean done = policy.update(series, range);
+		if (!done) {
+			if (range.isEmpty())
+				done = store.trimValues(record, 1, 0) > 0;
+			else
+				done = store.trimValues(record, range.getFirstIndex(), range.getLastIndex()) > 0;
+		}
+		return done;
+	}
+
+	@Override
+	public long updateValues(UpdatableSeries<T> series, TimeAddressable<T> values, ChronicleUpdatePolicy policy) throws T2DBException {
+		check(Permission.MODIFY, series);
+		SeriesRecord record = existingRecord(series);
+		long count = 0;
+		for (Observation<T> obs : values) {
+			T value = obs.getValue();
+			if (values.isMissing(value)) {
+				TimeIndex time = obs.getTime();
+				policy.willDelete(series, time);
+				if (policy.deleteValue(series, time) || store.removeValue(record, time.asLong()))
+					count++;
+			} else {
+				store.putValue(record, obs.getIndex(), encode(series, value));
+				count++;
+			}
+		}
+		return count;
+	}
+
+}
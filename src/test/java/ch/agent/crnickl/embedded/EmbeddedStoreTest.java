@@ -0,0 +1,228 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.agent.crnickl.embedded;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+import ch.agent.crnickl.mem.MemoryStore.AttributeRecord;
+import ch.agent.crnickl.mem.MemoryStore.ChronicleRecord;
+import ch.agent.crnickl.mem.MemoryStore.PropertyRecord;
+import ch.agent.crnickl.mem.MemoryStore.SeriesRecord;
+import ch.agent.crnickl.mem.MemoryStore.ValueTypeRecord;
+
+public class EmbeddedStoreTest extends TestCase {
+
+	private static final long TYPE = 1;
+	private static final long PROPERTY = 2;
+	private static final long CHRONICLE = 3;
+	private static final long SERIES = 4;
+	
+	private File directory;
+	
+	@Override
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("store", null);
+		directory.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delete(directory);
+	}
+	
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				delete(f);
+			}
+		}
+		file.delete();
+	}
+	
+	private EmbeddedStore open() throws Exception {
+		EmbeddedStore store = new EmbeddedStore();
+		store.open(directory);
+		return store;
+	}
+	
+	/**
+	 * Create a chronicle with an attribute and a series with values at times
+	 * 0 to 99 and commit.
+	 */
+	private EmbeddedStore populate() throws Exception {
+		EmbeddedStore store = open();
+		store.createValueType(new ValueTypeRecord(TYPE, "text", false, "TEXT", new HashMap<String, String>()));
+		store.createProperty(new PropertyRecord(PROPERTY, "color", TYPE, true));
+		store.createChronicle(new ChronicleRecord(CHRONICLE, 0, "c", "a chronicle", 0));
+		store.putAttribute(new AttributeRecord(CHRONICLE, PROPERTY, "red", null));
+		SeriesRecord series = new SeriesRecord(SERIES, CHRONICLE, 1);
+		store.createSeries(series);
+		for (int i = 0; i < 100; i++) {
+			store.putNumber(series, i, i);
+		}
+		store.commit();
+		return store;
+	}
+	
+	private static NavigableMap<Long, Double> numbers(EmbeddedStore store) throws Exception {
+		SeriesRecord series = store.getSeries(SERIES);
+		NavigableMap<Long, Double> result = store.getChangedNumbers(series, Long.MIN_VALUE, Long.MAX_VALUE);
+		if (result == null) {
+			result = new TreeMap<Long, Double>();
+			SeriesFile file = store.getSeriesFile(series);
+			if (file != null) {
+				for (int i = 0; i < file.size(); i++) {
+					result.put(file.getTime(i), file.getValue(i));
+				}
+			}
+		}
+		return result;
+	}
+	
+	private static void assertPopulated(EmbeddedStore store) throws Exception {
+		assertEquals("c", store.getChronicle(CHRONICLE).getName());
+		assertEquals("a chronicle", store.getChronicle(CHRONICLE).getDescription());
+		assertEquals("red", store.getAttribute(CHRONICLE, PROPERTY).getValue());
+		NavigableMap<Long, Double> numbers = numbers(store);
+		assertEquals(100, numbers.size());
+		for (long i = 0; i < 100; i++) {
+			assertEquals((double) i, numbers.get(i), 0d);
+		}
+	}
+	
+	public void testCloseAndReopen() throws Exception {
+		EmbeddedStore store = populate();
+		store.close();
+		store = open();
+		assertPopulated(store);
+		store.close();
+		assertEquals("[4]", Arrays.toString(new File(directory, "series").list()));
+	}
+	
+	public void testReplayAfterCrash() throws Exception {
+		populate();
+		// the first store is never closed
+		EmbeddedStore store = open();
+		assertPopulated(store);
+		store.close();
+	}
+	
+	public void testCheckpointRemovesNumericRecords() throws Exception {
+		EmbeddedStore store = populate();
+		WriteAheadLog log = new WriteAheadLog(new File(directory, "database.wal"));
+		int before = log.read().size();
+		store.checkpoint();
+		int after = log.read().size();
+		// one block of values was logged for the series
+		assertEquals(before - 1, after);
+		assertFalse(new File(directory, "series/" + SERIES + ".bak").exists());
+		store.close();
+	}
+	
+	public void testTruncatedLog() throws Exception {
+		EmbeddedStore store = populate();
+		SeriesRecord series = store.getSeries(SERIES);
+		store.updateChronicle(new ChronicleRecord(CHRONICLE, 0, "renamed", "a chronicle", 0));
+		for (int i = 0; i < 100; i++) {
+			store.putNumber(series, i, -i);
+		}
+		store.putNumber(series, 1000, 1);
+		store.commit();
+		// a crash while the second batch was written: its values are already
+		// in the series file but the log is truncated in the middle of it
+		File wal = new File(directory, "database.wal");
+		RandomAccessFile raf = new RandomAccessFile(wal, "rw");
+		raf.setLength(raf.length() - 10);
+		raf.close();
+		store = open();
+		assertPopulated(store);
+		store.close();
+		store = open();
+		assertPopulated(store);
+		store.close();
+	}
+	
+	public void testTornSeriesFile() throws Exception {
+		populate().close();
+		EmbeddedStore store = open();
+		SeriesRecord series = store.getSeries(SERIES);
+		for (int i = 0; i < 100; i += 2) {
+			store.removeNumber(series, i);
+		}
+		store.commit();
+		// a crash while the series file was written
+		File file = new File(directory, "series/" + SERIES);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(raf.length() / 2);
+		raf.write(new byte[(int) (raf.length() - raf.length() / 2)]);
+		raf.close();
+		store = open();
+		NavigableMap<Long, Double> numbers = numbers(store);
+		assertEquals(50, numbers.size());
+		for (long i = 1; i < 100; i += 2) {
+			assertEquals((double) i, numbers.get(i), 0d);
+		}
+		store.close();
+	}
+	
+	public void testRollbackMixedChanges() throws Exception {
+		EmbeddedStore store = populate();
+		SeriesRecord series = store.getSeries(SERIES);
+		store.updateChronicle(new ChronicleRecord(CHRONICLE, 0, "renamed", "changed", 0));
+		store.putAttribute(new AttributeRecord(CHRONICLE, PROPERTY, "blue", null));
+		store.createChronicle(new ChronicleRecord(10, CHRONICLE, "member", "", 0));
+		store.createSeries(new SeriesRecord(11, 10, 1));
+		store.putNumber(series, 5, -5);
+		store.removeNumber(series, 6);
+		store.putNumber(series, 500, 500);
+		store.rollback();
+		assertPopulated(store);
+		assertNull(store.getChronicle(10));
+		assertNull(store.getSeries(11));
+		store.commit();
+		store.close();
+		store = open();
+		assertPopulated(store);
+		assertNull(store.getChronicle(10));
+		store.close();
+	}
+	
+	public void testOpenFailureLeavesStoreClosed() throws Exception {
+		populate().close();
+		File unfinished = new File(directory, "series/99.bak.tmp/x");
+		assertTrue(unfinished.mkdirs());
+		EmbeddedStore store = new EmbeddedStore();
+		try {
+			store.open(directory);
+			fail("exception expected");
+		} catch (Exception e) {
+			// cannot delete the unfinished copy
+		}
+		delete(unfinished.getParentFile());
+		store.open(directory);
+		assertPopulated(store);
+		store.close();
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.agent.crnickl.embedded;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class SeriesFileTest extends TestCase {
+
+	private File file;
+	
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("series", null);
+		file.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	private static void assertContent(TreeMap<Long, Double> expected, SeriesFile series) {
+		assertEquals(expected.size(), series.size());
+		long[] times = new long[series.size()];
+		double[] values = new double[series.size()];
+		series.get(0, series.size(), times, values);
+		int i = 0;
+		for (Map.Entry<Long, Double> e : expected.entrySet()) {
+			assertEquals("time " + i, e.getKey().longValue(), times[i]);
+			assertEquals("value " + i, e.getValue().doubleValue(), values[i], 0d);
+			assertEquals(i, series.find(e.getKey()));
+			i++;
+		}
+	}
+
+	public void testFind() throws Exception {
+		SeriesFile series = new SeriesFile(file);
+		assertEquals(-1, series.find(5));
+		series.put(10, 1.0);
+		series.put(20, 2.0);
+		series.put(30, 3.0);
+		assertEquals(1, series.find(20));
+		assertEquals(-1, series.find(5));
+		assertEquals(-2, series.find(15));
+		assertEquals(-4, series.find(35));
+		assertEquals(1, series.ceiling(15));
+		assertEquals(3, series.ceiling(35));
+		assertEquals(0, series.floor(15));
+		assertEquals(-1, series.floor(5));
+		assertEquals(2, series.floor(30));
+		series.close();
+	}
+	
+	public void testPutAndRemove() throws Exception {
+		SeriesFile series = new SeriesFile(file);
+		assertNull(series.put(20, 2.0));
+		// inserted before existing entries, which are shifted
+		assertNull(series.put(10, 1.0));
+		assertEquals(2.0, series.put(20, 2.5), 0d);
+		assertEquals(1.0, series.remove(10), 0d);
+		assertNull(series.remove(10));
+		assertEquals(1, series.size());
+		assertEquals(20, series.getTime(0));
+		assertEquals(2.5, series.getValue(0), 0d);
+		series.close();
+	}
+	
+	public void testGrowAndReopen() throws Exception {
+		TreeMap<Long, Double> expected = new TreeMap<Long, Double>();
+		Random random = new Random(42);
+		SeriesFile series = new SeriesFile(file);
+		// enough values to grow several times, inserted in random order
+		for (int i = 0; i < 1000; i++) {
+			long time = random.nextInt(2000);
+			double value = random.nextDouble();
+			expected.put(time, value);
+			series.put(time, value);
+		}
+		for (int i = 0; i < 300; i++) {
+			long time = random.nextInt(2000);
+			assertEquals(expected.remove(time), series.remove(time));
+		}
+		assertContent(expected, series);
+		series.close();
+		series = new SeriesFile(file);
+		assertContent(expected, series);
+		series.close();
+	}
+	
+	public void testNotASeriesFile() throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[1000]);
+		out.close();
+		try {
+			new SeriesFile(file);
+			fail("exception expected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("not a series file"));
+		}
+	}
+
+}
@@ -0,0 +1,198 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.agent.crnickl.embedded;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class WriteAheadLogTest extends TestCase {
+
+	private File file;
+	
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("log", null);
+		file.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+		new File(file.getPath() + ".tmp").delete();
+	}
+	
+	private static byte[] record(String text) throws Exception {
+		return text.getBytes("UTF-8");
+	}
+	
+	private static List<String> texts(List<byte[]> records) throws Exception {
+		List<String> result = new ArrayList<String>(records.size());
+		for (byte[] record : records) {
+			result.add(new String(record, "UTF-8"));
+		}
+		return result;
+	}
+	
+	private List<String> reopen() throws Exception {
+		WriteAheadLog log = new WriteAheadLog(file);
+		List<String> result = texts(log.open());
+		log.close();
+		return result;
+	}
+	
+	public void testRoundTrip() throws Exception {
+		WriteAheadLog log = new WriteAheadLog(file);
+		assertEquals(0, log.open().size());
+		log.append(record("a"));
+		log.append(record("b"));
+		log.commit();
+		log.append(record("c"));
+		log.commit();
+		log.append(record("not committed"));
+		log.close();
+		assertEquals("[a, b, c]", reopen().toString());
+	}
+	
+	public void testDiscard() throws Exception {
+		WriteAheadLog log = new WriteAheadLog(file);
+		log.open();
+		log.append(record("a"));
+		log.discard();
+		log.append(record("b"));
+		log.commit();
+		log.close();
+		assertEquals("[b]", reopen().toString());
+	}
+	
+	public void testTruncatedBatch() throws Exception {
+		WriteAheadLog log = new WriteAheadLog(file);
+		log.open();
+		log.append(record("a"));
+		log.commit();
+		long valid = file.length();
+		log.append(record("b"));
+		log.append(record("c"));
+		log.commit();
+		log.close();
+		// a write interrupted in the middle of the second batch
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 3);
+		raf.close();
+		log = new WriteAheadLog(file);
+		assertEquals("[a]", texts(log.open()).toString());
+		assertEquals(valid, file.length());
+		log.append(record("d"));
+		log.commit();
+		log.close();
+		assertEquals("[a, d]", reopen().toString());
+	}
+	
+	public void testCorruptBatch() throws Exception {
+		WriteAheadLog log = new WriteAheadLog(file);
+		log.open();
+		log.append(record("a"));
+		log.commit();
+		log.append(record("b"));
+		log.commit();
+		log.close();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(raf.length() - 1);
+		raf.write('x');
+		raf.close();
+		assertEquals("[a]", reopen().toString());
+	}
+	
+	public void testRewrite() throws Exception {
+		WriteAheadLog log = new WriteAheadLog(file);
+		log.open();
+		log.append(record("a"));
+		log.append(record("b"));
+		log.commit();
+		log.append(record("c"));
+		log.commit();
+		List<byte[]> kept = new ArrayList<byte[]>();
+		for (byte[] record : log.read()) {
+			if (record[0] != 'b')
+				kept.add(record);
+		}
+		log.rewrite(kept);
+		log.append(record("d"));
+		log.commit();
+		log.close();
+		assertEquals("[a, c, d]", reopen().toString());
+	}
+	
+	public void testTemporaryFileRecovered() throws Exception {
+		WriteAheadLog log = new WriteAheadLog(file);
+		log.open();
+		log.append(record("a"));
+		log.commit();
+		log.close();
+		// a rewrite interrupted after the log was deleted
+		assertTrue(file.renameTo(new File(file.getPath() + ".tmp")));
+		assertEquals("[a]", reopen().toString());
+	}
+	
+	public void testGroupCommit() throws Exception {
+		final WriteAheadLog log = new WriteAheadLog(file);
+		log.open();
+		final int threads = 8;
+		final int commits = 50;
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final int k = i;
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < commits; j++) {
+							log.append(record(k + "." + j));
+							long ticket = log.enqueue();
+							log.await(ticket);
+							assertTrue(log.isDurable(ticket));
+						}
+					} catch (Throwable e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			};
+			workers[i].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		log.close();
+		assertEquals("[]", errors.toString());
+		List<String> records = reopen();
+		Set<String> distinct = new HashSet<String>(records);
+		assertEquals(threads * commits, records.size());
+		assertEquals(threads * commits, distinct.size());
+		for (int i = 0; i < threads; i++) {
+			assertTrue(distinct.contains(i + "." + (commits - 1)));
+		}
+	}
+
+}
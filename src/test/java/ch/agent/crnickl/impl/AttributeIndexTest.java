@@ -0,0 +1,191 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.api.Attribute;
+import ch.agent.crnickl.api.DatabaseConfiguration;
+import ch.agent.crnickl.api.Property;
+import ch.agent.crnickl.api.Schema;
+import ch.agent.crnickl.api.Surrogate;
+import ch.agent.crnickl.api.UpdatableChronicle;
+import ch.agent.crnickl.api.UpdatableSchema;
+import ch.agent.crnickl.api.UpdatableValueType;
+import ch.agent.crnickl.mem.MemoryDatabase;
+import ch.agent.t2.applied.DefaultTimeDomainCatalog;
+
+public class AttributeIndexTest extends TestCase {
+
+	private MemoryDatabase db;
+	private AttributeIndex index;
+	private Property<String> currency;
+	private Property<String> color;
+	private Schema schema;
+	
+	/**
+	 * Create chronicles a (CHF, red), b (CHF, blue), c (EUR, red) and d
+	 * (no values), and commit. The color of d is red by default, but the
+	 * index only considers explicit values.
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		db = new MemoryDatabase("test", new DefaultTimeDomainCatalog());
+		db.configure(new DatabaseConfiguration("test", MemoryDatabase.class.getName(), 
+				DefaultTimeDomainCatalog.class.getName()));
+		UpdatableValueType<String> text = db.createValueType("text", false, "TEXT");
+		text.applyUpdates();
+		UpdatableValueType<String> colors = db.createValueType("colors", true, "TEXT");
+		colors.addValue("red", "Red");
+		colors.addValue("blue", "Blue");
+		colors.applyUpdates();
+		db.createProperty("currency", text, true).applyUpdates();
+		db.createProperty("color", colors, true).applyUpdates();
+		db.createProperty("kind", text, false).applyUpdates();
+		UpdatableSchema s = db.createSchema("s", null);
+		s.addAttribute(10);
+		s.setAttributeProperty(10, db.getProperty("currency", true));
+		s.addAttribute(11);
+		s.setAttributeProperty(11, db.getProperty("color", true));
+		s.setAttributeDefault(11, "red");
+		s.addAttribute(12);
+		s.setAttributeProperty(12, db.getProperty("kind", true));
+		s.applyUpdates();
+		db.commit();
+		schema = db.getSchemas("s").iterator().next();
+		currency = db.getProperty("currency", true).typeCheck(String.class);
+		color = db.getProperty("color", true).typeCheck(String.class);
+		create("a", "CHF", "red");
+		create("b", "CHF", "blue");
+		create("c", "EUR", "red");
+		create("d", null, null);
+		db.commit();
+		index = db.getAttributeIndex();
+	}
+	
+	private void create(String name, String currencyValue, String colorValue) throws Exception {
+		UpdatableChronicle c = db.getTopChronicle().edit().createChronicle(name, false, name, null, schema);
+		c.applyUpdates();
+		set(c, "currency", currencyValue);
+		set(c, "color", colorValue);
+		c.applyUpdates();
+	}
+	
+	private void set(UpdatableChronicle chronicle, String property, String value) throws Exception {
+		if (value != null) {
+			Attribute<?> attribute = chronicle.getAttribute(property, true);
+			attribute.scan(value);
+			chronicle.setAttribute(attribute);
+		}
+	}
+	
+	private Surrogate surrogate(String name) throws Exception {
+		return db.getChronicle("test." + name, true).getSurrogate();
+	}
+	
+	private Set<String> names(Bitmap bitmap) throws Exception {
+		Set<String> names = new TreeSet<String>();
+		for (Surrogate surrogate : index.getSurrogates(bitmap, 0)) {
+			names.add(db.getChronicle(surrogate).getName(false));
+		}
+		return names;
+	}
+	
+	private int position(String name) throws Exception {
+		index.acquire();
+		try {
+			return index.toBitmap(Collections.singletonList(surrogate(name))).next(0);
+		} finally {
+			index.release();
+		}
+	}
+	
+	public void testLookUp() throws Exception {
+		assertEquals("[a, b]", names(index.lookUp(currency, "CHF")).toString());
+		assertEquals("[a, c]", names(index.lookUp(color, "red")).toString());
+		assertEquals("[]", names(index.lookUp(currency, "USD")).toString());
+		assertEquals("[a]", names(index.lookUp(currency, "CHF").and(index.lookUp(color, "red"))).toString());
+		assertEquals("[b]", names(index.lookUp(currency, "CHF").andNot(index.lookUp(color, "red"))).toString());
+		assertEquals("[a, b, c]", names(index.lookUp(currency, "CHF").or(index.lookUp(currency, "EUR"))).toString());
+	}
+	
+	public void testPropertyNotIndexed() throws Exception {
+		try {
+			index.lookUp(db.getProperty("kind", true).typeCheck(String.class), "x");
+			fail("exception expected");
+		} catch (T2DBException e) {
+			// not indexed
+		}
+	}
+	
+	public void testMaintainedOnCommit() throws Exception {
+		assertEquals("[a, b]", names(index.lookUp(currency, "CHF")).toString());
+		assertEquals("[a, c]", names(index.lookUp(color, "red")).toString());
+		UpdatableChronicle c = db.getChronicle("test.c", true).edit();
+		set(c, "currency", "CHF");
+		set(c, "color", "blue");
+		c.applyUpdates();
+		db.commit();
+		assertEquals("[a, b, c]", names(index.lookUp(currency, "CHF")).toString());
+		assertEquals("[a]", names(index.lookUp(color, "red")).toString());
+		assertEquals("[b, c]", names(index.lookUp(color, "blue")).toString());
+		UpdatableChronicle b = db.getChronicle("test.b", true).edit();
+		b.destroy();
+		b.applyUpdates();
+		db.commit();
+		assertEquals("[a, c]", names(index.lookUp(currency, "CHF")).toString());
+	}
+	
+	public void testPositionsReused() throws Exception {
+		assertEquals("[a, b]", names(index.lookUp(currency, "CHF")).toString());
+		int position = position("b");
+		UpdatableChronicle b = db.getChronicle("test.b", true).edit();
+		b.destroy();
+		b.applyUpdates();
+		db.commit();
+		assertNull(index.getSurrogate(position));
+		create("e", "CHF", null);
+		db.commit();
+		assertEquals("[a, e]", names(index.lookUp(currency, "CHF")).toString());
+		assertEquals(position, position("e"));
+	}
+	
+	public void testTemporaryPositions() throws Exception {
+		assertEquals("[a, b]", names(index.lookUp(currency, "CHF")).toString());
+		Surrogate d = surrogate("d");
+		index.acquire();
+		Bitmap bitmap = index.toBitmap(Collections.singletonList(d));
+		int position = bitmap.next(0);
+		assertTrue(index.contains(bitmap, d));
+		assertFalse(index.contains(index.lookUp(currency, "CHF"), d));
+		assertEquals(d, index.getSurrogate(position));
+		index.release();
+		// the position of a chronicle not in any bitmap of the index is freed
+		assertNull(index.getSurrogate(position));
+		try {
+			index.toBitmap(Collections.singletonList(d));
+			fail("exception expected");
+		} catch (IllegalStateException e) {
+			// not acquired
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class BitmapTest extends TestCase {
+
+	private static void assertBitmap(BitSet expected, Bitmap actual) {
+		assertEquals(expected.cardinality(), actual.cardinality());
+		assertEquals(expected.isEmpty(), actual.isEmpty());
+		int p = actual.next(0);
+		for (int e = expected.nextSetBit(0); e >= 0; e = expected.nextSetBit(e + 1)) {
+			assertEquals(e, p);
+			assertTrue(actual.get(e));
+			p = actual.next(p + 1);
+		}
+		assertEquals(-1, p);
+	}
+
+	private static Bitmap bitmap(BitSet bits) {
+		Bitmap result = new Bitmap();
+		for (int p = bits.nextSetBit(0); p >= 0; p = bits.nextSetBit(p + 1)) {
+			result.set(p);
+		}
+		return result;
+	}
+
+	/**
+	 * Return random positions in a few chunks. Some chunks are dense enough
+	 * to keep bits, others keep arrays.
+	 */
+	private static BitSet random(Random random, int... densities) {
+		BitSet bits = new BitSet();
+		for (int c = 0; c < densities.length; c++) {
+			for (int i = 0; i < densities[c]; i++) {
+				bits.set((c << 16) | random.nextInt(1 << 16));
+			}
+		}
+		return bits;
+	}
+
+	public void testSetClear() {
+		Bitmap b = new Bitmap();
+		assertTrue(b.isEmpty());
+		assertEquals(-1, b.next(0));
+		assertTrue(b.set(70000));
+		assertFalse(b.set(70000));
+		assertTrue(b.set(3));
+		assertTrue(b.set(Integer.MAX_VALUE));
+		assertEquals(3, b.next(0));
+		assertEquals(70000, b.next(4));
+		assertEquals(Integer.MAX_VALUE, b.next(70001));
+		assertEquals("[3, 70000, " + Integer.MAX_VALUE + "]", b.toString());
+		assertTrue(b.clear(70000));
+		assertFalse(b.clear(70000));
+		assertFalse(b.clear(5));
+		assertFalse(b.get(70000));
+		assertEquals(2, b.cardinality());
+		assertEquals(-1, b.next(-1));
+	}
+
+	public void testNegativePosition() {
+		try {
+			new Bitmap().set(-1);
+			fail("exception expected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testChunkSwitch() {
+		Bitmap b = new Bitmap();
+		BitSet expected = new BitSet();
+		// fill one chunk past the array limit, it switches to bits
+		for (int i = 0; i < 5000; i++) {
+			int p = 65536 + i * 13 % 65536;
+			b.set(p);
+			expected.set(p);
+		}
+		assertBitmap(expected, b);
+		// remove down to the middle of the limit, it switches back to an array
+		for (int p = expected.nextSetBit(0), n = 0; p >= 0 && n < 3000; p = expected.nextSetBit(p + 1), n++) {
+			assertTrue(b.clear(p));
+			expected.clear(p);
+		}
+		assertBitmap(expected, b);
+		// and back to bits
+		for (int i = 0; i < 65536; i += 7) {
+			b.set(65536 + i);
+			expected.set(65536 + i);
+		}
+		assertBitmap(expected, b);
+		// removing all positions removes the chunk
+		for (int p = expected.nextSetBit(0); p >= 0; p = expected.nextSetBit(p + 1)) {
+			assertTrue(b.clear(p));
+		}
+		assertTrue(b.isEmpty());
+	}
+
+	public void testCopy() {
+		Random random = new Random(1);
+		BitSet bits = random(random, 100, 0, 10000);
+		Bitmap b = bitmap(bits);
+		Bitmap c = b.copy();
+		assertBitmap(bits, c);
+		c.set(65536);
+		c.clear(bits.nextSetBit(0));
+		c.clear(bits.nextSetBit(2 << 16));
+		assertBitmap(bits, b);
+	}
+
+	public void testSetAlgebra() {
+		Random random = new Random(2);
+		int[][] densities = {
+				{10, 10000, 0, 3000, 65536},
+				{10000, 10, 5000, 0, 100},
+				{0, 0, 0},
+				{4096, 4097, 2048, 2049, 1}
+		};
+		for (int i = 0; i < densities.length; i++) {
+			for (int j = 0; j < densities.length; j++) {
+				BitSet x = random(random, densities[i]);
+				BitSet y = random(random, densities[j]);
+				Bitmap a = bitmap(x);
+				Bitmap b = bitmap(y);
+
+				BitSet and = (BitSet) x.clone();
+				and.and(y);
+				assertBitmap(and, a.and(b));
+
+				BitSet or = (BitSet) x.clone();
+				or.or(y);
+				assertBitmap(or, a.or(b));
+
+				BitSet andNot = (BitSet) x.clone();
+				andNot.andNot(y);
+				assertBitmap(andNot, a.andNot(b));
+
+				// operands are not modified
+				assertBitmap(x, a);
+				assertBitmap(y, b);
+			}
+		}
+	}
+
+	public void testResultsAreIndependent() {
+		Random random = new Random(3);
+		BitSet x = random(random, 5000, 20);
+		Bitmap a = bitmap(x);
+		Bitmap empty = new Bitmap();
+		Bitmap or = a.or(empty);
+		Bitmap andNot = a.andNot(empty);
+		or.set(200000);
+		andNot.clear(x.nextSetBit(0));
+		assertBitmap(x, a);
+	}
+
+}
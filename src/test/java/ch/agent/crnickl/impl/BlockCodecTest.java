@@ -0,0 +1,165 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import ch.agent.crnickl.T2DBException;
+
+public class BlockCodecTest extends TestCase {
+
+	private static long[] roundTrip(long[] times) throws Exception {
+		byte[] block = BlockCodec.encode(times, times.length);
+		assertEquals(times.length, BlockCodec.count(block));
+		long[] decoded = new long[times.length];
+		assertEquals(times.length, BlockCodec.decode(block, decoded));
+		return decoded;
+	}
+
+	private static void assertTimes(long[] expected, long[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("time " + i, expected[i], actual[i]);
+		}
+	}
+
+	private static void assertNumbers(double[] values) throws Exception {
+		long[] times = new long[values.length];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = i;
+		}
+		byte[] block = BlockCodec.encode(times, values, values.length);
+		long[] t = new long[values.length];
+		double[] v = new double[values.length];
+		assertEquals(values.length, BlockCodec.decode(block, t, v));
+		assertTimes(times, t);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals("value " + i, Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(v[i]));
+		}
+	}
+
+	public void testEmpty() throws Exception {
+		assertTimes(new long[0], roundTrip(new long[0]));
+		assertNumbers(new double[0]);
+	}
+
+	public void testRegularTimes() throws Exception {
+		long[] times = new long[1000];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = 730000 + 7 * i;
+		}
+		assertTimes(times, roundTrip(times));
+		// about one bit per time index after the first
+		assertTrue(BlockCodec.encode(times, times.length).length < 150);
+	}
+
+	public void testDeltaOfDeltaLimits() throws Exception {
+		// deltas of deltas on both sides of each width
+		long[] dods = {-64, 63, 64, -65, -256, 255, 256, -257, -2048, 2047, 2048, -2049};
+		long[] times = new long[dods.length + 2];
+		times[0] = 0;
+		times[1] = 10000;
+		long delta = 10000;
+		for (int i = 0; i < dods.length; i++) {
+			delta += dods[i];
+			times[i + 2] = times[i + 1] + delta;
+		}
+		assertTimes(times, roundTrip(times));
+	}
+
+	public void testDeltaOfDeltaOverflow() throws Exception {
+		// deltas and deltas of deltas overflow a long
+		long[] times = {Long.MIN_VALUE, -1, 0, Long.MAX_VALUE - 1, Long.MAX_VALUE};
+		assertTimes(times, roundTrip(times));
+		times = new long[] {Long.MIN_VALUE, Long.MAX_VALUE};
+		assertTimes(times, roundTrip(times));
+	}
+
+	public void testRandomTimes() throws Exception {
+		Random random = new Random(42);
+		long[] times = new long[5000];
+		long t = random.nextLong() / 2;
+		for (int i = 0; i < times.length; i++) {
+			int kind = random.nextInt(4);
+			t += kind == 0 ? 1 : kind == 1 ? 1 + random.nextInt(100) : kind == 2 ? 1 + random.nextInt(100000) : 1 + (random.nextLong() >>> 40);
+			times[i] = t;
+		}
+		assertTimes(times, roundTrip(times));
+	}
+
+	public void testSpecialNumbers() throws Exception {
+		assertNumbers(new double[] {0.0, -0.0, 0.0, Double.NaN, -0.0, Double.NaN, Double.NaN,
+				Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, -Double.MIN_VALUE,
+				Double.MAX_VALUE, 1.0});
+	}
+
+	public void testNonCanonicalNaN() throws Exception {
+		double nan1 = Double.longBitsToDouble(0x7ff8000000000001L);
+		double nan2 = Double.longBitsToDouble(0xfff0000000000001L);
+		assertNumbers(new double[] {Double.NaN, nan1, nan2, nan1, 1.5, nan2});
+	}
+
+	public void testXorFullWidth() throws Exception {
+		// the exclusive or of these values has no leading and no trailing zeros
+		double a = Double.longBitsToDouble(0x0000000000000001L);
+		double b = Double.longBitsToDouble(0x8000000000000000L);
+		assertNumbers(new double[] {a, b, a, -0.0, Double.MIN_VALUE, -0.0});
+	}
+
+	public void testRandomNumbers() throws Exception {
+		Random random = new Random(7);
+		double[] values = new double[5000];
+		double v = 100;
+		for (int i = 0; i < values.length; i++) {
+			int kind = random.nextInt(5);
+			if (kind == 0)
+				values[i] = v;
+			else if (kind == 1)
+				values[i] = v += 0.25;
+			else if (kind == 2)
+				values[i] = Double.longBitsToDouble(random.nextLong());
+			else
+				values[i] = v = random.nextGaussian() * 1000;
+		}
+		assertNumbers(values);
+	}
+
+	public void testStrings() throws Exception {
+		long[] times = {1, 2, 3, 5, 8, 13, 21};
+		String[] values = {"a", null, "\u00e9t\u00e9", "a", "", null, "a"};
+		byte[] block = BlockCodec.encode(times, values, times.length);
+		long[] t = new long[times.length];
+		String[] v = new String[times.length];
+		assertEquals(times.length, BlockCodec.decode(block, t, v));
+		assertTimes(times, t);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals("value " + i, values[i], v[i]);
+		}
+	}
+
+	public void testWrongKind() throws Exception {
+		byte[] block = BlockCodec.encode(new long[] {1, 2}, 2);
+		try {
+			BlockCodec.decode(block, new long[2], new double[2]);
+			fail("exception expected");
+		} catch (T2DBException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.agent.crnickl.impl;
+
+import static ch.agent.crnickl.api.ChroniclePredicate.and;
+import static ch.agent.crnickl.api.ChroniclePredicate.attribute;
+import static ch.agent.crnickl.api.ChroniclePredicate.memberOf;
+import static ch.agent.crnickl.api.ChroniclePredicate.not;
+import static ch.agent.crnickl.api.ChroniclePredicate.or;
+import static ch.agent.crnickl.api.ChroniclePredicate.schema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+import ch.agent.crnickl.api.Attribute;
+import ch.agent.crnickl.api.Chronicle;
+import ch.agent.crnickl.api.ChroniclePredicate;
+import ch.agent.crnickl.api.ChronicleVisitor;
+import ch.agent.crnickl.api.DatabaseConfiguration;
+import ch.agent.crnickl.api.Property;
+import ch.agent.crnickl.api.Schema;
+import ch.agent.crnickl.api.UpdatableChronicle;
+import ch.agent.crnickl.api.UpdatableSchema;
+import ch.agent.crnickl.api.UpdatableValueType;
+import ch.agent.crnickl.mem.MemoryDatabase;
+import ch.agent.t2.applied.DefaultTimeDomainCatalog;
+
+public class ChronicleQueryTest extends TestCase {
+
+	private MemoryDatabase db;
+	private Property<String> currency;
+	private Property<String> kind;
+	private Schema s1;
+	private Schema s2;
+	private Chronicle x;
+	private Chronicle y;
+	
+	/**
+	 * Create chronicles x (schema s1), x.y (schema s2 extending s1), and
+	 * members a to d with values of the indexed property currency and of the
+	 * property kind, which is not indexed. Members a and c are in x.y and
+	 * inherit s2, members b and d are top chronicles with schema s1.
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		db = new MemoryDatabase("test", new DefaultTimeDomainCatalog());
+		db.configure(new DatabaseConfiguration("test", MemoryDatabase.class.getName(), 
+				DefaultTimeDomainCatalog.class.getName()));
+		UpdatableValueType<String> text = db.createValueType("text", false, "TEXT");
+		text.applyUpdates();
+		db.createProperty("currency", text, true).applyUpdates();
+		db.createProperty("kind", text, false).applyUpdates();
+		UpdatableSchema s = db.createSchema("s1", null);
+		s.addAttribute(10);
+		s.setAttributeProperty(10, db.getProperty("currency", true));
+		s.setAttributeDefault(10, "USD");
+		s.addAttribute(11);
+		s.setAttributeProperty(11, db.getProperty("kind", true));
+		s.setAttributeDefault(11, "stock");
+		s.applyUpdates();
+		db.createSchema("s2", "s1").applyUpdates();
+		db.commit();
+		s1 = db.getSchemas("s1").iterator().next();
+		s2 = db.getSchemas("s2").iterator().next();
+		UpdatableChronicle top = db.getTopChronicle().edit();
+		UpdatableChronicle ux = top.createChronicle("x", false, "x", null, s1);
+		ux.applyUpdates();
+		UpdatableChronicle uy = ux.edit().createChronicle("y", false, "y", null, s2);
+		uy.applyUpdates();
+		create(uy, "a", null, "CHF", "bond");
+		create(top, "b", s1, "CHF", "stock");
+		create(uy, "c", null, "EUR", "bond");
+		create(top, "d", s1, "CHF", "bond");
+		db.commit();
+		currency = db.getProperty("currency", true).typeCheck(String.class);
+		kind = db.getProperty("kind", true).typeCheck(String.class);
+		x = db.getChronicle("test.x", true);
+		y = db.getChronicle("test.x.y", true);
+	}
+	
+	private void create(UpdatableChronicle parent, String name, Schema schema, String currency, String kind) throws Exception {
+		UpdatableChronicle c = parent.edit().createChronicle(name, false, name, null, schema);
+		c.applyUpdates();
+		Attribute<?> attribute = c.getAttribute("currency", true);
+		attribute.scan(currency);
+		c.setAttribute(attribute);
+		attribute = c.getAttribute("kind", true);
+		attribute.scan(kind);
+		c.setAttribute(attribute);
+		c.applyUpdates();
+	}
+	
+	private String query(ChroniclePredicate predicate) throws Exception {
+		Set<String> names = new TreeSet<String>();
+		for (Chronicle chronicle : db.query(predicate, 0)) {
+			names.add(chronicle.getName(true));
+		}
+		return names.toString();
+	}
+	
+	public void testAttributes() throws Exception {
+		assertEquals("[b, d, x.y.a]", query(attribute(currency, "CHF")));
+		assertEquals("[d, x.y.a, x.y.c]", query(attribute(kind, "bond")));
+		assertEquals("[d, x.y.a]", query(and(attribute(currency, "CHF"), attribute(kind, "bond"))));
+		assertEquals("[b, d, x.y.a, x.y.c]", query(attribute(currency, Arrays.asList("CHF", "EUR"))));
+		// default values are not explicit values
+		assertEquals("[]", query(attribute(currency, "USD")));
+	}
+	
+	public void testMembersAndSchemas() throws Exception {
+		assertEquals("[x.y, x.y.a, x.y.c]", query(memberOf(x)));
+		assertEquals("[x.y.a, x.y.c]", query(memberOf(y)));
+		assertEquals("[b, d, x]", query(schema(s1)));
+		assertEquals("[x.y, x.y.a, x.y.c]", query(schema(s2)));
+		assertEquals("[x.y.a, x.y.c]", query(and(memberOf(y), schema(s2))));
+	}
+	
+	public void testNegations() throws Exception {
+		assertEquals("[b, x, x.y]", query(not(attribute(kind, "bond"))));
+		assertEquals("[b, d]", query(and(or(attribute(currency, "CHF"), attribute(currency, "EUR")), not(memberOf(y)))));
+		assertEquals("[x.y.a]", query(and(memberOf(x), schema(s2), 
+				attribute(kind, Arrays.asList("bond", "stock")), not(attribute(currency, "EUR")))));
+	}
+	
+	public void testUncommittedChanges() throws Exception {
+		UpdatableChronicle c = db.getChronicle("test.x.y.c", true).edit();
+		Attribute<?> attribute = c.getAttribute("currency", true);
+		attribute.scan("CHF");
+		c.setAttribute(attribute);
+		c.applyUpdates();
+		y.edit().createChronicle("e", false, "e", null, null).applyUpdates();
+		assertEquals("[x.y.a, x.y.c, x.y.e]", query(memberOf(y)));
+		db.commit();
+		assertEquals("[b, d, x.y.a, x.y.c]", query(attribute(currency, "CHF")));
+	}
+	
+	public void testMaxSizeAndStop() throws Exception {
+		assertEquals(2, db.query(memberOf(x), 2).size());
+		final List<Chronicle> visited = new ArrayList<Chronicle>();
+		db.query(attribute(currency, "CHF"), new ChronicleVisitor() {
+			@Override
+			public boolean visit(Chronicle chronicle, int depth) {
+				assertEquals(0, depth);
+				visited.add(chronicle);
+				return false;
+			}
+		});
+		assertEquals(1, visited.size());
+	}
+	
+	public void testIndexReleased() throws Exception {
+		query(and(memberOf(x), attribute(currency, "CHF")));
+		try {
+			db.getAttributeIndex().release();
+			fail("exception expected");
+		} catch (IllegalStateException e) {
+			// queries release the index
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class NameTrieTest extends TestCase {
+
+	private NameTrie<String> trie;
+
+	@Override
+	protected void setUp() throws Exception {
+		trie = new NameTrie<String>();
+	}
+
+	private static List<String> sorted(List<String> values) {
+		List<String> result = new ArrayList<String>(values);
+		Collections.sort(result);
+		return result;
+	}
+
+	private static List<String> list(String... values) {
+		List<String> result = new ArrayList<String>();
+		Collections.addAll(result, values);
+		return result;
+	}
+
+	private void put(String... names) {
+		for (String name : names) {
+			assertNull(trie.put(name, name));
+		}
+	}
+
+	public void testPutGet() {
+		put("a.b.c", "a.b.d", "a", "x.y");
+		assertEquals(4, trie.size());
+		assertEquals("a.b.c", trie.get("a.b.c"));
+		assertEquals("a", trie.get("a"));
+		assertNull(trie.get("a.b"));
+		assertNull(trie.get("a.b.c.d"));
+		assertNull(trie.get("a.bb.c"));
+		assertNull(trie.get("x"));
+		assertEquals("a.b.c", trie.put("a.b.c", "other"));
+		assertEquals("other", trie.get("a.b.c"));
+		assertEquals(4, trie.size());
+	}
+
+	public void testGetWithLength() {
+		put("a.b", "a.b.c.d");
+		String name = "a.b.c.d";
+		assertEquals("a.b", trie.get(name, 3));
+		assertNull(trie.get(name, 5));
+		assertEquals("a.b.c.d", trie.get(name, name.length()));
+		assertNull(trie.get(name, 2));
+	}
+
+	public void testSplit() {
+		// the second name splits the label of the first one
+		put("a.b.c.d", "a.b.x");
+		assertEquals("a.b.c.d", trie.get("a.b.c.d"));
+		assertEquals("a.b.x", trie.get("a.b.x"));
+		assertNull(trie.get("a.b"));
+		// a name ending at the split point
+		put("a.b");
+		assertEquals("a.b", trie.get("a.b"));
+		// a name which is a prefix of a label but not on a separator
+		assertNull(trie.get("a.b.c.dd"));
+		put("a.b.c.dd");
+		assertEquals("a.b.c.dd", trie.get("a.b.c.dd"));
+		assertEquals("a.b.c.d", trie.get("a.b.c.d"));
+	}
+
+	public void testRemoveMerges() {
+		put("a.b.c", "a.b.d");
+		// removing one of the two names leaves a node with a single child to merge
+		assertEquals("a.b.c", trie.remove("a.b.c"));
+		assertNull(trie.get("a.b.c"));
+		assertEquals("a.b.d", trie.get("a.b.d"));
+		assertEquals(list("a.b.d"), trie.getAll("a"));
+		assertEquals(list("a.b.d"), trie.getAll("a.b"));
+		// the merged node can be split again
+		put("a.b.e", "a.f");
+		assertEquals(list("a.b.d", "a.b.e", "a.f"), sorted(trie.getAll("a")));
+		assertEquals("a.b.d", trie.remove("a.b.d"));
+		assertEquals("a.b.e", trie.remove("a.b.e"));
+		assertEquals(list("a.f"), trie.getAll(null));
+		assertEquals(1, trie.size());
+	}
+
+	public void testRemoveInnerValue() {
+		put("a.b", "a.b.c");
+		assertEquals("a.b", trie.remove("a.b"));
+		// the node without value is merged with its only child
+		assertNull(trie.get("a.b"));
+		assertEquals("a.b.c", trie.get("a.b.c"));
+		put("a.b");
+		assertEquals("a.b", trie.get("a.b"));
+		assertNull(trie.remove("a.b.x"));
+		assertNull(trie.remove("a"));
+		assertEquals(2, trie.size());
+	}
+
+	public void testPrefixes() {
+		put("a.b.c", "a.b.cd", "a.bc", "a.b", "b");
+		assertEquals(list("a.b", "a.b.c", "a.b.cd"), sorted(trie.getAll("a.b")));
+		assertEquals(list("a.b.c"), trie.getAll("a.b.c"));
+		assertEquals(list(), trie.getAll("a.b.x"));
+		assertEquals(list(), trie.getAll("a.b.c.d"));
+		assertEquals(5, trie.getAll("").size());
+		assertEquals(list("a.b", "a.b.c", "a.b.cd"), sorted(trie.removeAll("a.b")));
+		assertEquals(2, trie.size());
+		assertEquals("a.bc", trie.get("a.bc"));
+		assertEquals(list("a.bc"), trie.getAll("a"));
+		assertEquals(list("a.bc", "b"), sorted(trie.removeAll(null)));
+		assertEquals(0, trie.size());
+	}
+
+	public void testManyChildren() {
+		for (int i = 0; i < 1000; i++) {
+			put("p." + i);
+		}
+		for (int i = 0; i < 1000; i += 2) {
+			assertEquals("p." + i, trie.remove("p." + i));
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i % 2 == 0 ? null : "p." + i, trie.get("p." + i));
+		}
+		assertEquals(500, trie.getAll("p").size());
+	}
+
+	public void testRandom() {
+		Random random = new Random(5);
+		String[] segments = {"a", "b", "ab", "ba", "c", "abc"};
+		Map<String, String> expected = new TreeMap<String, String>();
+		for (int n = 0; n < 20000; n++) {
+			StringBuilder b = new StringBuilder(segments[random.nextInt(segments.length)]);
+			int depth = random.nextInt(4);
+			for (int i = 0; i < depth; i++) {
+				b.append('.').append(segments[random.nextInt(segments.length)]);
+			}
+			String name = b.toString();
+			int op = random.nextInt(10);
+			if (op < 5)
+				assertEquals(expected.put(name, name), trie.put(name, name));
+			else if (op < 8)
+				assertEquals(expected.remove(name), trie.remove(name));
+			else {
+				List<String> removed = new ArrayList<String>();
+				for (String key : new ArrayList<String>(expected.keySet())) {
+					if (key.equals(name) || key.startsWith(name + "."))
+						removed.add(expected.remove(key));
+				}
+				assertEquals(removed, sorted(trie.removeAll(name)));
+			}
+			assertEquals(expected.size(), trie.size());
+		}
+		for (Map.Entry<String, String> e : expected.entrySet()) {
+			assertEquals(e.getValue(), trie.get(e.getKey()));
+		}
+		assertEquals(new ArrayList<String>(expected.values()), sorted(trie.getAll(null)));
+	}
+
+}
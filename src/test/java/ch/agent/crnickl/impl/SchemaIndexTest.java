@@ -0,0 +1,108 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.agent.crnickl.impl;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.api.DatabaseConfiguration;
+import ch.agent.crnickl.api.Surrogate;
+import ch.agent.crnickl.api.UpdatableSchema;
+import ch.agent.crnickl.mem.MemoryDatabase;
+import ch.agent.t2.applied.DefaultTimeDomainCatalog;
+
+public class SchemaIndexTest extends TestCase {
+
+	private MemoryDatabase db;
+	
+	/**
+	 * Create schemas s2 and s4 extending s1, and s3 extending s2, and
+	 * commit.
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		db = new MemoryDatabase("test", new DefaultTimeDomainCatalog());
+		db.configure(new DatabaseConfiguration("test", MemoryDatabase.class.getName(), 
+				DefaultTimeDomainCatalog.class.getName()));
+		db.createSchema("s1", null).applyUpdates();
+		db.createSchema("s2", "s1").applyUpdates();
+		db.createSchema("s3", "s2").applyUpdates();
+		db.createSchema("s4", "s1").applyUpdates();
+		db.commit();
+	}
+	
+	private Surrogate schema(String name) throws Exception {
+		return db.getSchemas(name).iterator().next().getSurrogate();
+	}
+	
+	private Set<String> names(Collection<Surrogate> surrogates) throws Exception {
+		Set<String> names = new TreeSet<String>();
+		for (Surrogate surrogate : surrogates) {
+			names.add(db.getSchema(surrogate).getName());
+		}
+		return names;
+	}
+	
+	public void testDerivedAndDescendants() throws Exception {
+		SchemaIndex index = db.getSchemaIndex();
+		assertEquals("[s2, s4]", names(index.getDerived(schema("s1"))).toString());
+		assertEquals("[s2, s3, s4]", names(index.getDescendants(schema("s1"))).toString());
+		assertEquals("[s3]", names(index.getDescendants(schema("s2"))).toString());
+		assertEquals("[]", names(index.getDescendants(schema("s3"))).toString());
+	}
+	
+	public void testUpdatesBeforeCommit() throws Exception {
+		SchemaIndex index = db.getSchemaIndex();
+		assertEquals(3, index.getDescendants(schema("s1")).size());
+		UpdatableSchema s3 = db.getUpdatableSchemas("s3").iterator().next();
+		s3.setBase(null);
+		s3.applyUpdates();
+		db.createSchema("s5", "s4").applyUpdates();
+		// visible before the commit
+		assertEquals("[s2, s4, s5]", names(index.getDescendants(schema("s1"))).toString());
+		db.rollback();
+		assertEquals("[s2, s3, s4]", names(index.getDescendants(schema("s1"))).toString());
+	}
+	
+	public void testDeletion() throws Exception {
+		SchemaIndex index = db.getSchemaIndex();
+		assertEquals(3, index.getDescendants(schema("s1")).size());
+		UpdatableSchema s3 = db.getUpdatableSchemas("s3").iterator().next();
+		s3.destroy();
+		s3.applyUpdates();
+		db.commit();
+		assertEquals("[s2, s4]", names(index.getDescendants(schema("s1"))).toString());
+		assertEquals("[]", names(index.getDerived(schema("s2"))).toString());
+	}
+	
+	public void testBaseWithDescendantsCannotBeDeleted() throws Exception {
+		UpdatableSchema s1 = db.getUpdatableSchemas("s1").iterator().next();
+		s1.destroy();
+		try {
+			s1.applyUpdates();
+			fail("exception expected");
+		} catch (T2DBException e) {
+			// s1 is extended by other schemas
+		}
+		db.rollback();
+		assertEquals(3, db.getSchemaIndex().getDescendants(schema("s1")).size());
+	}
+
+}
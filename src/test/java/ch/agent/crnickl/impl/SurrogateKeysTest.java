@@ -0,0 +1,93 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.agent.crnickl.impl;
+
+import junit.framework.TestCase;
+import ch.agent.crnickl.api.DBObjectId;
+import ch.agent.crnickl.api.DBObjectType;
+import ch.agent.crnickl.api.Surrogate;
+import ch.agent.crnickl.mem.MemoryId;
+
+public class SurrogateKeysTest extends TestCase {
+
+	/**
+	 * An id which is not a number, like the ids of some backends.
+	 */
+	private static class TextId implements DBObjectId {
+		private final String text;
+		
+		private TextId(String text) {
+			this.text = text;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof TextId && ((TextId) obj).text.equals(text);
+		}
+
+		@Override
+		public int hashCode() {
+			return text.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return text;
+		}
+	}
+	
+	private static Surrogate surrogate(DBObjectId id) {
+		return new SurrogateImpl(null, DBObjectType.SCHEMA, id);
+	}
+	
+	public void testLongIds() throws Exception {
+		SurrogateImpl s = (SurrogateImpl) surrogate(new MemoryId(42));
+		assertTrue(s.hasKey());
+		SurrogateKeys keys = new SurrogateKeys(null);
+		assertEquals(s.getKey(), keys.key(s));
+		assertTrue(keys.key(s) >= 0);
+	}
+	
+	public void testOtherIds() throws Exception {
+		SurrogateKeys keys = new SurrogateKeys(null);
+		Surrogate a = surrogate(new TextId("a"));
+		Surrogate b = surrogate(new TextId("b"));
+		assertFalse(((SurrogateImpl) a).hasKey());
+		long ka = keys.key(a);
+		long kb = keys.key(b);
+		assertTrue(ka < -1 && kb < -1 && ka != kb);
+		assertEquals(ka, keys.key(surrogate(new TextId("a"))));
+		assertEquals(a, keys.surrogate(ka));
+		assertEquals(b, keys.surrogate(kb));
+		keys.remove(a);
+		try {
+			keys.surrogate(ka);
+			fail("exception expected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertTrue(keys.key(a) != ka);
+		keys.clear();
+		try {
+			keys.surrogate(kb);
+			fail("exception expected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+}
@@ -0,0 +1,172 @@
+/*
+ *   Copyright 2012-2017 Hauser Olsson GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.agent.crnickl.mem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+import ch.agent.crnickl.T2DBException;
+import ch.agent.crnickl.mem.MemoryStore.AttributeRecord;
+import ch.agent.crnickl.mem.MemoryStore.ChronicleRecord;
+import ch.agent.crnickl.mem.MemoryStore.ComponentRecord;
+import ch.agent.crnickl.mem.MemoryStore.PropertyRecord;
+import ch.agent.crnickl.mem.MemoryStore.SchemaRecord;
+import ch.agent.crnickl.mem.MemoryStore.SeriesRecord;
+import ch.agent.crnickl.mem.MemoryStore.ValueTypeRecord;
+
+public class MemoryStoreTest extends TestCase {
+
+	private static final long TYPE = 1;
+	private static final long PROPERTY = 2;
+	private static final long SCHEMA = 3;
+	private static final long PARENT = 4;
+	private static final long CHILD = 5;
+	private static final long SERIES = 6;
+	
+	private MemoryStore store;
+	private SeriesRecord series;
+	
+	/**
+	 * Create a value type, a property, a schema, two chronicles, an
+	 * attribute, and a series with values at times 0 to 9, and commit.
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		store = new MemoryStore();
+		store.createValueType(new ValueTypeRecord(TYPE, "text", false, "TEXT", new HashMap<String, String>()));
+		store.createProperty(new PropertyRecord(PROPERTY, "color", TYPE, true));
+		List<ComponentRecord> components = new ArrayList<ComponentRecord>();
+		components.add(new ComponentRecord(0, 10, PROPERTY, "red", null, false));
+		store.createSchema(new SchemaRecord(SCHEMA, "s", 0, components));
+		store.createChronicle(new ChronicleRecord(PARENT, 0, "a", "parent", SCHEMA));
+		store.createChronicle(new ChronicleRecord(CHILD, PARENT, "b", "child", 0));
+		store.putAttribute(new AttributeRecord(PARENT, PROPERTY, "blue", null));
+		series = new SeriesRecord(SERIES, PARENT, 1);
+		store.createSeries(series);
+		for (int i = 0; i < 10; i++) {
+			store.putValue(series, i, "v" + i);
+		}
+		store.commit();
+	}
+	
+	private void assertCommitted() {
+		assertEquals("text", store.getValueType(TYPE).getName());
+		assertEquals(TYPE, store.getValueType("text").getId());
+		assertEquals("color", store.getProperty(PROPERTY).getName());
+		assertEquals("s", store.getSchema(SCHEMA).getName());
+		assertEquals("a", store.getChronicle(PARENT).getName());
+		assertEquals(PARENT, store.getMember(0, "a").getId());
+		assertEquals(CHILD, store.getMember(PARENT, "b").getId());
+		assertEquals(1, store.countMembers(PARENT));
+		assertEquals("blue", store.getAttribute(PARENT, PROPERTY).getValue());
+		assertSame(series, store.getSeries(PARENT, 1));
+		assertEquals(10, series.getValues().size());
+		for (long i = 0; i < 10; i++) {
+			assertEquals("v" + i, series.getValues().get(i));
+		}
+	}
+	
+	public void testRollback() throws Exception {
+		store.updateValueType(new ValueTypeRecord(TYPE, "text2", false, "TEXT", new HashMap<String, String>()));
+		store.updateProperty(new PropertyRecord(PROPERTY, "colour", TYPE, false));
+		store.updateChronicle(new ChronicleRecord(PARENT, 0, "z", "renamed", SCHEMA));
+		store.deleteChronicle(CHILD);
+		store.deleteAttribute(PARENT, PROPERTY);
+		store.createChronicle(new ChronicleRecord(7, 0, "new", "", 0));
+		store.putValue(series, 3, "changed");
+		store.removeValue(series, 4);
+		store.putValue(series, 100, "added");
+		store.trimValues(series, 2, 8);
+		assertNull(store.getValueType("text"));
+		assertNull(store.getMember(PARENT, "b"));
+		assertEquals(6, series.getValues().size());
+		store.rollback();
+		assertCommitted();
+		assertNull(store.getChronicle(7));
+		assertNull(store.getMember(0, "new"));
+		assertNull(store.getMember(0, "z"));
+	}
+	
+	public void testRollbackDeletions() throws Exception {
+		store.deleteSeries(SERIES);
+		store.deleteChronicle(CHILD);
+		store.deleteAttribute(PARENT, PROPERTY);
+		store.deleteChronicle(PARENT);
+		assertNull(store.getChronicle(PARENT));
+		assertNull(store.getSeries(SERIES));
+		store.rollback();
+		assertCommitted();
+	}
+	
+	public void testCommit() throws Exception {
+		store.updateChronicle(new ChronicleRecord(PARENT, 0, "z", "renamed", SCHEMA));
+		store.putValue(series, 100, "added");
+		store.commit();
+		store.rollback();
+		assertEquals("z", store.getChronicle(PARENT).getName());
+		assertEquals("added", series.getValues().get(100L));
+	}
+	
+	public void testConstraints() throws Exception {
+		try {
+			store.deleteChronicle(PARENT);
+			fail("exception expected");
+		} catch (T2DBException e) {
+			// members and series
+		}
+		try {
+			store.createChronicle(new ChronicleRecord(7, PARENT, "b", "", 0));
+			fail("exception expected");
+		} catch (T2DBException e) {
+			// duplicate name
+		}
+		try {
+			store.createSeries(new SeriesRecord(8, 99, 1));
+			fail("exception expected");
+		} catch (T2DBException e) {
+			// no such chronicle
+		}
+		store.rollback();
+		assertCommitted();
+	}
+	
+	public void testDescendantsAndSchemas() throws Exception {
+		store.createSchema(new SchemaRecord(10, "other", 0, new ArrayList<ComponentRecord>()));
+		// 11 has its own schema, which 12 inherits, and 13 inherits the schema of the parent
+		store.createChronicle(new ChronicleRecord(11, CHILD, "c", "", 10));
+		store.createChronicle(new ChronicleRecord(12, 11, "d", "", 0));
+		store.createChronicle(new ChronicleRecord(13, CHILD, "e", "", 0));
+		assertEquals("[5, 11, 12, 13]", sorted(store.getDescendants(PARENT)));
+		assertEquals("[4, 5, 11, 12, 13]", sorted(store.getDescendants(0)));
+		assertEquals("[]", sorted(store.getDescendants(13)));
+		assertEquals("[4, 5, 13]", sorted(store.getChroniclesBySchema(SCHEMA)));
+		assertEquals("[11, 12]", sorted(store.getChroniclesBySchema(10)));
+	}
+	
+	private static String sorted(List<Long> ids) {
+		return new TreeSet<Long>(ids).toString();
+	}
+	
+	public void testNextId() throws Exception {
+		// ids of records created are reserved
+		assertTrue(store.nextId() > SERIES);
+	}
+
+}